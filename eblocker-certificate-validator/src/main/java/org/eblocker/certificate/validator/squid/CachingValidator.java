@@ -19,23 +19,46 @@ package org.eblocker.certificate.validator.squid;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Caches validation results keyed by a SHA-256 fingerprint of the host name and the full certificate chain.
+ */
 public class CachingValidator implements CertificateValidator {
 
     private static final Logger log = LoggerFactory.getLogger(CachingValidator.class);
     private static final Logger STATUS_LOG = LoggerFactory.getLogger("STATUS");
 
     private final CertificateValidator validator;
-    private final Cache<byte[], CertificateValidationResponse> cache;
+    private final Cache<String, Entry> cache;
+    private final long ttl;
+    private final Clock clock;
 
     public CachingValidator(int maxSize, int concurrencyLevel, int ttl, CertificateValidator validator) {
+        this(maxSize, concurrencyLevel, ttl, Clock.systemUTC(), validator);
+    }
+
+    public CachingValidator(int maxSize, int concurrencyLevel, int ttl, Clock clock, CertificateValidator validator) {
         this.validator = validator;
+        this.ttl = ttl;
+        this.clock = clock;
         this.cache = CacheBuilder.newBuilder()
                 .concurrencyLevel(concurrencyLevel)
                 .maximumSize(maxSize)
@@ -44,11 +67,24 @@ public class CachingValidator implements CertificateValidator {
                 .build();
     }
 
+    public CachingValidator(int maxSize, int concurrencyLevel, int ttl, Clock clock, CertificateValidator validator, InputStream in) {
+        this(maxSize, concurrencyLevel, ttl, clock, validator);
+        readEntriesFromStreamAsync(in);
+    }
+
     @Override
     public CertificateValidationResponse validate(CertificateValidationRequest request, boolean useConcurrency) {
         try {
-            CertificateValidationResponse response = cache.get(request.getCert()[0].getEncoded(), () -> loadResponse(request, useConcurrency));
-            if (response.getId().equals(request.getId())) {
+            String key = getKey(request);
+            Entry entry = cache.get(key, () -> loadEntry(request, useConcurrency));
+            if (entry.expires < clock.millis()) {
+                // entry has been restored from disk and expired since
+                cache.invalidate(key);
+                entry = cache.get(key, () -> loadEntry(request, useConcurrency));
+            }
+
+            CertificateValidationResponse response = entry.response;
+            if (Objects.equals(response.getId(), request.getId())) {
                 return response;
             }
             return new CertificateValidationResponse(request.getId(), response.getErrorName(), response.getErrorCertId(), useConcurrency, response.isSuccess(), response.getErrorReason());
@@ -61,17 +97,121 @@ public class CachingValidator implements CertificateValidator {
         }
     }
 
+    public long size() {
+        return cache.size();
+    }
+
     public void logStats() {
         CacheStats stats = cache.stats();
         STATUS_LOG.info("size: {} hits: {} loads: {} miss: {} evictions: {}", cache.size(), stats.hitCount(), stats.loadCount(), stats.missCount(), stats.evictionCount());
     }
 
-    private CertificateValidationResponse loadResponse(CertificateValidationRequest request, boolean useConcurrency) {
+    public void writeToStream(OutputStream out) throws IOException {
+        DataOutputStream oout = new DataOutputStream(out);
+        for (Map.Entry<String, Entry> e : cache.asMap().entrySet()) {
+            CertificateValidationResponse response = e.getValue().response;
+            oout.writeBoolean(true);
+            oout.writeUTF(e.getKey());
+            oout.writeLong(e.getValue().expires);
+            oout.writeBoolean(response.isSuccess());
+            writeStrings(oout, response.getErrorName());
+            writeStrings(oout, response.getErrorCertId());
+            writeStrings(oout, response.getErrorReason());
+        }
+        oout.writeBoolean(false);
+        oout.flush();
+    }
+
+    private void readEntriesFromStreamAsync(InputStream in) {
+        new Thread(() -> {
+            try {
+                readEntriesFromStream(in);
+            } catch (IOException e) {
+                STATUS_LOG.error("failed restoring entries", e);
+            } finally {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    STATUS_LOG.error("closing stream failed");
+                }
+            }
+        }).start();
+    }
+
+    private void readEntriesFromStream(InputStream in) throws IOException {
+        int readEntries = 0;
+        long now = clock.millis();
+        DataInputStream oin = new DataInputStream(in);
+        boolean hasEntry = oin.readBoolean();
+        while (hasEntry) {
+            String key = oin.readUTF();
+            long expires = oin.readLong();
+            boolean success = oin.readBoolean();
+            String[] errorName = readStrings(oin);
+            String[] errorCertId = readStrings(oin);
+            String[] errorReason = readStrings(oin);
+            if (expires >= now) {
+                CertificateValidationResponse response = new CertificateValidationResponse(null, errorName, errorCertId, false, success, errorReason);
+                cache.asMap().putIfAbsent(key, new Entry(response, expires));
+                ++readEntries;
+            }
+            hasEntry = oin.readBoolean();
+        }
+        STATUS_LOG.info("loaded {} cached validation results", readEntries);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        String[] values = new String[length];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static String getKey(CertificateValidationRequest request) throws CertificateEncodingException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        String host = request.getHost() != null ? request.getHost() : "";
+        hasher.putInt(host.length());
+        hasher.putString(host, StandardCharsets.UTF_8);
+        for (X509Certificate certificate : request.getCert()) {
+            byte[] encoded = certificate.getEncoded();
+            hasher.putInt(encoded.length);
+            hasher.putBytes(encoded);
+        }
+        return hasher.hash().toString();
+    }
+
+    private Entry loadEntry(CertificateValidationRequest request, boolean useConcurrency) {
         log.info("loading entry for {} ... ", request.getCert()[0].getSubjectDN());
         long start = System.currentTimeMillis();
         CertificateValidationResponse response = validator.validate(request, useConcurrency);
         long elapsed = System.currentTimeMillis() - start;
         log.info("loaded entry for {} in {} ms.", request.getCert()[0].getSubjectDN(), elapsed);
-        return response;
+        return new Entry(response, clock.millis() + ttl * 1000);
+    }
+
+    private static class Entry {
+        private final CertificateValidationResponse response;
+        private final long expires;
+
+        Entry(CertificateValidationResponse response, long expires) {
+            this.response = response;
+            this.expires = expires;
+        }
     }
 }
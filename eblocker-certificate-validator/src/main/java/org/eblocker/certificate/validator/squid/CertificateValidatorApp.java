@@ -45,6 +45,8 @@ import java.security.Security;
 import java.security.cert.CertStore;
 import java.security.cert.CollectionCertStoreParameters;
 import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
@@ -92,6 +94,7 @@ public class CertificateValidatorApp {
     private final OcspCache ocspCache;
     private final ExecutorService executor;
     private final ScheduledExecutorService scheduledExecutorService;
+    private final List<CacheWriter> cacheWriters = new ArrayList<>();
 
     public CertificateValidatorApp(Properties properties) {
         this.serverPort = Integer.parseInt(properties.getProperty("server.port"));
@@ -129,9 +132,11 @@ public class CertificateValidatorApp {
         int ocspCacheRefreshPeriod = Integer.parseInt(properties.getProperty("cache.ocsp.refresh.period"));
         long ocspCacheMaximumAgeSuccess = Long.parseLong(properties.getProperty("cache.ocsp.maxAge.success"));
         long ocspCacheMaximumAgeError = Long.parseLong(properties.getProperty("cache.ocsp.maxAge.error"));
+        long ocspCachePrefetchTime = Long.parseLong(properties.getProperty("cache.ocsp.prefetch.time"));
+        int ocspCachePrefetchMaxPerResponder = Integer.parseInt(properties.getProperty("cache.ocsp.prefetch.maxPerResponder"));
         String ocspCacheFile = properties.getProperty("cache.ocsp.file");
         if (ocspCacheEnabled) {
-            ocspCache = initOcspCache(ocspCacheFile, ocspCacheMaxSize, ocspCacheConcurrencyLevel, ocspCacheMaximumAgeSuccess, ocspCacheMaximumAgeError);
+            ocspCache = initOcspCache(ocspCacheFile, ocspCacheMaxSize, ocspCacheConcurrencyLevel, ocspCacheMaximumAgeSuccess, ocspCacheMaximumAgeError, ocspCachePrefetchTime, ocspCachePrefetchMaxPerResponder);
         } else {
             ocspCache = null;
         }
@@ -155,8 +160,10 @@ public class CertificateValidatorApp {
         Integer cacheMaxSize = Integer.parseInt(properties.getProperty("validator.cache.maxSize"));
         int cacheConcurrencyLevel = Integer.parseInt(properties.getProperty("validator.cache.concurrencyLevel"));
         int cacheTtl = Integer.parseInt(properties.getProperty("validator.cache.ttl"));
+        int cacheWritePeriod = Integer.parseInt(properties.getProperty("validator.cache.write.period"));
+        String cacheFile = properties.getProperty("validator.cache.file");
         if (cacheMaxSizeProperty != null) {
-            validator = new CachingValidator(cacheMaxSize, cacheConcurrencyLevel, cacheTtl, pinnedCertificateValidator);
+            validator = initCachingValidator(cacheFile, cacheMaxSize, cacheConcurrencyLevel, cacheTtl, pinnedCertificateValidator);
         } else {
             validator = pinnedCertificateValidator;
         }
@@ -175,6 +182,8 @@ public class CertificateValidatorApp {
             STATUS_LOG.info("validator cache max size: {}", cacheMaxSize);
             STATUS_LOG.info("validator cache concurrency level: {}", cacheConcurrencyLevel);
             STATUS_LOG.info("validator cache ttl: {}", cacheTtl);
+            STATUS_LOG.info("validator cache write to disk period: {}s", cacheWritePeriod);
+            STATUS_LOG.info("validator cache file: {}", cacheFile);
         }
         STATUS_LOG.info("crl cache enabled: {}", crlCacheEnabled);
         if (crlCacheEnabled) {
@@ -193,6 +202,8 @@ public class CertificateValidatorApp {
             STATUS_LOG.info("ocsp cache concurrency level: {}", ocspCacheConcurrencyLevel);
             STATUS_LOG.info("ocsp cache entry max age success: {}", ocspCacheMaximumAgeSuccess);
             STATUS_LOG.info("ocsp cache entry max age error: {}", ocspCacheMaximumAgeError);
+            STATUS_LOG.info("ocsp cache prefetch time: {}", ocspCachePrefetchTime);
+            STATUS_LOG.info("ocsp cache prefetch max per responder: {}", ocspCachePrefetchMaxPerResponder);
             STATUS_LOG.info("ocsp cache refresh period: {}", ocspCacheRefreshPeriod);
             STATUS_LOG.info("ocsp cache write to disk period: {}", ocspCacheWritePeriod);
             STATUS_LOG.info("ocsp cache file: {}", ocspCacheFile);
@@ -202,16 +213,19 @@ public class CertificateValidatorApp {
         scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
         if (cacheMaxSizeProperty != null) {
             scheduledExecutorService.scheduleAtFixedRate(((CachingValidator) validator)::logStats, 1, 1, TimeUnit.HOURS);
+            if (cacheFile != null) {
+                scheduledExecutorService.scheduleAtFixedRate(addCacheWriter(cacheFile, ((CachingValidator) validator)::writeToStream), cacheWritePeriod, cacheWritePeriod, TimeUnit.SECONDS);
+            }
         }
 
         if (crlCacheEnabled) {
-            scheduledExecutorService.scheduleAtFixedRate(new CacheWriter(crlCacheFile, crlCache::writeToStream), crlCacheWritePeriod, crlCacheWritePeriod, TimeUnit.MINUTES);
+            scheduledExecutorService.scheduleAtFixedRate(addCacheWriter(crlCacheFile, crlCache::writeToStream), crlCacheWritePeriod, crlCacheWritePeriod, TimeUnit.MINUTES);
             scheduledExecutorService.scheduleAtFixedRate(crlCache::logStats, 1, 1, TimeUnit.HOURS);
             scheduledExecutorService.scheduleAtFixedRate(crlCache::refresh, 0, crlCacheRefreshPeriod, TimeUnit.MINUTES);
         }
 
         if (ocspCacheEnabled) {
-            scheduledExecutorService.scheduleAtFixedRate(new CacheWriter(ocspCacheFile, ocspCache::writeToStream), ocspCacheWritePeriod, ocspCacheWritePeriod, TimeUnit.MINUTES);
+            scheduledExecutorService.scheduleAtFixedRate(addCacheWriter(ocspCacheFile, ocspCache::writeToStream), ocspCacheWritePeriod, ocspCacheWritePeriod, TimeUnit.MINUTES);
             scheduledExecutorService.scheduleAtFixedRate(ocspCache::logStats, 1, 1, TimeUnit.HOURS);
             scheduledExecutorService.scheduleAtFixedRate(ocspCache::refresh, 0, ocspCacheRefreshPeriod, TimeUnit.MINUTES);
         }
@@ -224,6 +238,7 @@ public class CertificateValidatorApp {
         try {
             configureSystemProperties();
             CertificateValidatorApp app = new CertificateValidatorApp(loadProperties());
+            Runtime.getRuntime().addShutdownHook(new Thread(app::shutdown, "cache-writer"));
             app.runServer();
         } catch (Exception e) {
             LOG.error("unexpected error, terminating validator", e);
@@ -262,16 +277,54 @@ public class CertificateValidatorApp {
         return new CrlCache(maximumSize, concurrencyLevel, maximumAge, Clock.systemUTC(), connectionBuilderFactory);
     }
 
-    private OcspCache initOcspCache(String fileName, long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError) {
+    private CachingValidator initCachingValidator(String fileName, int maxSize, int concurrencyLevel, int ttl, CertificateValidator validator) {
+        if (fileName != null && Files.exists(Paths.get(fileName))) {
+            try {
+                FileInputStream in = new FileInputStream(fileName);
+                return new CachingValidator(maxSize, concurrencyLevel, ttl, Clock.systemUTC(), validator, in);
+            } catch (IOException e) {
+                STATUS_LOG.warn("loading on-disk validator cache failed", e);
+            }
+        }
+        return new CachingValidator(maxSize, concurrencyLevel, ttl, Clock.systemUTC(), validator);
+    }
+
+    private OcspCache initOcspCache(String fileName, long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, long prefetchTime, int maxPrefetchesPerResponder) {
         if (Files.exists(Paths.get(fileName))) {
             try {
                 FileInputStream in = new FileInputStream(fileName);
-                return new OcspCache(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, Clock.systemUTC(), connectionBuilderFactory, in);
+                return new OcspCache(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, prefetchTime, maxPrefetchesPerResponder, Clock.systemUTC(), connectionBuilderFactory, executor, in);
             } catch (IOException e) {
                 STATUS_LOG.warn("loading on-disk cache failed", e);
             }
         }
-        return new OcspCache(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, Clock.systemUTC(), connectionBuilderFactory);
+        return new OcspCache(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, prefetchTime, maxPrefetchesPerResponder, Clock.systemUTC(), connectionBuilderFactory, executor);
+    }
+
+    /**
+     * Stops all periodic tasks and writes the caches to disk one last time so entries added since the last periodic
+     * write survive a restart.
+     */
+    void shutdown() {
+        scheduledExecutorService.shutdown();
+        try {
+            if (!scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS)) {
+                STATUS_LOG.warn("periodic tasks still running on shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        cacheWriters.forEach(CacheWriter::run);
+    }
+
+    CertificateValidator getValidator() {
+        return validator;
+    }
+
+    private CacheWriter addCacheWriter(String fileName, CacheStreamWriter writer) {
+        CacheWriter cacheWriter = new CacheWriter(fileName, writer);
+        cacheWriters.add(cacheWriter);
+        return cacheWriter;
     }
 
     void runServer() throws IOException {
@@ -54,7 +54,13 @@ import java.security.cert.X509Certificate;
 import java.time.Clock;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OcspCache {
 
@@ -69,17 +75,50 @@ public class OcspCache {
     private final Clock clock;
     private final HttpUrlConnectionBuilderFactory connectionBuilderFactory;
 
+    private final long prefetchTime;
+    private final int maxPrefetchesPerResponder;
+    private final Executor prefetchExecutor;
+    private final ConcurrentMap<String, Boolean> pendingPrefetches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Semaphore> responderPermits = new ConcurrentHashMap<>();
+
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong prefetchFailures = new AtomicLong();
+    private final AtomicLong prefetchesThrottled = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshLatencyTotal = new AtomicLong();
+    private final AtomicLong refreshLatencyMax = new AtomicLong();
+
     public OcspCache(long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, Clock clock, HttpUrlConnectionBuilderFactory connectionBuilderFactory) {
+        this(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, 0, 0, clock, connectionBuilderFactory, null);
+    }
+
+    public OcspCache(long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, Clock clock, HttpUrlConnectionBuilderFactory connectionBuilderFactory, InputStream in) {
+        this(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, clock, connectionBuilderFactory);
+        readEntriesFromStreamAsync(in);
+    }
+
+    /**
+     * Creates a cache which refreshes entries in the background if they are accessed less than {@code prefetchTime}
+     * seconds and within the second half of their lifetime before they expire. Error responses are not prefetched. An
+     * entry which expires before its refresh has completed is reloaded synchronously and never served. At most
+     * {@code maxPrefetchesPerResponder} refreshes are run concurrently against a single responder.
+     */
+    public OcspCache(long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, long prefetchTime, int maxPrefetchesPerResponder,
+                     Clock clock, HttpUrlConnectionBuilderFactory connectionBuilderFactory, Executor prefetchExecutor) {
         this.maximumAgeSuccess = maximumAgeSuccess;
         this.maximumAgeError = maximumAgeError;
+        this.prefetchTime = prefetchTime;
+        this.maxPrefetchesPerResponder = maxPrefetchesPerResponder;
         this.clock = clock;
         this.connectionBuilderFactory = connectionBuilderFactory;
+        this.prefetchExecutor = prefetchExecutor;
         ocspResponses = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().concurrencyLevel(concurrencyLevel).build();
         digestCalculatorProvider = new BcDigestCalculatorProvider();
     }
 
-    public OcspCache(long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, Clock clock, HttpUrlConnectionBuilderFactory connectionBuilderFactory, InputStream in) {
-        this(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, clock, connectionBuilderFactory);
+    public OcspCache(long maximumSize, int concurrencyLevel, long maximumAgeSuccess, long maximumAgeError, long prefetchTime, int maxPrefetchesPerResponder,
+                     Clock clock, HttpUrlConnectionBuilderFactory connectionBuilderFactory, Executor prefetchExecutor, InputStream in) {
+        this(maximumSize, concurrencyLevel, maximumAgeSuccess, maximumAgeError, prefetchTime, maxPrefetchesPerResponder, clock, connectionBuilderFactory, prefetchExecutor);
         readEntriesFromStreamAsync(in);
     }
 
@@ -91,9 +130,19 @@ public class OcspCache {
                 return null;
             }
 
-            String key = url + ":" + certificate.getSerialNumber();
+            BigInteger serialNumber = certificate.getSerialNumber();
+            String key = url + ":" + serialNumber;
             try {
-                return ocspResponses.get(key, () -> ocspQuery(url, issuerCertificate, certificate.getSerialNumber())).encodedOcspResponse;
+                Entry entry = ocspResponses.get(key, () -> ocspQuery(url, issuerCertificate, serialNumber));
+                long now = clock.millis();
+                if (entry.expires < now) {
+                    log.debug("{} expired, reloading", key);
+                    ocspResponses.asMap().remove(key, entry);
+                    entry = ocspResponses.get(key, () -> ocspQuery(url, issuerCertificate, serialNumber));
+                } else if (isPrefetchDue(entry, now)) {
+                    prefetch(key, url, issuerCertificate, serialNumber);
+                }
+                return entry.encodedOcspResponse;
             } catch (ExecutionException e) {
                 log.warn("{} ocsp request failed: ", url, e);
                 return null;
@@ -108,6 +157,26 @@ public class OcspCache {
         return ocspResponses.size();
     }
 
+    public long getPrefetchCount() {
+        return prefetches.get();
+    }
+
+    public long getPrefetchFailureCount() {
+        return prefetchFailures.get();
+    }
+
+    public long getPrefetchThrottledCount() {
+        return prefetchesThrottled.get();
+    }
+
+    public long getRefreshLatencyTotal() {
+        return refreshLatencyTotal.get();
+    }
+
+    public long getRefreshLatencyMax() {
+        return refreshLatencyMax.get();
+    }
+
     public void refresh() {
         log.info("starting refresh");
         long start = System.currentTimeMillis();
@@ -127,6 +196,12 @@ public class OcspCache {
     public void logStats() {
         CacheStats stats = ocspResponses.stats();
         STATUS_LOG.info("size: {} hits: {} loads: {} miss: {} evictions: {}", ocspResponses.size(), stats.hitCount(), stats.loadCount(), stats.missCount(), stats.evictionCount());
+        if (isPrefetchEnabled()) {
+            long completed = refreshes.get();
+            STATUS_LOG.info("prefetches: {} failed: {} throttled: {} refresh latency avg: {}ms max: {}ms",
+                    prefetches.get(), prefetchFailures.get(), prefetchesThrottled.get(),
+                    completed > 0 ? refreshLatencyTotal.get() / completed : 0, refreshLatencyMax.get());
+        }
     }
 
     public void writeToStream(OutputStream out) throws IOException {
@@ -170,13 +245,69 @@ public class OcspCache {
             if (readBytes != length) {
                 throw new IOException("expected " + length + " bytes but got " + readBytes);
             }
-            ocspResponses.put(key, new Entry(value, expires));
+            ocspResponses.put(key, new Entry(value, clock.millis(), expires, isErrorResponse(value)));
             hasEntry = oin.readBoolean();
             ++readEntries;
         }
         STATUS_LOG.info("loaded {} cached crls", readEntries);
     }
 
+    private boolean isPrefetchEnabled() {
+        return prefetchExecutor != null && prefetchTime > 0;
+    }
+
+    /**
+     * Error responses expire quickly by design and are not prefetched. Other entries are only prefetched within the
+     * second half of their lifetime so short-lived responses are not queried again on each access.
+     */
+    private boolean isPrefetchDue(Entry entry, long now) {
+        if (!isPrefetchEnabled() || entry.error) {
+            return false;
+        }
+        long remaining = entry.expires - now;
+        return remaining <= prefetchTime * 1000 && remaining <= (entry.expires - entry.created) / 2;
+    }
+
+    private void prefetch(String key, String url, X509Certificate issuerCertificate, BigInteger serialNumber) {
+        if (pendingPrefetches.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+
+        Semaphore permits = responderPermits.computeIfAbsent(url, k -> new Semaphore(maxPrefetchesPerResponder));
+        if (!permits.tryAcquire()) {
+            log.debug("{} too many pending prefetches for responder", key);
+            prefetchesThrottled.incrementAndGet();
+            pendingPrefetches.remove(key);
+            return;
+        }
+
+        prefetches.incrementAndGet();
+        try {
+            prefetchExecutor.execute(() -> {
+                try {
+                    long start = System.currentTimeMillis();
+                    Entry entry = ocspQuery(url, issuerCertificate, serialNumber);
+                    ocspResponses.put(key, entry);
+                    long elapsed = System.currentTimeMillis() - start;
+                    refreshes.incrementAndGet();
+                    refreshLatencyTotal.addAndGet(elapsed);
+                    refreshLatencyMax.accumulateAndGet(elapsed, Math::max);
+                } catch (OcspException | RuntimeException e) {
+                    log.warn("{} ocsp prefetch failed: ", url, e);
+                    prefetchFailures.incrementAndGet();
+                } finally {
+                    permits.release();
+                    pendingPrefetches.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("{} ocsp prefetch rejected", key);
+            prefetchFailures.incrementAndGet();
+            permits.release();
+            pendingPrefetches.remove(key);
+        }
+    }
+
     private Entry ocspQuery(String url, X509Certificate issuerCertificate, BigInteger serialNumber) throws OcspException {
         long start = System.currentTimeMillis();
         OCSPReq request = createOcspRequest(issuerCertificate, serialNumber);
@@ -243,8 +374,9 @@ public class OcspCache {
     private Entry createEntry(byte[] b) throws OcspException {
         try {
             OCSPResp ocspResponse = new OCSPResp(b);
+            long now = clock.millis();
             if (ocspResponse.getStatus() != OCSPResponseStatus.SUCCESSFUL) {
-                return new Entry(ocspResponse.getEncoded(), clock.millis() + maximumAgeError * 1000);
+                return new Entry(ocspResponse.getEncoded(), now, now + maximumAgeError * 1000, true);
             }
 
             BasicOCSPResp response = (BasicOCSPResp) ocspResponse.getResponseObject();
@@ -256,12 +388,20 @@ public class OcspCache {
                 }
             }
 
-            return new Entry(b, Math.min(responses[0].getNextUpdate().getTime(), clock.millis() + maximumAgeSuccess * 1000));
+            return new Entry(b, now, Math.min(responses[0].getNextUpdate().getTime(), now + maximumAgeSuccess * 1000), false);
         } catch (IOException | OCSPException e) {
             throw new OcspException("failed to parse response", e);
         }
     }
 
+    private boolean isErrorResponse(byte[] b) {
+        try {
+            return new OCSPResp(b).getStatus() != OCSPResponseStatus.SUCCESSFUL;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
     private class OcspException extends Exception {
         public OcspException(String message) {
             super(message);
@@ -274,11 +414,15 @@ public class OcspCache {
 
     private class Entry {
         private byte[] encodedOcspResponse;
+        private long created;
         private long expires;
+        private boolean error;
 
-        public Entry(byte[] encodedOcspResponse, long expires) {
+        public Entry(byte[] encodedOcspResponse, long created, long expires, boolean error) {
             this.encodedOcspResponse = encodedOcspResponse;
+            this.created = created;
             this.expires = expires;
+            this.error = error;
         }
     }
 }
@@ -21,11 +21,18 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.time.Clock;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
 
 class CachingValidatorTest {
@@ -110,8 +117,69 @@ class CachingValidatorTest {
         validatorInOrder.verify(mockValidator).validate(request, false);
     }
 
+    @Test
+    void testEqualCertificatesShareEntry() throws CertificateEncodingException {
+        CertificateValidationRequest request = createRequest(0, createCertificate(new byte[]{ 1, 2, 3 }));
+        CertificateValidationResponse response = createResponse(request);
+        Mockito.when(mockValidator.validate(request, false)).thenReturn(response);
+
+        cachingValidator.validate(request, false);
+
+        // same content but distinct instances must hit the cache
+        CertificateValidationRequest otherRequest = createRequest(1, createCertificate(new byte[]{ 1, 2, 3 }));
+        CertificateValidationResponse otherResponse = cachingValidator.validate(otherRequest, false);
+        assertEquals(Long.valueOf(1), otherResponse.getId());
+        assertFalse(otherResponse.isSuccess());
+        Mockito.verify(mockValidator).validate(request, false);
+        Mockito.verifyNoMoreInteractions(mockValidator);
+    }
+
+    @Test
+    void testHostAndChainAreKeyed() throws CertificateEncodingException {
+        Mockito.when(mockValidator.validate(Mockito.any(CertificateValidationRequest.class), Mockito.anyBoolean()))
+                .thenAnswer(im -> createResponse(im.getArgument(0)));
+
+        X509Certificate certificate = createCertificate(new byte[]{ 1 });
+        X509Certificate intermediate = createCertificate(new byte[]{ 2 });
+        cachingValidator.validate(createRequest(0, "a.com", certificate), false);
+        cachingValidator.validate(createRequest(1, "b.com", certificate), false);
+        cachingValidator.validate(createRequest(2, "a.com", certificate, intermediate), false);
+        cachingValidator.validate(createRequest(3, "a.com", certificate), false);
+
+        Mockito.verify(mockValidator, Mockito.times(3)).validate(Mockito.any(CertificateValidationRequest.class), Mockito.anyBoolean());
+        assertEquals(3, cachingValidator.size());
+    }
+
+    @Test
+    void testPersistence() throws CertificateEncodingException, IOException, InterruptedException {
+        CertificateValidationRequest request = createRequest(0, createCertificate(new byte[]{ 1, 2, 3 }));
+        CertificateValidationResponse response = new CertificateValidationResponse(0L, new String[]{ "X509_V_ERR_CERT_UNTRUSTED" }, null, false, false, new String[]{ "reason" });
+        Mockito.when(mockValidator.validate(request, false)).thenReturn(response);
+        cachingValidator.validate(request, false);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        cachingValidator.writeToStream(out);
+
+        CertificateValidator restoredMockValidator = Mockito.mock(CertificateValidator.class);
+        CachingValidator restoredValidator = new CachingValidator(3, 1, ttl, Clock.systemUTC(), restoredMockValidator, new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 100 && restoredValidator.size() == 0; ++i) {
+            Thread.sleep(10);
+        }
+
+        CertificateValidationResponse restoredResponse = restoredValidator.validate(createRequest(1, createCertificate(new byte[]{ 1, 2, 3 })), false);
+        assertEquals(Long.valueOf(1), restoredResponse.getId());
+        assertFalse(restoredResponse.isSuccess());
+        assertArrayEquals(response.getErrorName(), restoredResponse.getErrorName());
+        assertArrayEquals(response.getErrorReason(), restoredResponse.getErrorReason());
+        Mockito.verifyNoInteractions(restoredMockValidator);
+    }
+
     private CertificateValidationRequest createRequest(long id, X509Certificate certificate) {
-        return new CertificateValidationRequest(id, null, null, null, new X509Certificate[]{ certificate }, null, null, false);
+        return createRequest(id, null, certificate);
+    }
+
+    private CertificateValidationRequest createRequest(long id, String host, X509Certificate... certificates) {
+        return new CertificateValidationRequest(id, null, null, host, certificates, null, null, false);
     }
 
     private CertificateValidationResponse createResponse(CertificateValidationRequest request) {
@@ -19,6 +19,7 @@ package org.eblocker.certificate.validator.squid;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +29,7 @@ import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.Properties;
 import java.util.Random;
 
@@ -76,6 +78,26 @@ class CertificateValidatorAppTest {
         checkInvalidCertWithErrors();
     }
 
+    @Test
+    void testValidatorCacheWrittenOnShutdown(@TempDir Path tempDir) throws Exception {
+        Properties properties = TestProperties.createTestProperties(useConcurrency);
+        properties.setProperty("validator.cache.maxSize", "64");
+        properties.setProperty("validator.cache.file", tempDir.resolve("validator.cache").toString());
+
+        CertificateValidatorApp app = new CertificateValidatorApp(properties);
+        app.getValidator().validate(CertificateValidatorTestUtil.createValidRequest(useConcurrency), useConcurrency);
+        app.shutdown();
+
+        CertificateValidatorApp restartedApp = new CertificateValidatorApp(properties);
+        CachingValidator validator = (CachingValidator) restartedApp.getValidator();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (validator.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        restartedApp.shutdown();
+        Assertions.assertEquals(1, validator.size());
+    }
+
     private void checkValidCert() throws Exception {
         CertificateValidationRequest request = CertificateValidatorTestUtil.createValidRequest(useConcurrency);
         submitRequest(request, true);
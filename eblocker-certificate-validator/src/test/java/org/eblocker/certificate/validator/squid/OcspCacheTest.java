@@ -38,7 +38,9 @@ import java.security.cert.X509Certificate;
 import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 class OcspCacheTest {
@@ -265,4 +267,139 @@ class OcspCacheTest {
         Assertions.assertArrayEquals(cache.getOcspResponse(CERTIFICATES[1], ISSUER_CERTIFICATES[1]), deserializedCache.getOcspResponse(CERTIFICATES[1], ISSUER_CERTIFICATES[1]));
         Mockito.verify(connectionBuilder, Mockito.times(2)).post(Mockito.any(byte[].class));
     }
+
+    @Test
+    void testPrefetch() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, 10, Integer.MAX_VALUE, 5, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        // load cache
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_REVOKED);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        byte[] response = cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertTrue(prefetches.isEmpty());
+
+        // advance time into prefetch window, cached response must be served while refresh is pending
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 6).toInstant(ZoneOffset.UTC));
+        Assertions.assertSame(response, cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]));
+        Assertions.assertSame(response, cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]));
+        Assertions.assertEquals(1, prefetches.size());
+        Assertions.assertEquals(1, cache.getPrefetchCount());
+        Mockito.verify(connectionBuilder).post(Mockito.any(byte[].class));
+
+        // run refresh
+        HttpURLConnection refreshConnection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_GOOD);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(refreshConnection);
+        prefetches.remove(0).run();
+        Mockito.verify(connectionBuilder, Mockito.times(2)).post(Mockito.any(byte[].class));
+
+        // refreshed entry has a new expiration time so no further prefetch is necessary
+        byte[] refreshedResponse = cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertArrayEquals(OCSP_RESPONSE_SUCCESS_GOOD, refreshedResponse);
+        Assertions.assertTrue(prefetches.isEmpty());
+        Assertions.assertEquals(0, cache.getPrefetchFailureCount());
+    }
+
+    @Test
+    void testPrefetchFailureKeepsEntry() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, 10, Integer.MAX_VALUE, 5, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_REVOKED);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        byte[] response = cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 6).toInstant(ZoneOffset.UTC));
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenThrow(new IOException("unit-test"));
+        prefetches.remove(0).run();
+
+        Assertions.assertEquals(1, cache.getPrefetchFailureCount());
+        Assertions.assertSame(response, cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]));
+
+        // failed prefetch must not block further attempts
+        Assertions.assertEquals(1, prefetches.size());
+        Assertions.assertEquals(2, cache.getPrefetchCount());
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, 10, Integer.MAX_VALUE, 5, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_REVOKED);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+
+        // advance time past expiration without refresh having dropped the entry
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 11).toInstant(ZoneOffset.UTC));
+        HttpURLConnection reloadConnection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_GOOD);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(reloadConnection);
+        Assertions.assertArrayEquals(OCSP_RESPONSE_SUCCESS_GOOD, cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]));
+        Assertions.assertTrue(prefetches.isEmpty());
+    }
+
+    @Test
+    void testExpiredEntryIsReloadedWhilePrefetchPending() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, 10, Integer.MAX_VALUE, 5, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_GOOD);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 6).toInstant(ZoneOffset.UTC));
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertEquals(1, prefetches.size());
+
+        // entry expires before prefetch has been run, it must not be served but queried again
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 11).toInstant(ZoneOffset.UTC));
+        HttpURLConnection reloadConnection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_REVOKED);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(reloadConnection);
+        Assertions.assertArrayEquals(OCSP_RESPONSE_SUCCESS_REVOKED, cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]));
+        Mockito.verify(connectionBuilder, Mockito.times(2)).post(Mockito.any(byte[].class));
+    }
+
+    @Test
+    void testNoPrefetchForErrorEntries() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, Integer.MAX_VALUE, 60, 300, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_FAIL);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+
+        // error entry is always within prefetch time but must be served from cache until it expires
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 59).toInstant(ZoneOffset.UTC));
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertTrue(prefetches.isEmpty());
+        Assertions.assertEquals(0, cache.getPrefetchCount());
+        Mockito.verify(connectionBuilder).post(Mockito.any(byte[].class));
+    }
+
+    @Test
+    void testPrefetchShortLivedEntry() throws IOException {
+        TestClock clock = new TestClock(LocalDateTime.of(2017, 11, 8, 0, 0, 0).toInstant(ZoneOffset.UTC));
+        List<Runnable> prefetches = new ArrayList<>();
+        OcspCache cache = new OcspCache(4, 1, 10, Integer.MAX_VALUE, 300, 1, clock, connectionBuilderFactory, prefetches::add);
+
+        HttpURLConnection connection = HttpTestUtils.createMockResponse(200, OCSP_RESPONSE_SUCCESS_REVOKED);
+        Mockito.when(connectionBuilder.post(Mockito.any(byte[].class))).thenReturn(connection);
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+
+        // lifetime is shorter than prefetch time, prefetch only in second half of it
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 4).toInstant(ZoneOffset.UTC));
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertTrue(prefetches.isEmpty());
+
+        clock.setInstant(LocalDateTime.of(2017, 11, 8, 0, 0, 5).toInstant(ZoneOffset.UTC));
+        cache.getOcspResponse(CERTIFICATES[0], ISSUER_CERTIFICATES[0]);
+        Assertions.assertEquals(1, prefetches.size());
+    }
 }
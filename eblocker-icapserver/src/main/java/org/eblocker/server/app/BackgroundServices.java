@@ -62,6 +62,7 @@ import org.eblocker.server.common.startup.SubSystemShutdown;
 import org.eblocker.server.common.update.AutomaticUpdater;
 import org.eblocker.server.common.update.ControlBarAliasUpdater;
 import org.eblocker.server.http.service.DeviceScanningService;
+import org.eblocker.server.http.service.DeviceUpdateListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -92,6 +93,7 @@ public class BackgroundServices {
     private final AutomaticUpdater autoUpdater;
     private final DhcpListener dhcpListener;
     private final DhcpBindListener dhcpBindListener;
+    private final DeviceUpdateListener deviceUpdateListener;
     private final TorController torController;
     private final Ip6AddressMonitor ip6AddressMonitor;
 
@@ -128,6 +130,7 @@ public class BackgroundServices {
             @Named("unlimitedCachePoolExecutor") Executor unlimitedCachePoolExecutor,
             DhcpListener dhcpListener,
             DhcpBindListener dhcpBindListener,
+            DeviceUpdateListener deviceUpdateListener,
             TorController torController,
             Ip6AddressMonitor ip6AddressMonitor,
             SessionPurgerScheduler sessionPurgerScheduler,
@@ -194,6 +197,7 @@ public class BackgroundServices {
 
         this.dhcpListener = dhcpListener;
         this.dhcpBindListener = dhcpBindListener;
+        this.deviceUpdateListener = deviceUpdateListener;
         this.torController = torController;
         this.ip6AddressMonitor = ip6AddressMonitor;
 
@@ -234,6 +238,7 @@ public class BackgroundServices {
         unlimitedCachePoolExecutor.execute(dhcpBindListener);
         unlimitedCachePoolExecutor.execute(ip6AddressMonitor);
         unlimitedCachePoolExecutor.execute(openVpnAddressListener);
+        unlimitedCachePoolExecutor.execute(deviceUpdateListener);
 
         //start Tor control port connection
         if (torConnectionCheckDelay >= 0) {
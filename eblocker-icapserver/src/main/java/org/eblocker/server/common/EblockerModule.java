@@ -191,12 +191,15 @@ import java.nio.charset.Charset;
 import java.time.Clock;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Module for dependency injection of eBlocker https + icap server.
@@ -362,6 +365,48 @@ public class EblockerModule extends BaseModule {
         return new LoggingExecutorService("highPrioScheduledExecutor", result);
     }
 
+    /**
+     * Executor for concurrent squid acl helper requests. If all threads are busy and the queue is full requests are
+     * rejected and answered with a failure instead of blocking the netty thread which received them.
+     */
+    @Provides
+    @Named("domainBlockingRequestExecutor")
+    @Singleton
+    public Executor provideDomainBlockingRequestExecutor(@Named("domainblacklist.networkService.threads") int threads,
+                                                         @Named("domainblacklist.networkService.queueSize") int queueSize,
+                                                         ShutdownExecutorService shutdownExecutorService) {
+        ExecutorService result = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.AbortPolicy());
+        shutdownExecutorService.addExecutorService(result);
+        return new LoggingExecutorService("domainBlockingRequestExecutor", result);
+    }
+
+    /**
+     * Executor to process icap transactions if offloading them from netty threads is enabled. If all threads are busy
+     * and the queue is full transactions are rejected instead of blocking the netty thread which received them.
+     */
+    @Provides
+    @Named("icapTransactionExecutor")
+    @Singleton
+    public Executor provideIcapTransactionExecutor(@Named("icap.transactions.offload.threads") int threads,
+                                                   @Named("icap.transactions.offload.queueSize") int queueSize,
+                                                   ShutdownExecutorService shutdownExecutorService) {
+        ExecutorService result = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new ThreadPoolExecutor.AbortPolicy());
+        shutdownExecutorService.addExecutorService(result);
+        return new LoggingExecutorService("icapTransactionExecutor", result);
+    }
+
+    @Provides
+    @Named("domainBlacklistLoaderExecutor")
+    @Singleton
+    public ExecutorService provideDomainBlacklistLoaderExecutor(@Named("domainblacklist.loader.threads") int threads,
+                                                                ShutdownExecutorService shutdownExecutorService) {
+        ExecutorService result = Executors.newFixedThreadPool(threads);
+        shutdownExecutorService.addExecutorService(result);
+        return new LoggingExecutorService("domainBlacklistLoaderExecutor", result);
+    }
+
     @Provides
     @Named("unlimitedCachePoolExecutor")
     @Singleton
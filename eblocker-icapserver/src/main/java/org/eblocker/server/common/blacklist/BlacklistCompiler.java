@@ -56,6 +56,11 @@ public class BlacklistCompiler {
         createBloomFilter(bloomFilterFileName, Funnels.byteArrayFunnel(), hashFileFilter);
     }
 
+    public void compileSortedArrayFilter(Integer id, String name, @Nonnull List<String> domains, String fileFilterFileName) throws IOException {
+        log.debug("Compiling sorted array filter {} with {} domains", name, domains.size());
+        new SortedArrayFilter(Charsets.UTF_8, Paths.get(fileFilterFileName), id, name, domains);
+    }
+
     private <T> void createBloomFilter(String bloomFilterFileName, Funnel<T> funnel, DomainFilter<T> fileFilter) throws IOException {
         log.debug("creating bloom filter for {}", fileFilter.getName());
         BloomDomainFilter<T> bloomDomainFilter = new BloomDomainFilter<>(funnel, 0.01, fileFilter);
@@ -19,27 +19,38 @@ package org.eblocker.server.common.blacklist;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import org.eblocker.server.common.collections.BatchingRingBuffer;
 import org.eblocker.server.common.data.parentalcontrol.BlockedDomainLogEntry;
 import org.eblocker.server.common.data.parentalcontrol.Category;
 import org.eblocker.server.common.data.statistic.BlockedDomainsStatisticService;
 import org.eblocker.server.common.executor.NamedRunnable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
 
+/**
+ * Buffers blocked domains and passes them in batches to the statistics. If the statistics can not keep up,
+ * entries are discarded according to the configured overflow policy.
+ */
 @Singleton
 public class BlockedDomainLog {
+    private static final Logger log = LoggerFactory.getLogger(BlockedDomainLog.class);
+
+    private static final int BATCH_SIZE = 256;
 
-    private final BlockingQueue<BlockedDomainLogEntry> entries = new LinkedBlockingDeque<>();
+    private final BatchingRingBuffer<BlockedDomainLogEntry> entries;
 
     @Inject
     public BlockedDomainLog(BlockedDomainsStatisticService statisticService,
-                            @Named("unlimitedCachePoolExecutor") Executor executor) {
+                            @Named("unlimitedCachePoolExecutor") Executor executor,
+                            @Named("blockedDomainLog.queueSize") int queueSize,
+                            @Named("blockedDomainLog.overflowPolicy") BatchingRingBuffer.OverflowPolicy overflowPolicy) {
+        entries = new BatchingRingBuffer<>(queueSize, overflowPolicy);
         executor.execute(new NamedRunnable("BlockedDomainLog", () -> {
             try {
                 while (true) {
-                    statisticService.countBlockedDomain(entries.take());
+                    statisticService.countBlockedDomains(entries.takeBatch(BATCH_SIZE));
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -48,10 +59,20 @@ public class BlockedDomainLog {
     }
 
     public void addEntry(String deviceId, String domain, Integer listId) {
-        entries.add(new BlockedDomainLogEntry(deviceId, domain, listId));
+        add(new BlockedDomainLogEntry(deviceId, domain, listId));
     }
 
     public void addEntry(String deviceId, String domain, Category category) {
-        entries.add(new BlockedDomainLogEntry(deviceId, domain, category));
+        add(new BlockedDomainLogEntry(deviceId, domain, category));
+    }
+
+    private void add(BlockedDomainLogEntry entry) {
+        if (!entries.add(entry) && (entries.getDropped() - 1) % entries.getCapacity() == 0) {
+            log.warn("Blocked domain log is full, dropped {} entries so far", entries.getDropped());
+        }
+    }
+
+    public long getDroppedEntries() {
+        return entries.getDropped();
     }
 }
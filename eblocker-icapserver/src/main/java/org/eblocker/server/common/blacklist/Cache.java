@@ -105,7 +105,7 @@ class Cache {
         return index.getFileFilterById(id);
     }
 
-    CachedFileFilter storeFileFilter(int id, long version, String format, @Nullable String filterFile, @Nonnull String bloomFile) throws IOException {
+    CachedFileFilter storeFileFilter(int id, long version, String format, @Nullable String filterFile, @Nullable String bloomFile) throws IOException {
         CachedFilterKey key = new CachedFilterKey(id, version);
 
         String cacheFilterFile = null;
@@ -114,9 +114,12 @@ class Cache {
             Files.copy(Paths.get(filterFile), Paths.get(cachePath + "/" + cacheFilterFile),
                     StandardCopyOption.REPLACE_EXISTING);
         }
-        String cacheBloomFile = LIST_DIR + "/" + key + BLOOM_FILE_EXTENSION;
-        Files.copy(Paths.get(bloomFile), Paths.get(cachePath + "/" + cacheBloomFile),
-                StandardCopyOption.REPLACE_EXISTING);
+        String cacheBloomFile = null;
+        if (bloomFile != null) {
+            cacheBloomFile = LIST_DIR + "/" + key + BLOOM_FILE_EXTENSION;
+            Files.copy(Paths.get(bloomFile), Paths.get(cachePath + "/" + cacheBloomFile),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
 
         CachedFileFilter importedFilter = new CachedFileFilter(key, cacheBloomFile, cacheFilterFile, format, false);
 
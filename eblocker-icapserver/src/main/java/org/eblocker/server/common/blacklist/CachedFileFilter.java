@@ -27,7 +27,7 @@ import javax.annotation.Nullable;
 class CachedFileFilter {
     @Nonnull
     private final CachedFilterKey key;
-    @Nonnull
+    @Nullable
     private final String bloomFilterFileName;
     @Nullable
     private final String fileFilterFileName;
@@ -36,7 +36,7 @@ class CachedFileFilter {
 
     @JsonCreator
     CachedFileFilter(@Nonnull @JsonProperty("key") CachedFilterKey key,
-                     @Nonnull @JsonProperty("bloomFilterFileName") String bloomFilterFileName,
+                     @Nullable @JsonProperty("bloomFilterFileName") String bloomFilterFileName,
                      @Nullable @JsonProperty("fileFilterFileName") String fileFilterFileName,
                      @JsonProperty("format") String format,
                      @JsonProperty("deleted") boolean deleted) {
@@ -52,7 +52,7 @@ class CachedFileFilter {
         return key;
     }
 
-    @Nonnull
+    @Nullable
     String getBloomFilterFileName() {
         return bloomFilterFileName;
     }
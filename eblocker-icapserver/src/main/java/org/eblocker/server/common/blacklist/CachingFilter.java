@@ -16,13 +16,12 @@
  */
 package org.eblocker.server.common.blacklist;
 
-import org.eblocker.server.common.collections.ConcurrentFixedSizeCache;
+import org.eblocker.server.common.collections.ConcurrentClockCache;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Stream;
 
 public class CachingFilter implements DomainFilter<String> {
@@ -30,12 +29,12 @@ public class CachingFilter implements DomainFilter<String> {
     @Nonnull
     private final CacheMode cacheMode;
     @Nonnull
-    private final Map<String, FilterDecision<String>> cache;
+    private final ConcurrentClockCache<String, FilterDecision<String>> cache;
     @Nonnull
     private final DomainFilter<String> filter;
 
     CachingFilter(int size, @Nonnull CacheMode cacheMode, @Nonnull DomainFilter<String> filter) {
-        this.cache = new ConcurrentFixedSizeCache<>(size, true);
+        this.cache = new ConcurrentClockCache<>(size);
         this.cacheMode = cacheMode;
         this.filter = filter;
     }
@@ -79,6 +78,18 @@ public class CachingFilter implements DomainFilter<String> {
         return decision;
     }
 
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
     @Nonnull
     @Override
     public List<DomainFilter<?>> getChildFilters() {
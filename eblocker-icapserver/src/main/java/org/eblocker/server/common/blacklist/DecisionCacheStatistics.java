@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+/**
+ * Hit and miss counts of a level of decision caches.
+ */
+public class DecisionCacheStatistics {
+
+    private final long hits;
+    private final long misses;
+    private final int size;
+
+    public DecisionCacheStatistics(long hits, long misses, int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRatio() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits: %d misses: %d ratio: %.3f size: %d", hits, misses, getHitRatio(), size);
+    }
+}
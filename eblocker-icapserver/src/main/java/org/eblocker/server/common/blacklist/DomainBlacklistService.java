@@ -31,13 +31,29 @@ import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Manages the cached domain filters. Filters are loaded lazily in background when they are requested for the first time
+ * so filters not referenced by any device configuration are never loaded. Until a filter is loaded it is reported as
+ * missing and listeners are notified once it is available. Filters known to be needed can be loaded in parallel in
+ * advance by {@link #loadFilters(Collection)}.
+ */
 @Singleton
 public class DomainBlacklistService {
     private static final Logger log = LoggerFactory.getLogger(DomainBlacklistService.class);
@@ -48,6 +64,8 @@ public class DomainBlacklistService {
     @Nonnull
     private final ScheduledExecutorService executorService;
     @Nonnull
+    private final ListDecisionCache listDecisionCache;
+    @Nonnull
     private final FilterByKeys filtersByKey;
     @Nonnull
     private final List<Listener> listeners = new ArrayList<>();
@@ -55,12 +73,18 @@ public class DomainBlacklistService {
     @Nonnull
     private final Cache cache;
 
+    @Nonnull
+    private Map<Integer, ParentalControlFilterMetaData> metaDataById = Collections.emptyMap();
+
     @Inject
     DomainBlacklistService(@Named("domainblacklist.charset") String charsetName,
                            @Named("domainblacklist.source.path") String sourcePath,
                            @Named("domainblacklist.cache.path") String cachePath,
+                           @Named("domainblacklist.memoryMapped") boolean memoryMapped,
+                           @Named("domainblacklist.listDecisionCache.size") int listDecisionCacheSize,
                            ObjectMapper objectMapper,
-                           @Named("lowPrioScheduledExecutor") ScheduledExecutorService executorService) throws IOException {
+                           @Named("lowPrioScheduledExecutor") ScheduledExecutorService executorService,
+                           @Named("domainBlacklistLoaderExecutor") ExecutorService loaderExecutorService) throws IOException {
         this.sourcePath = sourcePath;
         this.executorService = executorService;
 
@@ -70,19 +94,63 @@ public class DomainBlacklistService {
             cache = new Cache(cachePath, objectMapper);
             cache.markOldVersionsAsDeleted();
             cache.deleteMarkedFilters();
-            filtersByKey = new FilterByKeys(cache.getAllFileFilters(), Charset.forName(charsetName), cachePath);
+            listDecisionCache = new ListDecisionCache(listDecisionCacheSize);
+            filtersByKey = new FilterByKeys(Charset.forName(charsetName), cachePath, memoryMapped, listDecisionCache, loaderExecutorService, this::onFilterLoaded);
 
             long stop = System.currentTimeMillis();
-            log.info("read filters in {}ms", (stop - start));
+            log.info("read filter cache with {} filters in {}ms", cache.getAllFileFilters().size(), (stop - start));
         } catch (IOException e) {
             log.error("Failed to initialize filters, domain blacklisting will be unavailable", e);
             throw e;
         }
     }
 
+    /**
+     * Gets a filter if it has been loaded. Filters not loaded yet are loaded in background and {@code null} is returned
+     * in the meantime so callers never wait for disk i/o.
+     */
     @Nullable
     public DomainFilter getFilter(@Nonnull Integer id) {
-        return filtersByKey.getFilter(cache.getLatestFileFilterKeyById(id));
+        return filtersByKey.getFilter(cache.getLatestFileFilterById(id));
+    }
+
+    /**
+     * Loads all filters not yet loaded in parallel in background.
+     */
+    public void loadFilters(@Nonnull Collection<Integer> ids) {
+        List<CachedFileFilter> fileFilters = ids.stream()
+                .map(cache::getLatestFileFilterById)
+                .filter(Objects::nonNull)
+                .filter(fileFilter -> !filtersByKey.isLoaded(fileFilter.getKey()))
+                .collect(Collectors.toList());
+        if (fileFilters.isEmpty()) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<?>[] futures = fileFilters.stream()
+                .map(filtersByKey::load)
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(futures).whenComplete((v, e) -> {
+            long stop = System.currentTimeMillis();
+            if (e != null) {
+                log.error("failed to load filters", e);
+            }
+            log.info("loaded {} filters in {}ms ({} filters loaded in total)", fileFilters.size(), (stop - start), filtersByKey.size());
+        });
+    }
+
+    /**
+     * Statistics of the decision cache shared by all list lookups.
+     */
+    @Nonnull
+    public DecisionCacheStatistics getListCacheStatistics() {
+        return listDecisionCache.getStatistics();
+    }
+
+    boolean isFilterLoaded(int id) {
+        CachedFilterKey key = cache.getLatestFileFilterKeyById(id);
+        return key != null && filtersByKey.isLoaded(key);
     }
 
     /**
@@ -94,20 +162,27 @@ public class DomainBlacklistService {
      * use for some time</li>
      * <li>filters marked as deleted are dropped from cache</li>
      * </ul>
+     * Listeners are notified about all filters whose content or meta data has changed.
      */
     public void setFilters(@Nonnull Collection<ParentalControlFilterMetaData> blacklists) {
         executorService.execute(() -> {
+            Set<Integer> updatedIds;
             synchronized (DomainBlacklistService.this) {
                 log.info("updating filters");
                 List<CachedFilterKey> deletedFilterKeys = cache.deleteMarkedFilters();
                 filtersByKey.remove(deletedFilterKeys);
 
+                Map<Integer, CachedFilterKey> previousKeys = getActiveFilterKeys();
                 blacklists.forEach(this::updateFileFilter);
                 cache.markOldVersionsAsDeleted();
                 cache.markNonExistingFiltersAsDeleted(getBlacklists(blacklists));
                 filtersByKey.remove(cache.getFilterKeysMarkedAsDeleted());
+
+                updatedIds = getUpdatedIds(previousKeys, getActiveFilterKeys());
+                updatedIds.addAll(updateMetaData(blacklists));
             }
-            listeners.forEach(Listener::onUpdate);
+            log.info("updated filters: {}", updatedIds);
+            listeners.forEach(listener -> listener.onUpdate(updatedIds));
         });
     }
 
@@ -115,6 +190,12 @@ public class DomainBlacklistService {
         listeners.add(listener);
     }
 
+    private void onFilterLoaded(@Nonnull CachedFilterKey key) {
+        log.debug("loaded requested filter {} version {}", key.getId(), key.getVersion());
+        Set<Integer> updatedIds = Collections.singleton(key.getId());
+        listeners.forEach(listener -> listener.onUpdate(updatedIds));
+    }
+
     private void updateFileFilter(@Nonnull ParentalControlFilterMetaData blacklist) {
         if (!blacklist.getFormat().startsWith("domainblacklist")) {
             log.debug("ignoring non-domainblacklist format {} for {}", blacklist.getFormat(), blacklist.getId());
@@ -132,10 +213,12 @@ public class DomainBlacklistService {
 
             try {
                 String filterFileName = null;
-                String bloomFileName;
+                String bloomFileName = null;
 
                 if ("domainblacklist/bloom".equals(blacklist.getFormat())) {
                     bloomFileName = getAbsoluteFileName(blacklist.getFilenames().get(0));
+                } else if ("domainblacklist/sorted".equals(blacklist.getFormat())) {
+                    filterFileName = getAbsoluteFileName(blacklist.getFilenames().get(0));
                 } else {
                     filterFileName = getAbsoluteFileName(blacklist.getFilenames().get(0));
                     bloomFileName = getAbsoluteFileName(blacklist.getFilenames().get(1));
@@ -152,6 +235,32 @@ public class DomainBlacklistService {
         }
     }
 
+    @Nonnull
+    private Map<Integer, CachedFilterKey> getActiveFilterKeys() {
+        return cache.getFileFilters().stream()
+                .filter(fileFilter -> !fileFilter.isDeleted())
+                .map(CachedFileFilter::getKey)
+                .collect(Collectors.toMap(CachedFilterKey::getId, Function.identity()));
+    }
+
+    @Nonnull
+    private static Set<Integer> getUpdatedIds(@Nonnull Map<Integer, ?> previous, @Nonnull Map<Integer, ?> current) {
+        Set<Integer> ids = new HashSet<>(previous.keySet());
+        ids.addAll(current.keySet());
+        ids.removeIf(id -> Objects.equals(previous.get(id), current.get(id)));
+        return ids;
+    }
+
+    /**
+     * Replaces the meta data of all filters and returns the ids of all filters whose meta data has changed.
+     */
+    @Nonnull
+    private Set<Integer> updateMetaData(@Nonnull Collection<ParentalControlFilterMetaData> blacklists) {
+        Map<Integer, ParentalControlFilterMetaData> previousMetaDataById = metaDataById;
+        metaDataById = blacklists.stream().collect(Collectors.toMap(ParentalControlFilterMetaData::getId, Function.identity(), (a, b) -> b));
+        return getUpdatedIds(previousMetaDataById, metaDataById);
+    }
+
     @Nonnull
     private String getAbsoluteFileName(@Nonnull String fileName) {
         return fileName.startsWith("/") ? fileName : sourcePath + "/" + fileName;
@@ -163,44 +272,100 @@ public class DomainBlacklistService {
     }
 
     public interface Listener {
-        void onUpdate();
+        /**
+         * Called after filters have been updated or a filter requested before it has been loaded became available.
+         *
+         * @param updatedIds ids of all filters which have been added, removed, changed or loaded
+         */
+        void onUpdate(@Nonnull Set<Integer> updatedIds);
     }
 
     private static class FilterByKeys {
 
+        /**
+         * Filters being loaded or loaded. Filters which failed to load are kept as {@code null} so they are not retried
+         * until they are updated.
+         */
         @Nonnull
-        private final ConcurrentMap<CachedFilterKey, DomainFilter<?>> filters;
+        private final ConcurrentMap<CachedFilterKey, CompletableFuture<DomainFilter<?>>> filters = new ConcurrentHashMap<>();
 
         @Nonnull
         private final DomainFilterLoader domainFilterLoader;
+        @Nonnull
+        private final Executor loaderExecutor;
+        @Nonnull
+        private final Set<CachedFilterKey> missedKeys = ConcurrentHashMap.newKeySet();
+        @Nonnull
+        private final Consumer<CachedFilterKey> missedFilterLoadedCallback;
 
-        private FilterByKeys(@Nonnull List<CachedFileFilter> allFileFilters, Charset charset, String cachePath) {
-            domainFilterLoader = new DomainFilterLoader(charset, cachePath);
-
-            filters = createFilters(allFileFilters);
+        private FilterByKeys(Charset charset, String cachePath, boolean memoryMapped, ListDecisionCache listDecisionCache,
+                             Executor loaderExecutor, Consumer<CachedFilterKey> missedFilterLoadedCallback) {
+            domainFilterLoader = new DomainFilterLoader(charset, cachePath, memoryMapped, listDecisionCache);
+            this.loaderExecutor = loaderExecutor;
+            this.missedFilterLoadedCallback = missedFilterLoadedCallback;
         }
 
-        private ConcurrentMap<CachedFilterKey, DomainFilter<?>> createFilters(List<CachedFileFilter> allFileFilters) {
-            ConcurrentHashMap<CachedFilterKey, DomainFilter<?>> filters = new ConcurrentHashMap<>();
-            for (CachedFileFilter fileFilter : allFileFilters) {
-                DomainFilter<?> filter = domainFilterLoader.loadStoredFilter(fileFilter);
-                if (filter != null) {
-                    filters.put(fileFilter.getKey(), filter);
-                }
+        @Nullable
+        private DomainFilter<?> getFilter(@Nullable CachedFileFilter fileFilter) {
+            if (fileFilter == null || fileFilter.isDeleted()) {
+                return null;
+            }
+
+            CachedFilterKey key = fileFilter.getKey();
+            CompletableFuture<DomainFilter<?>> filter = filters.get(key);
+            if (filter == null) {
+                filter = load(fileFilter);
+            }
+            if (!filter.isDone() && missedKeys.add(key)) {
+                // callers have been answered without this filter so they must be told when it is available
+                filter.thenAccept(loadedFilter -> {
+                    missedKeys.remove(key);
+                    if (loadedFilter != null) {
+                        missedFilterLoadedCallback.accept(key);
+                    }
+                });
             }
-            return filters;
+            return filter.getNow(null);
         }
 
-        @Nullable
-        private DomainFilter<?> getFilter(@Nullable CachedFilterKey key) {
-            if (key == null) {
-                return null;
+        /**
+         * Loads a filter on the loader executor. The map only holds the future so no i/o is done while holding any of
+         * its locks and concurrent requests for the same filter share a single load.
+         */
+        @Nonnull
+        private CompletableFuture<DomainFilter<?>> load(@Nonnull CachedFileFilter fileFilter) {
+            CachedFilterKey key = fileFilter.getKey();
+            CompletableFuture<DomainFilter<?>> filter = new CompletableFuture<>();
+            CompletableFuture<DomainFilter<?>> existingFilter = filters.putIfAbsent(key, filter);
+            if (existingFilter != null) {
+                return existingFilter;
             }
-            return filters.get(key);
+
+            try {
+                loaderExecutor.execute(() -> {
+                    DomainFilter<?> loadedFilter = null;
+                    try {
+                        loadedFilter = domainFilterLoader.loadStoredFilter(fileFilter);
+                    } catch (RuntimeException e) {
+                        log.error("failed to load filter {} version {}", key.getId(), key.getVersion(), e);
+                    }
+                    filter.complete(loadedFilter);
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("loading filter {} version {} rejected", key.getId(), key.getVersion());
+                filters.remove(key, filter);
+                filter.complete(null);
+            }
+            return filter;
         }
 
-        private void put(CachedFilterKey key, DomainFilter<?> filter) {
-            filters.put(key, filter);
+        private boolean isLoaded(CachedFilterKey key) {
+            CompletableFuture<DomainFilter<?>> filter = filters.get(key);
+            return filter != null && filter.isDone();
+        }
+
+        private int size() {
+            return filters.size();
         }
 
         private void remove(List<CachedFilterKey> toRemove) {
@@ -212,13 +377,8 @@ public class DomainBlacklistService {
         }
 
         private void update(CachedFileFilter importedFilter) {
-            DomainFilter<?> filter = domainFilterLoader.loadStoredFilter(importedFilter);
-            CachedFilterKey key = importedFilter.getKey();
-            if (filter != null) {
-                put(key, filter);
-            } else {
-                remove(key);
-            }
+            // filter will be loaded on first use
+            remove(importedFilter.getKey());
         }
     }
 }
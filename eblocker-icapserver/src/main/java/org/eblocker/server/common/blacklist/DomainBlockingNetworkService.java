@@ -37,6 +37,7 @@ import io.netty.handler.codec.LineBasedFrameDecoder;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.util.AttributeKey;
 import org.eblocker.server.common.data.systemstatus.SubSystem;
 import org.eblocker.server.common.startup.SubSystemInit;
@@ -74,6 +75,7 @@ public class DomainBlockingNetworkService {
             @Override
             protected void initChannel(Channel ch) {
                 ch.pipeline()
+                        .addLast("flushConsolidation", new FlushConsolidationHandler(FlushConsolidationHandler.DEFAULT_EXPLICIT_FLUSH_AFTER_FLUSHES, true))
                         .addLast("frameDecoder", new LineBasedFrameDecoder(512))
                         .addLast("stringDecoder", new StringDecoder(StandardCharsets.UTF_8))
                         .addLast("stringEncoder", new StringEncoder(StandardCharsets.UTF_8))
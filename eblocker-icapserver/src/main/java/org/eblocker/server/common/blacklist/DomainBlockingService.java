@@ -63,8 +63,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -102,6 +104,8 @@ public class DomainBlockingService {
     private final Cache<FilterConfig, DomainFilter<String>> filtersByConfig;
     @Nonnull
     private final Cache<String, Filter> filterByDeviceId;
+    @Nonnull
+    private final Map<FilterConfig, FilterDependencies> dependenciesByConfig = new ConcurrentHashMap<>();
     private boolean sslServiceInitialized;
 
     @Inject
@@ -154,10 +158,10 @@ public class DomainBlockingService {
             }
         });
 
-        domainBlacklistService.addListener(() -> {
-            logger.info("dropping all filters due to filter changes");
-            filtersByConfig.invalidateAll();
-            filterByDeviceId.invalidateAll();
+        domainBlacklistService.addListener(updatedIds -> {
+            logger.info("dropping filters using updated lists {} (filter caches: {}, list cache: {})", updatedIds, getFilterCacheStatistics(), getListCacheStatistics());
+            invalidateFilters(updatedIds);
+            loadReferencedFilters(getFilterConfigByEnabledDevice().values());
         });
 
         parentalControlService.addListener(o -> {
@@ -173,9 +177,8 @@ public class DomainBlockingService {
         });
 
         eblockerDnsServer.addListener(b -> {
-            logger.info("dropping all filters due to dns being enabled or disabled");
-            filtersByConfig.invalidateAll();
-            filterByDeviceId.invalidateAll();
+            logger.info("dropping ads / trackers filters due to dns being enabled or disabled");
+            invalidateFilters(config -> config.getFilterMode() == FilterMode.PLUG_AND_PLAY && (config.isFilterAds() || config.isFilterTrackers()));
             updateFilteredDevices();
         });
 
@@ -220,6 +223,33 @@ public class DomainBlockingService {
         }
     }
 
+    /**
+     * Statistics of the decision caches of all composed filters.
+     */
+    @Nonnull
+    public DecisionCacheStatistics getFilterCacheStatistics() {
+        long hits = 0;
+        long misses = 0;
+        int size = 0;
+        for (DomainFilter<String> filter : filtersByConfig.asMap().values()) {
+            if (filter instanceof CachingFilter) {
+                CachingFilter cachingFilter = (CachingFilter) filter;
+                hits += cachingFilter.getHitCount();
+                misses += cachingFilter.getMissCount();
+                size += cachingFilter.getCacheSize();
+            }
+        }
+        return new DecisionCacheStatistics(hits, misses, size);
+    }
+
+    /**
+     * Statistics of the decision cache shared by all lists.
+     */
+    @Nonnull
+    public DecisionCacheStatistics getListCacheStatistics() {
+        return domainBlacklistService.getListCacheStatistics();
+    }
+
     /**
      * Decide whether this domain is blocked by the device-independent malware/ads/tracker filters
      * <p>
@@ -256,6 +286,7 @@ public class DomainBlockingService {
     @Nonnull
     private DomainFilter<String> createFilter(@Nonnull FilterConfig filterConfig) {
         Map<Integer, ParentalControlFilterMetaData> metadataById = getEnabledFilterMetadataById();
+        dependenciesByConfig.put(filterConfig, getFilterDependencies(filterConfig, metadataById.values()));
         DomainFilter<String> malwareFilter = createMalwareFilter(filterConfig, metadataById.values());
         DomainFilter<String> parentalControlFilter = createParentalControlFilter(filterConfig, metadataById);
         DomainFilter<String> adsTrackersFilter = createAdsTrackersFilter(filterConfig, metadataById);
@@ -377,7 +408,11 @@ public class DomainBlockingService {
         DomainFilter<byte[]> md5BasedFilters = createFilter(metaDataByFormat.getOrDefault("domainblacklist/hash-md5", Collections.emptyList()));
         DomainFilter<byte[]> sha1BasedFilters = createFilter(metaDataByFormat.getOrDefault("domainblacklist/hash-sha1", Collections.emptyList()));
 
+        // sorted array filters are evaluated first as they do not need any bloom filter or file access
+        DomainFilter<String> sortedArrayFilters = createFilter(metaDataByFormat.getOrDefault("domainblacklist/sorted", Collections.emptyList()));
+
         return Filters.or(
+                sortedArrayFilters,
                 wrapBloomFilter(topLevelBloomFilter, fileBasedFiltersBuiltIn),
                 fileBasedFiltersNotBuiltIn,
                 Filters.hashing(Hashing.md5(), md5BasedFilters),
@@ -410,6 +445,19 @@ public class DomainBlockingService {
             return Filters.staticFalse();
         }
 
+        EnumSet<Category> categories = getAdsTrackersCategories(config);
+        BloomFilter<String> topLevelBloomFilter = getTopLevelBloomFilter(metadataById.values(), Category.ADS_TRACKERS_BLOOM_FILTER);
+        DomainFilter<String> blacklistFilter = createHostnameFilters(toSet(config.getCustomBlacklistId()), metadataById, null);
+        DomainFilter<String> whitelistFilter = createHostnameFilters(toSet(config.getCustomWhitelistId()), metadataById, null);
+        DomainFilter<String> adsTrackerFilter = createHostnameFilters(filterByCategory(metadataById.values(), categories), metadataById, topLevelBloomFilter);
+        DomainFilter<String> filter = Filters.and(Filters.not(whitelistFilter), Filters.or(blacklistFilter, adsTrackerFilter));
+
+        String target = redirectDespiteDisabledSSL || config.isSslEnabled() ? accessDeniedIp : null;
+        return attributeFilter(filter, Collections.singletonMap(ATTRIBUTE_TARGET, target));
+    }
+
+    @Nonnull
+    private EnumSet<Category> getAdsTrackersCategories(@Nonnull FilterConfig config) {
         EnumSet<Category> categories = EnumSet.noneOf(Category.class);
         if (eblockerDnsServer.isEnabled() && config.getFilterMode() == FilterMode.PLUG_AND_PLAY) {
             if (config.isFilterAds()) {
@@ -420,15 +468,7 @@ public class DomainBlockingService {
                 categories.add(Category.TRACKERS);
             }
         }
-
-        BloomFilter<String> topLevelBloomFilter = getTopLevelBloomFilter(metadataById.values(), Category.ADS_TRACKERS_BLOOM_FILTER);
-        DomainFilter<String> blacklistFilter = createHostnameFilters(toSet(config.getCustomBlacklistId()), metadataById, null);
-        DomainFilter<String> whitelistFilter = createHostnameFilters(toSet(config.getCustomWhitelistId()), metadataById, null);
-        DomainFilter<String> adsTrackerFilter = createHostnameFilters(filterByCategory(metadataById.values(), categories), metadataById, topLevelBloomFilter);
-        DomainFilter<String> filter = Filters.and(Filters.not(whitelistFilter), Filters.or(blacklistFilter, adsTrackerFilter));
-
-        String target = redirectDespiteDisabledSSL || config.isSslEnabled() ? accessDeniedIp : null;
-        return attributeFilter(filter, Collections.singletonMap(ATTRIBUTE_TARGET, target));
+        return categories;
     }
 
     @Nonnull
@@ -442,7 +482,7 @@ public class DomainBlockingService {
 
     @Nonnull
     private DomainFilter<String> wrapBloomFilter(@Nullable BloomFilter<String> topLevelBloomFilter, @Nonnull DomainFilter<String> filter) {
-        if (filter instanceof BloomDomainFilter && filter.getChildFilters().get(0) instanceof SingleFileFilter) {
+        if (filter instanceof BloomDomainFilter && ListCachingFilter.unwrap(filter.getChildFilters().get(0)) instanceof SingleFileFilter) {
             return filter;
         }
         return topLevelBloomFilter != null ? Filters.bloom(topLevelBloomFilter, filter) : filter;
@@ -471,9 +511,7 @@ public class DomainBlockingService {
     private synchronized void updateFilteredDevices() {
         logger.debug("updating dns / squid's list of filtered devices");
 
-        Map<Device, FilterConfig> configByEnabledDevice = deviceService.getDevices(false).stream()
-                .filter(Device::isEnabled)
-                .collect(Collectors.toMap(Function.identity(), device -> new FilterConfig(new DeviceConfig(device), isSslEnabledGlobally())));
+        Map<Device, FilterConfig> configByEnabledDevice = getFilterConfigByEnabledDevice();
 
         Set<Device> domainFilteredDevices = filterDomainFilteredDevices(configByEnabledDevice);
         Set<Device> parentalControlledDevices = filterParentalControlFilteredDevices(configByEnabledDevice);
@@ -485,6 +523,81 @@ public class DomainBlockingService {
             eblockerDnsServer.setFilteredPeers(Collections.emptySet(), Collections.emptySet());
             squidConfigController.updateDomainFilteredDevices(Sets.union(domainFilteredDevices, parentalControlledDevices));
         }
+
+        loadReferencedFilters(configByEnabledDevice.values());
+    }
+
+    @Nonnull
+    private Map<Device, FilterConfig> getFilterConfigByEnabledDevice() {
+        return deviceService.getDevices(false).stream()
+                .filter(Device::isEnabled)
+                .collect(Collectors.toMap(Function.identity(), device -> new FilterConfig(new DeviceConfig(device), isSslEnabledGlobally())));
+    }
+
+    /**
+     * Starts loading all filters used by the given configurations in background. Filters not used by any configuration
+     * are only loaded if they are requested.
+     */
+    private void loadReferencedFilters(@Nonnull Collection<FilterConfig> configs) {
+        Collection<ParentalControlFilterMetaData> metaData = getEnabledFilterMetadataById().values();
+        Set<Integer> ids = new HashSet<>();
+        for (FilterConfig config : configs) {
+            ids.addAll(getFilterDependencies(config, metaData).getIds());
+        }
+        domainBlacklistService.loadFilters(ids);
+    }
+
+    /**
+     * Collects all lists and categories a filter created for the given configuration is composed of.
+     */
+    @Nonnull
+    private FilterDependencies getFilterDependencies(@Nonnull FilterConfig config, @Nonnull Collection<ParentalControlFilterMetaData> metaData) {
+        EnumSet<Category> categories = EnumSet.noneOf(Category.class);
+        Set<Integer> ids = new HashSet<>();
+        if (productInfoService.hasFeature(ProductFeature.PRO)) {
+            if (config.isFilterMalware()) {
+                categories.add(Category.MALWARE);
+            }
+            categories.addAll(getAdsTrackersCategories(config));
+            categories.add(Category.ADS_TRACKERS_BLOOM_FILTER);
+            ids.addAll(toSet(config.getCustomBlacklistId()));
+            ids.addAll(toSet(config.getCustomWhitelistId()));
+        }
+        if (productInfoService.hasFeature(ProductFeature.FAM) && config.isParentalControlUrlControlModeEnabled()) {
+            categories.add(Category.PARENTAL_CONTROL_BLOOM_FILTER);
+            ids.addAll(config.getParentalControlPermittedIds());
+            ids.addAll(config.getParentalControlProhibitedIds());
+        }
+        ids.addAll(filterByCategory(metaData, categories));
+        return new FilterDependencies(ids, categories);
+    }
+
+    /**
+     * Drops all filters depending on the updated lists. Filters not using any of these lists are kept including their
+     * cached decisions.
+     */
+    private void invalidateFilters(@Nonnull Set<Integer> updatedIds) {
+        Set<Category> updatedCategories = filterListsService.getParentalControlFilterMetaData().stream()
+                .filter(m -> updatedIds.contains(m.getId()))
+                .map(ParentalControlFilterMetaData::getCategory)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        invalidateFilters(config -> {
+            FilterDependencies dependencies = dependenciesByConfig.get(config);
+            return dependencies == null || dependencies.isAffected(updatedIds, updatedCategories);
+        });
+    }
+
+    private synchronized void invalidateFilters(@Nonnull Predicate<FilterConfig> isAffected) {
+        Set<FilterConfig> configs = new HashSet<>(filtersByConfig.asMap().keySet());
+        filterByDeviceId.asMap().values().forEach(filter -> configs.add(filter.getConfig()));
+
+        Set<FilterConfig> affectedConfigs = configs.stream().filter(isAffected).collect(Collectors.toSet());
+        logger.info("dropping {} of {} filters", affectedConfigs.size(), configs.size());
+
+        filtersByConfig.invalidateAll(affectedConfigs);
+        filterByDeviceId.asMap().values().removeIf(filter -> affectedConfigs.contains(filter.getConfig()));
+        dependenciesByConfig.keySet().removeIf(config -> filtersByConfig.getIfPresent(config) == null);
     }
 
     @Nonnull
@@ -691,6 +804,28 @@ public class DomainBlockingService {
         }
     }
 
+    /**
+     * Lists and categories a filter has been composed of. Categories are tracked in addition to the lists as lists
+     * added to or enabled in a category change the filter, too.
+     */
+    private static class FilterDependencies {
+        private final Set<Integer> ids;
+        private final Set<Category> categories;
+
+        FilterDependencies(Set<Integer> ids, Set<Category> categories) {
+            this.ids = ids;
+            this.categories = categories;
+        }
+
+        Set<Integer> getIds() {
+            return ids;
+        }
+
+        boolean isAffected(Set<Integer> updatedIds, Set<Category> updatedCategories) {
+            return !Collections.disjoint(ids, updatedIds) || !Collections.disjoint(categories, updatedCategories);
+        }
+    }
+
     private static class Filter implements DomainFilter<String> {
         private final DomainFilter<String> delegate;
         private final FilterConfig config;
@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 class DomainFilterLoader {
@@ -19,10 +20,23 @@ class DomainFilterLoader {
     private final Charset charset;
     @Nonnull
     private final String cachePath;
+    private final boolean memoryMapped;
+    @Nullable
+    private final ListDecisionCache listDecisionCache;
 
     DomainFilterLoader(@Nonnull Charset charset, @Nonnull String cachePath) {
+        this(charset, cachePath, false);
+    }
+
+    DomainFilterLoader(@Nonnull Charset charset, @Nonnull String cachePath, boolean memoryMapped) {
+        this(charset, cachePath, memoryMapped, null);
+    }
+
+    DomainFilterLoader(@Nonnull Charset charset, @Nonnull String cachePath, boolean memoryMapped, @Nullable ListDecisionCache listDecisionCache) {
         this.charset = charset;
         this.cachePath = cachePath;
+        this.memoryMapped = memoryMapped;
+        this.listDecisionCache = listDecisionCache;
     }
 
     @Nullable
@@ -36,6 +50,8 @@ class DomainFilterLoader {
             case "domainblacklist/hash-md5":
             case "domainblacklist/hash-sha1":
                 return loadHashFilter(storedFilter);
+            case "domainblacklist/sorted":
+                return loadSortedArrayFilter(storedFilter);
             default:
                 log.error("unknown format {}", storedFilter.getFormat());
                 return null;
@@ -47,15 +63,17 @@ class DomainFilterLoader {
         try {
             long start = System.currentTimeMillis();
 
-            DomainFilter<String> fileFilter = new SingleFileFilter(charset, Paths.get(cachePath, storedFilter.getFileFilterFileName()));
+            SingleFileFilter fileFilter = new SingleFileFilter(charset, Paths.get(cachePath, storedFilter.getFileFilterFileName()), memoryMapped);
 
+            Path bloomFilterPath = Paths.get(cachePath, storedFilter.getBloomFilterFileName());
             BloomDomainFilter<String> bloomFilter;
-            try (InputStream in = Files.newInputStream(Paths.get(cachePath, storedFilter.getBloomFilterFileName()))) {
-                bloomFilter = BloomDomainFilter.readFrom(in, new StringFunnel(charset), fileFilter);
+            try (InputStream in = Files.newInputStream(bloomFilterPath)) {
+                bloomFilter = BloomDomainFilter.readFrom(in, new StringFunnel(charset), cached(storedFilter, fileFilter));
             }
 
             long stop = System.currentTimeMillis();
-            log.debug("read file filter {} ({}) with {} domains in {}ms.", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), fileFilter.getSize(), (stop - start));
+            log.info("read file filter {} ({}) with {} domains in {}ms ({} bytes resident, {} bytes mapped).", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), fileFilter.getSize(), (stop - start),
+                    fileFilter.getResidentSize() + Files.size(bloomFilterPath), fileFilter.getMappedSize());
 
             return bloomFilter;
         } catch (IOException e) {
@@ -68,14 +86,15 @@ class DomainFilterLoader {
     private DomainFilter<String> loadBloomFilter(@Nonnull CachedFileFilter storedFilter) {
         try {
             long start = System.currentTimeMillis();
+            Path bloomFilterPath = Paths.get(cachePath, storedFilter.getBloomFilterFileName());
             BloomDomainFilter<String> bloomFilter;
 
-            try (InputStream in = Files.newInputStream(Paths.get(cachePath, storedFilter.getBloomFilterFileName()))) {
+            try (InputStream in = Files.newInputStream(bloomFilterPath)) {
                 bloomFilter = BloomDomainFilter.readFrom(in, new StringFunnel(charset), StaticFilter.FALSE);
             }
 
             long stop = System.currentTimeMillis();
-            log.debug("read bloom filter {} ({}) in {}ms.", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), (stop - start));
+            log.info("read bloom filter {} ({}) in {}ms ({} bytes resident).", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), (stop - start), Files.size(bloomFilterPath));
 
             return bloomFilter;
         } catch (IOException e) {
@@ -89,15 +108,17 @@ class DomainFilterLoader {
         try {
             long start = System.currentTimeMillis();
 
-            HashFileFilter fileFilter = new HashFileFilter(Paths.get(cachePath, storedFilter.getFileFilterFileName()));
+            HashFileFilter fileFilter = new HashFileFilter(Paths.get(cachePath, storedFilter.getFileFilterFileName()), memoryMapped);
 
+            Path bloomFilterPath = Paths.get(cachePath, storedFilter.getBloomFilterFileName());
             BloomDomainFilter<byte[]> bloomFilter;
-            try (InputStream in = Files.newInputStream(Paths.get(cachePath, storedFilter.getBloomFilterFileName()))) {
-                bloomFilter = BloomDomainFilter.readFrom(in, Funnels.byteArrayFunnel(), fileFilter);
+            try (InputStream in = Files.newInputStream(bloomFilterPath)) {
+                bloomFilter = BloomDomainFilter.readFrom(in, Funnels.byteArrayFunnel(), cached(storedFilter, fileFilter));
             }
 
             long stop = System.currentTimeMillis();
-            log.debug("read hash file filter {} ({}) with {} domains in {}ms.", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), fileFilter.getSize(), (stop - start));
+            log.info("read hash file filter {} ({}) with {} domains in {}ms ({} bytes resident, {} bytes mapped).", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), fileFilter.getSize(), (stop - start),
+                    fileFilter.getResidentSize() + Files.size(bloomFilterPath), fileFilter.getMappedSize());
 
             return bloomFilter;
         } catch (IOException e) {
@@ -105,4 +126,41 @@ class DomainFilterLoader {
             return null;
         }
     }
+
+    @Nullable
+    private DomainFilter<String> loadSortedArrayFilter(@Nonnull CachedFileFilter storedFilter) {
+        try {
+            long start = System.currentTimeMillis();
+
+            Path path = Paths.get(cachePath, storedFilter.getFileFilterFileName());
+            boolean inMemory = !memoryMapped || isHeapAvailable(Files.size(path));
+            SortedArrayFilter filter = new SortedArrayFilter(charset, path, inMemory);
+
+            long stop = System.currentTimeMillis();
+            log.info("read sorted array filter {} ({}) with {} domains in {}ms ({} bytes resident, {} bytes mapped).", storedFilter.getKey().getId(), storedFilter.getKey().getVersion(), filter.getSize(), (stop - start),
+                    filter.getResidentSize(), filter.getMappedSize());
+
+            return filter;
+        } catch (IOException e) {
+            log.error("Failed to load stored sorted array filter {}", storedFilter.getKey(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Wraps file lookups (which are only needed if the bloom filter matches) in the shared list decision cache.
+     */
+    @Nonnull
+    private <T> DomainFilter<T> cached(@Nonnull CachedFileFilter storedFilter, @Nonnull DomainFilter<T> fileFilter) {
+        return listDecisionCache != null ? listDecisionCache.wrap(storedFilter.getKey(), fileFilter) : fileFilter;
+    }
+
+    /**
+     * Checks if a filter of given size can be kept on heap while leaving at least half of the free heap untouched.
+     */
+    private boolean isHeapAvailable(long size) {
+        Runtime runtime = Runtime.getRuntime();
+        long free = runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory();
+        return size < free / 2;
+    }
 }
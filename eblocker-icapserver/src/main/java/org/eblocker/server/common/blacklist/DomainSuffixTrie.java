@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import java.util.Arrays;
+
+/**
+ * Compact path-compressed trie of reversed domains. Each domain is mapped to an int value. Only ASCII domains are
+ * supported, internationalized domains are expected in their punycode form.
+ * <p>
+ * Chains of nodes with a single child are merged into one node labelled with a slice of a shared character buffer,
+ * so there are at most about two nodes per domain. Nodes are stored in parallel arrays (first-child / next-sibling
+ * encoding) and a position in the trie is encoded as a long (node and number of matched label characters), so walking
+ * the trie does not allocate any objects. The trie is not thread-safe while being built but may be shared by any number
+ * of readers afterwards.
+ */
+class DomainSuffixTrie {
+    static final int NONE = -1;
+
+    private static final int ROOT = 0;
+
+    private static final char MAX_CHAR = 0x7f;
+
+    private byte[] labels;
+    private int labelsSize;
+
+    private int[] labelStart;
+    private int[] labelLength;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] values;
+    private int size;
+
+    DomainSuffixTrie() {
+        this(1024);
+    }
+
+    DomainSuffixTrie(int capacity) {
+        labels = new byte[capacity];
+        labelsSize = 0;
+        labelStart = new int[capacity];
+        labelLength = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        values = new int[capacity];
+        size = 0;
+        addNode(0, 0);
+    }
+
+    long getRoot() {
+        return position(ROOT, 0);
+    }
+
+    int getNodes() {
+        return size;
+    }
+
+    /**
+     * Adds a domain. If the domain is already present the existing value is kept.
+     *
+     * @return false if the domain contains non-ASCII characters and has not been added
+     */
+    boolean put(String domain, int value) {
+        for (int i = 0; i < domain.length(); ++i) {
+            if (domain.charAt(i) > MAX_CHAR) {
+                return false;
+            }
+        }
+
+        int node = ROOT;
+        int matched = 0;
+        for (int i = domain.length() - 1; i >= 0; --i) {
+            char c = domain.charAt(i);
+            if (matched < labelLength[node]) {
+                if (labels[labelStart[node] + matched] == c) {
+                    ++matched;
+                    continue;
+                }
+                split(node, matched);
+            }
+
+            int child = findChild(node, c);
+            if (child == NONE) {
+                child = addNode(appendReversed(domain, i), i + 1);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+                node = child;
+                matched = labelLength[child];
+                break;
+            }
+            node = child;
+            matched = 1;
+        }
+
+        if (matched < labelLength[node]) {
+            split(node, matched);
+        }
+
+        if (values[node] == NONE) {
+            values[node] = value;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the position reached from the given position by the given character or {@link #NONE}.
+     */
+    long getChild(long position, char c) {
+        int node = node(position);
+        int matched = matched(position);
+        if (matched < labelLength[node]) {
+            return labels[labelStart[node] + matched] == c ? position + 1 : NONE;
+        }
+
+        int child = findChild(node, c);
+        return child != NONE ? position(child, 1) : NONE;
+    }
+
+    /**
+     * Returns the value of the domain ending at the given position or {@link #NONE}.
+     */
+    int getValue(long position) {
+        int node = node(position);
+        return matched(position) == labelLength[node] ? values[node] : NONE;
+    }
+
+    /**
+     * Returns the value of the given domain or {@link #NONE}.
+     */
+    int get(String domain) {
+        long position = getRoot();
+        for (int i = domain.length() - 1; i >= 0 && position != NONE; --i) {
+            position = getChild(position, domain.charAt(i));
+        }
+        return position != NONE ? getValue(position) : NONE;
+    }
+
+    /**
+     * Releases unused capacity. Should be called after all domains have been added.
+     */
+    void trimToSize() {
+        labels = Arrays.copyOf(labels, labelsSize);
+        resize(size);
+    }
+
+    /**
+     * Returns the (approximate) number of bytes used by this trie.
+     */
+    long getMemorySize() {
+        return labels.length + (long) labelStart.length * 4 * 5;
+    }
+
+    private int findChild(int node, char c) {
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            if (labels[labelStart[child]] == c) {
+                return child;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Splits the label of a node after the given number of characters. The node keeps its index so links to it stay
+     * valid, the remainder of the label is moved to a new single child.
+     */
+    private void split(int node, int length) {
+        int tail = addNode(labelStart[node] + length, labelLength[node] - length);
+        firstChild[tail] = firstChild[node];
+        values[tail] = values[node];
+        labelLength[node] = length;
+        firstChild[node] = tail;
+        values[node] = NONE;
+    }
+
+    /**
+     * Appends the characters domain[end..0] in reverse order to the label buffer.
+     *
+     * @return start of appended label
+     */
+    private int appendReversed(String domain, int end) {
+        if (labelsSize + end + 1 > labels.length) {
+            labels = Arrays.copyOf(labels, Math.max(labels.length * 2, labelsSize + end + 1));
+        }
+        int start = labelsSize;
+        for (int i = end; i >= 0; --i) {
+            labels[labelsSize++] = (byte) domain.charAt(i);
+        }
+        return start;
+    }
+
+    private int addNode(int start, int length) {
+        if (size == labelStart.length) {
+            resize(labelStart.length * 2);
+        }
+
+        int node = size++;
+        labelStart[node] = start;
+        labelLength[node] = length;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        values[node] = NONE;
+        return node;
+    }
+
+    private void resize(int capacity) {
+        labelStart = Arrays.copyOf(labelStart, capacity);
+        labelLength = Arrays.copyOf(labelLength, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    private static long position(int node, int matched) {
+        return (long) node << 32 | matched;
+    }
+
+    private static int node(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int matched(long position) {
+        return (int) position;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds {@link DomainSuffixTrie}s in the background and shares them between all filters checking the same lists.
+ * <p>
+ * Tries are keyed by the list filter instances they have been built from. An updated list is loaded as a new instance
+ * so a trie is never reused for another version of a list. Tries are only kept as long as a filter is using them.
+ */
+class DomainSuffixTrieCache {
+    private static final Logger log = LoggerFactory.getLogger(DomainSuffixTrieCache.class);
+
+    static final DomainSuffixTrieCache INSTANCE = new DomainSuffixTrieCache(Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "domain-suffix-trie");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    private final Cache<List<DomainFilter<String>>, CompletableFuture<DomainSuffixTrie>> tries = CacheBuilder.newBuilder().weakValues().build();
+    private final Executor executor;
+
+    DomainSuffixTrieCache(@Nonnull Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Gets the trie for the given lists. The trie values are indices into {@code filters}. The future completes with
+     * {@code null} if a trie can not be built.
+     */
+    @Nonnull
+    CompletableFuture<DomainSuffixTrie> get(@Nonnull List<DomainFilter<String>> filters) {
+        List<DomainFilter<String>> key = new ArrayList<>(filters);
+        try {
+            return tries.get(key, () -> CompletableFuture.supplyAsync(() -> createTrie(key), executor));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to schedule trie creation", e.getCause());
+        }
+    }
+
+    long size() {
+        tries.cleanUp();
+        return tries.size();
+    }
+
+    @Nullable
+    private static DomainSuffixTrie createTrie(@Nonnull List<DomainFilter<String>> filters) {
+        long start = System.currentTimeMillis();
+        DomainSuffixTrie trie = new DomainSuffixTrie();
+        for (int i = 0; i < filters.size(); ++i) {
+            int index = i;
+            try {
+                if (!filters.get(i).getDomains().allMatch(domain -> trie.put(domain, index))) {
+                    log.debug("not creating trie for non-ascii domains in {}", filters.get(i).getName());
+                    return null;
+                }
+            } catch (RuntimeException e) {
+                log.warn("failed to create trie for {}", filters.get(i).getName(), e);
+                return null;
+            }
+        }
+        trie.trimToSize();
+        long stop = System.currentTimeMillis();
+        log.debug("created trie with {} nodes / {} bytes for {} lists in {}ms", trie.getNodes(), trie.getMemorySize(), filters.size(), (stop - start));
+        return trie;
+    }
+}
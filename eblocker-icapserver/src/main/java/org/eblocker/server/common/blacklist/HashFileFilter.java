@@ -33,6 +33,7 @@ import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -53,6 +54,8 @@ public class HashFileFilter implements DomainFilter<byte[]> {
     private final Path storagePath;
 
     private long fileSize;
+    @Nullable
+    private MappedByteBuffer mappedStorage;
 
     private int listId;
     private String name;
@@ -81,8 +84,18 @@ public class HashFileFilter implements DomainFilter<byte[]> {
     }
 
     public HashFileFilter(Path storagePath) throws IOException {
+        this(storagePath, false);
+    }
+
+    /**
+     * Load a stored filter, optionally mapping the storage file read-only into memory to scan buckets in place.
+     */
+    public HashFileFilter(Path storagePath, boolean memoryMapped) throws IOException {
         this.storagePath = storagePath;
         initFromFile();
+        if (memoryMapped) {
+            mappedStorage = MappedStorage.map(storagePath, fileSize);
+        }
     }
 
     @Nullable
@@ -115,10 +128,25 @@ public class HashFileFilter implements DomainFilter<byte[]> {
     @Nonnull
     @Override
     public FilterDecision<byte[]> isBlocked(byte[] domain) {
-        boolean isBlocked = findBucket(getBucket(domain), domain);
+        int bucket = getBucket(domain);
+        boolean isBlocked = mappedStorage != null ? findMappedBucket(bucket, domain) : findBucket(bucket, domain);
         return new FilterDecision<>(domain, isBlocked, this);
     }
 
+    /**
+     * Returns the number of bytes of the storage file mapped into memory or zero if the filter is not memory mapped.
+     */
+    public long getMappedSize() {
+        return mappedStorage != null ? mappedStorage.capacity() : 0;
+    }
+
+    /**
+     * Returns the (approximate) number of bytes this filter permanently keeps on heap.
+     */
+    public long getResidentSize() {
+        return 4L * buckets.length;
+    }
+
     @Nonnull
     @Override
     public List<DomainFilter<?>> getChildFilters() {
@@ -138,10 +166,14 @@ public class HashFileFilter implements DomainFilter<byte[]> {
     private byte[] readBucket(int bucket) {
         log.debug("reading bucket {}", bucket);
         long offset = buckets[bucket];
-        long offsetNextBucket = bucket + 1 < buckets.length ? buckets[bucket + 1] : fileSize;
-        long length = offsetNextBucket - offset;
+        long length = getBucketEnd(bucket) - offset;
         byte[] buffer = new byte[(int) length];
 
+        if (mappedStorage != null) {
+            MappedStorage.read(mappedStorage, (int) offset, buffer);
+            return buffer;
+        }
+
         try (FileInputStream fis = new FileInputStream(storagePath.toFile())) {
             fis.skip(offset);
             IOUtils.readFully(fis, buffer);
@@ -152,6 +184,10 @@ public class HashFileFilter implements DomainFilter<byte[]> {
         }
     }
 
+    private long getBucketEnd(int bucket) {
+        return bucket + 1 < buckets.length ? buckets[bucket + 1] : fileSize;
+    }
+
     private boolean findBucket(int bucket, byte[] search) {
         byte[] buffer = readBucket(bucket);
 
@@ -167,6 +203,38 @@ public class HashFileFilter implements DomainFilter<byte[]> {
         return false;
     }
 
+    /**
+     * Same as {@link #findBucket(int, byte[])} but compares the hashes directly in the mapped storage.
+     */
+    private boolean findMappedBucket(int bucket, byte[] search) {
+        MappedByteBuffer buffer = mappedStorage;
+        int end = (int) getBucketEnd(bucket);
+
+        for (int i = buckets[bucket]; i + hashLength <= end; i += hashLength) {
+            int cmp = compare(buffer, i, search);
+            if (cmp == 0) {
+                return true;
+            } else if (cmp > 0) {
+                break;
+            }
+        }
+
+        return false;
+    }
+
+    private int compare(MappedByteBuffer buffer, int offset, byte[] search) {
+        for (int i = 0; i < hashLength; ++i) {
+            byte a = buffer.get(offset + i);
+            if (a < search[i]) {
+                return -1;
+            }
+            if (a > search[i]) {
+                return 1;
+            }
+        }
+        return 0;
+    }
+
     private int getBucket(byte[] hash) {
         int bits = IntMath.log2(buckets.length, RoundingMode.UNNECESSARY);
 
@@ -18,36 +18,71 @@ package org.eblocker.server.common.blacklist;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Stream;
 
+/**
+ * Checks a hostname and all its parent domains (except the top level domain) against a filter.
+ * <p>
+ * If the filter is composed of plain domain lists only and these are small enough, a {@link DomainSuffixTrie} is
+ * used so a hostname and all its parents are checked by a single walk over the hostname. Tries are built in the
+ * background by {@link DomainSuffixTrieCache} and shared between filters of the same lists. Until a trie is ready, or
+ * if there is none, the filter is queried once for each parent domain.
+ */
 class HostnameFilter implements DomainFilter<String> {
+    /**
+     * Lists of up to this size are kept in a trie. Domains take about 40 bytes each in the worst case (no common
+     * suffixes apart from the top level domain) so a trie at this limit takes about 10MB. Larger lists like the full
+     * parental control lists are only checked by their bloom and file filters.
+     */
+    static final int MAX_TRIE_DOMAINS = 262144;
 
     @Nonnull
     private final DomainFilter<String> filter;
+    @Nonnull
+    private final List<DomainFilter<String>> trieFilters;
+    @Nullable
+    private final CompletableFuture<DomainSuffixTrie> trie;
 
     HostnameFilter(@Nonnull DomainFilter<String> filter) {
+        this(filter, DomainSuffixTrieCache.INSTANCE);
+    }
+
+    HostnameFilter(@Nonnull DomainFilter<String> filter, @Nonnull DomainSuffixTrieCache trieCache) {
         this.filter = filter;
+        this.trieFilters = collectTrieFilters(filter);
+        this.trie = trieFilters.isEmpty() ? null : trieCache.get(trieFilters);
     }
 
     @Nonnull
     @Override
     public FilterDecision<String> isBlocked(String hostname) {
-        String[] labels = hostname.split("\\.");
-        if (labels.length < 2) {
-            return new FilterDecision<>(hostname, false, this);
+        if (!isRegularHostname(hostname)) {
+            return isBlockedByLabels(hostname);
         }
 
-        String domain = "." + labels[labels.length - 1];
-        for (int i = 2; i <= labels.length; ++i) {
-            domain = "." + labels[labels.length - i] + domain;
-            FilterDecision<String> decision = filter.isBlocked(domain);
+        DomainSuffixTrie readyTrie = getTrie();
+        if (readyTrie != null) {
+            return isBlockedByTrie(readyTrie, hostname);
+        }
+
+        // check all parent domains starting with the second level domain
+        int lastDot = hostname.lastIndexOf('.');
+        for (int i = hostname.lastIndexOf('.', lastDot - 1); i != -1; i = hostname.lastIndexOf('.', i - 1)) {
+            FilterDecision<String> decision = filter.isBlocked(hostname.substring(i));
             if (decision.isBlocked()) {
                 return decision;
             }
         }
 
+        FilterDecision<String> decision = filter.isBlocked("." + hostname);
+        if (decision.isBlocked()) {
+            return decision;
+        }
+
         return filter.isBlocked(hostname);
     }
 
@@ -79,4 +114,132 @@ class HostnameFilter implements DomainFilter<String> {
     public List<DomainFilter<?>> getChildFilters() {
         return Collections.singletonList(filter);
     }
+
+    boolean isTrieEnabled() {
+        return getTrie() != null;
+    }
+
+    @Nullable
+    private DomainSuffixTrie getTrie() {
+        return trie != null ? trie.getNow(null) : null;
+    }
+
+    private FilterDecision<String> isBlockedByTrie(DomainSuffixTrie trie, String hostname) {
+        long node = trie.getRoot();
+        int dots = 0;
+        for (int i = hostname.length() - 1; i >= 0; --i) {
+            char c = hostname.charAt(i);
+            node = trie.getChild(node, c);
+            if (node == DomainSuffixTrie.NONE) {
+                return new FilterDecision<>(hostname, false, this);
+            }
+
+            // the top level domain itself is never checked
+            if (c == '.' && ++dots > 1 && trie.getValue(node) != DomainSuffixTrie.NONE) {
+                return new FilterDecision<>(hostname.substring(i), true, trieFilters.get(trie.getValue(node)));
+            }
+        }
+
+        long dottedNode = trie.getChild(node, '.');
+        if (dottedNode != DomainSuffixTrie.NONE && trie.getValue(dottedNode) != DomainSuffixTrie.NONE) {
+            return new FilterDecision<>("." + hostname, true, trieFilters.get(trie.getValue(dottedNode)));
+        }
+
+        if (trie.getValue(node) != DomainSuffixTrie.NONE) {
+            return new FilterDecision<>(hostname, true, trieFilters.get(trie.getValue(node)));
+        }
+
+        return new FilterDecision<>(hostname, false, this);
+    }
+
+    /**
+     * Fallback for hostnames with empty labels.
+     */
+    private FilterDecision<String> isBlockedByLabels(String hostname) {
+        String[] labels = hostname.split("\\.");
+        if (labels.length < 2) {
+            return new FilterDecision<>(hostname, false, this);
+        }
+
+        String domain = "." + labels[labels.length - 1];
+        for (int i = 2; i <= labels.length; ++i) {
+            domain = "." + labels[labels.length - i] + domain;
+            FilterDecision<String> decision = filter.isBlocked(domain);
+            if (decision.isBlocked()) {
+                return decision;
+            }
+        }
+
+        return filter.isBlocked(hostname);
+    }
+
+    /**
+     * Checks if hostname has at least two labels and none of them is empty.
+     */
+    private static boolean isRegularHostname(String hostname) {
+        int length = hostname.length();
+        if (length == 0 || hostname.charAt(0) == '.' || hostname.charAt(length - 1) == '.') {
+            return false;
+        }
+
+        boolean hasDot = false;
+        for (int i = 1; i < length; ++i) {
+            if (hostname.charAt(i) == '.') {
+                if (hostname.charAt(i - 1) == '.') {
+                    return false;
+                }
+                hasDot = true;
+            }
+        }
+        return hasDot;
+    }
+
+    /**
+     * Collects the lists to build a trie for.
+     *
+     * @return an empty list if the filter is not suitable for a trie
+     */
+    @Nonnull
+    private static List<DomainFilter<String>> collectTrieFilters(DomainFilter<String> filter) {
+        List<DomainFilter<String>> trieFilters = new ArrayList<>();
+        if (!collectListFilters(filter, trieFilters)) {
+            return Collections.emptyList();
+        }
+
+        int domains = trieFilters.stream().mapToInt(DomainFilter::getSize).sum();
+        if (domains > MAX_TRIE_DOMAINS) {
+            return Collections.emptyList();
+        }
+
+        return trieFilters;
+    }
+
+    /**
+     * Collects all list filters if the filter is a plain disjunction of lists.
+     *
+     * @return false if the filter contains anything else than lists
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean collectListFilters(DomainFilter<?> filter, List<DomainFilter<String>> listFilters) {
+        if (filter instanceof DomainFilterOr) {
+            for (DomainFilter<?> child : filter.getChildFilters()) {
+                if (!collectListFilters(child, listFilters)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        if (filter instanceof BloomDomainFilter && ListCachingFilter.unwrap(filter.getChildFilters().get(0)) instanceof SingleFileFilter) {
+            listFilters.add((DomainFilter<String>) ListCachingFilter.unwrap(filter.getChildFilters().get(0)));
+            return true;
+        }
+
+        if (filter instanceof SingleFileFilter || filter instanceof SortedArrayFilter) {
+            listFilters.add((DomainFilter<String>) filter);
+            return true;
+        }
+
+        return false;
+    }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Caches lookups of a single list in a {@link ListDecisionCache} shared by all filters using this list.
+ */
+class ListCachingFilter<T> implements DomainFilter<T> {
+
+    @Nonnull
+    private final ListDecisionCache cache;
+    @Nonnull
+    private final CachedFilterKey listKey;
+    @Nonnull
+    private final DomainFilter<T> filter;
+
+    ListCachingFilter(@Nonnull ListDecisionCache cache, @Nonnull CachedFilterKey listKey, @Nonnull DomainFilter<T> filter) {
+        this.cache = cache;
+        this.listKey = listKey;
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the cached list filter if the filter is a caching one.
+     */
+    static DomainFilter<?> unwrap(DomainFilter<?> filter) {
+        return filter instanceof ListCachingFilter ? ((ListCachingFilter<?>) filter).filter : filter;
+    }
+
+    @Nullable
+    @Override
+    public Integer getListId() {
+        return filter.getListId();
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "(list-cache " + filter.getName() + ")";
+    }
+
+    @Override
+    public int getSize() {
+        return filter.getSize();
+    }
+
+    @Nonnull
+    @Override
+    public Stream<T> getDomains() {
+        return filter.getDomains();
+    }
+
+    @Nonnull
+    @Override
+    public FilterDecision<T> isBlocked(T domain) {
+        Boolean blocked = cache.get(listKey, domain);
+        if (blocked != null) {
+            return new FilterDecision<>(domain, blocked, filter);
+        }
+
+        FilterDecision<T> decision = filter.isBlocked(domain);
+        cache.put(listKey, domain, decision.isBlocked());
+        return decision;
+    }
+
+    @Nonnull
+    @Override
+    public List<DomainFilter<?>> getChildFilters() {
+        return Collections.singletonList(filter);
+    }
+}
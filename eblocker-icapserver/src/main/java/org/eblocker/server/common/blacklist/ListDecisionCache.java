@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import org.eblocker.server.common.collections.ConcurrentClockCache;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * Bounded cache of list lookups shared by all filters composed of these lists. Entries are keyed by list version so
+ * decisions of outdated versions are never returned and get evicted over time.
+ */
+public class ListDecisionCache {
+
+    @Nonnull
+    private final ConcurrentClockCache<Key, Boolean> cache;
+
+    ListDecisionCache(int size) {
+        this.cache = new ConcurrentClockCache<>(size);
+    }
+
+    /**
+     * Wraps a list filter so all its lookups are cached.
+     */
+    @Nonnull
+    <T> DomainFilter<T> wrap(@Nonnull CachedFilterKey listKey, @Nonnull DomainFilter<T> filter) {
+        return new ListCachingFilter<>(this, listKey, filter);
+    }
+
+    Boolean get(@Nonnull CachedFilterKey listKey, @Nonnull Object domain) {
+        return cache.get(new Key(listKey, toKey(domain)));
+    }
+
+    void put(@Nonnull CachedFilterKey listKey, @Nonnull Object domain, boolean blocked) {
+        cache.put(new Key(listKey, toKey(domain)), blocked);
+    }
+
+    @Nonnull
+    DecisionCacheStatistics getStatistics() {
+        return new DecisionCacheStatistics(cache.getHitCount(), cache.getMissCount(), cache.size());
+    }
+
+    /**
+     * Converts domains to a value with proper equals and hashCode implementations, i.e. hashes to byte buffers.
+     */
+    private static Object toKey(Object domain) {
+        return domain instanceof byte[] ? ByteBuffer.wrap((byte[]) domain) : domain;
+    }
+
+    private static class Key {
+        private final CachedFilterKey listKey;
+        private final Object domain;
+
+        Key(CachedFilterKey listKey, Object domain) {
+            this.listKey = listKey;
+            this.domain = domain;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return listKey.equals(key.listKey) && domain.equals(key.domain);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(listKey, domain);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helper for file filters keeping their storage mapped read-only into memory.
+ * <p>
+ * Mapped buffers must only be accessed by absolute get methods so they can be shared between threads without
+ * synchronization. A mapping stays valid even if the underlying file is deleted after a newer filter version has been
+ * loaded, it is released as soon as the filter owning it is garbage collected.
+ */
+class MappedStorage {
+
+    private MappedStorage() {
+    }
+
+    static MappedByteBuffer map(Path path, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("file " + path + " too large to be mapped: " + size);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    static void read(MappedByteBuffer buffer, int offset, byte[] target) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(target);
+    }
+}
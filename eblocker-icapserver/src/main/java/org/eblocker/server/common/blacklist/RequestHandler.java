@@ -17,9 +17,11 @@
 package org.eblocker.server.common.blacklist;
 
 import com.google.inject.Inject;
+import com.google.inject.name.Named;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramChannel;
 import org.eblocker.server.common.data.Device;
 import org.eblocker.server.common.data.IpAddress;
 import org.eblocker.server.common.service.DomainRecordingService;
@@ -30,11 +32,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of a Squid ACL external helper.
  * See also: <a href="https://wiki.squid-cache.org/Features/AddonHelpers">AddonHelpers</a>
+ * <p>
+ * Requests prefixed by a channel-ID (helper concurrency enabled) are processed by the executor and answered as soon as
+ * they are completed, possibly out of order. Requests without channel-ID or received by UDP are answered in order on
+ * the calling thread. Responses are flushed once per batch of read requests. Concurrent requests which can not be queued
+ * are answered immediately with a failure so lookups never block the netty thread.
  */
 @ChannelHandler.Sharable
 public class RequestHandler extends SimpleChannelInboundHandler<String> {
@@ -48,6 +57,7 @@ public class RequestHandler extends SimpleChannelInboundHandler<String> {
     private final DeviceService deviceService;
     private final FilterStatisticsService filterStatisticsService;
     private final DomainRecordingService domainRecordingService;
+    private final Executor executor;
 
     private final AtomicInteger requestId = new AtomicInteger();
 
@@ -56,12 +66,14 @@ public class RequestHandler extends SimpleChannelInboundHandler<String> {
                           DomainBlockingService domainBlockingService,
                           DeviceService deviceService,
                           FilterStatisticsService filterStatisticsService,
-                          DomainRecordingService domainRecordingService) {
+                          DomainRecordingService domainRecordingService,
+                          @Named("domainBlockingRequestExecutor") Executor executor) {
         this.domainBlockingService = domainBlockingService;
         this.blockedDomainLog = blockedDomainLog;
         this.deviceService = deviceService;
         this.filterStatisticsService = filterStatisticsService;
         this.domainRecordingService = domainRecordingService;
+        this.executor = executor;
     }
 
     @Override
@@ -73,14 +85,55 @@ public class RequestHandler extends SimpleChannelInboundHandler<String> {
 
         String[] items = line.split(" ");
 
-        if (items.length < 4) {
+        if (!isChannelId(items[0])) {
+            ctx.write(processRequest(id, line, items, 0));
+            return;
+        }
+
+        String channelId = items[0];
+        if (ctx.channel() instanceof DatagramChannel) {
+            // responses must be sent before next request is read as all clients share the same channel
+            ctx.write(channelId + " " + processConcurrentRequest(id, line, items));
+            return;
+        }
+
+        try {
+            executor.execute(() -> ctx.writeAndFlush(channelId + " " + processConcurrentRequest(id, line, items)));
+        } catch (RejectedExecutionException e) {
+            logger.warn("id {} rejected: too many pending requests", id);
+            ctx.write(channelId + " " + FAILURE_MESSAGE);
+        }
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        ctx.flush();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.warn("exception while processing requests", cause);
+        ctx.writeAndFlush(FAILURE_MESSAGE);
+    }
+
+    private String processConcurrentRequest(int id, String line, String[] items) {
+        try {
+            return processRequest(id, line, items, 1);
+        } catch (Exception e) {
+            logger.warn("exception while processing request {}", id, e);
+            return FAILURE_MESSAGE;
+        }
+    }
+
+    private String processRequest(int id, String line, String[] items, int offset) throws IOException {
+        if (items.length < offset + 4) {
             throw new IOException("malformed request: " + line);
         }
 
-        IpAddress clientIp = IpAddress.parse(items[0]);
-        String proto = items[1];
-        String requestedHost = items[2];
-        String sslSni = items[3];
+        IpAddress clientIp = IpAddress.parse(items[offset]);
+        String proto = items[offset + 1];
+        String requestedHost = items[offset + 2];
+        String sslSni = items[offset + 3];
 
         String hostname;
         if ("http".equals(proto) || "dns".equals(proto)) {
@@ -89,38 +142,45 @@ public class RequestHandler extends SimpleChannelInboundHandler<String> {
             hostname = sslSni;
         } else {
             logger.debug("id {} no ssl host to check", id);
-            ctx.writeAndFlush(ERR_MESSAGE);
-            return;
+            return ERR_MESSAGE;
         }
 
         Device device = deviceService.getDeviceByIp(clientIp);
         if (device == null) {
-            ctx.writeAndFlush(ERR_MESSAGE);
-            return;
+            return ERR_MESSAGE;
         }
 
         DomainBlockingService.Decision decision = domainBlockingService.isBlocked(device, hostname);
         domainRecordingService.log(device, hostname, decision.isBlocked(), false);
 
-        if (decision.isBlocked()) {
-            ctx.writeAndFlush("OK message=" + toString(decision.getProfileId()) + "," + toString(decision.getListId()) + "," + decision.getDomain() + "," + device.getOperatingUser() + "," + toString(decision.getTarget()) + "\n");
-            blockedDomainLog.addEntry(device.getId(), decision.getDomain(), decision.getListId());
-            if ("http".equals(proto) || "-".equals(proto)) {
-                filterStatisticsService.countQuery("pattern", clientIp);
-                filterStatisticsService.countBlocked("pattern", clientIp, String.valueOf(decision.getListId()));
-            }
-        } else {
-            ctx.writeAndFlush(ERR_MESSAGE);
-            return;
+        if (!decision.isBlocked()) {
+            return ERR_MESSAGE;
+        }
+
+        blockedDomainLog.addEntry(device.getId(), decision.getDomain(), decision.getListId());
+        if ("http".equals(proto) || "-".equals(proto)) {
+            filterStatisticsService.countQuery("pattern", clientIp);
+            filterStatisticsService.countBlocked("pattern", clientIp, String.valueOf(decision.getListId()));
         }
 
         logger.debug("id {} device {} user {} profile {} hostname {} blocked {}", id, device, device.getOperatingUser(), decision.getProfileId(), hostname, decision.isBlocked());
+        return "OK message=" + toString(decision.getProfileId()) + "," + toString(decision.getListId()) + "," + decision.getDomain() + "," + device.getOperatingUser() + "," + toString(decision.getTarget()) + "\n";
     }
 
-    @Override
-    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        logger.warn("exception while processing requests", cause);
-        ctx.writeAndFlush(FAILURE_MESSAGE);
+    /**
+     * Checks if the first item of a request is a channel-ID. Client addresses always contain dots or colons so a plain
+     * number can not be mistaken for one.
+     */
+    private static boolean isChannelId(String item) {
+        if (item.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < item.length(); ++i) {
+            if (!Character.isDigit(item.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private String toString(Object o) {
@@ -33,6 +33,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
@@ -45,8 +46,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -61,8 +62,10 @@ public class SingleFileFilter implements DomainFilter<String> {
     private final Charset charset;
     private final Path storagePath;
 
-    private Function<String, Integer> domainBucketFn;
+    private ToIntFunction<byte[]> domainBucketFn;
     private long fileSize;
+    @Nullable
+    private MappedByteBuffer mappedStorage;
 
     private int listId;
     private String name;
@@ -102,9 +105,22 @@ public class SingleFileFilter implements DomainFilter<String> {
      * Load a stored filter.
      */
     public SingleFileFilter(Charset charset, Path storagePath) throws IOException {
+        this(charset, storagePath, false);
+    }
+
+    /**
+     * Load a stored filter.
+     * <p>
+     * If memory mapping is enabled the storage file is mapped read-only and buckets are scanned in place instead of
+     * being read from disk on each lookup. The mapping is shared by all threads.
+     */
+    public SingleFileFilter(Charset charset, Path storagePath, boolean memoryMapped) throws IOException {
         this.charset = charset;
         this.storagePath = storagePath;
         initFromFile();
+        if (memoryMapped) {
+            mappedStorage = MappedStorage.map(storagePath, fileSize);
+        }
     }
 
     @Nullable
@@ -137,10 +153,26 @@ public class SingleFileFilter implements DomainFilter<String> {
     @Nonnull
     @Override
     public FilterDecision<String> isBlocked(String domain) {
-        boolean isBlocked = findBucket(domainBucketFn.apply(domain), domain);
+        byte[] search = domain.getBytes(charset);
+        int bucket = domainBucketFn.applyAsInt(search);
+        boolean isBlocked = mappedStorage != null ? findMappedBucket(bucket, search) : findBucket(bucket, search);
         return new FilterDecision<>(domain, isBlocked, this);
     }
 
+    /**
+     * Returns the number of bytes of the storage file mapped into memory or zero if the filter is not memory mapped.
+     */
+    public long getMappedSize() {
+        return mappedStorage != null ? mappedStorage.capacity() : 0;
+    }
+
+    /**
+     * Returns the (approximate) number of bytes this filter permanently keeps on heap.
+     */
+    public long getResidentSize() {
+        return 4L * buckets.length;
+    }
+
     @Nonnull
     @Override
     public List<DomainFilter<?>> getChildFilters() {
@@ -158,10 +190,14 @@ public class SingleFileFilter implements DomainFilter<String> {
     private byte[] readBucket(int bucket) {
         log.debug("reading bucket {}", bucket);
         long offset = buckets[bucket];
-        long offsetNextBucket = bucket + 1 < buckets.length ? buckets[bucket + 1] : fileSize;
-        long length = offsetNextBucket - offset;
+        long length = getBucketEnd(bucket) - offset;
         byte[] buffer = new byte[(int) length];
 
+        if (mappedStorage != null) {
+            MappedStorage.read(mappedStorage, (int) offset, buffer);
+            return buffer;
+        }
+
         try (FileInputStream fis = new FileInputStream(storagePath.toFile())) {
             fis.skip(offset);
             IOUtils.readFully(fis, buffer);
@@ -172,9 +208,12 @@ public class SingleFileFilter implements DomainFilter<String> {
         }
     }
 
-    private boolean findBucket(int bucket, String domain) {
+    private long getBucketEnd(int bucket) {
+        return bucket + 1 < buckets.length ? buckets[bucket + 1] : fileSize;
+    }
+
+    private boolean findBucket(int bucket, byte[] search) {
         byte[] buffer = readBucket(bucket);
-        byte[] search = domain.getBytes(charset);
         int matched = 0;
 
         for (int i = 0; i < buffer.length; ++i) {
@@ -198,23 +237,56 @@ public class SingleFileFilter implements DomainFilter<String> {
         return false;
     }
 
+    /**
+     * Same as {@link #findBucket(int, byte[])} but scans the bucket directly in the mapped storage without copying it.
+     */
+    private boolean findMappedBucket(int bucket, byte[] search) {
+        MappedByteBuffer buffer = mappedStorage;
+        int end = (int) getBucketEnd(bucket);
+        int matched = 0;
+
+        for (int i = buckets[bucket]; i < end; ++i) {
+            byte c = buffer.get(i);
+            if (c == '\n') {
+                if (matched == search.length) {
+                    return true;
+                }
+                matched = 0;
+            } else if (matched < search.length && c == search[matched]) {
+                ++matched;
+            } else {
+                matched = 0;
+                ++i;
+                while (i < end && buffer.get(i) != '\n') {
+                    ++i;
+                }
+            }
+        }
+
+        return false;
+    }
+
     // Broken: negative hash values are not mapped correctly. Solely kept for
     // backward compatibility with existing v1 filters.
-    private int mapDomainToBucketV1(String value) {
-        long hash = hashFunction.hashBytes(value.getBytes(charset)).asLong();
+    private int mapDomainToBucketV1(byte[] value) {
+        long hash = hashFunction.hashBytes(value).asLong();
         long bucket = buckets.length / 2 + hash % buckets.length / 2;
         return (int) bucket;
     }
 
-    private int mapDomainToBucketV2(String value) {
-        long hash = hashFunction.hashBytes(value.getBytes(charset)).asLong();
+    private int mapDomainToBucketV2(byte[] value) {
+        long hash = hashFunction.hashBytes(value).asLong();
         long bucket = (hash & 0x7fffffffffffffffL) % buckets.length;
         return (int) bucket;
     }
 
+    private int getBucket(String domain) {
+        return domainBucketFn.applyAsInt(domain.getBytes(charset));
+    }
+
     private void initStorageFile(Collection<String> domains) throws IOException {
         try (FileOutputStream fos = new FileOutputStream(storagePath.toFile())) {
-            writeFilter(fos, domains.stream().collect(Collectors.groupingBy(domainBucketFn)));
+            writeFilter(fos, domains.stream().collect(Collectors.groupingBy(this::getBucket)));
         }
         fileSize = Files.size(storagePath);
     }
@@ -288,7 +360,7 @@ public class SingleFileFilter implements DomainFilter<String> {
     private void initStorageFileFromStreamCalculateBucketOffsets(Stream<String> domains) {
         // calculate size of each bucket
         int[] bucketsLength = new int[buckets.length];
-        domains.forEach(domain -> bucketsLength[domainBucketFn.apply(domain)] += domain.getBytes(charset).length + 1);
+        domains.forEach(domain -> bucketsLength[getBucket(domain)] += domain.getBytes(charset).length + 1);
 
         // calculate offsets (based on zero)
         for (int i = 1; i < buckets.length; ++i) {
@@ -316,7 +388,7 @@ public class SingleFileFilter implements DomainFilter<String> {
                 domainBuffer.put((byte) '\n');
                 domainBuffer.flip();
 
-                int bucket = domainBucketFn.apply(domain);
+                int bucket = getBucket(domain);
                 int offset = buckets[bucket] + bucketsWriteIndices[bucket];
                 channel.position(offset);
                 channel.write(domainBuffer);
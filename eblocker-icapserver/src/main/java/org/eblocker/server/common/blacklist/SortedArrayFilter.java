@@ -0,0 +1,279 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Filter keeping all domains in a single byte arena with a sorted offset table. Lookups are done by binary search
+ * without any file i/o so no bloom filter is needed in front of it.
+ * <p>
+ * The arena is either loaded on heap or mapped read-only into memory.
+ */
+public class SortedArrayFilter implements DomainFilter<String> {
+    private static final Logger log = LoggerFactory.getLogger(SortedArrayFilter.class);
+
+    private static final byte[] MAGIC_BYTES = { 0x65, 0x42, 0x6c, 0x6b, 0x46, 0x6c, 0x74, 0x53 };
+    private static final byte FILE_FORMAT_VERSION = 0x01;
+
+    private final Charset charset;
+
+    private int listId;
+    private String name;
+    private int[] offsets;
+    private ByteBuffer arena;
+    private boolean mapped;
+
+    /**
+     * Create a filter and store it at the given path.
+     */
+    public SortedArrayFilter(Charset charset, Path storagePath, int listId, String name, Collection<String> domains) throws IOException {
+        this.charset = charset;
+        this.listId = listId;
+        this.name = name;
+        initArena(domains);
+        try (OutputStream out = Files.newOutputStream(storagePath)) {
+            writeTo(out);
+        }
+    }
+
+    /**
+     * Load a stored filter.
+     *
+     * @param inMemory whether to load the domains on heap or to map the storage file into memory.
+     */
+    public SortedArrayFilter(Charset charset, Path storagePath, boolean inMemory) throws IOException {
+        this.charset = charset;
+        int arenaOffset;
+        try (InputStream in = Files.newInputStream(storagePath)) {
+            arenaOffset = initFromFile(in, inMemory);
+        }
+
+        if (!inMemory) {
+            ByteBuffer storage = MappedStorage.map(storagePath, Files.size(storagePath));
+            storage.position(arenaOffset);
+            arena = storage.slice();
+            mapped = true;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Integer getListId() {
+        return listId;
+    }
+
+    @Nonnull
+    @Override
+    public String getName() {
+        return "(sorted-array " + name + ")";
+    }
+
+    @Override
+    public int getSize() {
+        return offsets.length;
+    }
+
+    @Nonnull
+    @Override
+    public Stream<String> getDomains() {
+        return IntStream.range(0, offsets.length).mapToObj(this::getDomain);
+    }
+
+    @Nonnull
+    @Override
+    public FilterDecision<String> isBlocked(String domain) {
+        return new FilterDecision<>(domain, contains(domain.getBytes(charset)), this);
+    }
+
+    @Nonnull
+    @Override
+    public List<DomainFilter<?>> getChildFilters() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the number of bytes of the storage file mapped into memory or zero if the filter is held on heap.
+     */
+    public long getMappedSize() {
+        return mapped ? arena.capacity() : 0;
+    }
+
+    /**
+     * Returns the (approximate) number of bytes this filter permanently keeps on heap.
+     */
+    public long getResidentSize() {
+        return 4L * offsets.length + (mapped ? 0 : arena.capacity());
+    }
+
+    private boolean contains(byte[] search) {
+        int low = 0;
+        int high = offsets.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, search);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares the domain at the given index to the search bytes (unsigned lexicographical order).
+     */
+    private int compare(int index, byte[] search) {
+        int start = offsets[index];
+        int length = getEnd(index) - start;
+        int n = Math.min(length, search.length);
+        for (int i = 0; i < n; ++i) {
+            int cmp = Byte.toUnsignedInt(arena.get(start + i)) - Byte.toUnsignedInt(search[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - search.length;
+    }
+
+    private int getEnd(int index) {
+        return index + 1 < offsets.length ? offsets[index + 1] : arena.capacity();
+    }
+
+    private String getDomain(int index) {
+        int start = offsets[index];
+        byte[] domain = new byte[getEnd(index) - start];
+        for (int i = 0; i < domain.length; ++i) {
+            domain[i] = arena.get(start + i);
+        }
+        return new String(domain, charset);
+    }
+
+    private void initArena(Collection<String> domains) {
+        byte[][] sorted = domains.stream()
+                .distinct()
+                .map(domain -> domain.getBytes(charset))
+                .sorted(Arrays::compareUnsigned)
+                .toArray(byte[][]::new);
+
+        offsets = new int[sorted.length];
+        int length = 0;
+        for (int i = 0; i < sorted.length; ++i) {
+            offsets[i] = length;
+            length += sorted[i].length;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < sorted.length; ++i) {
+            System.arraycopy(sorted[i], 0, bytes, offsets[i], sorted[i].length);
+        }
+        arena = ByteBuffer.wrap(bytes);
+    }
+
+    private void writeTo(OutputStream out) throws IOException {
+        // layout:
+        // bytes          type
+        // 8              bytes  magic bytes
+        // 1              byte   file format version
+        // 4              int    list id
+        // 2              short  name length
+        // (length)       byte   name (charset)
+        // +4             int    number of domains
+        // +4             int    arena length in bytes
+        // +4 * (domains) int    arena offsets in sorted order
+        // +(arena)       byte   domains (charset), no separators
+        byte[] headerName = name.getBytes(charset);
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.write(MAGIC_BYTES);
+        dos.writeByte(FILE_FORMAT_VERSION);
+        dos.writeInt(listId);
+        dos.writeShort(headerName.length);
+        dos.write(headerName);
+        dos.writeInt(offsets.length);
+        dos.writeInt(arena.capacity());
+        for (int offset : offsets) {
+            dos.writeInt(offset);
+        }
+        dos.write(arena.array());
+        dos.flush();
+    }
+
+    /**
+     * Reads header and offsets and - if requested - the arena.
+     *
+     * @return offset of arena in file
+     */
+    private int initFromFile(InputStream in, boolean readArena) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+
+        byte[] magicBytes = new byte[8];
+        dis.readFully(magicBytes);
+        if (!Arrays.equals(MAGIC_BYTES, magicBytes)) {
+            throw new IOException("filter is not a sorted array filter");
+        }
+
+        int fileFormatVersion = dis.readByte();
+        if (FILE_FORMAT_VERSION != fileFormatVersion) {
+            throw new IOException("expected file format version " + FILE_FORMAT_VERSION + " but found " + fileFormatVersion);
+        }
+
+        listId = dis.readInt();
+
+        int nameLength = dis.readShort();
+        byte[] headerName = new byte[nameLength];
+        dis.readFully(headerName);
+        name = new String(headerName, charset);
+
+        int size = dis.readInt();
+        int arenaLength = dis.readInt();
+        offsets = new int[size];
+        for (int i = 0; i < size; ++i) {
+            offsets[i] = dis.readInt();
+        }
+
+        if (readArena) {
+            byte[] bytes = new byte[arenaLength];
+            dis.readFully(bytes);
+            arena = ByteBuffer.wrap(bytes);
+        }
+
+        log.debug("read sorted array filter {} with {} domains", name, size);
+        return 8 + 1 + 4 + 2 + nameLength + 4 + 4 + 4 * size;
+    }
+}
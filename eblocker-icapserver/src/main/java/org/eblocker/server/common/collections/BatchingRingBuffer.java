@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded buffer for many producers and a single consumer which takes elements in batches.
+ * <p>
+ * Adding never blocks. If the buffer is full, the {@link OverflowPolicy} decides which element is discarded.
+ * Discarded elements are counted.
+ */
+public class BatchingRingBuffer<E> {
+
+    public enum OverflowPolicy {
+        /**
+         * Overwrite the oldest element, so the buffer always holds the most recent elements.
+         */
+        DROP_OLDEST,
+        /**
+         * Keep a uniform random sample of all elements added since the last batch was taken
+         * (reservoir sampling). Order is not preserved for sampled elements.
+         */
+        SAMPLE
+    }
+
+    private final Object[] elements;
+    private final OverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private int head;
+    private int size;
+    // elements offered since the consumer took the last batch, used for sampling
+    private long offered;
+
+    public BatchingRingBuffer(int capacity, OverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.elements = new Object[capacity];
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Adds an element without blocking.
+     *
+     * @return true if the element has been stored without discarding any element, false if the buffer was full
+     */
+    public boolean add(E element) {
+        lock.lock();
+        try {
+            ++offered;
+            if (size < elements.length) {
+                elements[(head + size) % elements.length] = element;
+                ++size;
+                notEmpty.signal();
+                return true;
+            }
+
+            dropped.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                elements[head] = element;
+                head = (head + 1) % elements.length;
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(offered);
+                if (slot < elements.length) {
+                    elements[(head + (int) slot) % elements.length] = element;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to maxElements elements, waiting until at least one is available.
+     */
+    public List<E> takeBatch(int maxElements) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+            return drain(maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to maxElements elements, waiting at most the given time for the first one.
+     *
+     * @return taken elements, empty if none became available in time
+     */
+    public List<E> takeBatch(int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (nanos <= 0) {
+                    return new ArrayList<>(0);
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return drain(maxElements);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<E> drain(int maxElements) {
+        int n = Math.min(size, maxElements);
+        List<E> batch = new ArrayList<>(n);
+        for (int i = 0; i < n; ++i) {
+            batch.add((E) elements[head]);
+            elements[head] = null;
+            head = (head + 1) % elements.length;
+        }
+        size -= n;
+        offered = size;
+        return batch;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return elements.length;
+    }
+
+    /**
+     * @return number of elements discarded or overwritten because the buffer was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+}
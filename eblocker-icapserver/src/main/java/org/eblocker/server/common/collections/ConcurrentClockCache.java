@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache with approximated LRU eviction (CLOCK / second chance).
+ * <p>
+ * In contrast to {@link ConcurrentFixedSizeCache} reads do not need any lock: an access just marks the entry as
+ * recently used. Writes lock one of several segments only, so concurrent writers do not block each other in most
+ * cases. Small caches use a single segment to keep eviction as close to LRU as possible.
+ */
+public class ConcurrentClockCache<K, V> extends AbstractMap<K, V> {
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 256;
+
+    private final Segment<K, V>[] segments;
+    private final int segmentMask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentClockCache(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive but is " + size);
+        }
+
+        int numberOfSegments = 1;
+        while (numberOfSegments < MAX_SEGMENTS && size / (numberOfSegments * 2) >= MIN_SEGMENT_SIZE) {
+            numberOfSegments *= 2;
+        }
+
+        segments = new Segment[numberOfSegments];
+        segmentMask = numberOfSegments - 1;
+        for (int i = 0; i < numberOfSegments; ++i) {
+            int segmentSize = size / numberOfSegments + (i < size % numberOfSegments ? 1 : 0);
+            segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> node = segmentFor(key).nodes.get(key);
+        if (node == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        if (!node.referenced) {
+            node.referenced = true;
+        }
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return segmentFor(key).nodes.containsKey(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return segmentFor(key).put(key, value, evictions);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return segmentFor(key).remove(key);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.nodes.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Returns a snapshot of all entries. Modifications of the returned set are not reflected in the cache.
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> entries = new HashSet<>();
+        for (Segment<K, V> segment : segments) {
+            for (Node<K, V> node : segment.nodes.values()) {
+                entries.add(new SimpleImmutableEntry<>(node.key, node.value));
+            }
+        }
+        return Collections.unmodifiableSet(entries);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & segmentMask];
+    }
+
+    private static class Node<K, V> {
+        private final K key;
+        private volatile V value;
+        private volatile boolean referenced;
+        private int slot;
+
+        private Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static class Segment<K, V> {
+        private final Map<K, Node<K, V>> nodes;
+        private final Node<K, V>[] ring;
+        private final int[] freeSlots;
+        private int freeSlotsCount;
+        private int usedSlots;
+        private int hand;
+
+        @SuppressWarnings("unchecked")
+        private Segment(int size) {
+            nodes = new ConcurrentHashMap<>(size * 4 / 3 + 1);
+            ring = new Node[size];
+            freeSlots = new int[size];
+        }
+
+        private synchronized V put(K key, V value, LongAdder evictions) {
+            Node<K, V> node = nodes.get(key);
+            if (node != null) {
+                V previous = node.value;
+                node.value = value;
+                node.referenced = true;
+                return previous;
+            }
+
+            node = new Node<>(key, value);
+            if (freeSlotsCount > 0) {
+                node.slot = freeSlots[--freeSlotsCount];
+            } else if (usedSlots < ring.length) {
+                node.slot = usedSlots++;
+            } else {
+                node.slot = evict();
+                evictions.increment();
+            }
+            ring[node.slot] = node;
+            nodes.put(key, node);
+            return null;
+        }
+
+        private synchronized V remove(Object key) {
+            Node<K, V> node = nodes.remove(key);
+            if (node == null) {
+                return null;
+            }
+            ring[node.slot] = null;
+            freeSlots[freeSlotsCount++] = node.slot;
+            return node.value;
+        }
+
+        private synchronized void clear() {
+            nodes.clear();
+            for (int i = 0; i < ring.length; ++i) {
+                ring[i] = null;
+            }
+            freeSlotsCount = 0;
+            usedSlots = 0;
+            hand = 0;
+        }
+
+        /**
+         * Advances the clock hand to the first entry not referenced since the last pass, evicts it and returns its slot.
+         */
+        private int evict() {
+            while (true) {
+                Node<K, V> node = ring[hand];
+                int slot = hand;
+                hand = (hand + 1) % ring.length;
+                if (node.referenced) {
+                    node.referenced = false;
+                } else {
+                    nodes.remove(node.key);
+                    return slot;
+                }
+            }
+        }
+    }
+}
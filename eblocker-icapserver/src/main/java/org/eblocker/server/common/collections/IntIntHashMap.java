@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import java.util.Arrays;
+
+/**
+ * Map of primitive int keys to int values using open addressing to avoid boxing on lookups.
+ * <p>
+ * Entries can not be removed individually, only the whole map can be cleared. This class is not thread-safe.
+ */
+public class IntIntHashMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+
+    public IntIntHashMap(int expectedSize) {
+        allocate(tableSize(expectedSize));
+    }
+
+    /**
+     * @return value mapped to key or defaultValue if there is none
+     */
+    public int get(int key, int defaultValue) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    public void put(int key, int value) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (used[i]) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        used[i] = true;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void rehash() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(keys.length * 2);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int tableSize) {
+        keys = new int[tableSize];
+        values = new int[tableSize];
+        used = new boolean[tableSize];
+    }
+
+    private static int tableSize(int expectedSize) {
+        int tableSize = 16;
+        while (tableSize * LOAD_FACTOR < expectedSize) {
+            tableSize <<= 1;
+        }
+        return tableSize;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Approximate frequency counter which keeps at most <code>capacity</code> keys (Space-Saving algorithm).
+ * <p>
+ * If a new key is added while the counter is full, the key with the lowest count is evicted and the new key
+ * inherits its count. Counts are therefore never underestimated and every key occurring more often than
+ * <code>total / capacity</code> times is guaranteed to be tracked. Counters are kept ordered so the top
+ * <code>k</code> keys are available without sorting.
+ * <p>
+ * This class is not thread-safe.
+ */
+public class SpaceSavingCounter<K extends Comparable<K>> {
+
+    private final int capacity;
+    private final Map<K, Counter<K>> countersByKey;
+    // ordered by descending count, ties broken by key
+    private final TreeSet<Counter<K>> counters = new TreeSet<>(
+            Comparator.<Counter<K>>comparingInt(c -> c.count).reversed().thenComparing(c -> c.key));
+
+    public SpaceSavingCounter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.countersByKey = new HashMap<>(capacity * 4 / 3 + 1);
+    }
+
+    public void add(K key) {
+        add(key, 1);
+    }
+
+    public void add(K key, int increment) {
+        Counter<K> counter = countersByKey.get(key);
+        if (counter != null) {
+            counters.remove(counter);
+            counter.count += increment;
+            counters.add(counter);
+            return;
+        }
+
+        int error = 0;
+        if (countersByKey.size() == capacity) {
+            Counter<K> evicted = counters.pollLast();
+            countersByKey.remove(evicted.key);
+            error = evicted.count;
+        }
+        counter = new Counter<>(key, error + increment, error);
+        countersByKey.put(key, counter);
+        counters.add(counter);
+    }
+
+    /**
+     * @return estimated count of key or 0 if key is not tracked
+     */
+    public int getCount(K key) {
+        Counter<K> counter = countersByKey.get(key);
+        return counter != null ? counter.count : 0;
+    }
+
+    /**
+     * @return maximum overestimation of the count of key
+     */
+    public int getError(K key) {
+        Counter<K> counter = countersByKey.get(key);
+        return counter != null ? counter.error : 0;
+    }
+
+    /**
+     * @return up to k keys with the highest counts in descending order
+     */
+    public Map<K, Integer> getTop(int k) {
+        Map<K, Integer> top = new LinkedHashMap<>();
+        Iterator<Counter<K>> i = counters.iterator();
+        while (i.hasNext() && top.size() < k) {
+            Counter<K> counter = i.next();
+            top.put(counter.key, counter.count);
+        }
+        return top;
+    }
+
+    /**
+     * @return all tracked keys with their counts in descending order
+     */
+    public Map<K, Integer> getAll() {
+        return getTop(capacity);
+    }
+
+    public int size() {
+        return countersByKey.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        countersByKey.clear();
+        counters.clear();
+    }
+
+    private static class Counter<K> {
+        final K key;
+        final int error;
+        int count;
+
+        Counter(K key, int count, int error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
@@ -19,11 +19,13 @@ package org.eblocker.server.common.data;
 import org.eblocker.server.common.recorder.RecordedDomainBin;
 
 import java.time.Instant;
+import java.util.Map;
 import java.util.Set;
 
 public interface DomainRecordingDataSource {
     Set<RecordedDomainBin> getBins(String deviceId);
     void save(String deviceId, RecordedDomainBin bin);
+    void saveAll(Map<String, RecordedDomainBin> binsByDeviceId);
     void removeBins(String deviceId);
     Instant getExpiration(RecordedDomainBin bin);
 }
@@ -24,6 +24,7 @@ import org.apache.commons.codec.binary.Base64;
 import org.eblocker.server.common.data.openvpn.ExternalAddressType;
 import org.eblocker.server.common.data.openvpn.PortForwardingMode;
 import org.eblocker.server.common.data.systemstatus.SubSystem;
+import org.eblocker.server.common.pubsub.Channels;
 import org.eblocker.server.common.startup.SubSystemService;
 import org.eblocker.server.common.transaction.Decision;
 import org.eblocker.server.common.update.AutomaticUpdaterConfiguration;
@@ -32,6 +33,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisDataException;
 
 import java.io.IOException;
@@ -184,7 +187,7 @@ public class JedisDataSource implements DataSource {
     }
 
     private SortedSet<String> getKeys(Jedis jedis, Class<?> entityClass) {
-        return new TreeSet<>(jedis.keys(getKey(entityClass) + ID_PREFIX_SEPARATOR + "[0-9]*"));
+        return new TreeSet<>(JedisUtils.scanKeys(jedis, getKey(entityClass) + ID_PREFIX_SEPARATOR + "[0-9]*"));
     }
 
     @Override
@@ -199,12 +202,16 @@ public class JedisDataSource implements DataSource {
 
     protected <T> T get(Class<T> entityClass, String id) {
         try (Jedis jedis = pool.getResource()) {
-            String json = jedis.get(id);
-            if (json == null || json.isEmpty()) {
-                return null;
-            }
-            return objectMapper.readValue(json, entityClass);
+            return readValue(entityClass, jedis.get(id));
+        }
+    }
 
+    private <T> T readValue(Class<T> entityClass, String json) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, entityClass);
         } catch (IOException e) {
             LOG.error("Cannot deserialize entity of type {}.", entityClass.getName(), e);
             return null;
@@ -213,10 +220,13 @@ public class JedisDataSource implements DataSource {
 
     @Override
     public <T> List<T> getAll(Class<T> entityClass) {
-        SortedSet<String> ids = getIds(entityClass);
+        List<String> values;
+        try (Jedis jedis = pool.getResource()) {
+            values = JedisUtils.mget(jedis, getKeys(jedis, entityClass));
+        }
         List<T> entities = new ArrayList<>();
-        for (String id : ids) {
-            T entity = get(entityClass, id);
+        for (String value : values) {
+            T entity = readValue(entityClass, value);
             if (entity != null) {
                 entities.add(entity);
             }
@@ -267,7 +277,7 @@ public class JedisDataSource implements DataSource {
     @Override
     public Set<String> keys(String globPattern) {
         try (Jedis jedis = pool.getResource()) {
-            return new TreeSet<>(jedis.keys(globPattern));
+            return new TreeSet<>(JedisUtils.scanKeys(jedis, globPattern));
         }
     }
 
@@ -281,8 +291,9 @@ public class JedisDataSource implements DataSource {
     @Override
     public void deleteAll(Class<?> entityClass) {
         try (Jedis jedis = pool.getResource()) {
-            for (String id : getKeys(jedis, entityClass)) {
-                jedis.del(id);
+            SortedSet<String> keys = getKeys(jedis, entityClass);
+            if (!keys.isEmpty()) {
+                jedis.del(keys.toArray(new String[0]));
             }
         }
     }
@@ -320,18 +331,27 @@ public class JedisDataSource implements DataSource {
     @Override
     public SortedSet<String> getDeviceIds() {
         try (Jedis jedis = pool.getResource()) {
-            return new TreeSet<>(jedis.keys(Device.ID_PREFIX + "*"));
+            return new TreeSet<>(JedisUtils.scanKeys(jedis, Device.ID_PREFIX + "*"));
         }
     }
 
     @Override
     public Set<Device> getDevices() {
-        SortedSet<String> deviceIds = getDeviceIds();
-        Set<Device> devices = new HashSet<>();
+        Map<String, Response<Map<String, String>>> responses = new HashMap<>();
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (String deviceId : JedisUtils.scanKeys(jedis, Device.ID_PREFIX + "*")) {
+                responses.put(deviceId, pipeline.hgetAll(deviceId));
+            }
+            pipeline.sync();
+        }
 
-        for (String deviceId : deviceIds) {
-            Device device = getDevice(deviceId);
-            devices.add(device);
+        Set<Device> devices = new HashSet<>();
+        for (Map.Entry<String, Response<Map<String, String>>> e : responses.entrySet()) {
+            Device device = toDevice(e.getKey(), e.getValue().get());
+            if (device != null) {
+                devices.add(device);
+            }
         }
         return devices;
     }
@@ -361,7 +381,10 @@ public class JedisDataSource implements DataSource {
         try (Jedis jedis = pool.getResource()) {
             map = jedis.hgetAll(deviceId);
         }
+        return toDevice(deviceId, map);
+    }
 
+    private Device toDevice(String deviceId, Map<String, String> map) {
         if (map.isEmpty()) {
             return null;
         }
@@ -571,6 +594,7 @@ public class JedisDataSource implements DataSource {
             map.put(KEY_FILTER_PLUG_AND_PLAY_ADS_ENABLED, Boolean.toString(device.isFilterAdsEnabled()));
             map.put(KEY_FILTER_PLUG_AND_PLAY_TRACKERS_ENABLED, Boolean.toString(device.isFilterTrackersEnabled()));
             jedis.hmset(device.getId(), map);
+            jedis.publish(Channels.DEVICE_UPDATE, device.getId());
         }
     }
 
@@ -678,6 +702,7 @@ public class JedisDataSource implements DataSource {
     public void delete(Device device) {
         try (Jedis jedis = pool.getResource()) {
             jedis.del(device.getId());
+            jedis.publish(Channels.DEVICE_UPDATE, device.getId());
         }
     }
 
@@ -16,7 +16,6 @@
  */
 package org.eblocker.server.common.data;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
@@ -26,14 +25,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Persists recorded domain requests. Requests are saved in bins which expire after a day.
+ * <p>
+ * Bins are stored in the compact binary format of {@link RecordedDomainBin#writeTo(java.io.DataOutput)}.
+ * Bins saved as JSON by previous versions can still be read.
  */
 @Singleton
 public class JedisDomainRecordingDataSource implements DomainRecordingDataSource {
@@ -57,11 +67,19 @@ public class JedisDomainRecordingDataSource implements DomainRecordingDataSource
     public Set<RecordedDomainBin> getBins(String deviceId) {
         try (Jedis jedis = jedisPool.getResource()) {
             Set<String> keys = JedisUtils.scanKeys(jedis, getKeyPattern(deviceId));
-            return keys.stream()
-                    .map(key -> getBin(jedis, key))
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .collect(Collectors.toSet());
+            Set<RecordedDomainBin> bins = new HashSet<>();
+            if (keys.isEmpty()) {
+                return bins;
+            }
+            byte[][] binaryKeys = keys.stream().map(key -> key.getBytes(StandardCharsets.UTF_8)).toArray(byte[][]::new);
+            List<byte[]> values = jedis.mget(binaryKeys);
+            for (int i = 0; i < binaryKeys.length; ++i) {
+                RecordedDomainBin bin = decode(binaryKeys[i], values.get(i));
+                if (bin != null) {
+                    bins.add(bin);
+                }
+            }
+            return bins;
         }
     }
 
@@ -69,24 +87,49 @@ public class JedisDomainRecordingDataSource implements DomainRecordingDataSource
         return KEY_PREFIX + deviceId + ":*";
     }
 
-    private Optional<RecordedDomainBin> getBin(Jedis jedis, String key) {
+    private RecordedDomainBin decode(byte[] key, byte[] value) {
+        if (value == null) {
+            LOG.debug("RecordedDomainBin for key {} already expired", new String(key, StandardCharsets.UTF_8));
+            return null;
+        }
         try {
-            String json = jedis.get(key);
-            return Optional.of(objectMapper.readValue(json, RecordedDomainBin.class));
-        } catch (Exception e) {
-            LOG.error("Could not get RecordedDomainBin for key {}. Already expired?", key, e);
-            return Optional.empty();
+            if (value.length > 0 && value[0] == '{') {
+                return objectMapper.readValue(value, RecordedDomainBin.class);
+            }
+            return RecordedDomainBin.readFrom(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException e) {
+            LOG.error("Could not get RecordedDomainBin for key {}", new String(key, StandardCharsets.UTF_8), e);
+            return null;
         }
     }
 
     @Override
     public void save(String deviceId, RecordedDomainBin bin) {
-        String key = KEY_PREFIX + deviceId + ":" + bin.getBegin().toEpochMilli();
-        Instant expiresAt = getExpiration(bin);
         try (Jedis jedis = jedisPool.getResource()) {
-            jedis.set(key, objectMapper.writeValueAsString(bin));
-            jedis.pexpireAt(key, expiresAt.toEpochMilli());
-        } catch (JsonProcessingException e) {
+            Pipeline pipeline = jedis.pipelined();
+            save(pipeline, deviceId, bin);
+            pipeline.sync();
+        }
+    }
+
+    @Override
+    public void saveAll(Map<String, RecordedDomainBin> binsByDeviceId) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            binsByDeviceId.forEach((deviceId, bin) -> save(pipeline, deviceId, bin));
+            pipeline.sync();
+        }
+    }
+
+    private void save(Pipeline pipeline, String deviceId, RecordedDomainBin bin) {
+        byte[] key = (KEY_PREFIX + deviceId + ":" + bin.getBegin().toEpochMilli()).getBytes(StandardCharsets.UTF_8);
+        Instant expiresAt = getExpiration(bin);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bin.writeTo(new DataOutputStream(out));
+            pipeline.set(key, out.toByteArray());
+            pipeline.pexpireAt(key, expiresAt.toEpochMilli());
+        } catch (IOException e) {
             LOG.error("Could not save recorded domains for device {}", deviceId, e);
         }
     }
@@ -99,8 +142,8 @@ public class JedisDomainRecordingDataSource implements DomainRecordingDataSource
     public void removeBins(String deviceId) {
         try (Jedis jedis = jedisPool.getResource()) {
             Set<String> keys = JedisUtils.scanKeys(jedis, getKeyPattern(deviceId));
-            for (String key : keys) {
-                jedis.del(key);
+            if (!keys.isEmpty()) {
+                jedis.del(keys.toArray(new String[0]));
             }
         }
     }
@@ -20,12 +20,16 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.ScanParams;
 import redis.clients.jedis.ScanResult;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.function.Predicate;
 
 public class JedisUtils {
     public static final int SCAN_BATCH_SIZE = 100;
+    public static final int MGET_BATCH_SIZE = 500;
 
     public static Set<String> scanKeys(Jedis jedis, String pattern) {
         return scanKeys(jedis, pattern, key -> true);
@@ -44,4 +48,25 @@ public class JedisUtils {
 
         return keys;
     }
+
+    /**
+     * Gets the values of all keys in batches to avoid blocking redis with a single huge request.
+     *
+     * @return values in iteration order of the keys, null for missing keys
+     */
+    public static List<String> mget(Jedis jedis, Collection<String> keys) {
+        List<String> values = new ArrayList<>(keys.size());
+        List<String> batch = new ArrayList<>(Math.min(keys.size(), MGET_BATCH_SIZE));
+        for (String key : keys) {
+            batch.add(key);
+            if (batch.size() == MGET_BATCH_SIZE) {
+                values.addAll(jedis.mget(batch.toArray(new String[0])));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            values.addAll(jedis.mget(batch.toArray(new String[0])));
+        }
+        return values;
+    }
 }
@@ -18,10 +18,40 @@ package org.eblocker.server.common.data.dns;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 
 public interface DnsDataSource {
 
-    List<ResolverEvent> getEventsByResolver(String resolver);
+    /**
+     * @return all resolvers with recorded events
+     */
+    Set<String> getResolvers();
 
-    void deleteEventsBefore(Instant instant);
+    /**
+     * Returns the oldest recorded events of a resolver without removing them.
+     *
+     * @param maxEvents maximum number of events returned
+     */
+    List<ResolverEvent> getEvents(String resolver, int maxEvents);
+
+    /**
+     * Removes the oldest recorded events of a resolver.
+     *
+     * @param count number of events to remove
+     */
+    void removeEvents(String resolver, int count);
+
+    /**
+     * Adds histograms to the stored ones. Stored histograms expire after the configured retention.
+     *
+     * @param histograms histograms by begin of minute and name server
+     */
+    void addHistograms(String resolver, Map<Instant, Map<String, ResponseTimeHistogram>> histograms);
+
+    /**
+     * @return histograms by begin of minute and name server of all minutes in [begin, end)
+     */
+    NavigableMap<Instant, Map<String, ResponseTimeHistogram>> getHistograms(String resolver, Instant begin, Instant end);
 }
@@ -16,9 +16,9 @@
  */
 package org.eblocker.server.common.data.dns;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import org.eblocker.server.common.data.JedisUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,15 +27,26 @@ import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Response;
 
-import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Collection;
-import java.util.Collections;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
+/**
+ * Resolver events are appended to a list per resolver by the dns server. These lists are drained and aggregated into
+ * a hash per resolver and hour ("dns_stats_hist:&lt;resolver&gt;:&lt;uuuuMMddHH&gt;", UTC) holding the fields of all
+ * {@link ResponseTimeHistogram}s of that hour as "&lt;minute&gt;,&lt;name server&gt;,&lt;field&gt;". Hashes expire as a
+ * whole after the retention period so no key scans are needed to delete old statistics.
+ */
 @Singleton
 public class JedisDnsDataSource implements DnsDataSource {
 
@@ -43,57 +54,93 @@ public class JedisDnsDataSource implements DnsDataSource {
 
     private static final String KEY_PREFIX_EVENTS = "dns_stats:";
     private static final String KEY_PATTERN_EVENTS = "dns_stats:[a-z]*";
+    private static final String KEY_PREFIX_HISTOGRAMS = "dns_stats_hist:";
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("uuuuMMddHH").withZone(ZoneOffset.UTC);
 
     private final JedisPool jedisPool;
+    private final int expireSeconds;
 
     @Inject
-    public JedisDnsDataSource(JedisPool jedisPool) {
+    public JedisDnsDataSource(@Named("dns.server.stats.days") int days,
+                              JedisPool jedisPool) {
         this.jedisPool = jedisPool;
+        // statistics are queried from the start of the day "days" ago, the extra hour covers the bucket itself
+        this.expireSeconds = (int) Duration.ofDays(days + 1L).plusHours(1).getSeconds();
     }
 
     @Override
-    public List<ResolverEvent> getEventsByResolver(String resolver) {
+    public Set<String> getResolvers() {
         try (Jedis jedis = jedisPool.getResource()) {
-            Map<String, List<ResolverEvent>> eventsByResolver = getEventsByResolver(jedis, Collections.singleton(KEY_PREFIX_EVENTS + resolver));
-            return eventsByResolver.get(resolver);
+            return JedisUtils.scanKeys(jedis, KEY_PATTERN_EVENTS).stream()
+                    .map(key -> key.substring(KEY_PREFIX_EVENTS.length()))
+                    .collect(Collectors.toSet());
         }
     }
 
     @Override
-    public void deleteEventsBefore(Instant t) {
+    public List<ResolverEvent> getEvents(String resolver, int maxEvents) {
         try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> keys = JedisUtils.scanKeys(jedis, KEY_PATTERN_EVENTS);
+            return jedis.lrange(KEY_PREFIX_EVENTS + resolver, 0, maxEvents - 1L).stream()
+                    .map(ResolverEvent::new)
+                    .collect(Collectors.toList());
+        }
+    }
 
-            Map<String, List<ResolverEvent>> eventsByResolver = getEventsByResolver(jedis, keys);
+    @Override
+    public void removeEvents(String resolver, int count) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            // events are only appended by the dns server so removing from the head is safe without a transaction
+            jedis.ltrim(KEY_PREFIX_EVENTS + resolver, count, -1);
+        }
+    }
+
+    @Override
+    public void addHistograms(String resolver, Map<Instant, Map<String, ResponseTimeHistogram>> histograms) {
+        try (Jedis jedis = jedisPool.getResource()) {
             Pipeline pipeline = jedis.pipelined();
-            for (Map.Entry<String, List<ResolverEvent>> e : eventsByResolver.entrySet()) {
-                int index = findLastIndexBefore(t, e.getValue());
-                for (int i = 0; i <= index; ++i) {
-                    pipeline.lpop(KEY_PREFIX_EVENTS + e.getKey());
-                }
+            for (Map.Entry<Instant, Map<String, ResponseTimeHistogram>> e : histograms.entrySet()) {
+                String key = histogramKey(resolver, e.getKey());
+                long minute = e.getKey().getEpochSecond() / 60 % 60;
+                e.getValue().forEach((nameServer, histogram) ->
+                        histogram.forEachField((field, value) -> pipeline.hincrBy(key, minute + "," + nameServer + "," + field, value)));
+                pipeline.expire(key, expireSeconds);
             }
             pipeline.sync();
-
         }
     }
 
-    private Map<String, List<ResolverEvent>> getEventsByResolver(Jedis jedis, Collection<String> keys) {
-        Pipeline pipeline = jedis.pipelined();
-        Map<String, Response<List<String>>> responsesByKeys = keys.stream()
-                .collect(Collectors.toMap(key -> key.split(":")[1], key -> pipeline.lrange(key, 0, -1)));
-        pipeline.sync();
+    @Override
+    public NavigableMap<Instant, Map<String, ResponseTimeHistogram>> getHistograms(String resolver, Instant begin, Instant end) {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            Map<Instant, Response<Map<String, String>>> responsesByHour = new LinkedHashMap<>();
+            for (Instant hour = begin.truncatedTo(ChronoUnit.HOURS); hour.isBefore(end); hour = hour.plus(1, ChronoUnit.HOURS)) {
+                responsesByHour.put(hour, pipeline.hgetAll(histogramKey(resolver, hour)));
+            }
+            pipeline.sync();
 
-        return responsesByKeys.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        e -> e.getValue().get().stream().map(ResolverEvent::new).collect(Collectors.toList())));
+            NavigableMap<Instant, Map<String, ResponseTimeHistogram>> histograms = new TreeMap<>();
+            for (Map.Entry<Instant, Response<Map<String, String>>> e : responsesByHour.entrySet()) {
+                for (Map.Entry<String, String> field : e.getValue().get().entrySet()) {
+                    String[] tokens = field.getKey().split(",");
+                    if (tokens.length != 3) {
+                        log.warn("ignoring malformed field {} of {}", field.getKey(), resolver);
+                        continue;
+                    }
+                    Instant minute = e.getKey().plus(Long.parseLong(tokens[0]), ChronoUnit.MINUTES);
+                    if (minute.isBefore(begin) || !minute.isBefore(end)) {
+                        continue;
+                    }
+                    histograms.computeIfAbsent(minute, k -> new HashMap<>())
+                            .computeIfAbsent(tokens[1], k -> new ResponseTimeHistogram())
+                            .setField(tokens[2], Long.parseLong(field.getValue()));
+                }
+            }
+            return histograms;
+        }
     }
 
-    private Integer findLastIndexBefore(Instant t, List<ResolverEvent> events) {
-        int i = 0;
-        while (i < events.size() && events.get(i).getInstant().isBefore(t)) {
-            ++i;
-        }
-        return i - 1;
+    private String histogramKey(String resolver, Instant instant) {
+        return KEY_PREFIX_HISTOGRAMS + resolver + ":" + HOUR_FORMATTER.format(instant);
     }
 }
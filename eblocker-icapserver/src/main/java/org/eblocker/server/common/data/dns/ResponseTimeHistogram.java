@@ -0,0 +1,267 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.data.dns;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Aggregated resolver events of a name server: counters by status and a histogram of response times.
+ * <p>
+ * Response times are recorded in milliseconds into fixed buckets: values below 128ms get a bucket of their own, larger
+ * ones share buckets with a relative width of 1/64 (like HdrHistogram with two significant digits). Values above
+ * {@link #MAX_VALUE} are recorded as {@link #MAX_VALUE}. Percentiles, minimum and maximum are computed in O(buckets)
+ * regardless of the number of recorded events but are only exact below 128ms, above they are approximated by the
+ * bounds of the bucket.
+ */
+public class ResponseTimeHistogram {
+    private static final Logger log = LoggerFactory.getLogger(ResponseTimeHistogram.class);
+
+    static final long MAX_VALUE = (1L << 20) - 1;
+
+    private static final int LINEAR_BITS = 7;
+    private static final int LINEAR_BUCKETS = 1 << LINEAR_BITS;
+    private static final int SUB_BUCKETS = LINEAR_BUCKETS / 2;
+
+    // field names used for storage
+    private static final String VALID = "valid";
+    private static final String INVALID = "invalid";
+    private static final String TIMEOUT = "timeout";
+    private static final String ERROR = "error";
+    private static final String SUM = "sum";
+    private static final String BUCKET_PREFIX = "b";
+
+    private long valid;
+    private long invalid;
+    private long timeout;
+    private long error;
+    private long sum;
+    private long count;
+    private long[] buckets = new long[0];
+
+    public void add(ResolverEvent event) {
+        switch (event.getStatus()) {
+            case VALID:
+                ++valid;
+                break;
+            case INVALID:
+                ++invalid;
+                break;
+            case TIMEOUT:
+                ++timeout;
+                break;
+            case ERROR:
+                ++error;
+                break;
+            default:
+                log.error("unknown resolver event status: {}", event.getStatus());
+                break;
+        }
+        if (event.getDuration() != null) {
+            addResponseTime(event.getDuration(), 1);
+        }
+    }
+
+    public void add(ResponseTimeHistogram that) {
+        valid += that.valid;
+        invalid += that.invalid;
+        timeout += that.timeout;
+        error += that.error;
+        sum += that.sum;
+        count += that.count;
+        ensureBuckets(that.buckets.length);
+        for (int i = 0; i < that.buckets.length; ++i) {
+            buckets[i] += that.buckets[i];
+        }
+    }
+
+    public long getValid() {
+        return valid;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * @return number of recorded response times
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public long getAverage() {
+        return count != 0 ? sum / count : 0;
+    }
+
+    /**
+     * @return lower bound of the lowest non-empty bucket, the exact minimum below 128ms
+     */
+    public long getMin() {
+        for (int i = 0; i < buckets.length; ++i) {
+            if (buckets[i] != 0) {
+                return lowestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return upper bound of the highest non-empty bucket, may exceed the largest recorded value by up to 1/64
+     */
+    public long getMax() {
+        for (int i = buckets.length - 1; i >= 0; --i) {
+            if (buckets[i] != 0) {
+                return highestValue(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return median, the mean of both middle values for an even number of values
+     */
+    public long getMedian() {
+        if (count == 0) {
+            return 0;
+        }
+        if (count % 2 == 1) {
+            return getValueAtRank(count / 2 + 1);
+        }
+        return (getValueAtRank(count / 2) + getValueAtRank(count / 2 + 1)) / 2;
+    }
+
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        return getValueAtRank(Math.min(rank, count));
+    }
+
+    /**
+     * Calls consumer for all non-zero fields to be stored.
+     */
+    void forEachField(ObjLongConsumer<String> consumer) {
+        acceptNonZero(consumer, VALID, valid);
+        acceptNonZero(consumer, INVALID, invalid);
+        acceptNonZero(consumer, TIMEOUT, timeout);
+        acceptNonZero(consumer, ERROR, error);
+        acceptNonZero(consumer, SUM, sum);
+        for (int i = 0; i < buckets.length; ++i) {
+            acceptNonZero(consumer, BUCKET_PREFIX + i, buckets[i]);
+        }
+    }
+
+    /**
+     * Restores a field passed to {@link #forEachField(ObjLongConsumer)}.
+     */
+    void setField(String name, long value) {
+        switch (name) {
+            case VALID:
+                valid = value;
+                break;
+            case INVALID:
+                invalid = value;
+                break;
+            case TIMEOUT:
+                timeout = value;
+                break;
+            case ERROR:
+                error = value;
+                break;
+            case SUM:
+                sum = value;
+                break;
+            default:
+                if (!name.startsWith(BUCKET_PREFIX)) {
+                    log.warn("ignoring unknown field {}", name);
+                    return;
+                }
+                int index = Integer.parseInt(name.substring(BUCKET_PREFIX.length()));
+                ensureBuckets(index + 1);
+                count += value - buckets[index];
+                buckets[index] = value;
+                break;
+        }
+    }
+
+    static int bucketIndex(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        if (v < LINEAR_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exponent - LINEAR_BITS + 1;
+        return LINEAR_BUCKETS + (exponent - LINEAR_BITS) * SUB_BUCKETS + (int) (v >> shift) - SUB_BUCKETS;
+    }
+
+    static long lowestValue(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + LINEAR_BITS;
+        int subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return (long) subBucket << (exponent - LINEAR_BITS + 1);
+    }
+
+    static long highestValue(int index) {
+        return lowestValue(index + 1) - 1;
+    }
+
+    private void addResponseTime(long value, long n) {
+        int index = bucketIndex(value);
+        ensureBuckets(index + 1);
+        buckets[index] += n;
+        count += n;
+        sum += value * n;
+    }
+
+    private long getValueAtRank(long rank) {
+        long seen = 0;
+        for (int i = 0; i < buckets.length; ++i) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return lowestValue(i) + (highestValue(i) - lowestValue(i)) / 2;
+            }
+        }
+        return getMax();
+    }
+
+    private void ensureBuckets(int size) {
+        if (buckets.length < size) {
+            buckets = Arrays.copyOf(buckets, size);
+        }
+    }
+
+    private static void acceptNonZero(ObjLongConsumer<String> consumer, String name, long value) {
+        if (value != 0) {
+            consumer.accept(name, value);
+        }
+    }
+}
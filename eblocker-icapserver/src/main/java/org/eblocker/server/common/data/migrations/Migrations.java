@@ -184,6 +184,7 @@ public class Migrations {
             migrationMultiBinder.addBinding().to(SchemaMigrationVersion46.class);
             migrationMultiBinder.addBinding().to(SchemaMigrationVersion47.class);
             migrationMultiBinder.addBinding().to(SchemaMigrationVersion48.class);
+            migrationMultiBinder.addBinding().to(SchemaMigrationVersion49.class);
         }
     }
 }
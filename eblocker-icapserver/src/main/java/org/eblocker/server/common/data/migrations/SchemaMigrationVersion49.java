@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.data.migrations;
+
+import com.google.inject.Inject;
+import org.eblocker.server.common.data.DataSource;
+import org.eblocker.server.common.data.IpAddress;
+import org.eblocker.server.common.data.JedisUtils;
+import org.eblocker.server.common.data.statistic.JedisFilterStatisticsDataSource;
+import org.eblocker.server.common.data.statistic.StatisticsCounter;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves filter statistics counters from one key per minute, ip address and counter into
+ * the time series buckets of the {@link JedisFilterStatisticsDataSource}.
+ */
+public class SchemaMigrationVersion49 implements SchemaMigration {
+    private static final String KEY_PATTERN_LEGACY_COUNTER = "*_stats:[0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9]:*";
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("uuuuMMddHHmm");
+
+    private final DataSource dataSource;
+    private final JedisPool jedisPool;
+    private final JedisFilterStatisticsDataSource filterStatisticsDataSource;
+
+    @Inject
+    public SchemaMigrationVersion49(DataSource dataSource,
+                                    JedisPool jedisPool,
+                                    JedisFilterStatisticsDataSource filterStatisticsDataSource) {
+        this.dataSource = dataSource;
+        this.jedisPool = jedisPool;
+        this.filterStatisticsDataSource = filterStatisticsDataSource;
+    }
+
+    @Override
+    public String getSourceVersion() {
+        return "48";
+    }
+
+    @Override
+    public String getTargetVersion() {
+        return "49";
+    }
+
+    @Override
+    public void migrate() {
+        migrateCounters();
+        dataSource.setVersion(getTargetVersion());
+    }
+
+    private void migrateCounters() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            List<String> keys = new ArrayList<>(JedisUtils.scanKeys(jedis, KEY_PATTERN_LEGACY_COUNTER));
+            for (int i = 0; i < keys.size(); i += JedisUtils.MGET_BATCH_SIZE) {
+                List<String> batch = keys.subList(i, Math.min(i + JedisUtils.MGET_BATCH_SIZE, keys.size()));
+                List<String> values = JedisUtils.mget(jedis, batch);
+                List<StatisticsCounter> counters = new ArrayList<>(batch.size());
+                for (int j = 0; j < batch.size(); ++j) {
+                    if (values.get(j) != null) {
+                        counters.add(mapKeyValueToCounter(batch.get(j), values.get(j)));
+                    }
+                }
+                filterStatisticsDataSource.incrementCounters(counters);
+                jedis.del(batch.toArray(new String[0]));
+            }
+        }
+    }
+
+    private StatisticsCounter mapKeyValueToCounter(String key, String value) {
+        String[] splitKey = key.split(":");
+        String type = splitKey[0].replace("_stats", "");
+        Instant instant = LocalDateTime.parse(splitKey[1], DATE_TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant();
+        IpAddress ipAddress = IpAddress.parse(splitKey[2].replace('_', ':'));
+        String name = splitKey[3];
+        String reason = splitKey.length == 5 ? splitKey[4] : null;
+        return new StatisticsCounter(instant, type, ipAddress, name, reason, Integer.parseInt(value));
+    }
+}
@@ -19,6 +19,7 @@ package org.eblocker.server.common.data.statistic;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import org.eblocker.server.common.collections.SpaceSavingCounter;
 import org.eblocker.server.common.data.BlockedDomainsStats;
 import org.eblocker.server.common.data.Device;
 import org.eblocker.server.common.data.parentalcontrol.BlockedDomainLogEntry;
@@ -44,13 +45,23 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+/**
+ * Counts blocked domains per device and category.
+ * <p>
+ * Each device and category only tracks the most frequently blocked domains in a {@link SpaceSavingCounter} of
+ * <code>filter.stats.domains.sketch.size</code> entries, another set of counters aggregates all devices. Counting
+ * and querying the top domains is therefore independent of the number of distinct blocked domains. The counters
+ * are periodically written to disk as snapshots.
+ */
 @Singleton
 @SubSystemService(value = SubSystem.BACKGROUND_TASKS, initPriority = -1)
 public class BlockedDomainsStatisticService {
@@ -60,6 +71,7 @@ public class BlockedDomainsStatisticService {
 
     private final String dbPath;
     private final int heapSize;
+    private final int sketchSize;
     private final BlockedDomainStatisticsDatabaseLoader databaseLoader;
     private final DeviceService deviceService;
     private final ParentalControlFilterListsService filterListsService;
@@ -67,15 +79,18 @@ public class BlockedDomainsStatisticService {
     private DB db;
     private BTreeMap<String, Long> lastResetById;
     private Map<String, CacheEntry> blockStatsById = new HashMap<>();
+    private final Map<Category, SpaceSavingCounter<String>> totalStats = new EnumMap<>(Category.class);
 
     @Inject
     public BlockedDomainsStatisticService(@Named("filter.stats.domains.db.path") String dbPath,
                                           @Named("filter.stats.domains.heap.size") int heapSize,
+                                          @Named("filter.stats.domains.sketch.size") int sketchSize,
                                           BlockedDomainStatisticsDatabaseLoader databaseLoader,
                                           DeviceService deviceService,
                                           ParentalControlFilterListsService filterListsService) {
         this.dbPath = dbPath;
         this.heapSize = heapSize;
+        this.sketchSize = Math.max(heapSize, sketchSize);
         this.databaseLoader = databaseLoader;
         this.deviceService = deviceService;
         this.filterListsService = filterListsService;
@@ -105,9 +120,23 @@ public class BlockedDomainsStatisticService {
         this.lastResetById = db.createTreeMap("reset").keySerializer(BTreeKeySerializer.STRING).valueSerializer(Serializer.LONG).makeOrGet();
         blockStatsById.clear(); // might contain partial data from first try if repeated
         initHeapStats(deviceService);
+        initTotalStats();
     }
 
     public synchronized void countBlockedDomain(BlockedDomainLogEntry logEntry) {
+        count(logEntry);
+    }
+
+    /**
+     * Counts a batch of blocked domains while holding the lock only once.
+     */
+    public synchronized void countBlockedDomains(Collection<BlockedDomainLogEntry> logEntries) {
+        for (BlockedDomainLogEntry logEntry : logEntries) {
+            count(logEntry);
+        }
+    }
+
+    private void count(BlockedDomainLogEntry logEntry) {
         if (db == null) {
             return;
         }
@@ -128,18 +157,10 @@ public class BlockedDomainsStatisticService {
         }
 
         CacheEntry cacheEntry = blockStatsById.computeIfAbsent(normalizeDeviceId(logEntry.getDeviceId()), CacheEntry::new);
-        Map<String, Integer> stats = cacheEntry.heapStats.computeIfAbsent(category, k -> new HashMap<>());
         String domain = logEntry.getDomain().startsWith(".") ? logEntry.getDomain().substring(1) : logEntry.getDomain();
-        Integer count = stats.get(domain);
-        if (count == null) {
-            BTreeMap<String, Integer> persistentMap = cacheEntry.persistentStats.get(category);
-            if (persistentMap != null) {
-                count = persistentMap.getOrDefault(domain, 0);
-            } else {
-                count = 0;
-            }
-        }
-        stats.put(domain, count + 1);
+        cacheEntry.heapStats.computeIfAbsent(category, this::createCounter).add(domain);
+        cacheEntry.modified.add(category);
+        totalStats.computeIfAbsent(category, this::createCounter).add(domain);
     }
 
     public synchronized BlockedDomainsStats getStatsByDeviceId(String id) {
@@ -154,19 +175,7 @@ public class BlockedDomainsStatisticService {
     }
 
     public synchronized BlockedDomainsStats getStats() {
-        Map<Category, List<Entry>> stats = blockStatsById.values().stream()
-                .map(e -> e.heapStats)
-                .map(Map::entrySet)
-                .flatMap(Collection::stream)
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (a, b) -> {
-                            Map<String, Integer> merged = new HashMap<>(a);
-                            b.forEach((key, value) -> merged.merge(key, value, Integer::sum));
-                            return merged;
-                        }))
-                .entrySet().stream()
+        Map<Category, List<Entry>> stats = totalStats.entrySet().stream()
                 .collect(Collectors.toMap(Map.Entry::getKey, e -> getTopBlockedDomains(e.getValue())));
 
         long oldestReset = lastResetById.values().stream().reduce(Long::min).orElse(0L);
@@ -178,10 +187,10 @@ public class BlockedDomainsStatisticService {
         long start = System.currentTimeMillis();
 
         for (CacheEntry entry : blockStatsById.values()) {
-            for (Category category : entry.heapStats.keySet()) {
+            for (Category category : entry.modified) {
                 updatePersistentStats(entry.id, category);
-                dropBottomEntriesFromHeap(entry.id, category);
             }
+            entry.modified.clear();
         }
 
         db.commit();
@@ -201,11 +210,13 @@ public class BlockedDomainsStatisticService {
         lastResetById.put(id, now.toEpochMilli());
         entry.lastReset = now;
         entry.heapStats.clear();
+        entry.modified.clear();
         for (Category category : entry.persistentStats.keySet()) {
             db.delete(createPersistentMapName(entry.id, category));
         }
         db.commit();
         entry.persistentStats.clear();
+        initTotalStats();
 
         return new BlockedDomainsStats(entry.lastReset, Collections.emptyMap());
     }
@@ -214,17 +225,34 @@ public class BlockedDomainsStatisticService {
         blockStatsById.keySet().forEach(key -> resetStats(Device.ID_PREFIX + key));
     }
 
-    private List<Entry> getTopBlockedDomains(Map<String, Integer> stats) {
+    private List<Entry> getTopBlockedDomains(SpaceSavingCounter<String> stats) {
         if (stats == null) {
             return Collections.emptyList();
         }
 
-        return stats.entrySet().stream()
-                .sorted(COUNTER_COMPARATOR)
+        return stats.getTop(heapSize).entrySet().stream()
                 .map(e -> new Entry(e.getKey(), e.getValue()))
                 .collect(Collectors.toList());
     }
 
+    private SpaceSavingCounter<String> createCounter(Category category) {
+        return new SpaceSavingCounter<>(sketchSize);
+    }
+
+    /**
+     * (Re-)builds the aggregated counters of all devices. Only needed on start-up and after resets as
+     * counters can not be decremented.
+     */
+    private void initTotalStats() {
+        totalStats.clear();
+        for (CacheEntry entry : blockStatsById.values()) {
+            for (Map.Entry<Category, SpaceSavingCounter<String>> e : entry.heapStats.entrySet()) {
+                SpaceSavingCounter<String> total = totalStats.computeIfAbsent(e.getKey(), this::createCounter);
+                e.getValue().getAll().forEach(total::add);
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void initHeapStats(DeviceService deviceService) {
         if (db == null) {
@@ -254,14 +282,18 @@ public class BlockedDomainsStatisticService {
 
             BTreeMap<String, Integer> persistentStats = db.getTreeMap(name);
             cacheEntry.persistentStats.put(category, persistentStats);
-            cacheEntry.heapStats.put(category, createTopEntriesMap(persistentStats));
+            cacheEntry.heapStats.put(category, createCounter(persistentStats));
+            if (persistentStats.size() > sketchSize) {
+                // stats written by previous versions are unbounded, shrink them on next snapshot
+                cacheEntry.modified.add(category);
+            }
         }
     }
 
-    private Map<String, Integer> createTopEntriesMap(BTreeMap<String, Integer> persistentStats) {
-        PriorityQueue<Map.Entry<String, Integer>> topEntries = new PriorityQueue<>(heapSize, COUNTER_COMPARATOR.reversed());
+    private SpaceSavingCounter<String> createCounter(BTreeMap<String, Integer> persistentStats) {
+        PriorityQueue<Map.Entry<String, Integer>> topEntries = new PriorityQueue<>(sketchSize, COUNTER_COMPARATOR.reversed());
         for (Map.Entry<String, Integer> entry : persistentStats.entrySet()) {
-            if (topEntries.size() < heapSize) {
+            if (topEntries.size() < sketchSize) {
                 topEntries.add(entry);
                 continue;
             }
@@ -272,15 +304,18 @@ public class BlockedDomainsStatisticService {
             }
         }
 
-        return topEntries.stream().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(sketchSize);
+        topEntries.forEach(e -> counter.add(e.getKey(), e.getValue()));
+        return counter;
     }
 
     private void updatePersistentStats(String id, Category category) {
         log.debug("persisting {} stats for {}", category, id);
-        Map<String, Integer> heapStats = blockStatsById.get(id).heapStats.get(category);
+        Map<String, Integer> snapshot = blockStatsById.get(id).heapStats.get(category).getAll();
         BTreeMap<String, Integer> persistentStats = createOrOpenPersistentMap(id, category);
-        persistentStats.putAll(heapStats);
-        log.debug("wrote {} entries (now persistent: {})", heapStats.size(), persistentStats.size());
+        persistentStats.keySet().retainAll(snapshot.keySet());
+        persistentStats.putAll(snapshot);
+        log.debug("wrote {} entries", snapshot.size());
     }
 
     private BTreeMap<String, Integer> createOrOpenPersistentMap(String id, Category category) {
@@ -296,17 +331,6 @@ public class BlockedDomainsStatisticService {
         return id + ":" + category;
     }
 
-    private void dropBottomEntriesFromHeap(String id, Category category) {
-        Map<String, Integer> heapStats = blockStatsById.get(id).heapStats.get(category);
-        List<String> toDrop = heapStats.entrySet().stream()
-                .sorted(COUNTER_COMPARATOR)
-                .skip(heapSize)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
-        log.debug("dropping {} entries from {} / {}", toDrop.size(), id, category);
-        toDrop.forEach(heapStats::remove);
-    }
-
     private String normalizeDeviceId(String deviceId) {
         if (deviceId == null) {
             return null;
@@ -318,7 +342,9 @@ public class BlockedDomainsStatisticService {
     private class CacheEntry {
         final String id;
         final Map<Category, BTreeMap<String, Integer>> persistentStats = new EnumMap<>(Category.class);
-        final EnumMap<Category, Map<String, Integer>> heapStats = new EnumMap<>(Category.class);
+        final EnumMap<Category, SpaceSavingCounter<String>> heapStats = new EnumMap<>(Category.class);
+        // categories changed since last snapshot
+        final Set<Category> modified = EnumSet.noneOf(Category.class);
 
         Instant lastReset = Instant.EPOCH;
 
@@ -19,6 +19,7 @@ package org.eblocker.server.common.data.statistic;
 import org.eblocker.server.common.data.IpAddress;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
 import java.util.List;
 import java.util.stream.Stream;
@@ -28,6 +29,12 @@ public interface FilterStatisticsDataSource {
 
     Stream<StatisticsCounter> getCounters(String type, IpAddress ipAddress, Instant begin, Instant end);
 
+    /**
+     * Gets counters aggregated to the given resolution (minutes, hours or days). The instant of an aggregated counter
+     * is the start of its period.
+     */
+    Stream<StatisticsCounter> getCounters(String type, IpAddress ipAddress, Instant begin, Instant end, ChronoUnit resolution);
+
     void incrementCounters(Collection<StatisticsCounter> counters);
 
     void deleteCountersBefore(Instant instant);
@@ -19,6 +19,7 @@ package org.eblocker.server.common.data.statistic;
 import com.google.common.base.Strings;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import org.eblocker.server.common.data.IpAddress;
 import org.eblocker.server.common.data.JedisUtils;
 import org.slf4j.Logger;
@@ -27,95 +28,140 @@ import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Pipeline;
 
-import java.io.Closeable;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Spliterator;
-import java.util.function.Consumer;
-import java.util.function.Predicate;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
+/**
+ * Stores statistics counters as time series in redis hashes.
+ * <p>
+ * Each counter is written at three resolutions: per minute into one hash per hour, per hour into one hash per day
+ * and per day into one hash per month. The hash fields encode the slot within the bucket, the ip address and the
+ * counter name and reason (e.g. <code>pattern_stats_m:2018041009</code> / <code>05:192.168.1.10:queries</code>).
+ * Buckets expire as a whole after the retention period of their resolution so no key scans are needed to remove
+ * old counters.
+ */
 @Singleton
 public class JedisFilterStatisticsDataSource implements FilterStatisticsDataSource {
 
     private static final Logger log = LoggerFactory.getLogger(JedisFilterStatisticsDataSource.class);
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("uuuuMMddHHmm");
 
-    private static final String KEY_PATTERN_COUNTER = "*_stats:[0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9]:*";
-    private static final String KEY_PATTERN_COUNTER_FORMAT = "%s_stats:[0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9][0-9]:%s:*";
+    private static final String KEY_TYPES = "stats_types";
+    private static final String KEY_PATTERN_COUNTER_FORMAT = "%s_stats_%s:*";
 
     private static final String KEY_TOTAL_RESET = "stats_total_reset";
     private static final String KEY_PATTERN_COUNTER_TOTAL = "stats_total:*";
     private static final String KEY_PATTERN_COUNTER_TOTAL_FORMAT = "stats_total:%s:%s%s";
 
     private final JedisPool jedisPool;
+    private final int minuteRetentionDays;
+    private final Map<Rollup, Integer> expireSeconds = new EnumMap<>(Rollup.class);
 
     @Inject
-    public JedisFilterStatisticsDataSource(JedisPool jedisPool) {
+    public JedisFilterStatisticsDataSource(JedisPool jedisPool,
+                                           @Named("filter.stats.days") int minuteRetentionDays,
+                                           @Named("filter.stats.hourly.days") int hourlyRetentionDays,
+                                           @Named("filter.stats.daily.days") int dailyRetentionDays) {
         this.jedisPool = jedisPool;
+        this.minuteRetentionDays = minuteRetentionDays;
+        expireSeconds.put(Rollup.MINUTES, Rollup.MINUTES.getExpireSeconds(minuteRetentionDays));
+        expireSeconds.put(Rollup.HOURS, Rollup.HOURS.getExpireSeconds(hourlyRetentionDays));
+        expireSeconds.put(Rollup.DAYS, Rollup.DAYS.getExpireSeconds(dailyRetentionDays));
     }
 
     @Override
     public Stream<StatisticsCounter> getCounters() {
-        try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> keys = JedisUtils.scanKeys(jedis, KEY_PATTERN_COUNTER, e -> true);
-            return StreamSupport.stream(new StatisticsCounterSpliterator(jedisPool, keys), false);
-        }
+        return getCounters(null, null, null, null, ChronoUnit.MINUTES);
     }
 
     @Override
     public Stream<StatisticsCounter> getCounters(String type, IpAddress ipAddress, Instant begin, Instant end) {
-        if (type == null) {
-            type = "*";
-        }
-
-        String queryIpAddress = ipAddress == null ? "*" : ipToKey(ipAddress);
-
-        Predicate<String> keyPredicate = key -> true;
-        if (begin != null && end != null) {
-            keyPredicate = new KeyDateTimePredicate(begin, end);
-        }
+        return getCounters(type, ipAddress, begin, end, ChronoUnit.MINUTES);
+    }
 
-        String keyPattern = String.format(KEY_PATTERN_COUNTER_FORMAT, type, queryIpAddress);
-        try (Jedis jedis = jedisPool.getResource()) {
-            Set<String> keys = JedisUtils.scanKeys(jedis, keyPattern, keyPredicate);
-            StatisticsCounterSpliterator spliterator = new StatisticsCounterSpliterator(jedisPool, keys);
-            Stream<StatisticsCounter> stream = StreamSupport.stream(spliterator, false);
-            return stream.onClose(spliterator::close);
+    @Override
+    public Stream<StatisticsCounter> getCounters(String type, IpAddress ipAddress, Instant begin, Instant end, ChronoUnit resolution) {
+        Rollup rollup = Rollup.of(resolution);
+        String queryIpAddress = ipAddress == null ? null : ipToKey(ipAddress);
+        boolean bounded = begin != null && end != null;
+
+        Jedis jedis = jedisPool.getResource();
+        try {
+            Collection<String> keys = bounded ? getBucketKeys(jedis, rollup, type, begin, end) : scanBucketKeys(jedis, rollup, type);
+            return keys.stream()
+                    .flatMap(key -> readBucket(jedis, rollup, key, queryIpAddress, bounded ? begin : null, bounded ? end : null))
+                    .onClose(jedis::close);
+        } catch (RuntimeException e) {
+            jedis.close();
+            throw e;
         }
     }
 
     @Override
     public void incrementCounters(Collection<StatisticsCounter> counters) {
+        if (counters.isEmpty()) {
+            return;
+        }
+
+        // aggregate locally first so each bucket field is only incremented once per update
+        Set<String> types = new HashSet<>();
+        Map<Rollup, Map<String, Map<String, Long>>> increments = new EnumMap<>(Rollup.class);
+        for (StatisticsCounter counter : counters) {
+            types.add(counter.getType());
+            ZonedDateTime dateTime = ZonedDateTime.ofInstant(counter.getInstant(), ZoneId.systemDefault());
+            String field = ipToKey(counter.getIpAddress()) + ":" + counter.getName() + (counter.getReason() != null ? ":" + counter.getReason() : "");
+            for (Rollup rollup : Rollup.values()) {
+                increments.computeIfAbsent(rollup, r -> new HashMap<>())
+                        .computeIfAbsent(rollup.getKey(counter.getType(), dateTime), k -> new HashMap<>())
+                        .merge(rollup.getSlot(dateTime) + ":" + field, (long) counter.getValue(), Long::sum);
+            }
+        }
+
         try (Jedis jedis = jedisPool.getResource()) {
             Pipeline pipeline = jedis.pipelined();
-            counters.stream()
-                    .map(this::mapCounterToKeyValue)
-                    .forEach(t -> pipeline.incrBy(t.key, t.value));
+            pipeline.sadd(KEY_TYPES, types.toArray(new String[0]));
+            increments.forEach((rollup, buckets) -> buckets.forEach((key, fields) -> {
+                fields.forEach((field, value) -> pipeline.hincrBy(key, field, value));
+                pipeline.expire(key, expireSeconds.get(rollup));
+            }));
             pipeline.sync();
         } catch (Exception e) {
             log.error("failed to increment statistics counters:", e);
         }
     }
 
+    /**
+     * Deletes all per-minute buckets ending before the given instant. Coarser buckets are only removed by expiration.
+     */
     @Override
     public void deleteCountersBefore(Instant instant) {
         try (Jedis jedis = jedisPool.getResource()) {
-            Predicate<String> keyPredicate = new KeyDateTimePredicate(Instant.EPOCH, instant);
-            Set<String> keys = JedisUtils.scanKeys(jedis, KEY_PATTERN_COUNTER, keyPredicate);
-            Pipeline pipeline = jedis.pipelined();
-            keys.forEach(pipeline::del);
-            pipeline.sync();
+            Instant begin = instant.minus(minuteRetentionDays, ChronoUnit.DAYS);
+            Set<String> keys = new HashSet<>();
+            for (String type : jedis.smembers(KEY_TYPES)) {
+                for (ZonedDateTime t = Rollup.MINUTES.getBucketStart(begin); !t.plus(1, ChronoUnit.HOURS).toInstant().isAfter(instant); t = t.plus(1, ChronoUnit.HOURS)) {
+                    keys.add(Rollup.MINUTES.getKey(type, t));
+                }
+            }
+            if (!keys.isEmpty()) {
+                jedis.del(keys.toArray(new String[0]));
+            }
         } catch (Exception e) {
             log.error("failed to delete counters", e);
         }
@@ -124,15 +170,16 @@ public class JedisFilterStatisticsDataSource implements FilterStatisticsDataSour
     @Override
     public List<TotalCounter> getTotalCounters(String type) {
         try (Jedis jedis = jedisPool.getResource()) {
-            String[] keys = jedis.keys(KEY_PATTERN_COUNTER_TOTAL).toArray(new String[0]);
-            if (keys.length == 0) {
+            List<String> keys = new ArrayList<>(JedisUtils.scanKeys(jedis, KEY_PATTERN_COUNTER_TOTAL));
+            if (keys.isEmpty()) {
                 return Collections.emptyList();
             }
-            List<String> values = jedis.mget(keys);
+            List<String> values = JedisUtils.mget(jedis, keys);
             List<TotalCounter> totalCounters = new ArrayList<>();
-            for (int i = 0; i < keys.length; ++i) {
-                String[] splitKey = keys[i].split(":");
-                if (type == null || type.equals(splitKey[1])) {
+            for (int i = 0; i < keys.size(); ++i) {
+                String[] splitKey = keys.get(i).split(":");
+                // counter may have been reset concurrently
+                if (values.get(i) != null && (type == null || type.equals(splitKey[1]))) {
                     String reason = splitKey.length > 3 ? splitKey[3] : null;
                     int value = Integer.parseInt(values.get(i));
                     totalCounters.add(new TotalCounter(splitKey[1], splitKey[2], reason, value));
@@ -165,43 +212,49 @@ public class JedisFilterStatisticsDataSource implements FilterStatisticsDataSour
     @Override
     public void resetTotalCounters() {
         try (Jedis jedis = jedisPool.getResource()) {
-            String[] keys = jedis.keys(KEY_PATTERN_COUNTER_TOTAL).toArray(new String[0]);
-            if (keys.length != 0) {
-                jedis.del(keys);
+            Set<String> keys = JedisUtils.scanKeys(jedis, KEY_PATTERN_COUNTER_TOTAL);
+            if (!keys.isEmpty()) {
+                jedis.del(keys.toArray(new String[0]));
             }
             jedis.set(KEY_TOTAL_RESET, String.valueOf(System.currentTimeMillis()));
         }
     }
 
-    private StatisticsCounter mapKeyValueToCounter(String key, String value) {
-        String[] splitKey = key.split(":");
-        String type = splitKey[0].replace("_stats", "");
-        Instant instant = LocalDateTime.parse(splitKey[1], DATE_TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant();
-        IpAddress ipAddress = keyToIp(splitKey[2]);
-        String name = splitKey[3];
-        String reason = splitKey.length == 5 ? splitKey[4] : null;
-        int count = Integer.parseInt(value);
-        return new StatisticsCounter(instant, type, ipAddress, name, reason, count);
+    private Collection<String> getBucketKeys(Jedis jedis, Rollup rollup, String type, Instant begin, Instant end) {
+        Collection<String> types = type != null ? Collections.singleton(type) : jedis.smembers(KEY_TYPES);
+        // local times may repeat when daylight saving time ends so keys are collected in a set
+        Set<String> keys = new LinkedHashSet<>();
+        for (String t : types) {
+            for (ZonedDateTime bucket = rollup.getBucketStart(begin); bucket.toInstant().isBefore(end); bucket = bucket.plus(1, rollup.bucketUnit)) {
+                keys.add(rollup.getKey(t, bucket));
+            }
+        }
+        return keys;
     }
 
-    private Tuple<String, Integer> mapCounterToKeyValue(StatisticsCounter counter) {
-        Tuple<String, Integer> tuple = new Tuple<>();
-        tuple.key = String.format("%s_stats:%s:%s:%s%s",
-                counter.getType(),
-                DATE_TIME_FORMATTER.format(ZonedDateTime.ofInstant(counter.getInstant(), ZoneId.systemDefault())),
-                ipToKey(counter.getIpAddress()),
-                counter.getName(),
-                counter.getReason() != null ? ":" + counter.getReason() : "");
-        tuple.value = counter.getValue();
-        return tuple;
+    private Collection<String> scanBucketKeys(Jedis jedis, Rollup rollup, String type) {
+        return JedisUtils.scanKeys(jedis, String.format(KEY_PATTERN_COUNTER_FORMAT, type != null ? type : "*", rollup.keySuffix));
     }
 
-    private class Tuple<K, V> {
-        K key;
-        V value;
-
-        Tuple() {
+    private Stream<StatisticsCounter> readBucket(Jedis jedis, Rollup rollup, String key, String ipAddress, Instant begin, Instant end) {
+        int separator = key.indexOf(':');
+        String type = key.substring(0, key.lastIndexOf("_stats_", separator));
+        String bucket = key.substring(separator + 1);
+        List<StatisticsCounter> counters = new ArrayList<>();
+        for (Map.Entry<String, String> entry : jedis.hgetAll(key).entrySet()) {
+            String[] splitField = entry.getKey().split(":");
+            if (ipAddress != null && !ipAddress.equals(splitField[1])) {
+                continue;
+            }
+            Instant instant = rollup.getInstant(bucket, splitField[0]);
+            if (begin != null && (instant.isBefore(begin) || !instant.isBefore(end))) {
+                continue;
+            }
+            String reason = splitField.length == 4 ? splitField[3] : null;
+            int count = Integer.parseInt(entry.getValue());
+            counters.add(new StatisticsCounter(instant, type, keyToIp(splitField[1]), splitField[2], reason, count));
         }
+        return counters.stream();
     }
 
     private static IpAddress keyToIp(String key) {
@@ -212,83 +265,61 @@ public class JedisFilterStatisticsDataSource implements FilterStatisticsDataSour
         return ip.toString().replace(':', '_');
     }
 
-    private class StatisticsCounterSpliterator implements Spliterator<StatisticsCounter>, Closeable {
-        private static final int NUM = 256;
-
-        private final Jedis jedis;
-        private final Set<String> keys;
-
-        private final List<String> fetchedKeys = new ArrayList<>(NUM);
-        private List<String> fetchedValues = Collections.emptyList();
-        private int index;
-
-        StatisticsCounterSpliterator(JedisPool jedisPool, Set<String> keys) {
-            this.jedis = jedisPool.getResource();
-            this.keys = keys;
+    /**
+     * Resolutions counters are kept at. A bucket is identified by the formatted start of its period and contains
+     * one two-digit slot per resolution unit.
+     */
+    private enum Rollup {
+        MINUTES(ChronoUnit.MINUTES, ChronoUnit.HOURS, "m", "uuuuMMddHH", "mm", "00", ""),
+        HOURS(ChronoUnit.HOURS, ChronoUnit.DAYS, "h", "uuuuMMdd", "HH", "00", "00"),
+        DAYS(ChronoUnit.DAYS, ChronoUnit.MONTHS, "d", "uuuuMM", "dd", "01", "0000");
+
+        private final ChronoUnit resolution;
+        private final ChronoUnit bucketUnit;
+        private final String keySuffix;
+        private final DateTimeFormatter bucketFormatter;
+        private final DateTimeFormatter slotFormatter;
+        private final String firstSlot;
+        private final String padding;
+
+        Rollup(ChronoUnit resolution, ChronoUnit bucketUnit, String keySuffix, String bucketPattern, String slotPattern, String firstSlot, String padding) {
+            this.resolution = resolution;
+            this.bucketUnit = bucketUnit;
+            this.keySuffix = keySuffix;
+            this.bucketFormatter = DateTimeFormatter.ofPattern(bucketPattern);
+            this.slotFormatter = DateTimeFormatter.ofPattern(slotPattern);
+            this.firstSlot = firstSlot;
+            this.padding = padding;
         }
 
-        @Override
-        public boolean tryAdvance(Consumer<? super StatisticsCounter> action) {
-            if (index == fetchedValues.size() && !fillCache()) {
-                return false;
+        static Rollup of(ChronoUnit resolution) {
+            for (Rollup rollup : values()) {
+                if (rollup.resolution == resolution) {
+                    return rollup;
+                }
             }
-
-            action.accept(mapKeyValueToCounter(fetchedKeys.get(index), fetchedValues.get(index)));
-            ++index;
-            return true;
+            throw new IllegalArgumentException("unsupported resolution " + resolution);
         }
 
-        @Override
-        public Spliterator<StatisticsCounter> trySplit() {
-            return null;
+        String getKey(String type, ZonedDateTime dateTime) {
+            return type + "_stats_" + keySuffix + ":" + bucketFormatter.format(dateTime);
         }
 
-        @Override
-        public long estimateSize() {
-            return Long.MAX_VALUE;
+        String getSlot(ZonedDateTime dateTime) {
+            return slotFormatter.format(dateTime);
         }
 
-        @Override
-        public int characteristics() {
-            return DISTINCT | NONNULL;
+        Instant getInstant(String bucket, String slot) {
+            return LocalDateTime.parse(bucket + slot + padding, DATE_TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant();
         }
 
-        @Override
-        public void close() {
-            this.jedis.close();
-        }
-
-        private boolean fillCache() {
-            if (keys.isEmpty()) {
-                return false;
-            }
-
-            index = 0;
-            fetchedKeys.clear();
-            int n = 0;
-            for (Iterator<String> i = keys.iterator(); i.hasNext() && n < NUM; ++n) {
-                fetchedKeys.add(i.next());
-                i.remove();
-            }
-
-            fetchedValues = jedis.mget(fetchedKeys.toArray(new String[0]));
-            return true;
-        }
-    }
-
-    private class KeyDateTimePredicate implements Predicate<String> {
-        private final String begin;
-        private final String end;
-
-        KeyDateTimePredicate(Instant begin, Instant end) {
-            this.begin = DATE_TIME_FORMATTER.format(ZonedDateTime.ofInstant(begin, ZoneId.systemDefault()));
-            this.end = DATE_TIME_FORMATTER.format(ZonedDateTime.ofInstant(end, ZoneId.systemDefault()));
+        ZonedDateTime getBucketStart(Instant instant) {
+            String bucket = bucketFormatter.format(ZonedDateTime.ofInstant(instant, ZoneId.systemDefault()));
+            return ZonedDateTime.ofInstant(getInstant(bucket, firstSlot), ZoneId.systemDefault());
         }
 
-        @Override
-        public boolean test(String s) {
-            String t = s.split(":")[1];
-            return t.compareTo(begin) >= 0 && t.compareTo(end) < 0;
+        int getExpireSeconds(int retentionDays) {
+            return (int) Duration.ofDays(retentionDays).plus(bucketUnit.getDuration()).getSeconds();
         }
     }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the accounting counters from an iptables rules dump without allocating objects per line. Recognized rules:
+ * <pre>
+ * [packets:bytes] -A ACCOUNT-IN -s a.b.c.d/32 -i eth0 -j RETURN
+ * [packets:bytes] -A ACCOUNT-OUT -d a.b.c.d/32 -o eth0 -j RETURN
+ * </pre>
+ * All other lines are ignored. Instances are not thread-safe as the read buffer is reused.
+ */
+public class IpTablesCounterReader {
+
+    public interface CounterConsumer {
+        /**
+         * @param in      true for incoming, false for outgoing traffic
+         * @param ip      ipv4 address in network byte order
+         * @param packets packet counter of the rule
+         * @param bytes   byte counter of the rule
+         */
+        void accept(boolean in, int ip, long packets, long bytes);
+    }
+
+    private static final byte[] ACCOUNT_IN = ascii(" -A ACCOUNT-IN -s ");
+    private static final byte[] ACCOUNT_IN_SUFFIX = ascii("/32 -i eth0 -j RETURN");
+    private static final byte[] ACCOUNT_OUT = ascii(" -A ACCOUNT-OUT -d ");
+    private static final byte[] ACCOUNT_OUT_SUFFIX = ascii("/32 -o eth0 -j RETURN");
+
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    // parser state
+    private int pos;
+    private long value;
+
+    public void read(Path path, CounterConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > buffer.capacity()) {
+                buffer = ByteBuffer.allocate((int) Math.max(size, 2L * buffer.capacity()));
+            }
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // read until buffer is full or end of file is reached
+            }
+        }
+        read(buffer.array(), buffer.position(), consumer);
+    }
+
+    void read(byte[] data, int length, CounterConsumer consumer) {
+        int start = 0;
+        while (start < length) {
+            int end = start;
+            while (end < length && data[end] != '\n') {
+                ++end;
+            }
+            readLine(data, start, end, consumer);
+            start = end + 1;
+        }
+    }
+
+    private void readLine(byte[] data, int start, int end, CounterConsumer consumer) {
+        pos = start;
+        if (!skip(data, end, '[') || !parseNumber(data, end, 19)) {
+            return;
+        }
+        long packets = value;
+        if (!skip(data, end, ':') || !parseNumber(data, end, 19)) {
+            return;
+        }
+        long bytes = value;
+        if (!skip(data, end, ']')) {
+            return;
+        }
+
+        boolean in;
+        if (skip(data, end, ACCOUNT_IN)) {
+            in = true;
+        } else if (skip(data, end, ACCOUNT_OUT)) {
+            in = false;
+        } else {
+            return;
+        }
+
+        int ip = 0;
+        for (int i = 0; i < 4; ++i) {
+            if (i > 0 && !skip(data, end, '.') || !parseNumber(data, end, 3) || value > 255) {
+                return;
+            }
+            ip = ip << 8 | (int) value;
+        }
+
+        if (skip(data, end, in ? ACCOUNT_IN_SUFFIX : ACCOUNT_OUT_SUFFIX)) {
+            consumer.accept(in, ip, packets, bytes);
+        }
+    }
+
+    private boolean skip(byte[] data, int end, char c) {
+        if (pos < end && data[pos] == c) {
+            ++pos;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean skip(byte[] data, int end, byte[] token) {
+        if (end - pos < token.length) {
+            return false;
+        }
+        for (int i = 0; i < token.length; ++i) {
+            if (data[pos + i] != token[i]) {
+                return false;
+            }
+        }
+        pos += token.length;
+        return true;
+    }
+
+    private boolean parseNumber(byte[] data, int end, int maxDigits) {
+        int digits = 0;
+        value = 0;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            if (++digits > maxDigits) {
+                return false;
+            }
+            value = value * 10 + data[pos] - '0';
+            ++pos;
+        }
+        return digits > 0 && value >= 0;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
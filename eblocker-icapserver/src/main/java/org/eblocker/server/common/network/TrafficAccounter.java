@@ -19,9 +19,10 @@ package org.eblocker.server.common.network;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import org.eblocker.server.common.collections.IntIntHashMap;
 import org.eblocker.server.common.data.DataSource;
 import org.eblocker.server.common.data.Device;
-import org.eblocker.server.common.data.IpAddress;
+import org.eblocker.server.common.data.Ip4Address;
 import org.eblocker.server.common.data.TrafficAccount;
 import org.eblocker.server.common.data.systemstatus.SubSystem;
 import org.eblocker.server.common.startup.SubSystemInit;
@@ -36,22 +37,12 @@ import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
-import java.util.function.BiConsumer;
-import java.util.function.BinaryOperator;
 import java.util.function.Function;
-import java.util.function.Supplier;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collector;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -59,17 +50,22 @@ import java.util.stream.Collectors;
 public class TrafficAccounter {
     private static final Logger logger = LoggerFactory.getLogger(TrafficAccounter.class);
 
-    private static final Pattern ACCOUNT_IN_PATTERN = Pattern.compile("\\[(\\d+):(\\d+)\\] -A ACCOUNT-IN -s (\\d+\\.\\d+\\.\\d+\\.\\d+)/32 -i eth0 -j RETURN");
-    private static final Pattern ACCOUNT_OUT_PATTERN = Pattern.compile("\\[(\\d+):(\\d+)\\] -A ACCOUNT-OUT -d (\\d+\\.\\d+\\.\\d+\\.\\d+)/32 -o eth0 -j RETURN");
+    private static final int NO_SLOT = -1;
 
     private final String dumpIpTablesRulesScript;
     private final DataSource dataSource;
     private final DeviceService deviceService;
     private final ScriptRunner scriptRunner;
+    private final IpTablesCounterReader counterReader = new IpTablesCounterReader();
 
     private File ipTablesDumpFile;
     private Map<String, TrafficAccount> totalsByMac = new HashMap<>();
-    private Map<String, TrafficAccount> lastUpdateByMac = new HashMap<>();
+
+    // counters are kept in slots per device which are resolved by ip, ip to slot mapping is dropped on device changes
+    private final IntIntHashMap slotByIp = new IntIntHashMap(256);
+    private final Map<String, Integer> slotByMac = new HashMap<>();
+    private final List<DeviceCounters> slots = new ArrayList<>();
+    private volatile boolean devicesChanged;
 
     @Inject
     public TrafficAccounter(@Named("network.statistic.dumpIptablesCommand") String dumpIpTablesRulesScript,
@@ -84,6 +80,22 @@ public class TrafficAccounter {
     public void init() {
         initIpTablesDumpFile();
         initTotalsCounters();
+        deviceService.addListener(new DeviceService.DeviceChangeListener() {
+            @Override
+            public void onChange(Device device) {
+                invalidateSlots();
+            }
+
+            @Override
+            public void onDelete(Device device) {
+                invalidateSlots();
+            }
+
+            @Override
+            public void onReset(Device device) {
+                invalidateSlots();
+            }
+        });
     }
 
     public TrafficAccount getTrafficAccount(Device device) {
@@ -107,126 +119,108 @@ public class TrafficAccounter {
         totalsByMac = dataSource.getAll(TrafficAccount.class).stream().collect(Collectors.toMap(TrafficAccount::getMac, Function.identity()));
     }
 
+    private void invalidateSlots() {
+        // not cleared immediately to avoid locking in device service's listener notification
+        devicesChanged = true;
+    }
+
     public synchronized void update() {
         try {
-            List<String> dump = getIpTableRulesDump();
-            List<TrafficAccount> counters = extractCounters(dump);
-            updateTotals(counters);
+            dumpIpTableRules();
+            if (devicesChanged) {
+                devicesChanged = false;
+                slotByIp.clear();
+            }
+            slots.forEach(DeviceCounters::resetCurrent);
+            counterReader.read(ipTablesDumpFile.toPath(), this::count);
+            updateTotals();
+        } catch (IOException e) {
+            logger.error("failed to read ip tables rules dump", e);
         } catch (IpTablesException e) {
             logger.error("failed to update network activity", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private List<String> getIpTableRulesDump() throws IpTablesException {
+    private void dumpIpTableRules() throws IpTablesException, InterruptedException {
         try {
             int exitCode = scriptRunner.runScript(dumpIpTablesRulesScript, ipTablesDumpFile.getAbsolutePath());
             if (exitCode != 0) {
                 throw new IpTablesException("ip tables rules dump script failed with exit code " + exitCode);
             }
-            return Files.readAllLines(ipTablesDumpFile.toPath());
         } catch (IOException e) {
             throw new IpTablesException("failed to get ip tables rules dump", e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return Collections.emptyList();
         }
     }
 
-    private List<TrafficAccount> extractCounters(List<String> dump) {
-        return dump.stream()
-                .map(this::extractCounter)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
-    }
-
-    private TrafficAccount extractCounter(String line) {
-        TrafficAccount counter = extractInCounter(line);
-        if (counter != null) {
-            return counter;
+    private void count(boolean in, int ip, long packets, long bytes) {
+        int slot = slotByIp.get(ip, NO_SLOT);
+        if (slot == NO_SLOT) {
+            slot = resolveSlot(ip);
+            if (slot == NO_SLOT) {
+                return;
+            }
         }
 
-        return extractOutCounter(line);
-    }
-
-    private TrafficAccount extractInCounter(String line) {
-        Counter counter = extractCounter(ACCOUNT_IN_PATTERN, line);
-        if (counter != null) {
-            TrafficAccount account = new TrafficAccount();
-            account.setMac(counter.device.getHardwareAddress(false));
-            account.setPacketsIn(counter.packets);
-            account.setBytesIn(counter.bytes);
-            return account;
+        DeviceCounters counters = slots.get(slot);
+        counters.seen = true;
+        if (in) {
+            counters.packetsIn += packets;
+            counters.bytesIn += bytes;
+        } else {
+            counters.packetsOut += packets;
+            counters.bytesOut += bytes;
         }
-
-        return null;
     }
 
-    private TrafficAccount extractOutCounter(String line) {
-        Counter counter = extractCounter(ACCOUNT_OUT_PATTERN, line);
-        if (counter != null) {
-            TrafficAccount account = new TrafficAccount();
-            account.setMac(counter.device.getHardwareAddress(false));
-            account.setPacketsOut(counter.packets);
-            account.setBytesOut(counter.bytes);
-            return account;
+    private int resolveSlot(int ip) {
+        Ip4Address address = Ip4Address.of(new byte[]{ (byte) (ip >>> 24), (byte) (ip >>> 16), (byte) (ip >>> 8), (byte) ip });
+        Device device = deviceService.getDeviceByIp(address);
+        if (device == null) {
+            logger.warn("no device known for ip {}", address);
+            return NO_SLOT;
         }
 
-        return null;
+        int slot = slotByMac.computeIfAbsent(device.getHardwareAddress(false), mac -> {
+            slots.add(new DeviceCounters(mac));
+            return slots.size() - 1;
+        });
+        slotByIp.put(ip, slot);
+        return slot;
     }
 
-    private Counter extractCounter(Pattern pattern, String line) {
-        Matcher matcher = pattern.matcher(line);
-        if (matcher.find()) {
-            IpAddress ip = IpAddress.parse(matcher.group(3));
-            Device device = deviceService.getDeviceByIp(ip);
-            if (device == null) {
-                logger.warn("no device known for ip {}", ip);
-                return null;
+    private void updateTotals() {
+        for (DeviceCounters counters : slots) {
+            if (!counters.seen) {
+                // accounting rules have been removed, counting will start from zero if they are re-created
+                counters.resetLast();
+                continue;
             }
-            return new Counter(device, matcher.group(1), matcher.group(2));
-        }
-        return null;
-    }
 
-    private void updateTotals(List<TrafficAccount> counters) {
-        // update totals
-        Map<String, TrafficAccount> countersByMac = counters.stream()
-                .collect(Collectors.groupingBy(TrafficAccount::getMac, counterCollector()));
-        countersByMac.values().forEach(this::updateCounter);
-
-        // remove any unreferenced lastUpdate counter
-        Iterator i = lastUpdateByMac.keySet().iterator();
-        while (i.hasNext()) {
-            if (!countersByMac.containsKey(i.next())) {
-                i.remove();
+            counters.updateDelta();
+            if (counters.deltaBytesIn != 0 || counters.deltaBytesOut != 0) {
+                updateTotal(counters);
             }
         }
     }
 
-    private void updateCounter(TrafficAccount counter) {
-        TrafficAccount lastUpdate = lastUpdateByMac.get(counter.getMac());
-        lastUpdateByMac.put(counter.getMac(), counter);
-
-        if (lastUpdate == null) {
-            lastUpdate = new TrafficAccount();
+    private void updateTotal(DeviceCounters counters) {
+        TrafficAccount total = totalsByMac.get(counters.mac);
+        if (total == null) {
+            total = new TrafficAccount();
+            total.setMac(counters.mac);
+            // TODO: if datasource would accept long as id mac address could be used directly as key
+            total.setId(dataSource.nextId(TrafficAccount.class));
+            totalsByMac.put(total.getMac(), total);
         }
 
-        TrafficAccount delta = TrafficAccount.sub(counter, lastUpdate);
-
-        if (delta.getBytesIn() != 0 || delta.getBytesOut() != 0) {
-            TrafficAccount total = totalsByMac.get(counter.getMac());
-            if (total == null) {
-                total = new TrafficAccount();
-                total.setMac(counter.getMac());
-                // TODO: if datasource would accept long as id mac address could be used directly as key
-                total.setId(dataSource.nextId(TrafficAccount.class));
-                totalsByMac.put(total.getMac(), total);
-            }
-
-            total.add(delta);
-            total.setLastActivity(new Date());
-            dataSource.save(total, total.getId());
-        }
+        total.setPacketsIn(total.getPacketsIn() + counters.deltaPacketsIn);
+        total.setBytesIn(total.getBytesIn() + counters.deltaBytesIn);
+        total.setPacketsOut(total.getPacketsOut() + counters.deltaPacketsOut);
+        total.setBytesOut(total.getBytesOut() + counters.deltaBytesOut);
+        total.setLastActivity(new Date());
+        dataSource.save(total, total.getId());
     }
 
     private class IpTablesException extends Exception {
@@ -239,49 +233,53 @@ public class TrafficAccounter {
         }
     }
 
-    private static Collector<TrafficAccount, TrafficAccount, TrafficAccount> counterCollector() {
-        return new Collector<TrafficAccount, TrafficAccount, TrafficAccount>() {
-            @Override
-            public Supplier<TrafficAccount> supplier() {
-                return TrafficAccount::new;
-            }
-
-            @Override
-            public BiConsumer<TrafficAccount, TrafficAccount> accumulator() {
-                return (a, b) -> {
-                    a.setMac(b.getMac());
-                    a.add(b);
-                };
-            }
-
-            @Override
-            public BinaryOperator<TrafficAccount> combiner() {
-                return (a, b) -> TrafficAccount.add(a, b);
-            }
-
-            @Override
-            public Function<TrafficAccount, TrafficAccount> finisher() {
-                return Function.identity();
-            }
+    /**
+     * Counters of a single device: the values of the current and last dump and the difference between both.
+     */
+    private static class DeviceCounters {
+        final String mac;
+        boolean seen;
+        long packetsIn;
+        long bytesIn;
+        long packetsOut;
+        long bytesOut;
+        long lastPacketsIn;
+        long lastBytesIn;
+        long lastPacketsOut;
+        long lastBytesOut;
+        long deltaPacketsIn;
+        long deltaBytesIn;
+        long deltaPacketsOut;
+        long deltaBytesOut;
+
+        DeviceCounters(String mac) {
+            this.mac = mac;
+        }
 
-            @Override
-            public Set<Characteristics> characteristics() {
-                return Collections.unmodifiableSet(EnumSet.of(Collector.Characteristics.CONCURRENT,
-                        Collector.Characteristics.UNORDERED,
-                        Collector.Characteristics.IDENTITY_FINISH));
-            }
-        };
-    }
+        void resetCurrent() {
+            seen = false;
+            packetsIn = 0;
+            bytesIn = 0;
+            packetsOut = 0;
+            bytesOut = 0;
+        }
 
-    private class Counter {
-        Device device;
-        long bytes;
-        long packets;
+        void resetLast() {
+            lastPacketsIn = 0;
+            lastBytesIn = 0;
+            lastPacketsOut = 0;
+            lastBytesOut = 0;
+        }
 
-        Counter(Device device, String packets, String bytes) {
-            this.device = device;
-            this.packets = Long.parseLong(packets);
-            this.bytes = Long.parseLong(bytes);
+        void updateDelta() {
+            deltaPacketsIn = packetsIn - lastPacketsIn;
+            deltaBytesIn = bytesIn - lastBytesIn;
+            deltaPacketsOut = packetsOut - lastPacketsOut;
+            deltaBytesOut = bytesOut - lastBytesOut;
+            lastPacketsIn = packetsIn;
+            lastBytesIn = bytesIn;
+            lastPacketsOut = packetsOut;
+            lastBytesOut = bytesOut;
         }
     }
 
@@ -30,4 +30,5 @@ public class Channels {
     public static final String IP6_IN = "ip6:in";
     public static final String IP6_OUT = "ip6:out";
     public static final String DNS_CONFIG = "dns_config";
+    public static final String DEVICE_UPDATE = "device_update";
 }
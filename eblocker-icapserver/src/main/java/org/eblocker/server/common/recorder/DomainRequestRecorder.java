@@ -27,13 +27,17 @@ import java.time.Clock;
 import java.time.Instant;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Stream;
 
 /**
  * Records requested domains in bins of a certain duration (e.g. one hour).
  * Bins expire after a configured time (e.g. one day).
+ * <p>
+ * Each device is recorded independently and only locks its own recording, so concurrent requests of different
+ * devices do not contend with each other.
  */
 @Singleton
 public class DomainRequestRecorder {
@@ -42,8 +46,11 @@ public class DomainRequestRecorder {
     private final Clock clock;
     private final long binLengthInSeconds;
 
-    // Mapping: deviceId => RecordedDomainBin
-    private Map<String, RecordedDomainBin> currentBins;
+    // Mapping: deviceId => recording holding the current bin
+    private final ConcurrentMap<String, DeviceRecording> recordings = new ConcurrentHashMap<>();
+
+    // orders writes of completed bins after concurrent writes of snapshots of the same bins
+    private final Object saveLock = new Object();
 
     @Inject
     public DomainRequestRecorder(@Named("domainRecorder.binLengthInSeconds") long binLengthInSeconds,
@@ -51,23 +58,38 @@ public class DomainRequestRecorder {
                                  Clock clock) {
         this.dataSource = dataSource;
         this.clock = clock;
-        currentBins = new Hashtable<>();
         this.binLengthInSeconds = binLengthInSeconds;
     }
 
-    public synchronized void recordRequest(String deviceId, String domain, boolean blocked, boolean patternRequest) {
+    public void recordRequest(String deviceId, String domain, boolean blocked, boolean patternRequest) {
         Instant now = clock.instant();
 
-        RecordedDomainBin bin = currentBins.computeIfAbsent(deviceId, k -> loadOrCreateBin(k, now));
-        if (!bin.isWritable(now)) {
-            RecordedDomainBin current = currentBins.remove(deviceId);
-            if (!isExpired(current)) {
-                dataSource.save(deviceId, current);
+        RecordedDomainBin completed = null;
+        DeviceRecording recording = getRecording(deviceId);
+        synchronized (recording) {
+            if (recording.bin == null) {
+                recording.bin = loadOrCreateBin(deviceId, now);
+            }
+            if (!recording.bin.isWritable(now)) {
+                completed = recording.bin;
+                recording.bin = createBin(now);
+            }
+            recording.bin.update(domain, blocked, patternRequest);
+        }
+
+        if (completed != null && !isExpired(completed)) {
+            synchronized (saveLock) {
+                dataSource.save(deviceId, completed);
             }
-            bin = createBin(now);
-            currentBins.put(deviceId, bin);
         }
-        bin.update(domain, blocked, patternRequest);
+    }
+
+    private DeviceRecording getRecording(String deviceId) {
+        DeviceRecording recording = recordings.get(deviceId);
+        if (recording == null) {
+            recording = recordings.computeIfAbsent(deviceId, k -> new DeviceRecording());
+        }
+        return recording;
     }
 
     private RecordedDomainBin loadOrCreateBin(String deviceId, Instant now) {
@@ -85,7 +107,7 @@ public class DomainRequestRecorder {
         Stream<RecordedDomainBin> bins = dataSource.getBins(deviceId).stream()
                 .sorted(Comparator.comparing(RecordedDomainBin::getEnd));
 
-        RecordedDomainBin current = currentBins.get(deviceId);
+        RecordedDomainBin current = getCurrentBin(deviceId);
         if (current != null && !isExpired(current)) {
             bins = Stream.concat(
                     // the current bin might have been saved already, so remove it:
@@ -98,6 +120,16 @@ public class DomainRequestRecorder {
         return result;
     }
 
+    private RecordedDomainBin getCurrentBin(String deviceId) {
+        DeviceRecording recording = recordings.get(deviceId);
+        if (recording == null) {
+            return null;
+        }
+        synchronized (recording) {
+            return recording.bin != null ? recording.bin.copy() : null;
+        }
+    }
+
     private boolean isExpired(RecordedDomainBin bin) {
         return clock.instant().isAfter(dataSource.getExpiration(bin));
     }
@@ -109,12 +141,35 @@ public class DomainRequestRecorder {
         }
     }
 
-    public synchronized void resetRecording(String deviceId) {
-        dataSource.removeBins(deviceId);
-        currentBins.remove(deviceId);
+    public void resetRecording(String deviceId) {
+        DeviceRecording recording = getRecording(deviceId);
+        synchronized (recording) {
+            dataSource.removeBins(deviceId);
+            recording.bin = null;
+        }
+    }
+
+    /**
+     * Saves copies of all current bins in one batch. Recording continues while the copies are written.
+     */
+    public void saveCurrent() {
+        synchronized (saveLock) {
+            Map<String, RecordedDomainBin> bins = new HashMap<>();
+            recordings.forEach((deviceId, recording) -> {
+                synchronized (recording) {
+                    if (recording.bin != null) {
+                        bins.put(deviceId, recording.bin.copy());
+                    }
+                }
+            });
+            if (!bins.isEmpty()) {
+                LOG.debug("saving {} recorded domain bins", bins.size());
+                dataSource.saveAll(bins);
+            }
+        }
     }
 
-    public synchronized void saveCurrent() {
-        currentBins.forEach(dataSource::save);
+    private static class DeviceRecording {
+        private RecordedDomainBin bin;
     }
 }
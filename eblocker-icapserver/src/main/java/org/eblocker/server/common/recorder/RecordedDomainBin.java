@@ -19,30 +19,70 @@ package org.eblocker.server.common.recorder;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
 /**
  * Records domains requested in a defined time interval
+ * <p>
+ * The counters of all domains are kept in a single int array, each domain occupying {@link #FIELDS}
+ * consecutive entries. This avoids one counter object per domain and makes copies cheap.
  */
 public class RecordedDomainBin {
-    private Instant begin, end;
+    private static final byte FORMAT_VERSION = 1;
 
-    @JsonProperty("requests")
-    private Map<String, RecordedDomainCounter> requests;
+    private static final int BLOCKED = 0;
+    private static final int COUNT = 1;
+    private static final int PATTERN_BLOCKED = 2;
+    private static final int PATTERN_PASSED = 3;
+    private static final int FIELDS = 4;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Instant begin, end;
+
+    // offset of each domain's counters in the counters array
+    private final Map<String, Integer> offsets;
+    private int[] counters;
 
     @JsonCreator
     public RecordedDomainBin(@JsonProperty("begin") Instant begin,
                              @JsonProperty("end") Instant end) {
+        this(begin, end, new HashMap<>(), new int[INITIAL_CAPACITY * FIELDS]);
+    }
+
+    private RecordedDomainBin(Instant begin, Instant end, Map<String, Integer> offsets, int[] counters) {
         this.begin = begin;
         this.end = end;
-        this.requests = new HashMap<>();
+        this.offsets = offsets;
+        this.counters = counters;
     }
 
     public void update(String domain, boolean blocked, boolean patternRequest) {
-        requests.computeIfAbsent(domain, d -> new RecordedDomainCounter()).update(blocked, patternRequest);
+        int offset = getOffset(domain);
+        if (patternRequest) {
+            counters[offset + (blocked ? PATTERN_BLOCKED : PATTERN_PASSED)]++;
+        } else {
+            counters[offset + BLOCKED] = blocked ? 1 : 0;
+            counters[offset + COUNT]++;
+        }
+    }
+
+    private int getOffset(String domain) {
+        Integer offset = offsets.get(domain);
+        if (offset == null) {
+            offset = offsets.size() * FIELDS;
+            if (offset == counters.length) {
+                counters = Arrays.copyOf(counters, counters.length * 2);
+            }
+            offsets.put(domain, offset);
+        }
+        return offset;
     }
 
     public Instant getEnd() {
@@ -53,10 +93,70 @@ public class RecordedDomainBin {
         return begin;
     }
 
+    @JsonProperty("requests")
     public Map<String, RecordedDomainCounter> getRequests() {
+        Map<String, RecordedDomainCounter> requests = new HashMap<>(offsets.size() * 4 / 3 + 1);
+        offsets.forEach((domain, offset) -> requests.put(domain, new RecordedDomainCounter(
+                counters[offset + BLOCKED] != 0,
+                counters[offset + COUNT],
+                counters[offset + PATTERN_BLOCKED],
+                counters[offset + PATTERN_PASSED])));
         return requests;
     }
 
+    @JsonProperty("requests")
+    private void setRequests(Map<String, RecordedDomainCounter> requests) {
+        requests.forEach((domain, counter) -> {
+            int offset = getOffset(domain);
+            counters[offset + BLOCKED] = counter.isBlocked() ? 1 : 0;
+            counters[offset + COUNT] = counter.getCount();
+            counters[offset + PATTERN_BLOCKED] = counter.getPatternBlocked();
+            counters[offset + PATTERN_PASSED] = counter.getPatternPassed();
+        });
+    }
+
+    /**
+     * Creates an independent copy of this bin, e.g. to persist it while recording continues.
+     */
+    RecordedDomainBin copy() {
+        return new RecordedDomainBin(begin, end, new HashMap<>(offsets), Arrays.copyOf(counters, offsets.size() * FIELDS + FIELDS));
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(begin.getEpochSecond());
+        out.writeInt(begin.getNano());
+        out.writeLong(end.getEpochSecond());
+        out.writeInt(end.getNano());
+        out.writeInt(offsets.size());
+        for (Map.Entry<String, Integer> e : offsets.entrySet()) {
+            out.writeUTF(e.getKey());
+            for (int i = 0; i < FIELDS; ++i) {
+                out.writeInt(counters[e.getValue() + i]);
+            }
+        }
+    }
+
+    public static RecordedDomainBin readFrom(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("unsupported recorded domain bin format " + version);
+        }
+        Instant begin = Instant.ofEpochSecond(in.readLong(), in.readInt());
+        Instant end = Instant.ofEpochSecond(in.readLong(), in.readInt());
+        int size = in.readInt();
+        Map<String, Integer> offsets = new HashMap<>(size * 4 / 3 + 1);
+        int[] counters = new int[Math.max(size, INITIAL_CAPACITY) * FIELDS];
+        for (int i = 0; i < size; ++i) {
+            int offset = i * FIELDS;
+            offsets.put(in.readUTF(), offset);
+            for (int j = 0; j < FIELDS; ++j) {
+                counters[offset + j] = in.readInt();
+            }
+        }
+        return new RecordedDomainBin(begin, end, offsets, counters);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -64,14 +164,21 @@ public class RecordedDomainBin {
         if (o == null || getClass() != o.getClass())
             return false;
         RecordedDomainBin that = (RecordedDomainBin) o;
-        return Objects.equals(begin, that.begin) &&
-                Objects.equals(end, that.end) &&
-                Objects.equals(requests, that.requests);
+        if (!Objects.equals(begin, that.begin) || !Objects.equals(end, that.end) || offsets.size() != that.offsets.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Integer> e : offsets.entrySet()) {
+            Integer thatOffset = that.offsets.get(e.getKey());
+            if (thatOffset == null || !Arrays.equals(counters, e.getValue(), e.getValue() + FIELDS, that.counters, thatOffset, thatOffset + FIELDS)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(begin, end, requests);
+        return Objects.hash(begin, end);
     }
 
     public boolean isWritable(Instant now) {
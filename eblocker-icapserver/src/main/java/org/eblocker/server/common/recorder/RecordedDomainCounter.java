@@ -46,6 +46,13 @@ public class RecordedDomainCounter {
         this.patternPassed = 0;
     }
 
+    RecordedDomainCounter(boolean blocked, int count, int patternBlocked, int patternPassed) {
+        this.blocked = blocked;
+        this.count = count;
+        this.patternBlocked = patternBlocked;
+        this.patternPassed = patternPassed;
+    }
+
     public void update(boolean blocked, boolean patternRequest) {
         if (patternRequest) {
             if (blocked) {
@@ -67,6 +74,14 @@ public class RecordedDomainCounter {
         return count;
     }
 
+    public int getPatternBlocked() {
+        return patternBlocked;
+    }
+
+    public int getPatternPassed() {
+        return patternPassed;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
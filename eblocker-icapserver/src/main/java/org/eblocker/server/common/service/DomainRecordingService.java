@@ -19,28 +19,35 @@ package org.eblocker.server.common.service;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
+import org.eblocker.server.common.collections.BatchingRingBuffer;
 import org.eblocker.server.common.data.Device;
 import org.eblocker.server.common.executor.NamedRunnable;
 import org.eblocker.server.common.recorder.DomainRequestRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * Logs requests to domains for devices that have the "domainRecordingEnabled" flag.
- * Log entries are added to a queue and processed in the background.
+ * Log entries are added to a bounded queue and processed in batches in the background.
  */
 @Singleton
 public class DomainRecordingService {
+    private static final Logger log = LoggerFactory.getLogger(DomainRecordingService.class);
+
+    private static final int BATCH_SIZE = 256;
+
     private final DomainRequestRecorder recorder;
-    private final BlockingQueue<DomainRequestLogEntry> queue;
+    private final BatchingRingBuffer<DomainRequestLogEntry> queue;
 
     @Inject
     public DomainRecordingService(DomainRequestRecorder recorder,
-                                  @Named("unlimitedCachePoolExecutor") Executor executor) {
+                                  @Named("unlimitedCachePoolExecutor") Executor executor,
+                                  @Named("domainRecorder.queueSize") int queueSize,
+                                  @Named("domainRecorder.overflowPolicy") BatchingRingBuffer.OverflowPolicy overflowPolicy) {
         this.recorder = recorder;
-        queue = new LinkedBlockingDeque<>();
+        queue = new BatchingRingBuffer<>(queueSize, overflowPolicy);
         runRecorderInBackground(executor);
     }
 
@@ -48,8 +55,9 @@ public class DomainRecordingService {
         executor.execute(new NamedRunnable("DomainRecordingService", () -> {
             try {
                 while (true) {
-                    DomainRequestLogEntry entry = queue.take();
-                    recorder.recordRequest(entry.deviceId, entry.hostname, entry.blocked, entry.patternRequest);
+                    for (DomainRequestLogEntry entry : queue.takeBatch(BATCH_SIZE)) {
+                        recorder.recordRequest(entry.deviceId, entry.hostname, entry.blocked, entry.patternRequest);
+                    }
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
@@ -59,10 +67,17 @@ public class DomainRecordingService {
 
     public void log(Device device, String hostname, boolean blocked, boolean patternRequest) {
         if (device.isDomainRecordingEnabled()) {
-            queue.add(new DomainRequestLogEntry(device.getId(), hostname, blocked, patternRequest));
+            if (!queue.add(new DomainRequestLogEntry(device.getId(), hostname, blocked, patternRequest))
+                    && (queue.getDropped() - 1) % queue.getCapacity() == 0) {
+                log.warn("Domain recording queue is full, dropped {} entries so far", queue.getDropped());
+            }
         }
     }
 
+    public long getDroppedEntries() {
+        return queue.getDropped();
+    }
+
     private static class DomainRequestLogEntry {
         private final String deviceId;
         private final String hostname;
@@ -35,6 +35,7 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -49,6 +50,9 @@ import java.util.stream.Stream;
 @SubSystemService(SubSystem.SERVICES)
 public class FilterStatisticsService {
 
+    private static final int MINUTES_PER_HOUR = 60;
+    private static final int MINUTES_PER_DAY = 24 * MINUTES_PER_HOUR;
+
     private final int maxAgeDays;
     private final Clock clock;
     private final FilterStatisticsDataSource statisticsDataSource;
@@ -95,11 +99,12 @@ public class FilterStatisticsService {
             bins.add(new FilterStats.Bin(startBin, stopBin));
         }
 
+        ChronoUnit resolution = getResolution(start, binSizeMinutes);
         if (ipAddresses == null) {
-            updateBins(bins, start, end, binSizeMinutes, categoryByReason, type, null);
+            updateBins(bins, start, end, binSizeMinutes, resolution, categoryByReason, type, null);
         } else {
             for (IpAddress ipAddress : ipAddresses) {
-                updateBins(bins, start, end, binSizeMinutes, categoryByReason, type, ipAddress);
+                updateBins(bins, start, end, binSizeMinutes, resolution, categoryByReason, type, ipAddress);
             }
         }
 
@@ -113,11 +118,30 @@ public class FilterStatisticsService {
         return new FilterStats(start, end, summary, bins);
     }
 
-    private void updateBins(List<FilterStats.Bin> bins, Instant start, Instant end, int binSizeMinutes, Map<String, FilterStats.Category> categoryByReason, String type, IpAddress ipAddress) {
-        try (Stream<StatisticsCounter> storedCounters = statisticsDataSource.getCounters(type, ipAddress, start, end)) {
+    /**
+     * Selects the coarsest resolution whose periods fit into the bins without crossing bin borders.
+     */
+    private ChronoUnit getResolution(Instant start, int binSizeMinutes) {
+        ZonedDateTime zonedStart = ZonedDateTime.ofInstant(start, ZoneId.systemDefault());
+        if (binSizeMinutes % MINUTES_PER_DAY == 0 && zonedStart.equals(zonedStart.truncatedTo(ChronoUnit.DAYS))) {
+            return ChronoUnit.DAYS;
+        }
+        if (binSizeMinutes % MINUTES_PER_HOUR == 0 && zonedStart.equals(zonedStart.truncatedTo(ChronoUnit.HOURS))) {
+            return ChronoUnit.HOURS;
+        }
+        return ChronoUnit.MINUTES;
+    }
+
+    private void updateBins(List<FilterStats.Bin> bins, Instant start, Instant end, int binSizeMinutes, ChronoUnit resolution, Map<String, FilterStats.Category> categoryByReason, String type, IpAddress ipAddress) {
+        try (Stream<StatisticsCounter> storedCounters = statisticsDataSource.getCounters(type, ipAddress, start, end, resolution)) {
             storedCounters
                     .forEach(counter -> {
-                        int i = (int) Duration.between(start, counter.getInstant()).toMinutes() / binSizeMinutes;
+                        long minutes = Duration.between(start, counter.getInstant()).toMinutes();
+                        if (resolution == ChronoUnit.DAYS) {
+                            // days are 23 or 25 hours long when daylight saving time starts or ends
+                            minutes = Math.round((double) minutes / MINUTES_PER_DAY) * MINUTES_PER_DAY;
+                        }
+                        int i = (int) (minutes / binSizeMinutes);
                         FilterStats.Bin bin = bins.get(i);
                         if ("queries".equals(counter.getName())) {
                             bin.setQueries(bin.getQueries() + counter.getValue());
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming counterpart of {@link HtmlUtils#insertBeforeBodyEnd(StringBuilder, String)}: inserts the inlay before
+ * the last &lt;/body&gt; tag, or the last &lt;/html&gt; tag if there is no closing body tag, while the document is
+ * written. Everything before the current candidate tag is passed on immediately so only the tail of the document
+ * following it is held back until the stream is closed. Bytes are matched as ISO-8859-1 so all ASCII compatible
+ * charsets are supported.
+ */
+public class BodyEndInsertingOutputStream extends FilterOutputStream {
+    private static final byte[] BODY_END_TAG = "</body>".getBytes();
+    private static final byte[] HTML_END_TAG = "</html>".getBytes();
+    private static final int TAG_LENGTH = BODY_END_TAG.length;
+    private static final int FLUSH_THRESHOLD = 8192;
+
+    private enum Candidate {NONE, HTML, BODY}
+
+    private final byte[] inlay;
+    private byte[] tail = new byte[FLUSH_THRESHOLD];
+    private int tailLength;
+    private Candidate candidate = Candidate.NONE;
+    private boolean closed;
+
+    public BodyEndInsertingOutputStream(OutputStream out, byte[] inlay) {
+        super(out);
+        this.inlay = inlay;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        append((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; ++i) {
+            append(b[i]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (candidate != Candidate.NONE) {
+                // tail always starts with the candidate tag
+                out.write(inlay);
+            }
+            out.write(tail, 0, tailLength);
+        } finally {
+            out.close();
+        }
+    }
+
+    private void append(byte b) throws IOException {
+        if (tailLength == tail.length) {
+            if (candidate == Candidate.NONE) {
+                forward(tailLength - (TAG_LENGTH - 1));
+            } else {
+                tail = Arrays.copyOf(tail, tail.length * 2);
+            }
+        }
+        tail[tailLength++] = b;
+
+        if (b != '>' || tailLength < TAG_LENGTH) {
+            return;
+        }
+        if (endsWith(BODY_END_TAG)) {
+            candidate = Candidate.BODY;
+            forward(tailLength - TAG_LENGTH);
+        } else if (candidate != Candidate.BODY && endsWith(HTML_END_TAG)) {
+            candidate = Candidate.HTML;
+            forward(tailLength - TAG_LENGTH);
+        }
+    }
+
+    /**
+     * Writes the first n bytes of the tail to the underlying stream and removes them from the tail.
+     */
+    private void forward(int n) throws IOException {
+        out.write(tail, 0, n);
+        System.arraycopy(tail, n, tail, 0, tailLength - n);
+        tailLength -= n;
+    }
+
+    private boolean endsWith(byte[] tag) {
+        int offset = tailLength - tag.length;
+        for (int i = 0; i < tag.length; ++i) {
+            byte b = tail[offset + i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != tag[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
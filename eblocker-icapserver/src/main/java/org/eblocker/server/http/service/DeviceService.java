@@ -56,6 +56,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 
 @Singleton
@@ -69,6 +71,10 @@ public class DeviceService {
 
     private final ConcurrentMap<String, Device> devicesById = new ConcurrentHashMap<>(64, 0.75f, 2);
     private final ConcurrentMap<IpAddress, Device> devicesByIp = new ConcurrentHashMap<>(64, 0.75f, 2);
+    // keys (ids or ip addresses) of unknown devices mapped to the time their entry expires
+    private final ConcurrentMap<Object, Long> unknownDevices = new ConcurrentHashMap<>(64, 0.75f, 2);
+    private final Object refreshLock = new Object();
+    private final AtomicLong refreshes = new AtomicLong();
     private final List<DeviceChangeListener> listeners = new ArrayList<>();
     private final NetworkInterfaceWrapper networkInterfaceWrapper;
     private final DeviceFactory deviceFactory;
@@ -78,13 +84,15 @@ public class DeviceService {
     private final IpResponseTable ipResponseTable;
     private final Clock clock;
     private final int deviceOfflineAfterSeconds;
+    private final long unknownDeviceTtl;
 
     @Inject
     public DeviceService(DataSource datasource,
                          DeviceRegistrationProperties deviceRegistrationProperties, UserAgentService userAgentService,
                          NetworkInterfaceWrapper networkInterfaceWrapper, DeviceFactory deviceFactory,
                          IpResponseTable ipResponseTable, Clock clock,
-                         @Named("device.offline.after.seconds") int deviceOfflineAfterSeconds) {
+                         @Named("device.offline.after.seconds") int deviceOfflineAfterSeconds,
+                         @Named("device.cache.unknown.ttl.seconds") int unknownDeviceTtlSeconds) {
         this.deviceRegistrationProperties = deviceRegistrationProperties;
         this.datasource = datasource;
         this.userAgentService = userAgentService;
@@ -93,6 +101,7 @@ public class DeviceService {
         this.ipResponseTable = ipResponseTable;
         this.clock = clock;
         this.deviceOfflineAfterSeconds = deviceOfflineAfterSeconds;
+        this.unknownDeviceTtl = TimeUnit.SECONDS.toMillis(unknownDeviceTtlSeconds);
     }
 
     @SubSystemInit
@@ -203,16 +212,71 @@ public class DeviceService {
         if (device != null) {
             return device;
         }
-        refresh();
-        return cache.get(key);
+
+        // avoid reloading all devices for each request of an unknown device
+        Long expires = unknownDevices.get(key);
+        if (expires != null) {
+            if (expires > clock.millis()) {
+                return null;
+            }
+            unknownDevices.remove(key, expires);
+        }
+
+        // concurrent misses share a single refresh
+        long generation = refreshes.get();
+        synchronized (refreshLock) {
+            if (generation == refreshes.get()) {
+                refresh();
+            }
+        }
+
+        device = cache.get(key);
+        if (device == null) {
+            unknownDevices.put(key, clock.millis() + unknownDeviceTtl);
+        }
+        return device;
     }
 
     public void refresh() {
-        Set<Device> devices = datasource.getDevices();
-        devices.forEach(this::setVendor);
-        updateCacheEntries(devices);
-        removeDeletedDevices(devices);
-        removeStaleIpAddressEntries();
+        synchronized (refreshLock) {
+            Set<Device> devices = datasource.getDevices();
+            devices.forEach(this::setVendor);
+            updateCacheEntries(devices);
+            removeDeletedDevices(devices);
+            removeStaleIpAddressEntries();
+            removeExpiredUnknownDevices();
+            refreshes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Unknown keys are only expired on their next lookup so entries of keys which are never looked up again are
+     * dropped on refresh. As each new unknown key triggers a refresh this keeps at most the keys of one ttl.
+     */
+    private void removeExpiredUnknownDevices() {
+        long now = clock.millis();
+        unknownDevices.values().removeIf(expires -> expires <= now);
+    }
+
+    /**
+     * Reloads a single device after its entry in the data source has been changed or deleted.
+     *
+     * @param deviceId id of the changed device
+     */
+    public void refresh(String deviceId) {
+        synchronized (refreshLock) {
+            Device device = datasource.getDevice(deviceId);
+            if (device == null) {
+                Device cachedDevice = evict(deviceId);
+                if (cachedDevice != null) {
+                    listeners.forEach(listener -> listener.onDelete(cachedDevice));
+                }
+                return;
+            }
+            setVendor(device);
+            cacheDevice(device);
+            removeStaleIpAddressEntries();
+        }
     }
 
     public void addListener(DeviceChangeListener listener) {
@@ -225,17 +289,27 @@ public class DeviceService {
      * @param device the device to be deleted
      */
     public Device delete(Device device) {
-        // Make sure online devices are not deleted
-        Device deviceFromCache = devicesById.get(device.getId());
-        if (deviceFromCache != null && deviceFromCache.isOnline()) {
-            return null;
+        synchronized (refreshLock) {
+            // Make sure online devices are not deleted
+            Device deviceFromCache = devicesById.get(device.getId());
+            if (deviceFromCache != null && deviceFromCache.isOnline()) {
+                return null;
+            }
+            // evict device before the data source publishes the deletion so refresh(deviceId) finds nothing to remove
+            Device cachedDevice = evict(device.getId());
+            datasource.delete(device);
+            if (cachedDevice != null) {
+                listeners.forEach(listener -> listener.onDelete(cachedDevice));
+            }
+            return cachedDevice;
+        }
+    }
+
+    private Device evict(String deviceId) {
+        Device cachedDevice = devicesById.remove(deviceId);
+        if (cachedDevice != null) {
+            cachedDevice.getIpAddresses().forEach(ip -> devicesByIp.remove(ip, cachedDevice));
         }
-        datasource.delete(device);
-        // TODO: Is it possible that the device is not in the cache?
-        //       If so, shouldn't we still execute the listeners?
-        Device cachedDevice = devicesById.remove(device.getId());
-        cachedDevice.getIpAddresses().forEach(devicesByIp::remove);
-        listeners.forEach(listener -> listener.onDelete(cachedDevice));
         return cachedDevice;
     }
 
@@ -287,7 +361,11 @@ public class DeviceService {
 
     private void cacheDevice(Device device) {
         devicesById.put(device.getId(), device);
-        device.getIpAddresses().forEach(ip -> devicesByIp.put(ip, device));
+        unknownDevices.remove(device.getId());
+        device.getIpAddresses().forEach(ip -> {
+            devicesByIp.put(ip, device);
+            unknownDevices.remove(ip);
+        });
     }
 
     private void notifyListeners(Device device) {
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.http.service;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.eblocker.server.common.pubsub.Channels;
+import org.eblocker.server.common.pubsub.PubSubService;
+import org.eblocker.server.common.pubsub.Subscriber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listens for changed devices announced by the data source and reloads them into the device cache so the
+ * cache does not need to be fully refreshed to see new devices.
+ */
+@Singleton
+public class DeviceUpdateListener implements Subscriber, Runnable {
+    private static final Logger log = LoggerFactory.getLogger(DeviceUpdateListener.class);
+
+    private final PubSubService pubSubService;
+    private final DeviceService deviceService;
+
+    @Inject
+    public DeviceUpdateListener(PubSubService pubSubService, DeviceService deviceService) {
+        this.pubSubService = pubSubService;
+        this.deviceService = deviceService;
+    }
+
+    @Override
+    public void process(String deviceId) {
+        log.debug("device {} has been updated", deviceId);
+        try {
+            deviceService.refresh(deviceId);
+        } catch (Exception e) {
+            log.error("failed to reload device {}", deviceId, e);
+        }
+    }
+
+    @Override
+    public void run() {
+        pubSubService.subscribeAndLoop(Channels.DEVICE_UPDATE, this);
+    }
+}
@@ -16,8 +16,6 @@
  */
 package org.eblocker.server.http.service;
 
-import com.google.common.collect.SortedMultiset;
-import com.google.common.collect.TreeMultiset;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -28,71 +26,74 @@ import org.eblocker.server.common.data.dns.DnsResponseTimeRating;
 import org.eblocker.server.common.data.dns.NameServerStats;
 import org.eblocker.server.common.data.dns.ResolverEvent;
 import org.eblocker.server.common.data.dns.ResolverStats;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.eblocker.server.common.data.dns.ResponseTimeHistogram;
 
 import java.time.Clock;
 import java.time.Instant;
-import java.time.LocalDate;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.UUID;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.stream.Collectors;
 
+/**
+ * Aggregates resolver events recorded by the dns server into per-minute {@link ResponseTimeHistogram}s for each name
+ * server. Statistics are computed from these histograms so memory and time needed do not depend on the number of
+ * queries. Intervals are resolved to full minutes.
+ */
 @Singleton
 public class DnsStatisticsService {
-    private static final Logger log = LoggerFactory.getLogger(DnsStatisticsService.class);
 
-    private final int days;
+    private final int batchSize;
     private final Clock clock;
     private final DnsDataSource dnsDataSource;
 
     @Inject
-    public DnsStatisticsService(@Named("dns.server.stats.days") int days,
+    public DnsStatisticsService(@Named("dns.server.stats.batchSize") int batchSize,
                                 Clock clock,
                                 DnsDataSource dnsDataSource) {
-        this.days = days;
+        this.batchSize = batchSize;
         this.clock = clock;
         this.dnsDataSource = dnsDataSource;
     }
 
     public void update() {
-        Instant t = LocalDate.now(clock).atStartOfDay(ZoneId.systemDefault()).minusDays(days).toInstant();
-        dnsDataSource.deleteEventsBefore(t);
+        for (String resolver : dnsDataSource.getResolvers()) {
+            aggregateEvents(resolver);
+        }
     }
 
     public ResolverStats getResolverStatistics(String resolver, Instant start) {
-        Queue<ResolverEvent> events = new LinkedList<>(dnsDataSource.getEventsByResolver(resolver));
-
-        // drop all times before start
-        eventsBefore(events, start);
+        aggregateEvents(resolver);
 
-        List<NameServerStats> nameServerStats = aggregateEvents(events);
-        return new ResolverStats(start, ZonedDateTime.now(clock).toInstant(), nameServerStats);
+        Instant now = ZonedDateTime.now(clock).toInstant();
+        Instant end = now.truncatedTo(ChronoUnit.MINUTES).plus(1, ChronoUnit.MINUTES);
+        NavigableMap<Instant, Map<String, ResponseTimeHistogram>> histograms = dnsDataSource.getHistograms(resolver, start.truncatedTo(ChronoUnit.MINUTES), end);
+        List<NameServerStats> nameServerStats = aggregateHistograms(histograms.values());
+        return new ResolverStats(start, now, nameServerStats);
     }
 
     public List<ResolverStats> getResolverStatistics(String resolver, Instant start, long interval, ChronoUnit unit) {
-        Queue<ResolverEvent> events = new LinkedList<>(dnsDataSource.getEventsByResolver(resolver));
+        aggregateEvents(resolver);
 
-        // drop all times before start
-        eventsBefore(events, start);
+        Instant last = Instant.now(clock);
+        Instant end = start;
+        while (end.isBefore(last)) {
+            end = end.plus(interval, unit);
+        }
+        NavigableMap<Instant, Map<String, ResponseTimeHistogram>> histograms = dnsDataSource.getHistograms(resolver, start.truncatedTo(ChronoUnit.MINUTES), end);
 
         List<ResolverStats> resolverStats = new ArrayList<>();
 
         // step through intervals
-        Instant last = Instant.now(clock);
         Instant from = start;
         while (from.isBefore(last)) {
             Instant to = from.plus(interval, unit);
-            List<ResolverEvent> eventsInInterval = eventsBefore(events, to);
-            List<NameServerStats> nameServerStats = aggregateEvents(eventsInInterval);
+            List<NameServerStats> nameServerStats = aggregateHistograms(histograms.subMap(from.truncatedTo(ChronoUnit.MINUTES), to.truncatedTo(ChronoUnit.MINUTES)).values());
             resolverStats.add(new ResolverStats(from, to, nameServerStats));
             from = to;
         }
@@ -100,54 +101,41 @@ public class DnsStatisticsService {
         return resolverStats;
     }
 
-    private List<ResolverEvent> eventsBefore(Queue<ResolverEvent> events, Instant instant) {
-        List<ResolverEvent> eventsBefore = new ArrayList<>();
-        while (!events.isEmpty() && events.peek().getInstant().isBefore(instant)) {
-            eventsBefore.add(events.poll());
-        }
-
-        return eventsBefore;
+    /**
+     * Moves recorded events into histograms. Events are read in batches to limit memory usage and are only removed
+     * after their histograms have been stored.
+     */
+    private synchronized void aggregateEvents(String resolver) {
+        List<ResolverEvent> events;
+        do {
+            events = dnsDataSource.getEvents(resolver, batchSize);
+            if (events.isEmpty()) {
+                return;
+            }
+            Map<Instant, Map<String, ResponseTimeHistogram>> histograms = new HashMap<>();
+            for (ResolverEvent event : events) {
+                histograms.computeIfAbsent(event.getInstant().truncatedTo(ChronoUnit.MINUTES), k -> new HashMap<>())
+                        .computeIfAbsent(event.getNameServer(), k -> new ResponseTimeHistogram())
+                        .add(event);
+            }
+            dnsDataSource.addHistograms(resolver, histograms);
+            dnsDataSource.removeEvents(resolver, events.size());
+        } while (events.size() >= batchSize);
     }
 
-    private List<NameServerStats> aggregateEvents(Collection<ResolverEvent> events) {
-        return events.stream()
-                .collect(Collectors.groupingBy(ResolverEvent::getNameServer))
-                .values().stream()
-                .map(this::aggregateSingleNameServerEvents)
+    private List<NameServerStats> aggregateHistograms(Collection<Map<String, ResponseTimeHistogram>> histograms) {
+        Map<String, ResponseTimeHistogram> histogramsByNameServer = new HashMap<>();
+        for (Map<String, ResponseTimeHistogram> histogramByNameServer : histograms) {
+            histogramByNameServer.forEach((nameServer, histogram) ->
+                    histogramsByNameServer.computeIfAbsent(nameServer, k -> new ResponseTimeHistogram()).add(histogram));
+        }
+
+        return histogramsByNameServer.entrySet().stream()
+                .map(e -> createNameServerStats(e.getKey(), e.getValue()))
                 .collect(Collectors.toList());
     }
 
-    private NameServerStats aggregateSingleNameServerEvents(List<ResolverEvent> events) {
-        int valid = 0;
-        int invalid = 0;
-        int timeout = 0;
-        int error = 0;
-        long total = 0;
-        SortedMultiset<Long> durations = TreeMultiset.create();
-        for (ResolverEvent event : events) {
-            switch (event.getStatus()) {
-                case "valid":
-                    ++valid;
-                    break;
-                case "invalid":
-                    ++invalid;
-                    break;
-                case "timeout":
-                    ++timeout;
-                    break;
-                case "error":
-                    ++error;
-                    break;
-                default:
-                    log.error("unknown resolver event status: {}", event.getStatus());
-                    break;
-            }
-            if (event.getDuration() != null) {
-                durations.add(event.getDuration());
-                total += event.getDuration();
-            }
-        }
-
+    private NameServerStats createNameServerStats(String nameServer, ResponseTimeHistogram histogram) {
         DnsReliabilityRating reliabilityRating;
         DnsResponseTimeRating responseTimeRating;
 
@@ -155,13 +143,13 @@ public class DnsStatisticsService {
         long median = 0;
         long min = 0;
         long max = 0;
-        if (!durations.isEmpty()) {
-            average = total / durations.size();
-            median = median(durations);
-            min = durations.firstEntry().getElement();
-            max = durations.lastEntry().getElement();
+        if (histogram.getCount() != 0) {
+            average = histogram.getAverage();
+            median = histogram.getMedian();
+            min = histogram.getMin();
+            max = histogram.getMax();
 
-            reliabilityRating = rateReliability(valid, invalid, timeout, error);
+            reliabilityRating = rateReliability((int) histogram.getValid(), (int) histogram.getInvalid(), (int) histogram.getTimeout(), (int) histogram.getError());
             responseTimeRating = rateResponseTime(median);
         } else {
             reliabilityRating = DnsReliabilityRating.UNAVAILABLE;
@@ -171,11 +159,11 @@ public class DnsStatisticsService {
         DnsRating rating = rate(reliabilityRating, responseTimeRating);
 
         return new NameServerStats(
-                events.get(0).getNameServer(),
-                valid,
-                invalid,
-                error,
-                timeout,
+                nameServer,
+                (int) histogram.getValid(),
+                (int) histogram.getInvalid(),
+                (int) histogram.getError(),
+                (int) histogram.getTimeout(),
                 average,
                 median,
                 min,
@@ -186,20 +174,6 @@ public class DnsStatisticsService {
         );
     }
 
-    private Long median(SortedMultiset<Long> values) {
-        int size = values.size();
-        if (size == 0) {
-            return null;
-        }
-
-        boolean odd = size % 2 == 1;
-        Iterator<Long> i = values.iterator();
-        for (int left = size / 2; left > 1; --left) {
-            i.next();
-        }
-        return odd ? i.next() : (i.next() + i.next()) / 2;
-    }
-
     private DnsResponseTimeRating rateResponseTime(long t) {
         for (DnsResponseTimeRating time : DnsResponseTimeRating.values()) {
             if (t <= time.getLowerBound()) {
@@ -43,6 +43,7 @@ import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -254,14 +255,18 @@ public class ParentalControlFilterListsService {
 
         // save domain list and compile filter if changed
         if (filterlist.getDomains() != null) {
+            // the complete list is at hand so it is compiled into a sorted array which needs neither bloom filter nor file reads
             saveCustomerCreatedFilter(filterlist.getId(), filterlist.getDomains());
-            blacklistCompiler.compile(filterlist.getId(), filterlist.getCustomerCreatedName(),
+            blacklistCompiler.compileSortedArrayFilter(filterlist.getId(), filterlist.getCustomerCreatedName(),
                     filterlist.getDomains()
                             .stream()
                             .map(this::prependDot)
                             .distinct()
                             .collect(Collectors.toList()),
-                    fileFilterPath.toString(), bloomFilterPath.toString());
+                    fileFilterPath.toString());
+            tryDelete(bloomFilterPath);
+            metaData.setFormat("domainblacklist/sorted");
+            metaData.setFilenames(Collections.singletonList(fileFilterPath.toString()));
             metaData.setDate(new Date());
         } else if (filterlist.getDomainsStreamSupplier() != null) {
             blacklistCompiler.compile(filterlist.getId(),
@@ -272,6 +277,13 @@ public class ParentalControlFilterListsService {
                     fileFilterPath.toString(),
                     bloomFilterPath.toString());
             metaData.setDate(new Date());
+        } else {
+            // filter has not changed, keep its format
+            ParentalControlFilterMetaData storedMetaData = dataSource.get(ParentalControlFilterMetaData.class, filterlist.getId());
+            if (storedMetaData != null && storedMetaData.getFormat() != null) {
+                metaData.setFormat(storedMetaData.getFormat());
+                metaData.setFilenames(storedMetaData.getFilenames());
+            }
         }
 
         return saveFilter(metaData);
@@ -39,6 +39,11 @@ public class IcapTransaction extends AbstractTransaction {
         return icapRequest;
     }
 
+    @Override
+    public void release() {
+        icapRequest.release();
+    }
+
     @Override
     public FullHttpRequest getRequest() {
         return icapRequest.getHttpRequest();
@@ -23,6 +23,8 @@ import org.eblocker.server.common.transaction.TransactionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /*
 @JsonSubTypes({
 	@Type(value = RegexUrlFilter.class, name = "regex"),
@@ -43,8 +45,7 @@ public abstract class AbstractFilter implements Filter {
     @JsonProperty("definition")
     private final String definition;
 
-    @JsonProperty("matches")
-    private int matches = 0;
+    private final LongAdder matches = new LongAdder();
 
     public AbstractFilter(FilterPriority priority, String definition) {
         this.priority = priority;
@@ -55,7 +56,7 @@ public abstract class AbstractFilter implements Filter {
     final public FilterResult filter(TransactionContext context) {
         FilterResult result = doFilter(context);
         if (result.getDecision() != Decision.NO_DECISION) {
-            matches++;
+            matches.increment();
         }
         return result;
     }
@@ -80,7 +81,13 @@ public abstract class AbstractFilter implements Filter {
 
     @Override
     public int getMatches() {
-        return matches;
+        return matches.intValue();
+    }
+
+    @JsonProperty("matches")
+    protected void setMatches(int matches) {
+        this.matches.reset();
+        this.matches.add(matches);
     }
 
     @Override
@@ -117,7 +124,7 @@ public abstract class AbstractFilter implements Filter {
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
-        s.append(matches).append("\t").append(priority).append("\t").append(definition);
+        s.append(matches.intValue()).append("\t").append(priority).append("\t").append(definition);
         return s.toString();
     }
 }
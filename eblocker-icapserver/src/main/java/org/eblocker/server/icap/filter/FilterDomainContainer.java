@@ -22,4 +22,9 @@ public interface FilterDomainContainer extends FilterContainer {
 
     FilterList remove(String domain);
 
+    /**
+     * @return number of modifications of the contained filters, used to detect changes which need to be saved
+     */
+    long getModifications();
+
 }
@@ -21,33 +21,55 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.eblocker.server.common.transaction.Decision;
 import org.eblocker.server.common.transaction.TransactionContext;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+/**
+ * Sorted list of filters evaluated in priority order.
+ * <p>
+ * The filters are held in a copy-on-write array: {@link #doFilter(TransactionContext)} iterates over the current
+ * snapshot without locking while modifications (e.g. by learning filters) are serialized and publish a new sorted
+ * array.
+ * <p>
+ * Larger lists are evaluated through a {@link UrlTokenIndex} built lazily for the current snapshot, so only filters
+ * whose required tokens occur in the url are evaluated.
+ */
 public class FilterList extends AbstractFilter implements FilterContainer {
     private static final String FILTER_LIST_DEF = "<<FILTER-LIST>>";
+    private static final Filter[] EMPTY = new Filter[0];
+    private static final int INDEX_MIN_SIZE = 32;
 
-    @JsonProperty("list")
-    private final List<Filter> filters;
+    private volatile Filter[] filters;
+    private volatile UrlTokenIndex index;
 
     public FilterList() {
         super(FilterPriority.HIGHEST, FILTER_LIST_DEF);
-        filters = new ArrayList<>();
+        filters = EMPTY;
     }
 
     @JsonCreator
     @SuppressWarnings("unused")
     public FilterList(@JsonProperty("list") Collection<Filter> filters) {
         super(FilterPriority.HIGHEST, FILTER_LIST_DEF);
-        this.filters = new ArrayList<>(filters);
-        Collections.sort(this.filters);
+        Filter[] sorted = filters.toArray(EMPTY);
+        Arrays.sort(sorted);
+        this.filters = sorted;
+    }
+
+    @JsonProperty("list")
+    public List<Filter> getList() {
+        return Collections.unmodifiableList(Arrays.asList(filters));
     }
 
     @Override
-    public synchronized FilterResult doFilter(TransactionContext context) {
-        for (Filter filter : filters) {
+    public FilterResult doFilter(TransactionContext context) {
+        Filter[] current = filters;
+        if (current.length >= INDEX_MIN_SIZE) {
+            return getIndex(current).filter(context);
+        }
+        for (Filter filter : current) {
             FilterResult result = filter.filter(context);
             if (result.getDecision() != Decision.NO_DECISION) {
                 return result;
@@ -56,27 +78,48 @@ public class FilterList extends AbstractFilter implements FilterContainer {
         return FilterResult.NO_DECISION;
     }
 
+    private UrlTokenIndex getIndex(Filter[] current) {
+        UrlTokenIndex currentIndex = index;
+        if (currentIndex == null || currentIndex.getFilters() != current) {
+            synchronized (this) {
+                currentIndex = index;
+                if (currentIndex == null || currentIndex.getFilters() != current) {
+                    currentIndex = new UrlTokenIndex(current);
+                    index = currentIndex;
+                }
+            }
+        }
+        return currentIndex;
+    }
+
     @Override
     public synchronized void add(Filter filter) {
-        for (int i = 0; i < filters.size(); ++i) {
-            int c = filter.compareTo(filters.get(i));
+        Filter[] current = filters;
+        int i = 0;
+        for (; i < current.length; ++i) {
+            int c = filter.compareTo(current[i]);
             if (c < 0) {
-                filters.add(i, filter);
-                return;
-            } else if (c == 0 && filter.equals(filters.get(i))) {
-                filters.set(i, filter);
+                break;
+            } else if (c == 0 && filter.equals(current[i])) {
+                Filter[] updated = current.clone();
+                updated[i] = filter;
+                filters = updated;
                 return;
             }
         }
-        filters.add(filter);
+        Filter[] updated = new Filter[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, i);
+        updated[i] = filter;
+        System.arraycopy(current, i, updated, i + 1, current.length - i);
+        filters = updated;
     }
 
-    public synchronized int size() {
-        return filters.size();
+    public int size() {
+        return filters.length;
     }
 
     @Override
-    public synchronized int getMatches() {
+    public int getMatches() {
         int matches = 0;
         for (Filter filter : filters) {
             matches += filter.getMatches();
@@ -85,7 +128,7 @@ public class FilterList extends AbstractFilter implements FilterContainer {
     }
 
     @Override
-    public synchronized String toString() {
+    public String toString() {
         StringBuilder s = new StringBuilder();
         s.append(super.toString()).append(" [\n");
         for (Filter filter : filters) {
@@ -96,15 +139,15 @@ public class FilterList extends AbstractFilter implements FilterContainer {
     }
 
     @Override
-    public synchronized int hashCode() {
+    public int hashCode() {
         final int prime = 31;
         int result = super.hashCode();
-        result = prime * result + ((filters == null) ? 0 : filters.hashCode());
+        result = prime * result + Arrays.hashCode(filters);
         return result;
     }
 
     @Override
-    public synchronized boolean equals(Object obj) {
+    public boolean equals(Object obj) {
         if (this == obj)
             return true;
         if (!super.equals(obj))
@@ -112,24 +155,29 @@ public class FilterList extends AbstractFilter implements FilterContainer {
         if (!(obj instanceof FilterList))
             return false;
         FilterList other = (FilterList) obj;
-        if (filters == null) {
-            if (other.filters != null)
-                return false;
-        } else if (!filters.equals(other.filters)) {
-            return false;
-        }
-        return true;
+        return Arrays.equals(filters, other.filters);
     }
 
     @Override
     public synchronized boolean resolveReferences(FilterStore store) {
-        filters.removeIf(filter -> filter instanceof FilterWrapper && !((FilterWrapper) filter).resolveReferences(store));
-        return !filters.isEmpty();
+        filters = Arrays.stream(filters)
+            .filter(filter -> !(filter instanceof FilterWrapper) || ((FilterWrapper) filter).resolveReferences(store))
+            .toArray(Filter[]::new);
+        return filters.length != 0;
     }
 
     @Override
     public synchronized void remove(Filter filter) {
-        filters.remove(filter);
+        Filter[] current = filters;
+        for (int i = 0; i < current.length; ++i) {
+            if (filter.equals(current[i])) {
+                Filter[] updated = new Filter[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                filters = updated;
+                return;
+            }
+        }
     }
 
 }
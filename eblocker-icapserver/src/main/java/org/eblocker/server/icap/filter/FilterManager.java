@@ -24,12 +24,14 @@ import com.google.inject.name.Named;
 import org.eblocker.crypto.CryptoException;
 import org.eblocker.crypto.CryptoService;
 import org.eblocker.crypto.CryptoServiceFactory;
+import org.eblocker.crypto.EncryptedData;
 import org.eblocker.crypto.json.JSONCryptoHandler;
 import org.eblocker.crypto.keys.KeyWrapper;
 import org.eblocker.server.common.data.DataSource;
 import org.eblocker.server.common.data.systemstatus.SubSystem;
 import org.eblocker.server.common.startup.SubSystemInit;
 import org.eblocker.server.common.startup.SubSystemService;
+import org.eblocker.server.icap.filter.binary.BinaryMarshaller;
 import org.eblocker.server.icap.filter.csv.CSVLineParser;
 import org.eblocker.server.icap.filter.easylist.EasyListLineParser;
 import org.eblocker.server.icap.filter.learning.AsynchronousLearningFilter;
@@ -43,6 +45,11 @@ import org.eblocker.server.icap.resources.SimpleResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -63,6 +70,8 @@ import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @Singleton
 @SubSystemService(SubSystem.ICAP_SERVER)
@@ -71,6 +80,10 @@ public class FilterManager {
 
     private static final Filter NULL_FILTER = new NullFilter(FilterPriority.LOWEST);
 
+    // files starting with this header contain an encrypted binary snapshot, otherwise encrypted json is assumed
+    private static final int SNAPSHOT_MAGIC = 0x45425353; // "EBSS"
+    private static final int SNAPSHOT_VERSION = 2;
+
     private final String defaultFilterStoreConfigurations;
     private final Path cacheDirectory;
     private final String fileSuffix;
@@ -223,7 +236,11 @@ public class FilterManager {
     }
 
     private synchronized void load() {
-        updateCache(configurations, this::loadOrCreate);
+        long start = System.currentTimeMillis();
+        Map<Integer, FilterStore> storeById = configurations.parallelStream()
+                .collect(Collectors.toConcurrentMap(FilterStoreConfiguration::getId, this::loadOrCreate));
+        updateCache(configurations, c -> storeById.get(c.getId()));
+        log.info("loaded {} filter stores in {}ms", storeById.size(), System.currentTimeMillis() - start);
     }
 
     private synchronized void updateCache(List<FilterStoreConfiguration> configurations, Function<FilterStoreConfiguration, FilterStore> storeLoader) {
@@ -262,6 +279,10 @@ public class FilterManager {
     private synchronized void save() {
         for (FilterStoreConfiguration configuration : configurations) {
             FilterStore filterStore = cache.storeById.get(configuration.getId());
+            if (!filterStore.isModified()) {
+                log.debug("filter store {} is unchanged", configuration.getId());
+                continue;
+            }
             try {
                 save(filterStore, configuration);
             } catch (Exception e) {
@@ -327,10 +348,28 @@ public class FilterManager {
         if (!path.toFile().exists()) {
             return null;
         }
-        try (InputStream in = Files.newInputStream(path)) {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
             CryptoService cryptoService = CryptoServiceFactory.getInstance().setKey(systemKey.get()).build();
-            return JSONCryptoHandler.decrypt(FilterStore.class, cryptoService, in);
-        } catch (CryptoException | IOException e) {
+            DataInputStream dataIn = new DataInputStream(in);
+            in.mark(4);
+            if (dataIn.readInt() != SNAPSHOT_MAGIC) {
+                // filter store saved by a previous version, convert it to a snapshot for the next start
+                in.reset();
+                FilterStore filterStore = JSONCryptoHandler.decrypt(FilterStore.class, cryptoService, in);
+                filterStore.markSaved(-1);
+                return filterStore;
+            }
+            int version = dataIn.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                log.warn("unsupported filter store snapshot version {} for {}", version, configuration.getId());
+                return null;
+            }
+            EncryptedData encryptedData = objectMapper.readValue(in, EncryptedData.class);
+            byte[] snapshot = cryptoService.decrypt(encryptedData);
+            try (InputStream snapshotIn = new GZIPInputStream(new ByteArrayInputStream(snapshot))) {
+                return BinaryMarshaller.unmarshall(snapshotIn);
+            }
+        } catch (CryptoException | IOException | RuntimeException e) {
             log.error("failed to load {}", configuration.getId(), e);
             return null;
         }
@@ -339,12 +378,21 @@ public class FilterManager {
     private void save(FilterStore filterStore, FilterStoreConfiguration configuration) {
         Path path = getPath(configuration);
         try {
+            long modifications = filterStore.getModifications();
+            ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            try (OutputStream snapshotOut = new GZIPOutputStream(snapshot)) {
+                BinaryMarshaller.marshall(filterStore, snapshotOut);
+            }
+
             Path tempFile = Files.createTempFile(tmpDir, "eblocker-", ".tmp");
-            try (OutputStream out = Files.newOutputStream(tempFile)) {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(tempFile))) {
                 CryptoService cryptoService = CryptoServiceFactory.getInstance().setKey(systemKey.get()).build();
-                JSONCryptoHandler.encrypt(filterStore, cryptoService, out);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeInt(SNAPSHOT_VERSION);
+                objectMapper.writeValue((OutputStream) out, cryptoService.encrypt(snapshot.toByteArray()));
             }
             Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE);
+            filterStore.markSaved(modifications);
         } catch (Exception e) {
             log.error("Failed to save id: {} name: {}", configuration.getId(), configuration.getName(), e);
         }
@@ -17,18 +17,22 @@
 package org.eblocker.server.icap.filter;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.Sets;
 import org.eblocker.server.common.util.UrlUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class FilterStore {
@@ -43,8 +47,12 @@ public class FilterStore {
     @JsonProperty("lastUpdate")
     private Date lastUpdate;
 
+    private final AtomicLong modifications = new AtomicLong();
+    private volatile long savedModifications;
+
     public FilterStore(FilterDomainContainer container) {
         this.container = container;
+        this.savedModifications = getModifications();
     }
 
     @JsonCreator
@@ -52,9 +60,17 @@ public class FilterStore {
         this.container = container;
         this.store.putAll(store);
         container.resolveReferences(this);
+        this.savedModifications = getModifications();
+    }
+
+    public FilterStore(FilterDomainContainer container, Map<String, Filter> store, Date lastUpdate) {
+        this(container, store);
+        this.lastUpdate = lastUpdate;
     }
 
     public synchronized void update(List<Filter> filters) {
+        modifications.incrementAndGet();
+
         // add definitions
         for (Filter filter : filters) {
             store.put(filter.getDefinition(), filter);
@@ -87,6 +103,36 @@ public class FilterStore {
         return lastUpdate;
     }
 
+    @JsonIgnore
+    public Collection<Filter> getStoredFilters() {
+        return Collections.unmodifiableCollection(store.values());
+    }
+
+    /**
+     * @return number of modifications of this store and its filters since creation
+     */
+    @JsonIgnore
+    public long getModifications() {
+        return modifications.get() + container.getModifications();
+    }
+
+    /**
+     * @return true if this store has been modified since it has been loaded or last been saved
+     */
+    @JsonIgnore
+    public boolean isModified() {
+        return getModifications() != savedModifications;
+    }
+
+    /**
+     * Marks the store as saved.
+     *
+     * @param modifications number of modifications at the time the store has been serialized
+     */
+    public void markSaved(long modifications) {
+        savedModifications = modifications;
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -22,12 +22,25 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.eblocker.server.common.exceptions.EblockerException;
 import org.eblocker.server.common.transaction.TransactionContext;
 
-public class FilterWrapper extends AbstractFilter implements FilterContainer {
+import java.util.Collections;
+import java.util.List;
+
+public class FilterWrapper extends AbstractFilter implements FilterContainer, UrlTokenFilter {
 
     public static Filter wrap(Filter filter) {
         return new FilterWrapper(filter);
     }
 
+    /**
+     * Creates an unresolved reference to a filter which will be looked up by its definition on
+     * {@link #resolveReferences(FilterStore)}.
+     */
+    public static Filter reference(FilterPriority priority, String definition, int matches) {
+        FilterWrapper wrapper = new FilterWrapper(priority, definition);
+        wrapper.setMatches(matches);
+        return wrapper;
+    }
+
     private Filter wrapped;
 
     @JsonCreator
@@ -72,4 +85,10 @@ public class FilterWrapper extends AbstractFilter implements FilterContainer {
     public String getDomain() {
         return wrapped.getDomain();
     }
+
+    @JsonIgnore
+    @Override
+    public List<String> getRequiredUrlTokens() {
+        return wrapped instanceof UrlTokenFilter ? ((UrlTokenFilter) wrapped).getRequiredUrlTokens() : Collections.emptyList();
+    }
 }
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter;
+
+import java.util.List;
+
+/**
+ * Filter which can only decide on urls containing certain tokens.
+ *
+ * @see UrlTokens
+ */
+public interface UrlTokenFilter {
+
+    /**
+     * @return tokens which must all be present in a url for this filter to decide, an empty list if there are none
+     */
+    List<String> getRequiredUrlTokens();
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter;
+
+import org.eblocker.server.common.transaction.Decision;
+import org.eblocker.server.common.transaction.TransactionContext;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of a sorted filter array by required url tokens.
+ * <p>
+ * Each {@link UrlTokenFilter} is indexed by its least common required token. Evaluation only considers filters
+ * indexed by a token of the url and all filters without tokens, in the same order as the array.
+ */
+class UrlTokenIndex {
+    private final Filter[] filters;
+    private final Map<String, int[]> filtersByToken;
+    private final BitSet unindexed;
+
+    UrlTokenIndex(Filter[] filters) {
+        this.filters = filters;
+
+        List<List<String>> tokensByFilter = new ArrayList<>(filters.length);
+        Map<String, Integer> counts = new HashMap<>();
+        for (Filter filter : filters) {
+            List<String> tokens = filter instanceof UrlTokenFilter ? ((UrlTokenFilter) filter).getRequiredUrlTokens() : Collections.emptyList();
+            tokensByFilter.add(tokens);
+            for (String token : tokens) {
+                counts.merge(token, 1, Integer::sum);
+            }
+        }
+
+        Map<String, List<Integer>> indices = new HashMap<>();
+        unindexed = new BitSet(filters.length);
+        for (int i = 0; i < filters.length; ++i) {
+            String token = selectToken(tokensByFilter.get(i), counts);
+            if (token == null) {
+                unindexed.set(i);
+            } else {
+                indices.computeIfAbsent(token, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        filtersByToken = new HashMap<>(indices.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> e : indices.entrySet()) {
+            filtersByToken.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    Filter[] getFilters() {
+        return filters;
+    }
+
+    FilterResult filter(TransactionContext context) {
+        String url = context.getUrl();
+        BitSet candidates = (BitSet) unindexed.clone();
+        if (url == null) {
+            candidates.set(0, filters.length);
+        } else {
+            addCandidates(url, candidates);
+        }
+
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            FilterResult result = filters[i].filter(context);
+            if (result.getDecision() != Decision.NO_DECISION) {
+                return result;
+            }
+        }
+        return FilterResult.NO_DECISION;
+    }
+
+    private void addCandidates(String url, BitSet candidates) {
+        char[] token = new char[url.length()];
+        int length = 0;
+        for (int i = 0; i <= url.length(); ++i) {
+            char c = i < url.length() ? UrlTokens.toTokenChar(url.charAt(i)) : '\0';
+            if (c != '\0') {
+                token[length++] = c;
+            } else if (length > 0) {
+                int[] indices = filtersByToken.get(new String(token, 0, length));
+                if (indices != null) {
+                    for (int index : indices) {
+                        candidates.set(index);
+                    }
+                }
+                length = 0;
+            }
+        }
+    }
+
+    private static String selectToken(List<String> tokens, Map<String, Integer> counts) {
+        String selected = null;
+        int selectedCount = Integer.MAX_VALUE;
+        for (String token : tokens) {
+            int count = counts.get(token);
+            if (count < selectedCount || count == selectedCount && token.length() > selected.length()) {
+                selected = token;
+                selectedCount = count;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits urls and url patterns into tokens, i.e. maximal runs of ascii letters and digits.
+ * <p>
+ * A token of a pattern is <i>required</i> if every url matched by the pattern contains it as a token of its own. This
+ * is the case if the token is delimited on both sides by a literal separator or an anchor of the pattern. Tokens are
+ * lower-cased, so case-insensitive matches are covered as well.
+ */
+public final class UrlTokens {
+    private static final char UNKNOWN = '\0';
+    private static final char SEPARATOR = '/';
+    private static final String SUPPORTED_ESCAPES = "bBdDsSwWhHvVRAGZz";
+
+    // Expressions generated by the EasyList parser for separators ("^") and optional sub-domains ("||")
+    private static final String[] SEPARATOR_EXPRESSIONS = { "([^a-zA-Z0-9_.%-]|$)", "([^a-zA-Z0-9_.%-]|\\$)" };
+    private static final String SUB_DOMAINS_EXPRESSION = "([a-zA-Z0-9\\-]+\\.)*";
+
+    private UrlTokens() {
+    }
+
+    /**
+     * @return lower-cased character if c is part of a token, {@code '\0'} if it is a separator
+     */
+    public static char toTokenChar(char c) {
+        if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+            return c;
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c - 'A' + 'a');
+        }
+        return UNKNOWN;
+    }
+
+    public static List<String> getTokens(String url) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= url.length(); ++i) {
+            char c = i < url.length() ? toTokenChar(url.charAt(i)) : UNKNOWN;
+            if (c != UNKNOWN) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the required tokens of a literal pattern.
+     *
+     * @param literal       string which must be found in a url
+     * @param anchoredStart whether the literal must be found at the start of the url
+     * @param anchoredEnd   whether the literal must be found at the end of the url
+     */
+    public static List<String> getRequiredTokens(String literal, boolean anchoredStart, boolean anchoredEnd) {
+        if (literal == null) {
+            return Collections.emptyList();
+        }
+        return getRequiredTokens(literal.replace(UNKNOWN, ' '), anchoredStart, anchoredEnd, true);
+    }
+
+    /**
+     * Returns the required tokens of a regular expression. Only literals on the top level of the expression are
+     * considered, anything more complicated than escapes, character classes, groups and quantifiers yields no tokens.
+     */
+    public static List<String> getRequiredRegexTokens(String regex) {
+        if (regex == null || regex.contains("\\Q")) {
+            return Collections.emptyList();
+        }
+        StringBuilder atoms = new StringBuilder();
+        int i = 0;
+        int n = regex.length();
+        while (i < n) {
+            char atom;
+            String expression = findExpression(regex, i);
+            if (expression != null) {
+                // a separator is either a non-token character or the end of the url, while sub-domains are either
+                // empty or end with a dot and therefore delimit a token just like the preceding atom does
+                boolean separator = !SUB_DOMAINS_EXPRESSION.equals(expression) || isDelimiter(atoms);
+                atom = separator ? SEPARATOR : UNKNOWN;
+                i += expression.length();
+            } else {
+                char c = regex.charAt(i);
+                switch (c) {
+                    case '\\':
+                        if (i + 1 == n) {
+                            return Collections.emptyList();
+                        }
+                        char escaped = regex.charAt(i + 1);
+                        if (Character.isLetterOrDigit(escaped)) {
+                            if (SUPPORTED_ESCAPES.indexOf(escaped) == -1) {
+                                return Collections.emptyList();
+                            }
+                            atom = UNKNOWN;
+                        } else {
+                            atom = escaped;
+                        }
+                        i += 2;
+                        break;
+                    case '[':
+                        i = skipCharacterClass(regex, i);
+                        atom = UNKNOWN;
+                        break;
+                    case '(':
+                        if (i + 1 < n && regex.charAt(i + 1) == '?') {
+                            return Collections.emptyList();
+                        }
+                        i = skipGroup(regex, i);
+                        atom = UNKNOWN;
+                        break;
+                    case '.':
+                    case '^':
+                    case '$':
+                        atom = UNKNOWN;
+                        ++i;
+                        break;
+                    case '|':
+                    case ')':
+                    case '?':
+                    case '*':
+                    case '+':
+                    case '{':
+                        return Collections.emptyList();
+                    default:
+                        atom = c;
+                        ++i;
+                }
+            }
+            if (i < 0) {
+                return Collections.emptyList();
+            }
+
+            // an atom followed by a quantifier is neither required nor necessarily a single character
+            if (i < n && isQuantifier(regex.charAt(i))) {
+                if (regex.charAt(i) == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i == -1) {
+                        return Collections.emptyList();
+                    }
+                }
+                ++i;
+                if (i < n && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                    ++i;
+                }
+                atom = UNKNOWN;
+            }
+            atoms.append(atom);
+        }
+        return getRequiredTokens(atoms, false, false, false);
+    }
+
+    private static List<String> getRequiredTokens(CharSequence atoms, boolean anchoredStart, boolean anchoredEnd, boolean literal) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        boolean delimitedStart = anchoredStart;
+        for (int i = 0; i <= atoms.length(); ++i) {
+            char atom = i < atoms.length() ? atoms.charAt(i) : UNKNOWN;
+            char c = toTokenChar(atom);
+            if (c != UNKNOWN) {
+                token.append(c);
+                continue;
+            }
+            boolean delimited = i == atoms.length() ? anchoredEnd : literal || atom != UNKNOWN;
+            if (token.length() > 0 && delimitedStart && delimited && !tokens.contains(token.toString())) {
+                tokens.add(token.toString());
+            }
+            token.setLength(0);
+            delimitedStart = delimited;
+        }
+        return tokens;
+    }
+
+    private static String findExpression(String regex, int start) {
+        for (String expression : SEPARATOR_EXPRESSIONS) {
+            if (regex.startsWith(expression, start)) {
+                return expression;
+            }
+        }
+        return regex.startsWith(SUB_DOMAINS_EXPRESSION, start) ? SUB_DOMAINS_EXPRESSION : null;
+    }
+
+    private static boolean isDelimiter(CharSequence atoms) {
+        if (atoms.length() == 0) {
+            return false;
+        }
+        char atom = atoms.charAt(atoms.length() - 1);
+        return atom != UNKNOWN && toTokenChar(atom) == UNKNOWN;
+    }
+
+    private static boolean isQuantifier(char c) {
+        return c == '?' || c == '*' || c == '+' || c == '{';
+    }
+
+    private static int skipCharacterClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            ++i;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            ++i;
+        }
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i++);
+            if (c == '\\') {
+                ++i;
+            } else if (c == '[') {
+                ++depth;
+            } else if (c == ']' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipGroup(String regex, int start) {
+        int i = start;
+        int depth = 0;
+        while (i >= 0 && i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '[') {
+                i = skipCharacterClass(regex, i);
+            } else if (c == '(') {
+                ++depth;
+                ++i;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            } else {
+                ++i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter.binary;
+
+import org.eblocker.server.common.exceptions.EblockerException;
+import org.eblocker.server.icap.filter.Filter;
+import org.eblocker.server.icap.filter.FilterDomainContainer;
+import org.eblocker.server.icap.filter.FilterList;
+import org.eblocker.server.icap.filter.FilterPriority;
+import org.eblocker.server.icap.filter.FilterStore;
+import org.eblocker.server.icap.filter.FilterWrapper;
+import org.eblocker.server.icap.filter.learning.AsynchronousLearningFilter;
+import org.eblocker.server.icap.filter.learning.LearningFilter;
+import org.eblocker.server.icap.filter.learning.NotLearningFilter;
+import org.eblocker.server.icap.filter.learning.SynchronousLearningFilter;
+import org.eblocker.server.icap.filter.url.UrlFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary representation of a {@link FilterStore}.
+ * <p>
+ * In contrast to {@link org.eblocker.server.icap.filter.json.JSONMarshaller} filters are written as plain field
+ * sequences without any type information or reflection which makes loading large stores considerably faster. The
+ * output has no header of its own, callers are expected to identify and version it.
+ */
+public class BinaryMarshaller {
+    private static final Logger log = LoggerFactory.getLogger(BinaryMarshaller.class);
+
+    // upper bound for pre-sized collections so corrupt input can not allocate huge amounts of memory
+    private static final int MAX_INITIAL_CAPACITY = 65536;
+
+    private static final byte URL_FILTER = 1;
+    private static final byte REFERENCE = 2;
+    private static final byte LIST = 3;
+
+    private static final byte NOT_LEARNING = 1;
+    private static final byte SYNCHRONOUS_LEARNING = 2;
+    private static final byte ASYNCHRONOUS_LEARNING = 3;
+
+    private BinaryMarshaller() {
+    }
+
+    public static void marshall(FilterStore store, OutputStream out) {
+        try {
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(out));
+            dataOut.writeLong(store.getLastUpdate() != null ? store.getLastUpdate().getTime() : -1);
+
+            // stores are written while filters are learned so the size written must match the entries written
+            List<Filter> filters = new ArrayList<>(store.getStoredFilters());
+            dataOut.writeInt(filters.size());
+            for (Filter filter : filters) {
+                writeFilter(dataOut, filter);
+            }
+
+            writeContainer(dataOut, store.getFilter());
+            dataOut.flush();
+        } catch (IOException e) {
+            log.error("Cannot marshall filter store: {}", e.getMessage(), e);
+            throw new EblockerException("Cannot marshall filter store", e);
+        }
+    }
+
+    public static FilterStore unmarshall(InputStream in) {
+        try {
+            DataInputStream dataIn = new DataInputStream(new BufferedInputStream(in));
+            long lastUpdate = dataIn.readLong();
+
+            int size = readSize(dataIn);
+            Map<String, Filter> filters = new HashMap<>(Math.min(size, MAX_INITIAL_CAPACITY) * 4 / 3 + 1);
+            for (int i = 0; i < size; ++i) {
+                Filter filter = readFilter(dataIn);
+                filters.put(filter.getDefinition(), filter);
+            }
+
+            FilterDomainContainer container = readContainer(dataIn);
+            return new FilterStore(container, filters, lastUpdate != -1 ? new Date(lastUpdate) : null);
+        } catch (IOException e) {
+            log.error("Cannot unmarshall filter store: {}", e.getMessage(), e);
+            throw new EblockerException("Cannot unmarshall filter store", e);
+        }
+    }
+
+    private static void writeFilter(DataOutput out, Filter filter) throws IOException {
+        if (filter instanceof UrlFilter) {
+            out.writeByte(URL_FILTER);
+            ((UrlFilter) filter).writeTo(out);
+        } else if (filter instanceof FilterWrapper) {
+            out.writeByte(REFERENCE);
+            BinaryIO.writeEnum(out, filter.getPriority());
+            BinaryIO.writeString(out, filter.getDefinition());
+            out.writeInt(filter.getMatches());
+        } else if (filter instanceof FilterList) {
+            out.writeByte(LIST);
+            writeFilterList(out, (FilterList) filter);
+        } else {
+            throw new IOException("unsupported filter " + filter.getClass().getName());
+        }
+    }
+
+    private static Filter readFilter(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case URL_FILTER:
+                return UrlFilter.readFrom(in);
+            case REFERENCE:
+                return FilterWrapper.reference(BinaryIO.readEnum(in, FilterPriority.class), BinaryIO.readString(in), in.readInt());
+            case LIST:
+                return readFilterList(in);
+            default:
+                throw new IOException("unknown filter tag " + tag);
+        }
+    }
+
+    private static void writeFilterList(DataOutput out, FilterList filterList) throws IOException {
+        List<Filter> filters = filterList.getList();
+        out.writeInt(filters.size());
+        for (Filter filter : filters) {
+            writeFilter(out, filter);
+        }
+    }
+
+    private static FilterList readFilterList(DataInput in) throws IOException {
+        int size = readSize(in);
+        List<Filter> filters = new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+        for (int i = 0; i < size; ++i) {
+            filters.add(readFilter(in));
+        }
+        return new FilterList(filters);
+    }
+
+    private static void writeContainer(DataOutput out, FilterDomainContainer container) throws IOException {
+        if (container instanceof NotLearningFilter) {
+            out.writeByte(NOT_LEARNING);
+        } else if (container instanceof SynchronousLearningFilter) {
+            out.writeByte(SYNCHRONOUS_LEARNING);
+        } else if (container instanceof AsynchronousLearningFilter) {
+            out.writeByte(ASYNCHRONOUS_LEARNING);
+        } else {
+            throw new IOException("unsupported container " + container.getClass().getName());
+        }
+
+        LearningFilter learningFilter = (LearningFilter) container;
+        out.writeBoolean(learningFilter.isLearnForAllDomains());
+        List<Map.Entry<String, FilterList>> filterLists = new ArrayList<>(learningFilter.getFilterLists().entrySet());
+        out.writeInt(filterLists.size());
+        for (Map.Entry<String, FilterList> e : filterLists) {
+            BinaryIO.writeString(out, e.getKey());
+            writeFilterList(out, e.getValue());
+        }
+    }
+
+    private static FilterDomainContainer readContainer(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        boolean learnForAllDomains = in.readBoolean();
+        int size = readSize(in);
+        Map<String, FilterList> filterLists = new HashMap<>(Math.min(size, MAX_INITIAL_CAPACITY) * 4 / 3 + 1);
+        for (int i = 0; i < size; ++i) {
+            String domain = BinaryIO.readString(in);
+            filterLists.put(domain, readFilterList(in));
+        }
+
+        switch (tag) {
+            case NOT_LEARNING:
+                return new NotLearningFilter(filterLists);
+            case SYNCHRONOUS_LEARNING:
+                return new SynchronousLearningFilter(learnForAllDomains, filterLists);
+            case ASYNCHRONOUS_LEARNING:
+                return new AsynchronousLearningFilter(learnForAllDomains, filterLists);
+            default:
+                throw new IOException("unknown container tag " + tag);
+        }
+    }
+
+    private static int readSize(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("invalid size " + size);
+        }
+        return size;
+    }
+}
@@ -40,6 +40,10 @@ public abstract class ContentFilter {
         return false;
     }
 
+    List<Domain> getDomains() {
+        return domains;
+    }
+
     /**
      * Get the expression part of the filter definition
      * (the string after ## or #@#)
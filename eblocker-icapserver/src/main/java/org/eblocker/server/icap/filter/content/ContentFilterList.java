@@ -16,48 +16,60 @@
  */
 package org.eblocker.server.icap.filter.content;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * A list of content filters that supports adding (##) and removing (#@#) filters.
+ *
+ * <p>Filters are indexed by their domains when the list is set, so matching a hostname
+ * only considers filters for the hostname's own label suffixes.
  */
 public class ContentFilterList {
-    private List<ContentFilter> filters;
+    private Index index;
 
     public ContentFilterList(List<ContentFilter> filters) {
-        this.filters = filters;
+        this.index = new Index(filters);
     }
 
     public List<ContentFilter> getMatchingFilters(String hostname) {
-        List<ContentFilter> matching = filters.stream()
-                .filter(f -> f.getAction() == ContentAction.ADD)
-                .filter(f -> f.matches(hostname))
-                .collect(Collectors.toList());
-
-        // Removals:
-        Set<String> expressionsToRemove = filters.stream()
-                .filter(f -> f.getAction() == ContentAction.REMOVE)
-                .filter(f -> f.matches(hostname))
-                .map(f -> f.getExpression())
-                .collect(Collectors.toSet());
+        Index index = this.index;
+        BitSet candidates = new BitSet();
+        BitSet exactMatches = new BitSet();
+        index.collectCandidates(hostname, candidates, exactMatches);
+
+        List<ContentFilter> matching = new ArrayList<>();
+        Set<String> expressionsToRemove = new HashSet<>();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            ContentFilter filter = index.filters.get(i);
+            if (exactMatches.get(i) || filter.matches(hostname)) {
+                if (filter.getAction() == ContentAction.ADD) {
+                    matching.add(filter);
+                } else {
+                    expressionsToRemove.add(filter.getExpression());
+                }
+            }
+        }
 
         if (expressionsToRemove.isEmpty()) {
             return matching;
-        } else {
-            return matching.stream()
-                    .filter(f -> !expressionsToRemove.contains(f.getExpression()))
-                    .collect(Collectors.toList());
         }
+        matching.removeIf(f -> expressionsToRemove.contains(f.getExpression()));
+        return matching;
     }
+
     public void setFilters(List<ContentFilter> filters) {
-        this.filters = filters;
+        this.index = new Index(filters);
     }
 
     public int size() {
-        return filters.size();
+        return index.filters.size();
     }
 
     @Override
@@ -67,15 +79,93 @@ public class ContentFilterList {
         if (o == null || getClass() != o.getClass())
             return false;
         ContentFilterList that = (ContentFilterList) o;
-        return Objects.equals(filters, that.filters);
+        return Objects.equals(index.filters, that.index.filters);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(filters);
+        return Objects.hash(index.filters);
     }
 
     public static ContentFilterList emptyList() {
         return new ContentFilterList(List.of());
     }
+
+    /**
+     * Maps domains to the positions of their filters in the list. Plain domains are indexed by
+     * name and match exactly if the name is a suffix of the hostname. Domain entities
+     * (e.g. <tt>example.*</tt>) are indexed by their first label and must be verified.
+     */
+    private static class Index {
+        private final List<ContentFilter> filters;
+        private final Map<String, int[]> filtersByDomain;
+        private final Map<String, int[]> filtersByEntityLabel;
+        private final int[] unindexedFilters;
+
+        Index(List<ContentFilter> filters) {
+            this.filters = filters;
+            Map<String, List<Integer>> byDomain = new HashMap<>();
+            Map<String, List<Integer>> byEntityLabel = new HashMap<>();
+            List<Integer> unindexed = new ArrayList<>();
+            for (int i = 0; i < filters.size(); ++i) {
+                for (Domain domain : filters.get(i).getDomains()) {
+                    if (domain.getClass() == Domain.class) {
+                        add(byDomain, domain.getDomain(), i);
+                    } else if (domain instanceof DomainEntity) {
+                        String pattern = domain.getDomain();
+                        int dot = pattern.indexOf('.');
+                        add(byEntityLabel, pattern.substring(0, dot), i);
+                    } else {
+                        unindexed.add(i);
+                    }
+                }
+            }
+            this.filtersByDomain = toArrays(byDomain);
+            this.filtersByEntityLabel = toArrays(byEntityLabel);
+            this.unindexedFilters = unindexed.stream().mapToInt(Integer::intValue).distinct().toArray();
+        }
+
+        /**
+         * Collects positions of all filters possibly matching the hostname. Filters found by an exact
+         * domain suffix match are also added to {@code exact}, all others need to be verified.
+         */
+        void collectCandidates(String hostname, BitSet candidates, BitSet exact) {
+            int start = 0;
+            while (start < hostname.length()) {
+                int end = hostname.indexOf('.', start);
+                if (end == -1) {
+                    end = hostname.length();
+                }
+                set(candidates, exact, filtersByDomain.get(hostname.substring(start)));
+                set(candidates, null, filtersByEntityLabel.get(hostname.substring(start, end)));
+                start = end + 1;
+            }
+            set(candidates, null, unindexedFilters);
+        }
+
+        private static void set(BitSet candidates, BitSet exact, int[] positions) {
+            if (positions == null) {
+                return;
+            }
+            for (int position : positions) {
+                candidates.set(position);
+                if (exact != null) {
+                    exact.set(position);
+                }
+            }
+        }
+
+        private static void add(Map<String, List<Integer>> index, String key, int position) {
+            List<Integer> positions = index.computeIfAbsent(key, k -> new ArrayList<>(1));
+            if (positions.isEmpty() || positions.get(positions.size() - 1) != position) {
+                positions.add(position);
+            }
+        }
+
+        private static Map<String, int[]> toArrays(Map<String, List<Integer>> index) {
+            Map<String, int[]> arrays = new HashMap<>(index.size() * 4 / 3 + 1);
+            index.forEach((key, positions) -> arrays.put(key, positions.stream().mapToInt(Integer::intValue).toArray()));
+            return arrays;
+        }
+    }
 }
@@ -23,6 +23,10 @@ public class Domain {
     public Domain(String domain) {
         this.domain = domain;
     }
+    String getDomain() {
+        return domain;
+    }
+
     public boolean matches(String hostname) {
         return hostname.equals(domain) || hostname.endsWith("." + domain);
     }
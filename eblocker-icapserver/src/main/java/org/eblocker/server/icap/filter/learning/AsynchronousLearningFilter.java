@@ -17,7 +17,9 @@
 package org.eblocker.server.icap.filter.learning;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.eblocker.server.common.transaction.Decision;
 import org.eblocker.server.common.transaction.ImmutableTransactionContext;
 import org.eblocker.server.common.transaction.TransactionContext;
 import org.eblocker.server.icap.filter.FilterList;
@@ -25,16 +27,31 @@ import org.eblocker.server.icap.filter.FilterResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AsynchronousLearningFilter extends LearningFilter implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(AsynchronousLearningFilter.class);
 
     private static final String ASYNC_LEARNING_FILTER_DEF = "<<ASYNC-LEARNING-FILTER>>";
 
-    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final int BATCH_SIZE = 256;
+
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Set<String> queuedKeys = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong droppedEntries = new AtomicLong();
+    private final AtomicLong coalescedEntries = new AtomicLong();
+    private final AtomicLong learnedEntries = new AtomicLong();
+    private final AtomicLong learnTimeTotal = new AtomicLong();
+    private final AtomicLong learnTimeMax = new AtomicLong();
 
     public AsynchronousLearningFilter(@JsonProperty("learnForAllDomains") Boolean learnForAllDomains) {
         super(ASYNC_LEARNING_FILTER_DEF, learnForAllDomains == null ? true : learnForAllDomains);
@@ -47,29 +64,107 @@ public class AsynchronousLearningFilter extends LearningFilter implements Runnab
     }
 
     protected FilterResult doLearn(FilterResult result, TransactionContext context) {
-        if (!queue.offer(new Entry(result, new ImmutableTransactionContext(context)))) {
-            log.warn("Cannot add current transaction to learning queue of filter - continuing anyway. [{}]", context);
+        String key = getKey(result, context);
+        if (!queuedKeys.add(key)) {
+            // equivalent transaction is already waiting to be learned
+            coalescedEntries.incrementAndGet();
+            return result;
+        }
+        if (!queue.offer(new Entry(key, result, new ImmutableTransactionContext(context)))) {
+            queuedKeys.remove(key);
+            if (droppedEntries.getAndIncrement() % QUEUE_CAPACITY == 0) {
+                log.warn("Learning queue is full, dropped {} transactions so far - continuing anyway. [{}]", droppedEntries.get(), context);
+            }
         }
         return result;
     }
 
     @Override
     public void run() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
         try {
-            Entry entry;
-            while ((entry = queue.poll()) != null) {
-                learn(entry.result, entry.context);
+            while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+                learn(batch);
+                batch.clear();
             }
         } catch (Exception e) {
             log.error("aborting learning due to exception", e);
+        } finally {
+            batch.forEach(entry -> queuedKeys.remove(entry.key));
         }
+        log.debug("learning queue: size: {} learned: {} coalesced: {} dropped: {} learn time total: {}us max: {}us",
+                queue.size(), learnedEntries.get(), coalescedEntries.get(), droppedEntries.get(),
+                learnTimeTotal.get() / 1000, learnTimeMax.get() / 1000);
+    }
+
+    private void learn(List<Entry> batch) {
+        for (Entry entry : batch) {
+            queuedKeys.remove(entry.key);
+            long start = System.nanoTime();
+            learn(entry.result, entry.context);
+            long elapsed = System.nanoTime() - start;
+            learnedEntries.incrementAndGet();
+            learnTimeTotal.addAndGet(elapsed);
+            learnTimeMax.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    /**
+     * Transactions decided by the same rule on the same domain are equivalent for learning. Transactions without a
+     * decision have no rule to key on and fall back to their url without query.
+     */
+    private String getKey(FilterResult result, TransactionContext context) {
+        if (result.getDecision() != Decision.NO_DECISION && result.getDecider() != null) {
+            return context.getDomain() + " " + result.getDecider().getDefinition();
+        }
+        String url = context.getUrl();
+        int i = url != null ? url.indexOf('?') : -1;
+        return context.getDomain() + " " + (i != -1 ? url.substring(0, i) : url);
+    }
+
+    @JsonIgnore
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @JsonIgnore
+    public long getDroppedEntries() {
+        return droppedEntries.get();
+    }
+
+    @JsonIgnore
+    public long getCoalescedEntries() {
+        return coalescedEntries.get();
+    }
+
+    @JsonIgnore
+    public long getLearnedEntries() {
+        return learnedEntries.get();
+    }
+
+    /**
+     * @return total time spent learning in nanoseconds
+     */
+    @JsonIgnore
+    public long getLearnTimeTotal() {
+        return learnTimeTotal.get();
+    }
+
+    /**
+     * @return maximum time spent learning a single transaction in nanoseconds
+     */
+    @JsonIgnore
+    public long getLearnTimeMax() {
+        return learnTimeMax.get();
     }
 
     private class Entry {
+        String key;
         FilterResult result;
         TransactionContext context;
 
-        Entry(FilterResult result, TransactionContext context) {
+        Entry(String key, FilterResult result, TransactionContext context) {
+            this.key = key;
             this.result = result;
             this.context = context;
         }
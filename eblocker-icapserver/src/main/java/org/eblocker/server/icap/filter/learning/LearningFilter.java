@@ -16,6 +16,7 @@
  */
 package org.eblocker.server.icap.filter.learning;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.eblocker.server.common.transaction.Decision;
 import org.eblocker.server.common.transaction.TransactionContext;
@@ -30,10 +31,12 @@ import org.eblocker.server.icap.filter.FilterWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class LearningFilter extends AbstractFilter implements FilterDomainContainer {
     private static final Logger log = LoggerFactory.getLogger(LearningFilter.class);
@@ -48,6 +51,8 @@ public abstract class LearningFilter extends AbstractFilter implements FilterDom
 
     private final boolean learnForAllDomains;
 
+    private final AtomicLong modifications = new AtomicLong();
+
     public LearningFilter(String definition, boolean learnForAllDomains) {
         super(FilterPriority.HIGHEST, definition);
         this.learnForAllDomains = learnForAllDomains;
@@ -118,31 +123,59 @@ public abstract class LearningFilter extends AbstractFilter implements FilterDom
     }
 
     protected FilterList get(String domain, boolean createDomainEntry) {
-        synchronized (map) {
-            if (domain == null) {
-                domain = UNDEFINED_DOMAIN;
-            }
-            if (!map.containsKey(domain)) {
-                if (createDomainEntry) {
-                    map.put(domain, new FilterList());
-                } else {
-                    return null;
-                }
-            }
+        if (domain == null) {
+            domain = UNDEFINED_DOMAIN;
         }
-        return map.get(domain);
+        FilterList filterList = map.get(domain);
+        if (filterList == null && createDomainEntry) {
+            filterList = map.computeIfAbsent(domain, d -> new FilterList());
+        }
+        return filterList;
     }
 
     @Override
     public void add(String domain, Filter filter) {
-        get(domain).add(FilterWrapper.wrap(filter));
+        FilterList filterList = get(domain);
+        int size = filterList.size();
+        filterList.add(FilterWrapper.wrap(filter));
+        if (filterList.size() != size) {
+            modifications.incrementAndGet();
+        }
     }
 
     @Override
     public FilterList remove(String domain) {
+        modifications.incrementAndGet();
         return map.remove(domain);
     }
 
+    /**
+     * Match counts decide whether learned filters are trusted so they must survive a restart. As this filter counts a
+     * match whenever one of its contained filters matches, its own count is included in the modifications.
+     */
+    @JsonIgnore
+    @Override
+    public long getModifications() {
+        return isLearning() ? modifications.get() + getMatches() : modifications.get();
+    }
+
+    /**
+     * @return true if this filter learns from results and depends on match counts of contained filters
+     */
+    protected boolean isLearning() {
+        return true;
+    }
+
+    @JsonIgnore
+    public boolean isLearnForAllDomains() {
+        return learnForAllDomains;
+    }
+
+    @JsonIgnore
+    public Map<String, FilterList> getFilterLists() {
+        return Collections.unmodifiableMap(map);
+    }
+
     /**
      * Return list of filters that are not assigned to a specific domain.
      *
@@ -154,6 +187,7 @@ public abstract class LearningFilter extends AbstractFilter implements FilterDom
 
     @Override
     public boolean resolveReferences(FilterStore store) {
+        modifications.incrementAndGet();
         for (Map.Entry<String, FilterList> e : map.entrySet()) {
             if (!e.getValue().resolveReferences(store)) {
                 map.remove(e.getKey());
@@ -164,6 +198,7 @@ public abstract class LearningFilter extends AbstractFilter implements FilterDom
 
     @Override
     public void remove(Filter filter) {
+        modifications.incrementAndGet();
         for (FilterList filterList : map.values()) {
             filterList.remove(filter);
         }
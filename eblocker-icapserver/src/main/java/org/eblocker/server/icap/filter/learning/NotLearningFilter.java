@@ -17,8 +17,11 @@
 package org.eblocker.server.icap.filter.learning;
 
 import org.eblocker.server.common.transaction.TransactionContext;
+import org.eblocker.server.icap.filter.FilterList;
 import org.eblocker.server.icap.filter.FilterResult;
 
+import java.util.Map;
+
 public class NotLearningFilter extends LearningFilter {
 
     private final static String NOT_LEARNING_FILTER_DEF = "<<NOT-LEARNING-FILTER>>";
@@ -27,7 +30,16 @@ public class NotLearningFilter extends LearningFilter {
         super(NOT_LEARNING_FILTER_DEF, false);
     }
 
+    public NotLearningFilter(Map<String, FilterList> map) {
+        super(NOT_LEARNING_FILTER_DEF, false, map);
+    }
+
     protected FilterResult doLearn(FilterResult result, TransactionContext context) {
         return result;
     }
+
+    @Override
+    protected boolean isLearning() {
+        return false;
+    }
 }
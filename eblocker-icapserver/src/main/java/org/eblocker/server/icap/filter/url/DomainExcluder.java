@@ -17,7 +17,12 @@
 package org.eblocker.server.icap.filter.url;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import org.eblocker.server.icap.filter.binary.BinaryIO;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 public class DomainExcluder {
@@ -63,4 +68,22 @@ public class DomainExcluder {
         }
         return s.toString();
     }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(whiteList);
+        out.writeInt(domains.length);
+        for (String domain : domains) {
+            BinaryIO.writeString(out, domain);
+        }
+    }
+
+    static DomainExcluder readFrom(DataInput in) throws IOException {
+        boolean whiteList = in.readBoolean();
+        int size = in.readInt();
+        List<String> domains = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            domains.add(BinaryIO.readString(in));
+        }
+        return new DomainExcluder(domains, whiteList);
+    }
 }
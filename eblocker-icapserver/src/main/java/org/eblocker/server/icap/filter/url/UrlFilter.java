@@ -25,15 +25,21 @@ import org.eblocker.server.icap.filter.AbstractFilter;
 import org.eblocker.server.icap.filter.FilterPriority;
 import org.eblocker.server.icap.filter.FilterResult;
 import org.eblocker.server.icap.filter.FilterType;
+import org.eblocker.server.icap.filter.UrlTokenFilter;
+import org.eblocker.server.icap.filter.UrlTokens;
+import org.eblocker.server.icap.filter.binary.BinaryIO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
-public class UrlFilter extends AbstractFilter {
+public class UrlFilter extends AbstractFilter implements UrlTokenFilter {
     private static final Logger log = LoggerFactory.getLogger(UrlFilter.class);
 
     @JsonProperty("type")
@@ -66,7 +72,9 @@ public class UrlFilter extends AbstractFilter {
     @JsonProperty("contentSecurityPolicies")
     private String contentSecurityPolicies;
 
-    private Pattern pattern;
+    private volatile Pattern pattern;
+
+    private List<String> requiredUrlTokens;
 
     protected UrlFilter(@JsonProperty("priority") FilterPriority priority,
                         @JsonProperty("definition") String definition,
@@ -81,6 +89,15 @@ public class UrlFilter extends AbstractFilter {
         this.matchString = matchString;
         this.thirdParty = thirdParty;
         this.contentSecurityPolicies = contentSecurityPolicies;
+    }
+
+    /**
+     * Compiles the regular expression of this filter. Filters restored from a filter store compile it lazily on first
+     * use instead.
+     *
+     * @throws EblockerException if the regular expression is invalid
+     */
+    void compile() {
         if (matchType == StringMatchType.REGEX) {
             try {
                 pattern = Pattern.compile(matchString);
@@ -92,6 +109,15 @@ public class UrlFilter extends AbstractFilter {
         }
     }
 
+    private Pattern getPattern() {
+        Pattern currentPattern = pattern;
+        if (currentPattern == null) {
+            currentPattern = Pattern.compile(matchString);
+            pattern = currentPattern;
+        }
+        return currentPattern;
+    }
+
     @Override
     protected FilterResult doFilter(TransactionContext context) {
         if (thirdParty != null && context.getReferrer() != null) {
@@ -161,7 +187,7 @@ public class UrlFilter extends AbstractFilter {
     protected boolean isUrlMatching(String url) {
         switch (matchType) {
             case REGEX:
-                return pattern.matcher(url).find();
+                return getPattern().matcher(url).find();
             case DOMAIN:
                 String hostname = UrlUtils.getHostname(url);
                 return hostname.equals(domain) || hostname.endsWith("." + domain);
@@ -177,6 +203,33 @@ public class UrlFilter extends AbstractFilter {
         }
     }
 
+    @JsonIgnore
+    @Override
+    public List<String> getRequiredUrlTokens() {
+        if (requiredUrlTokens == null) {
+            requiredUrlTokens = findRequiredUrlTokens();
+        }
+        return requiredUrlTokens;
+    }
+
+    private List<String> findRequiredUrlTokens() {
+        switch (matchType) {
+            case REGEX:
+                return UrlTokens.getRequiredRegexTokens(matchString);
+            case DOMAIN:
+                return UrlTokens.getRequiredTokens(domain, true, true);
+            case STARTSWITH:
+                return UrlTokens.getRequiredTokens(matchString, true, false);
+            case ENDSWITH:
+                return UrlTokens.getRequiredTokens(matchString, false, true);
+            case EQUALS:
+                return UrlTokens.getRequiredTokens(matchString, true, true);
+            case CONTAINS:
+            default:
+                return UrlTokens.getRequiredTokens(matchString, false, false);
+        }
+    }
+
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -231,4 +284,66 @@ public class UrlFilter extends AbstractFilter {
     public String getDomain() {
         return domain;
     }
+
+    public void writeTo(DataOutput out) throws IOException {
+        BinaryIO.writeEnum(out, getPriority());
+        BinaryIO.writeString(out, getDefinition());
+        BinaryIO.writeString(out, domain);
+        BinaryIO.writeEnum(out, matchType);
+        BinaryIO.writeString(out, matchString);
+        BinaryIO.writeBoolean(out, thirdParty);
+        BinaryIO.writeString(out, contentSecurityPolicies);
+        out.writeInt(getMatches());
+        BinaryIO.writeEnum(out, type);
+        out.writeInt(referrerDomainExcluders != null ? referrerDomainExcluders.size() : -1);
+        if (referrerDomainExcluders != null) {
+            for (DomainExcluder referrerDomainExcluder : referrerDomainExcluders) {
+                referrerDomainExcluder.writeTo(out);
+            }
+        }
+        BinaryIO.writeString(out, redirectParam);
+        writeContentTypes(out, matchingContentTypes);
+        writeContentTypes(out, nonMatchingContentTypes);
+    }
+
+    public static UrlFilter readFrom(DataInput in) throws IOException {
+        UrlFilter filter = new UrlFilter(BinaryIO.readEnum(in, FilterPriority.class),
+                BinaryIO.readString(in),
+                BinaryIO.readString(in),
+                BinaryIO.readEnum(in, StringMatchType.class),
+                BinaryIO.readString(in),
+                BinaryIO.readBoolean(in),
+                BinaryIO.readString(in));
+        filter.setMatches(in.readInt());
+        filter.setType(BinaryIO.readEnum(in, FilterType.class));
+        int excluders = in.readInt();
+        for (int i = 0; i < excluders; ++i) {
+            filter.addReferrerDomainExcluder(DomainExcluder.readFrom(in));
+        }
+        filter.setRedirectParam(BinaryIO.readString(in));
+        filter.setMatchingContentTypes(readContentTypes(in));
+        filter.setNonMatchingContentTypes(readContentTypes(in));
+        return filter;
+    }
+
+    private static void writeContentTypes(DataOutput out, List<ContentType> contentTypes) throws IOException {
+        out.writeInt(contentTypes != null ? contentTypes.size() : -1);
+        if (contentTypes != null) {
+            for (ContentType contentType : contentTypes) {
+                BinaryIO.writeEnum(out, contentType);
+            }
+        }
+    }
+
+    private static List<ContentType> readContentTypes(DataInput in) throws IOException {
+        int size = in.readInt();
+        if (size == -1) {
+            return null;
+        }
+        List<ContentType> contentTypes = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            contentTypes.add(BinaryIO.readEnum(in, ContentType.class));
+        }
+        return contentTypes;
+    }
 }
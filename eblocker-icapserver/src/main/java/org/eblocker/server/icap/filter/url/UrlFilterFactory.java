@@ -153,7 +153,9 @@ public class UrlFilterFactory {
 
         UrlFilter filter = null;
         try {
-            filter = new UrlFilter(priority, definition, domain, matchType, matchString, thirdParty, contentSecurityPolicies);
+            UrlFilter urlFilter = new UrlFilter(priority, definition, domain, matchType, matchString, thirdParty, contentSecurityPolicies);
+            urlFilter.compile();
+            filter = urlFilter;
         } catch (EblockerException e) {
             log.error("Cannot create filter from definition [{}]", definition, e);
         }
@@ -29,6 +29,7 @@ import org.eblocker.server.http.service.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -51,7 +52,7 @@ public class CustomDomainFilterWhitelistService {
 
         this.filtersById = CacheBuilder.newBuilder().concurrencyLevel(1).build();
 
-        domainBlacklistService.addListener(filtersById::invalidateAll);
+        domainBlacklistService.addListener(this::invalidateFilters);
         userService.addListener(user -> filtersById.invalidate(user.getId()));
     }
 
@@ -68,6 +69,13 @@ public class CustomDomainFilterWhitelistService {
         }
     }
 
+    private void invalidateFilters(Set<Integer> updatedIds) {
+        filtersById.asMap().keySet().removeIf(userId -> {
+            UserModule user = userService.getUserById(userId);
+            return user == null || user.getCustomWhitelistId() == null || updatedIds.contains(user.getCustomWhitelistId());
+        });
+    }
+
     @SuppressWarnings("unchecked")
     private DomainFilter<String> createFilter(Integer userId) throws NoFilterException {
         UserModule user = userService.getUserById(userId);
@@ -35,6 +35,7 @@ import org.eblocker.server.icap.service.SurrogateService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Map.Entry;
 import java.util.Optional;
 
@@ -67,6 +68,8 @@ public abstract class AbstractTransaction implements Transaction, TransactionIde
     private Injections injections;
     private ContentEncoding contentEncoding;
     private StringBuilder content;
+    private boolean contentDecodingDeferred;
+    private String bodyEndInjection;
     private static SurrogateService surrogateService = new SurrogateService();
 
     public AbstractTransaction(boolean isRequest, boolean isResponse) {
@@ -377,6 +380,15 @@ public abstract class AbstractTransaction implements Transaction, TransactionIde
 
     @Override
     public StringBuilder getContent() {
+        if (content == null && contentDecodingDeferred) {
+            contentDecodingDeferred = false;
+            try {
+                content = ContentCodec.decode(contentEncoding, getResponse().content());
+            } catch (IOException e) {
+                log.warn("Decompressing content failed", e);
+                contentEncoding = ContentEncoding.UNKNOWN;
+            }
+        }
         return content;
     }
 
@@ -385,6 +397,31 @@ public abstract class AbstractTransaction implements Transaction, TransactionIde
         this.content = content;
     }
 
+    @Override
+    public void setContentDecodingDeferred(boolean deferred) {
+        this.contentDecodingDeferred = deferred;
+    }
+
+    @Override
+    public boolean isContentDecodingDeferred() {
+        return contentDecodingDeferred;
+    }
+
+    @Override
+    public boolean isContentDecoded() {
+        return content != null;
+    }
+
+    @Override
+    public void setBodyEndInjection(String injection) {
+        this.bodyEndInjection = injection;
+    }
+
+    @Override
+    public String getBodyEndInjection() {
+        return bodyEndInjection;
+    }
+
     @Override
     public void setControlBarUrl(String controlBarUrl) {
         this.controlBarUrl = controlBarUrl;
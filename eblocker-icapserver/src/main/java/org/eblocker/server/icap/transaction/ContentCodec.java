@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.transaction;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes and encodes http bodies according to their {@link ContentEncoding}.
+ */
+public class ContentCodec {
+
+    private ContentCodec() {
+    }
+
+    /**
+     * Decodes the whole buffer into a string builder. ISO-8859-1 is used to map bytes to chars transparently.
+     * The reader index of the buffer is not modified.
+     */
+    public static StringBuilder decode(ContentEncoding encoding, ByteBuf buffer) throws IOException {
+        buffer.markReaderIndex();
+        try (InputStream in = wrapDecompressionStream(encoding, new ByteBufInputStream(buffer))) {
+            StringBuilderWriter writer = new StringBuilderWriter();
+            IOUtils.copy(in, writer, StandardCharsets.ISO_8859_1); // ISO_8859_1 encodes / decodes transparently to / from bytes
+            return writer.getBuilder();
+        } finally {
+            buffer.resetReaderIndex();
+        }
+    }
+
+    /**
+     * Checks the buffer starts with a valid stream by decoding its first byte. Corruptions later in the stream
+     * will not be detected. The reader index of the buffer is not modified.
+     */
+    public static void verify(ContentEncoding encoding, ByteBuf buffer) throws IOException {
+        buffer.markReaderIndex();
+        try (InputStream in = wrapDecompressionStream(encoding, new ByteBufInputStream(buffer))) {
+            in.read(); // NOSONAR: result is irrelevant, only decoding errors are of interest
+        } finally {
+            buffer.resetReaderIndex();
+        }
+    }
+
+    public static InputStream wrapDecompressionStream(ContentEncoding encoding, InputStream in) throws IOException {
+        switch (encoding) {
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            case DEFLATE_NO_WRAP:
+                return new InflaterInputStream(in, new Inflater(true));
+            case GZIP:
+                return new GZIPInputStream(in);
+            case BROTLI:
+                return new BrotliInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    public static OutputStream wrapCompressionStream(ContentEncoding encoding, OutputStream out) throws IOException {
+        switch (encoding) {
+            case DEFLATE:
+                return new DeflaterOutputStream(out);
+            case DEFLATE_NO_WRAP:
+                return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+            case GZIP:
+                return new GZIPOutputStream(out);
+            default:
+                return out;
+        }
+    }
+}
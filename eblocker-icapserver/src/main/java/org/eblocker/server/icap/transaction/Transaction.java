@@ -111,10 +111,35 @@ public interface Transaction extends TransactionContext, TransactionIdentifier {
 
     void setContentEncoding(ContentEncoding contentEncoding);
 
+    /**
+     * Returns the decoded response body. If decoding has been deferred the body is decoded on first access.
+     * @return decoded body or null if there is none or decoding failed.
+     */
     StringBuilder getContent();
 
     void setContent(StringBuilder content);
 
+    /**
+     * Defers decoding the response body until {@link #getContent()} is called so processors which do not need
+     * the whole body can work on the encoded response instead.
+     */
+    void setContentDecodingDeferred(boolean deferred);
+
+    boolean isContentDecodingDeferred();
+
+    /**
+     * @return true if the response body has been decoded into {@link #getContent()}
+     */
+    boolean isContentDecoded();
+
+    /**
+     * Sets the html fragment to insert at the end of the body while re-encoding a response whose body
+     * has not been decoded.
+     */
+    void setBodyEndInjection(String injection);
+
+    String getBodyEndInjection();
+
     /**
      * Sets the nonce that can be used to allow the injected ControlBar script
      * in the Content-Security-Policy of the response.
@@ -129,4 +154,10 @@ public interface Transaction extends TransactionContext, TransactionIdentifier {
      * @return CSP nonce or null if the ControlBar should not be injected.
      */
     String getCspNonce();
+
+    /**
+     * Releases the buffers held by this transaction. Must be called if a transaction is dropped without a response
+     * being written.
+     */
+    void release();
 }
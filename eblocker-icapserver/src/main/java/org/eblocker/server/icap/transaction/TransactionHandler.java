@@ -18,33 +18,70 @@ package org.eblocker.server.icap.transaction;
 
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import org.eblocker.server.common.recorder.TransactionRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @ChannelHandler.Sharable
 @Singleton
 public class TransactionHandler extends ChannelInboundHandlerAdapter {
     private static final Logger log = LoggerFactory.getLogger(TransactionHandler.class);
     private static final Logger OPTIMIZE_LOG = LoggerFactory.getLogger("OPTIMIZE");
+    private static final AttributeKey<TransactionQueue> CHANNEL_QUEUE = AttributeKey.valueOf("transactionQueue");
+    private static final int STATISTICS_LOG_INTERVAL = 10000;
 
     private final TransactionProcessorsConfiguration configuration;
 
     private final TransactionRecorder transactionRecorder;
 
+    private final boolean offload;
+    private final Executor executor;
+    private final int channelQueueSize;
+
+    private final AtomicInteger queuedTransactions = new AtomicInteger();
+    private final AtomicLong offloadedTransactions = new AtomicLong();
+    private final AtomicLong queueTimeTotal = new AtomicLong();
+    private final AtomicLong queueTimeMax = new AtomicLong();
+
+    /**
+     * @param offload  if set transactions are processed by the executor instead of the netty thread which received
+     *                 them. Transactions of a single channel are still processed one after another in order.
+     * @param executor executor to process transactions if offloading is enabled
+     * @param channelQueueSize number of transactions which may be waiting for a single channel before reading from it
+     *                 is paused. If twice as many are waiting further transactions are rejected.
+     */
     @Inject
     public TransactionHandler(
             TransactionProcessorsConfiguration configuration,
-            TransactionRecorder transactionRecorder
+            TransactionRecorder transactionRecorder,
+            @Named("icap.transactions.offload.enabled") boolean offload,
+            @Named("icapTransactionExecutor") Executor executor,
+            @Named("icap.transactions.offload.channelQueueSize") int channelQueueSize
     ) {
         log.info("Creating new TransactionHandler");
         this.configuration = configuration;
         this.transactionRecorder = transactionRecorder;
+        this.offload = offload;
+        this.executor = executor;
+        this.channelQueueSize = channelQueueSize;
     }
 
     @Override
@@ -55,7 +92,46 @@ public class TransactionHandler extends ChannelInboundHandlerAdapter {
         }
 
         Transaction transaction = (Transaction) msg;
+        if (!offload) {
+            handle(ctx, transaction);
+            return;
+        }
+
+        queuedTransactions.incrementAndGet();
+        try {
+            getChannelQueue(ctx).add(transaction);
+        } catch (RejectedExecutionException e) {
+            queuedTransactions.decrementAndGet();
+            reject(ctx.channel(), Collections.singletonList(transaction));
+        }
+    }
+
+    /**
+     * @return number of transactions waiting to be processed
+     */
+    public int getQueuedTransactions() {
+        return queuedTransactions.get();
+    }
+
+    public long getOffloadedTransactions() {
+        return offloadedTransactions.get();
+    }
 
+    /**
+     * @return total time in nanoseconds transactions have been waiting to be processed
+     */
+    public long getQueueTimeTotal() {
+        return queueTimeTotal.get();
+    }
+
+    /**
+     * @return maximum time in nanoseconds a transaction has been waiting to be processed
+     */
+    public long getQueueTimeMax() {
+        return queueTimeMax.get();
+    }
+
+    private void handle(ChannelHandlerContext ctx, Transaction transaction) {
         log.debug("Received transaction:\n>>>>---------------------------{}>>>>---------------------------\n", transaction);
 
         boolean outbound;
@@ -76,6 +152,37 @@ public class TransactionHandler extends ChannelInboundHandlerAdapter {
 
     }
 
+    private TransactionQueue getChannelQueue(ChannelHandlerContext ctx) {
+        // always called from the channel's event loop so there is no race in creating the queue
+        Attribute<TransactionQueue> attribute = ctx.channel().attr(CHANNEL_QUEUE);
+        TransactionQueue queue = attribute.get();
+        if (queue == null) {
+            queue = new TransactionQueue(ctx);
+            attribute.set(queue);
+        }
+        return queue;
+    }
+
+    /**
+     * Releases transactions which can not be processed and closes their channel. The icap client will handle this
+     * like any other aborted connection.
+     */
+    private void reject(Channel channel, List<Transaction> transactions) {
+        log.warn("rejected {} transactions of {}: too many queued transactions", transactions.size(), channel);
+        transactions.forEach(Transaction::release);
+        channel.close();
+    }
+
+    private void updateStatistics(long queueTime) {
+        long n = offloadedTransactions.incrementAndGet();
+        long total = queueTimeTotal.addAndGet(queueTime);
+        queueTimeMax.accumulateAndGet(queueTime, Math::max);
+        if (n % STATISTICS_LOG_INTERVAL == 0) {
+            log.info("offloaded transactions: {} queued: {} queue time avg: {}us max: {}us", n, queuedTransactions.get(),
+                    TimeUnit.NANOSECONDS.toMicros(total / n), TimeUnit.NANOSECONDS.toMicros(queueTimeMax.get()));
+        }
+    }
+
     private void processRequest(Transaction transaction) {
         OPTIMIZE_LOG.info("Processing request: {} ...", transaction.getUrl());
         process(transaction, configuration.getRequestProcessors());
@@ -93,4 +200,90 @@ public class TransactionHandler extends ChannelInboundHandlerAdapter {
             }
         }
     }
+
+    /**
+     * Processes transactions of a single channel one after another in order on the executor. Reading from the channel
+     * is paused while too many transactions are waiting. The executor is never called while holding the lock as it may
+     * run tasks or block.
+     */
+    private class TransactionQueue {
+        private final Queue<QueuedTransaction> transactions = new ArrayDeque<>();
+        private final ChannelHandlerContext ctx;
+        private boolean active;
+
+        TransactionQueue(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void add(Transaction transaction) {
+            synchronized (this) {
+                if (transactions.size() >= 2 * channelQueueSize) {
+                    throw new RejectedExecutionException("too many queued transactions");
+                }
+                transactions.add(new QueuedTransaction(transaction, System.nanoTime()));
+                if (transactions.size() == channelQueueSize) {
+                    ctx.channel().config().setAutoRead(false);
+                }
+                if (active) {
+                    return;
+                }
+                active = true;
+            }
+            scheduleNext();
+        }
+
+        private void scheduleNext() {
+            QueuedTransaction next;
+            synchronized (this) {
+                next = transactions.poll();
+                if (next == null) {
+                    active = false;
+                    return;
+                }
+                if (transactions.size() == channelQueueSize / 2) {
+                    ctx.channel().config().setAutoRead(true);
+                }
+            }
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        process(next);
+                    } finally {
+                        scheduleNext();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                List<Transaction> dropped = new ArrayList<>();
+                dropped.add(next.transaction);
+                synchronized (this) {
+                    transactions.forEach(t -> dropped.add(t.transaction));
+                    transactions.clear();
+                    active = false;
+                }
+                queuedTransactions.addAndGet(-dropped.size());
+                reject(ctx.channel(), dropped);
+            }
+        }
+
+        private void process(QueuedTransaction queuedTransaction) {
+            queuedTransactions.decrementAndGet();
+            updateStatistics(System.nanoTime() - queuedTransaction.queued);
+            try {
+                handle(ctx, queuedTransaction.transaction);
+            } catch (RuntimeException e) {
+                ctx.fireExceptionCaught(e);
+            }
+        }
+    }
+
+    private static class QueuedTransaction {
+        final Transaction transaction;
+        final long queued;
+
+        QueuedTransaction(Transaction transaction, long queued) {
+            this.transaction = transaction;
+            this.queued = queued;
+        }
+    }
 }
@@ -16,10 +16,12 @@
  */
 package org.eblocker.server.icap.transaction.processor;
 
+import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -27,7 +29,9 @@ import org.eblocker.server.common.data.CompressionMode;
 import org.eblocker.server.common.data.Device;
 import org.eblocker.server.common.service.FeatureService;
 import org.eblocker.server.common.service.FeatureServiceSubscriber;
+import org.eblocker.server.common.util.BodyEndInsertingOutputStream;
 import org.eblocker.server.http.service.DeviceService;
+import org.eblocker.server.icap.transaction.ContentCodec;
 import org.eblocker.server.icap.transaction.ContentEncoding;
 import org.eblocker.server.icap.transaction.Transaction;
 import org.eblocker.server.icap.transaction.TransactionProcessor;
@@ -35,11 +39,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
 
 @Singleton
 public class CompressProcessor implements TransactionProcessor {
@@ -61,7 +63,7 @@ public class CompressProcessor implements TransactionProcessor {
             return true;
         }
 
-        if (transaction.getContent() != null) {
+        if (transaction.isContentDecoded()) {
             try {
                 ContentEncoding encoding = selectResponseEncoding(transaction);
                 ByteBuf encodedContent = encode(encoding, transaction.getContent());
@@ -69,6 +71,16 @@ public class CompressProcessor implements TransactionProcessor {
             } catch (IOException e) {
                 log.error("compressing response failed", e);
             }
+        } else if (transaction.isContentDecodingDeferred() && transaction.getBodyEndInjection() != null) {
+            try {
+                ContentEncoding encoding = selectResponseEncoding(transaction);
+                ByteBuf encodedContent = transcode(transaction.getContentEncoding(), encoding, transaction.getResponse().content(), transaction.getBodyEndInjection());
+                setHttpResponseContent(transaction, encoding, encodedContent);
+                transaction.setContentDecodingDeferred(false);
+                transaction.setBodyEndInjection(null);
+            } catch (IOException e) {
+                log.error("re-encoding response failed", e);
+            }
         }
 
         return true;
@@ -102,7 +114,7 @@ public class CompressProcessor implements TransactionProcessor {
 
     private ByteBuf encode(ContentEncoding encoding, StringBuilder content) throws IOException {
         ByteBuf channelBuffer = ByteBufAllocator.DEFAULT.buffer(content.length());
-        try (OutputStream out = wrapCompressionStream(encoding, new ByteBufOutputStream(channelBuffer))) {
+        try (OutputStream out = ContentCodec.wrapCompressionStream(encoding, new ByteBufOutputStream(channelBuffer))) {
             out.write(content.toString().getBytes(StandardCharsets.ISO_8859_1));
             return channelBuffer;
         } catch (IOException e) {
@@ -111,6 +123,24 @@ public class CompressProcessor implements TransactionProcessor {
         }
     }
 
+    /**
+     * Decodes, injects and re-encodes the content in a single pass without holding the decoded content in memory.
+     */
+    private ByteBuf transcode(ContentEncoding sourceEncoding, ContentEncoding targetEncoding, ByteBuf content, String injection) throws IOException {
+        ByteBuf channelBuffer = ByteBufAllocator.DEFAULT.buffer(content.readableBytes() + injection.length());
+        content.markReaderIndex();
+        try (InputStream in = ContentCodec.wrapDecompressionStream(sourceEncoding, new ByteBufInputStream(content));
+             OutputStream out = new BodyEndInsertingOutputStream(ContentCodec.wrapCompressionStream(targetEncoding, new ByteBufOutputStream(channelBuffer)), injection.getBytes(StandardCharsets.ISO_8859_1))) {
+            ByteStreams.copy(in, out);
+        } catch (IOException e) {
+            channelBuffer.release();
+            throw e;
+        } finally {
+            content.resetReaderIndex();
+        }
+        return channelBuffer;
+    }
+
     private ContentEncoding selectResponseEncoding(Transaction transaction) {
         if (featureService.getCompressionMode() == CompressionMode.OFF) {
             return ContentEncoding.NONE;
@@ -148,17 +178,4 @@ public class CompressProcessor implements TransactionProcessor {
         return transaction.getContentEncoding();
     }
 
-    private OutputStream wrapCompressionStream(ContentEncoding encoding, OutputStream out) throws IOException {
-        switch (encoding) {
-            case DEFLATE:
-                return new DeflaterOutputStream(out);
-            case DEFLATE_NO_WRAP:
-                return new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
-            case GZIP:
-                return new GZIPOutputStream(out);
-            default:
-                return out;
-        }
-    }
-
 }
@@ -16,12 +16,8 @@
  */
 package org.eblocker.server.icap.transaction.processor;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufInputStream;
 import io.netty.handler.codec.http.HttpHeaders;
-import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.StringBuilderWriter;
-import org.brotli.dec.BrotliInputStream;
+import org.eblocker.server.icap.transaction.ContentCodec;
 import org.eblocker.server.icap.transaction.ContentEncoding;
 import org.eblocker.server.icap.transaction.Transaction;
 import org.eblocker.server.icap.transaction.TransactionProcessor;
@@ -29,11 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 public class DecompressProcessor implements TransactionProcessor {
 
@@ -50,7 +41,9 @@ public class DecompressProcessor implements TransactionProcessor {
 
         if (encoding != ContentEncoding.UNKNOWN) {
             try {
-                transaction.setContent(decodeBuffer(encoding, transaction.getResponse().content()));
+                // content is decoded on demand as processors may be able to work on the encoded stream
+                ContentCodec.verify(encoding, transaction.getResponse().content());
+                transaction.setContentDecodingDeferred(true);
             } catch (IOException e) {
                 log.warn("Decompressing content failed", e);
                 transaction.setContentEncoding(ContentEncoding.UNKNOWN);
@@ -85,35 +78,4 @@ public class DecompressProcessor implements TransactionProcessor {
         int zlibCompressionMethod = transaction.getResponse().content().getByte(0) & 0x0f;
         return zlibCompressionMethod == 8 ? ContentEncoding.DEFLATE : ContentEncoding.DEFLATE_NO_WRAP;
     }
-
-    private StringBuilder decodeBuffer(ContentEncoding encoding, ByteBuf buffer) throws IOException {
-        buffer.markReaderIndex();
-        try (InputStream in = wrapDecompressionStream(encoding, new ByteBufInputStream(buffer))) {
-            return toStringBuilder(in);
-        } finally {
-            buffer.resetReaderIndex();
-        }
-    }
-
-    private static InputStream wrapDecompressionStream(ContentEncoding encoding, InputStream in) throws IOException {
-        switch (encoding) {
-            case DEFLATE:
-                return new InflaterInputStream(in);
-            case DEFLATE_NO_WRAP:
-                return new InflaterInputStream(in, new Inflater(true));
-            case GZIP:
-                return new GZIPInputStream(in);
-            case BROTLI:
-                return new BrotliInputStream(in);
-            default:
-                return in;
-        }
-    }
-
-    private StringBuilder toStringBuilder(InputStream in) throws IOException {
-        StringBuilderWriter writer = new StringBuilderWriter();
-        IOUtils.copy(in, writer, StandardCharsets.ISO_8859_1); // ISO_8859_1 encodes / decodes transparently to / from bytes
-        return writer.getBuilder();
-    }
-
 }
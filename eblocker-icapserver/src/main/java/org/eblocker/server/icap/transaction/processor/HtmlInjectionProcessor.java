@@ -45,12 +45,12 @@ public class HtmlInjectionProcessor implements TransactionProcessor {
             return true;
         }
 
-        StringBuilder content = transaction.getContent();
-        if (content == null) {
-            return true;
+        if (transaction.isContentDecoded()) {
+            inject(transaction.getContent(), transaction.getInjections().getInjections());
+        } else if (transaction.isContentDecodingDeferred()) {
+            // body is still encoded, injection is done while re-encoding it
+            transaction.setBodyEndInjection(concat(transaction.getInjections().getInjections()));
         }
-
-        inject(content, transaction.getInjections().getInjections());
         return true;
     }
 
@@ -61,13 +61,16 @@ public class HtmlInjectionProcessor implements TransactionProcessor {
      * @param injections
      */
     private void inject(StringBuilder content, List<String> injections) {
+        //find last body tag and inject everything there
+        HtmlUtils.insertBeforeBodyEnd(content, concat(injections));
+    }
+
+    private String concat(List<String> injections) {
         StringBuilder injectionTotal = new StringBuilder();
         for (String injection : injections) {
             injectionTotal.append(injection);
         }
-
-        //find last body tag and inject everything there
-        HtmlUtils.insertBeforeBodyEnd(content, injectionTotal.toString());
+        return injectionTotal.toString();
     }
 
     /**
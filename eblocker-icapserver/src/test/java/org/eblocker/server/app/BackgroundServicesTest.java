@@ -52,6 +52,7 @@ import org.eblocker.server.common.scheduler.UpnpWatchdogScheduler;
 import org.eblocker.server.common.update.AutomaticUpdater;
 import org.eblocker.server.common.update.ControlBarAliasUpdater;
 import org.eblocker.server.http.service.DeviceScanningService;
+import org.eblocker.server.http.service.DeviceUpdateListener;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -74,6 +75,7 @@ class BackgroundServicesTest {
     private ArpListener arpListener;
     private DhcpListener dhcpListener;
     private DhcpBindListener dhcpBindListener;
+    private DeviceUpdateListener deviceUpdateListener;
     private TorController torController;
     private Ip6AddressMonitor ip6AddressMonitor;
     private DeviceScanningService deviceScanningService;
@@ -85,6 +87,7 @@ class BackgroundServicesTest {
         unlimitedCachePoolExecutor = Mockito.mock(ScheduledExecutorService.class);
         dhcpListener = Mockito.mock(DhcpListener.class);
         dhcpBindListener = Mockito.mock(DhcpBindListener.class);
+        deviceUpdateListener = Mockito.mock(DeviceUpdateListener.class);
         arpListener = Mockito.mock(ArpListener.class);
         IpAdressValidatorScheduler ipAdressValidatorScheduler = Mockito.mock(IpAdressValidatorScheduler.class);
         Ip6MulticastPingScheduler ip6MulticastPingScheduler = Mockito.mock(Ip6MulticastPingScheduler.class);
@@ -127,6 +130,7 @@ class BackgroundServicesTest {
                 unlimitedCachePoolExecutor,
                 dhcpListener,
                 dhcpBindListener,
+                deviceUpdateListener,
                 torController,
                 ip6AddressMonitor,
                 sessionPurgerScheduler,
@@ -188,6 +192,9 @@ class BackgroundServicesTest {
 
         verify(highPrioExecutorService, never()).execute(ip6AddressMonitor);
         verify(lowPrioExecutorService, never()).execute(ip6AddressMonitor);
+
+        verify(highPrioExecutorService, never()).execute(deviceUpdateListener);
+        verify(lowPrioExecutorService, never()).execute(deviceUpdateListener);
     }
 
     @Test
@@ -202,6 +209,7 @@ class BackgroundServicesTest {
         verify(unlimitedCachePoolExecutor, Mockito.atLeast(1)).execute(captor.capture());
 
         assertTrue(captor.getAllValues().stream().anyMatch(r -> r == arpListener));
+        assertTrue(captor.getAllValues().stream().anyMatch(r -> r == deviceUpdateListener));
         assertTrue(captor.getAllValues().stream().anyMatch(r -> r instanceof NamedRunnable && ((NamedRunnable) r).getName().startsWith(DhcpListener.class.getSimpleName())));
     }
 
@@ -143,6 +143,21 @@ class BlacklistCompilerTest {
         hashedNonBlockedDomains.forEach(domain -> assertFalse(bloomDomainFilter.isBlocked(domain).isBlocked()));
     }
 
+    @Test
+    void compileSortedArrayFilter() throws IOException {
+        //given
+        //when
+        blacklistCompiler.compileSortedArrayFilter(123, "unit-test", blockedDomains, filterFilePath.toString());
+
+        //then
+        assertTrue(Files.exists(filterFilePath));
+        assertFalse(Files.exists(bloomFilterFilePath));
+
+        DomainFilter<String> filter = new SortedArrayFilter(Charsets.UTF_8, filterFilePath, true);
+        blockedDomains.forEach(domain -> assertTrue(filter.isBlocked(domain).isBlocked()));
+        nonBlockedDomains.forEach(domain -> assertFalse(filter.isBlocked(domain).isBlocked()));
+    }
+
     private List<byte[]> hash(List<String> domains) {
         HashFunction hashFunction = Hashing.sipHash24();
         return domains.stream()
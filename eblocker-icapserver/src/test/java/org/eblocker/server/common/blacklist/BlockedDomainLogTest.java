@@ -16,6 +16,7 @@
  */
 package org.eblocker.server.common.blacklist;
 
+import org.eblocker.server.common.collections.BatchingRingBuffer;
 import org.eblocker.server.common.data.parentalcontrol.BlockedDomainLogEntry;
 import org.eblocker.server.common.data.statistic.BlockedDomainsStatisticService;
 import org.junit.jupiter.api.BeforeEach;
@@ -23,6 +24,7 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -37,7 +39,7 @@ class BlockedDomainLogTest {
     void setup() {
         statisticService = Mockito.mock(BlockedDomainsStatisticService.class);
         Executor executor = Executors.newSingleThreadExecutor();
-        log = new BlockedDomainLog(statisticService, executor);
+        log = new BlockedDomainLog(statisticService, executor, 16, BatchingRingBuffer.OverflowPolicy.DROP_OLDEST);
     }
 
     @Test
@@ -46,10 +48,11 @@ class BlockedDomainLogTest {
 
         Thread.sleep(100);
 
-        ArgumentCaptor<BlockedDomainLogEntry> captor = ArgumentCaptor.forClass(BlockedDomainLogEntry.class);
-        Mockito.verify(statisticService).countBlockedDomain(captor.capture());
+        ArgumentCaptor<List<BlockedDomainLogEntry>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(statisticService).countBlockedDomains(captor.capture());
 
-        BlockedDomainLogEntry entry = captor.getValue();
+        assertEquals(1, captor.getValue().size());
+        BlockedDomainLogEntry entry = captor.getValue().get(0);
         assertEquals("device:10101099", entry.getDeviceId());
         assertEquals("setup.eblocker.com", entry.getDomain());
         assertEquals(Integer.valueOf(2), entry.getListId());
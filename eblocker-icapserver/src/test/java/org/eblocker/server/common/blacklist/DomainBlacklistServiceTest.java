@@ -41,10 +41,11 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -98,23 +99,65 @@ class DomainBlacklistServiceTest {
     }
 
     @Test
-    void init() throws IOException {
+    void init() throws InterruptedException, IOException, ExecutionException {
         initService();
 
         // check filters have been loaded
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
-        assertTrue(service.getFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
-        assertFalse(service.getFilter(1).isBlocked(".filter-1.version-0.com").isBlocked());
-        assertTrue(service.getFilter(1).isBlocked(".filter-1.version-1.com").isBlocked());
-        assertInstanceOf(BloomDomainFilter.class, service.getFilter(2));
-        assertTrue(service.getFilter(3).isBlocked(Hashing.md5().hashString(".filter-3.version-0.com", Charsets.UTF_8).asBytes()).isBlocked());
-        assertTrue(service.getFilter(4).isBlocked(Hashing.sha1().hashString(".filterSha1-4.version-0.com", Charsets.UTF_8).asBytes()).isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
+        assertTrue(getLoadedFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
+        assertFalse(getLoadedFilter(1).isBlocked(".filter-1.version-0.com").isBlocked());
+        assertTrue(getLoadedFilter(1).isBlocked(".filter-1.version-1.com").isBlocked());
+        assertInstanceOf(BloomDomainFilter.class, getLoadedFilter(2));
+        assertTrue(getLoadedFilter(3).isBlocked(Hashing.md5().hashString(".filter-3.version-0.com", Charsets.UTF_8).asBytes()).isBlocked());
+        assertTrue(getLoadedFilter(4).isBlocked(Hashing.sha1().hashString(".filterSha1-4.version-0.com", Charsets.UTF_8).asBytes()).isBlocked());
 
         // check unused and old filter has been removed
         assertFalse(Files.exists(Paths.get(cachePath + "/lists/0-v0.filter")));
     }
 
+    @Test
+    void loadFilters() throws InterruptedException, IOException, ExecutionException {
+        initService();
+
+        // filters are not loaded before being used
+        assertFalse(service.isFilterLoaded(0));
+        assertFalse(service.isFilterLoaded(1));
+        assertFalse(service.isFilterLoaded(2));
+
+        service.loadFilters(Arrays.asList(0, 1, 99));
+
+        waitForExecutor();
+
+        assertTrue(service.isFilterLoaded(0));
+        assertTrue(service.isFilterLoaded(1));
+        assertFalse(service.isFilterLoaded(2));
+        assertTrue(getLoadedFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
+    }
+
+    @Test
+    void getFilterNotLoaded() throws InterruptedException, ExecutionException, IOException {
+        initService();
+        DomainBlacklistService.Listener listener = Mockito.mock(DomainBlacklistService.Listener.class);
+        service.addListener(listener);
+
+        // filter is loaded in background and listeners are notified once it is available
+        CountDownLatch latch = new CountDownLatch(1);
+        executorService.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertNull(service.getFilter(0));
+        assertNull(service.getFilter(0));
+        latch.countDown();
+        waitForExecutor();
+        Mockito.verify(listener).onUpdate(Set.of(0));
+        assertTrue(service.getFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
+    }
+
     @Test
     void initIoErrorStoredFilter() throws Exception {
         Files.write(Paths.get(cachePath + "/lists/0-v1.filter"), new byte[1024], StandardOpenOption.TRUNCATE_EXISTING);
@@ -122,9 +165,14 @@ class DomainBlacklistServiceTest {
         Files.delete(Paths.get(cachePath + "/lists/3-v0.filter"));
         initService();
 
-        assertNull(service.getFilter(0));
-        assertNull(service.getFilter(1));
-        assertNull(service.getFilter(3));
+        assertNull(getLoadedFilter(0));
+        assertNull(getLoadedFilter(1));
+        assertNull(getLoadedFilter(3));
+
+        // failures are not retried until the filter is updated
+        assertTrue(service.isFilterLoaded(0));
+        assertTrue(service.isFilterLoaded(1));
+        assertTrue(service.isFilterLoaded(3));
     }
 
     @Test
@@ -137,16 +185,14 @@ class DomainBlacklistServiceTest {
         // replace filters with a single updated version of filter 0
         service.setFilters(Collections.singletonList(createFilterMetaData(new Date(2))));
 
-        // schedule a dummy job and wait on it to ensure previous task is done
-        executorService.submit(() -> {
-        }).get();
+        waitForExecutor();
 
         // check update is handled correctly
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
-        assertTrue(service.getFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-3.com").isBlocked());
-        assertNull(service.getFilter(1));
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
+        assertTrue(getLoadedFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-3.com").isBlocked());
+        assertNull(getLoadedFilter(1));
 
         // check last two version of filter 2 are there
         assertTrue(Files.exists(Paths.get(cachePath + "/lists/0-v2.filter")));
@@ -164,20 +210,19 @@ class DomainBlacklistServiceTest {
         assertNotNull(fileFilterById1);
         assertTrue(fileFilterById1.get(0).isDeleted());
 
-        Mockito.verify(listener).onUpdate();
+        Mockito.verify(listener).onUpdate(Set.of(0, 1, 2, 3, 4, 5));
 
         // run a second update filters with a single updated version of filter 0
         service.setFilters(Collections.singletonList(createFilterMetaData(new Date(3))));
 
-        executorService.shutdown();
-        boolean finished = executorService.awaitTermination(1, TimeUnit.MINUTES);
+        waitForExecutor();
 
         // check update is handled correctly
-        assertTrue(finished);
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
-        assertFalse(service.getFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
-        assertTrue(service.getFilter(0).isBlocked(".filter-0.version-3.com").isBlocked());
+        Mockito.verify(listener).onUpdate(Set.of(0));
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-0.com").isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-1.com").isBlocked());
+        assertFalse(getLoadedFilter(0).isBlocked(".filter-0.version-2.com").isBlocked());
+        assertTrue(getLoadedFilter(0).isBlocked(".filter-0.version-3.com").isBlocked());
 
         // check only two version of 2 are still there and the rest is gone
         assertTrue(Files.exists(Paths.get(cachePath + "/lists/0-v3.filter")));
@@ -236,8 +281,20 @@ class DomainBlacklistServiceTest {
         }
     }
 
+    private DomainFilter getLoadedFilter(int id) throws InterruptedException, ExecutionException {
+        service.loadFilters(Collections.singletonList(id));
+        waitForExecutor();
+        return service.getFilter(id);
+    }
+
+    private void waitForExecutor() throws InterruptedException, ExecutionException {
+        // schedule a dummy job and wait on it to ensure previous tasks are done
+        executorService.submit(() -> {
+        }).get();
+    }
+
     private void initService() throws IOException {
-        service = new DomainBlacklistService(Charsets.UTF_8.name(), sourcePath, cachePath, objectMapper, executorService);
+        service = new DomainBlacklistService(Charsets.UTF_8.name(), sourcePath, cachePath, false, 1024, objectMapper, executorService, executorService);
     }
 
 }
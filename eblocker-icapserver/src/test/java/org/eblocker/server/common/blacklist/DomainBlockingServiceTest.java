@@ -477,12 +477,38 @@ class DomainBlockingServiceTest {
 
         when(domainBlacklistService.getFilter(10)).thenReturn(parentalControlFilter);
         when(domainBlacklistService.getFilter(15)).thenReturn(new BloomDomainFilter<>(bloomFilter, null));
-        listenerCaptor.getValue().onUpdate();
+        listenerCaptor.getValue().onUpdate(Set.of(10, 15));
 
         assertFalse(service.isBlocked(enabledParentalControlDevice, "parentalcontrol.com").isBlocked());
         assertTrue(service.isBlocked(enabledParentalControlDevice, "parentalcontrol2.com").isBlocked());
     }
 
+    @Test
+    void testFilterUpdateUnrelatedList() {
+        service.init();
+
+        assertTrue(service.isBlocked(parentalControlDevice, "parentalcontrol.com").isBlocked());
+        assertTrue(service.isBlocked(enabledDevice, "random.ads.com").isBlocked());
+
+        ArgumentCaptor<DomainBlacklistService.Listener> listenerCaptor =
+                ArgumentCaptor.forClass(DomainBlacklistService.Listener.class);
+        verify(domainBlacklistService).addListener(listenerCaptor.capture());
+
+        when(domainBlacklistService.getFilter(0)).thenReturn(new CollectionFilter<>(0, List.of(".ads2.com")));
+        when(domainBlacklistService.getFilter(10)).thenReturn(new CollectionFilter<>(10, List.of(".parentalcontrol2.com")));
+        listenerCaptor.getValue().onUpdate(Set.of(99));
+
+        // no filter depends on list 99 so all filters are kept
+        assertTrue(service.isBlocked(parentalControlDevice, "parentalcontrol.com").isBlocked());
+        assertTrue(service.isBlocked(enabledDevice, "random.ads.com").isBlocked());
+
+        listenerCaptor.getValue().onUpdate(Set.of(0));
+
+        // only filters using ads lists have been dropped
+        assertTrue(service.isBlocked(parentalControlDevice, "parentalcontrol.com").isBlocked());
+        assertFalse(service.isBlocked(enabledDevice, "random.ads.com").isBlocked());
+    }
+
     @Test
     void testUserProfileChange() {
         service.init();
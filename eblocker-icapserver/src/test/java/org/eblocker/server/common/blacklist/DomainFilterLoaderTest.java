@@ -22,6 +22,7 @@ import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DomainFilterLoaderTest {
     private String cachePath;
@@ -128,6 +129,20 @@ class DomainFilterLoaderTest {
             //Then
             assertNotNull(domainFilter);
         }
+
+        @Test
+        void loadStoredFilter_domainblacklist_sorted() throws IOException {
+            //Given
+            new SortedArrayFilter(Charsets.UTF_8, Paths.get(cachePath + "/lists/6-v0.filter"), 6, "anyName", List.of(".any.com"));
+            CachedFileFilter cachedFileFilter = new CachedFileFilter(new CachedFilterKey(6, 0), null, "lists/6-v0.filter", "domainblacklist/sorted", false);
+
+            //When
+            DomainFilter<?> domainFilter = sut.loadStoredFilter(cachedFileFilter);
+
+            //Then
+            assertNotNull(domainFilter);
+            assertTrue(((SortedArrayFilter) domainFilter).isBlocked(".any.com").isBlocked());
+        }
     }
 
     @Test
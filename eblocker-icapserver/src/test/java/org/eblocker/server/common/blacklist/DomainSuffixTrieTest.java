@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class DomainSuffixTrieTest {
+
+    @Test
+    public void testPutAndGet() {
+        DomainSuffixTrie trie = new DomainSuffixTrie(2);
+        trie.put(".example.com", 0);
+        trie.put("www.example.com", 1);
+        trie.put(".example.org", 2);
+        trie.put(".example.com", 3);
+
+        Assert.assertEquals(0, trie.get(".example.com"));
+        Assert.assertEquals(1, trie.get("www.example.com"));
+        Assert.assertEquals(2, trie.get(".example.org"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get("example.com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get(".com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get("a.www.example.com"));
+    }
+
+    @Test
+    public void testWalk() {
+        DomainSuffixTrie trie = new DomainSuffixTrie();
+        trie.put(".com", 5);
+
+        long position = trie.getRoot();
+        for (char c : "moc.".toCharArray()) {
+            Assert.assertEquals(DomainSuffixTrie.NONE, trie.getValue(position));
+            position = trie.getChild(position, c);
+        }
+        Assert.assertEquals(5, trie.getValue(position));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.getChild(position, 'x'));
+        Assert.assertEquals(2, trie.getNodes());
+    }
+
+    @Test
+    public void testSplitLabels() {
+        DomainSuffixTrie trie = new DomainSuffixTrie(2);
+        trie.put("www.example.com", 0);
+        trie.put("mail.example.com", 1);
+        trie.put(".com", 2);
+        trie.put("example.com", 3);
+        trie.put("www.example.org", 4);
+        trie.trimToSize();
+        trie.put("ftp.example.com", 5);
+
+        Assert.assertEquals(0, trie.get("www.example.com"));
+        Assert.assertEquals(1, trie.get("mail.example.com"));
+        Assert.assertEquals(2, trie.get(".com"));
+        Assert.assertEquals(3, trie.get("example.com"));
+        Assert.assertEquals(4, trie.get("www.example.org"));
+        Assert.assertEquals(5, trie.get("ftp.example.com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get("com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get(".example.com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get("ww.example.com"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get("example.org"));
+    }
+
+    @Test
+    public void testNonAscii() {
+        DomainSuffixTrie trie = new DomainSuffixTrie();
+        Assert.assertTrue(trie.put(".xn--mnchen-3ya.de", 0));
+        Assert.assertFalse(trie.put(".m\u00fcnchen.de", 1));
+        Assert.assertEquals(0, trie.get(".xn--mnchen-3ya.de"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get(".m\u00fcnchen.de"));
+        Assert.assertEquals(DomainSuffixTrie.NONE, trie.get(".m\u00fc"));
+    }
+}
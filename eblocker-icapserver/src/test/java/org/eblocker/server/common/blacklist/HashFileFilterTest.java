@@ -100,6 +100,24 @@ public class HashFileFilterTest {
         }
     }
 
+    @Test
+    public void testMemoryMapped() throws IOException {
+        HashFileFilter mapped = new HashFileFilter(storagePath, true);
+
+        blockedDomains.forEach(domain -> Assert.assertTrue(mapped.isBlocked(domain).isBlocked()));
+        nonBlockedDomains.forEach(domain -> Assert.assertFalse(mapped.isBlocked(domain).isBlocked()));
+
+        Assert.assertEquals(Files.size(storagePath), mapped.getMappedSize());
+        Assert.assertEquals(0, filter.getMappedSize());
+
+        List<byte[]> domains = filter.getDomains().collect(Collectors.toList());
+        List<byte[]> mappedDomains = mapped.getDomains().collect(Collectors.toList());
+        Assert.assertEquals(domains.size(), mappedDomains.size());
+        for (int i = 0; i < domains.size(); ++i) {
+            Assert.assertArrayEquals(domains.get(i), mappedDomains.get(i));
+        }
+    }
+
     private List<byte[]> readAndHash(InputStream in) throws IOException {
         return IOUtils.readLines(in).stream()
                 .map(domain -> HASH_FUNCTION.hashString(domain, CHARSET))
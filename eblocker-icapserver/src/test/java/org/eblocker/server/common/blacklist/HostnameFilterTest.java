@@ -16,13 +16,21 @@
  */
 package org.eblocker.server.common.blacklist;
 
+import com.google.common.base.Charsets;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class HostnameFilterTest {
 
@@ -30,15 +38,130 @@ public class HostnameFilterTest {
 
     private CollectionFilter collectionFilter;
     private HostnameFilter filter;
+    private Path storagePath;
+    private DomainSuffixTrieCache trieCache;
 
     @Before
-    public void setup() {
+    public void setup() throws IOException {
         collectionFilter = new CollectionFilter(0, filteredDomains);
         filter = new HostnameFilter(collectionFilter);
+        storagePath = Files.createTempFile("unit-test-hostname", ".sorted");
+        trieCache = new DomainSuffixTrieCache(Runnable::run);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(storagePath);
     }
 
     @Test
     public void test() {
+        Assert.assertFalse(filter.isTrieEnabled());
+        assertBlockedHostnames(filter);
+    }
+
+    @Test
+    public void testTrie() throws IOException {
+        SortedArrayFilter listFilter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 7, "unit-test", filteredDomains);
+        HostnameFilter trieFilter = new HostnameFilter(Filters.or(listFilter, new SortedArrayFilter(Charsets.UTF_8, storagePath, true)), trieCache);
+
+        Assert.assertTrue(trieFilter.isTrieEnabled());
+        assertBlockedHostnames(trieFilter);
+
+        FilterDecision<String> decision = trieFilter.isBlocked("www.twitter.com");
+        Assert.assertEquals(".twitter.com", decision.getDomain());
+        Assert.assertSame(listFilter, decision.getFilter());
+        Assert.assertEquals(Integer.valueOf(7), decision.getFilter().getListId());
+    }
+
+    @Test
+    public void testTrieBuiltInBackground() throws IOException {
+        List<Runnable> tasks = new ArrayList<>();
+        trieCache = new DomainSuffixTrieCache(tasks::add);
+        HostnameFilter trieFilter = new HostnameFilter(new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", filteredDomains), trieCache);
+
+        // parent domains are checked one by one until trie is ready
+        Assert.assertFalse(trieFilter.isTrieEnabled());
+        assertBlockedHostnames(trieFilter);
+
+        Assert.assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        Assert.assertTrue(trieFilter.isTrieEnabled());
+        assertBlockedHostnames(trieFilter);
+    }
+
+    @Test
+    public void testTrieShared() throws IOException {
+        List<Runnable> tasks = new ArrayList<>();
+        trieCache = new DomainSuffixTrieCache(tasks::add);
+        SortedArrayFilter listFilter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", filteredDomains);
+        HostnameFilter trieFilter = new HostnameFilter(listFilter, trieCache);
+        HostnameFilter otherTrieFilter = new HostnameFilter(Filters.or(listFilter), trieCache);
+
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals(1, trieCache.size());
+        tasks.remove(0).run();
+        Assert.assertTrue(trieFilter.isTrieEnabled());
+        Assert.assertTrue(otherTrieFilter.isTrieEnabled());
+
+        // another version of the list gets its own trie
+        SortedArrayFilter updatedListFilter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", filteredDomains);
+        HostnameFilter updatedTrieFilter = new HostnameFilter(updatedListFilter, trieCache);
+        Assert.assertFalse(updatedTrieFilter.isTrieEnabled());
+        Assert.assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void testTrieLargeList() throws IOException {
+        List<String> domains = IntStream.range(0, 100000)
+                .mapToObj(i -> (i % 2 == 0 ? "." : "host.") + "domain" + i + (i % 3 == 0 ? ".com" : ".net"))
+                .collect(Collectors.toList());
+        SortedArrayFilter listFilter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", domains);
+        HostnameFilter trieFilter = new HostnameFilter(listFilter, trieCache);
+        HostnameFilter labelFilter = new HostnameFilter(Filters.or(listFilter, new CollectionFilter<String>(1, Collections.emptyList())), trieCache);
+
+        Assert.assertTrue(trieFilter.isTrieEnabled());
+        Assert.assertFalse(labelFilter.isTrieEnabled());
+        for (String hostname : Arrays.asList("www.domain0.com", "domain0.com", "domain2.net", "host.domain1.net", "www.host.domain1.net",
+                "domain1.net", "domain1.com", "www.domain100000.com", "omain0.com")) {
+            Assert.assertEquals(hostname, labelFilter.isBlocked(hostname).isBlocked(), trieFilter.isBlocked(hostname).isBlocked());
+        }
+        Assert.assertTrue(trieFilter.isBlocked("www.domain99996.com").isBlocked());
+        Assert.assertTrue(trieFilter.isBlocked("host.domain99997.net").isBlocked());
+    }
+
+    @Test
+    public void testTrieSizeLimit() throws IOException {
+        List<String> domains = IntStream.range(0, HostnameFilter.MAX_TRIE_DOMAINS + 1)
+                .mapToObj(i -> ".domain" + i + ".com")
+                .collect(Collectors.toList());
+        HostnameFilter trieFilter = new HostnameFilter(new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", domains), trieCache);
+
+        Assert.assertFalse(trieFilter.isTrieEnabled());
+        Assert.assertTrue(trieFilter.isBlocked("www.domain0.com").isBlocked());
+    }
+
+    @Test
+    public void testTrieNonAsciiList() throws IOException {
+        HostnameFilter trieFilter = new HostnameFilter(new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", Arrays.asList(".m\u00fcnchen.de", ".twitter.com")), trieCache);
+
+        Assert.assertFalse(trieFilter.isTrieEnabled());
+        Assert.assertTrue(trieFilter.isBlocked("www.m\u00fcnchen.de").isBlocked());
+        Assert.assertTrue(trieFilter.isBlocked("www.twitter.com").isBlocked());
+    }
+
+    @Test
+    public void testIrregularHostnames() throws IOException {
+        HostnameFilter trieFilter = new HostnameFilter(new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", filteredDomains), trieCache);
+        for (HostnameFilter hostnameFilter : Arrays.asList(filter, trieFilter)) {
+            Assert.assertTrue(hostnameFilter.isBlocked("www.twitter.com.").isBlocked());
+            Assert.assertTrue(hostnameFilter.isBlocked("www..twitter.com").isBlocked());
+            Assert.assertFalse(hostnameFilter.isBlocked("").isBlocked());
+            Assert.assertFalse(hostnameFilter.isBlocked(".").isBlocked());
+        }
+    }
+
+    private void assertBlockedHostnames(HostnameFilter filter) {
         // blocked domain
         Assert.assertTrue(filter.isBlocked("twitter.com").isBlocked());
         Assert.assertTrue(filter.isBlocked("www.twitter.com").isBlocked());
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.List;
+
+public class ListDecisionCacheTest {
+
+    private ListDecisionCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ListDecisionCache(1024);
+    }
+
+    @Test
+    public void testSharedLookups() {
+        DomainFilter<String> filter = Mockito.spy(new CollectionFilter<>(1, List.of("blocked.com")));
+        DomainFilter<String> first = cache.wrap(new CachedFilterKey(1, 0), filter);
+        DomainFilter<String> second = cache.wrap(new CachedFilterKey(1, 0), filter);
+
+        Assert.assertTrue(first.isBlocked("blocked.com").isBlocked());
+        Assert.assertTrue(second.isBlocked("blocked.com").isBlocked());
+        Assert.assertFalse(first.isBlocked("allowed.com").isBlocked());
+        Assert.assertFalse(second.isBlocked("allowed.com").isBlocked());
+
+        Mockito.verify(filter, Mockito.times(1)).isBlocked("blocked.com");
+        Mockito.verify(filter, Mockito.times(1)).isBlocked("allowed.com");
+        Assert.assertEquals(2, cache.getStatistics().getHits());
+        Assert.assertEquals(2, cache.getStatistics().getMisses());
+        Assert.assertEquals(0.5, cache.getStatistics().getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testVersions() {
+        DomainFilter<String> oldVersion = cache.wrap(new CachedFilterKey(1, 0), new CollectionFilter<>(1, List.of("blocked.com")));
+        DomainFilter<String> newVersion = cache.wrap(new CachedFilterKey(1, 1), new CollectionFilter<>(1, Collections.emptyList()));
+
+        Assert.assertTrue(oldVersion.isBlocked("blocked.com").isBlocked());
+        Assert.assertFalse(newVersion.isBlocked("blocked.com").isBlocked());
+        Assert.assertEquals(0, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void testHashes() {
+        DomainFilter<byte[]> filter = cache.wrap(new CachedFilterKey(1, 0), new CollectionFilter<>(1, Collections.emptyList()));
+
+        Assert.assertFalse(filter.isBlocked(new byte[]{ 1, 2, 3 }).isBlocked());
+        Assert.assertFalse(filter.isBlocked(new byte[]{ 1, 2, 3 }).isBlocked());
+        Assert.assertEquals(1, cache.getStatistics().getHits());
+    }
+
+    @Test
+    public void testUnwrap() {
+        DomainFilter<String> filter = new CollectionFilter<>(1, Collections.emptyList());
+        Assert.assertSame(filter, ListCachingFilter.unwrap(cache.wrap(new CachedFilterKey(1, 0), filter)));
+        Assert.assertSame(filter, ListCachingFilter.unwrap(filter));
+    }
+}
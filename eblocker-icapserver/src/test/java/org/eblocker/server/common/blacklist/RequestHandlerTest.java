@@ -31,6 +31,7 @@ import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
 import java.util.Collections;
+import java.util.concurrent.RejectedExecutionException;
 
 public class RequestHandlerTest {
 
@@ -78,7 +79,7 @@ public class RequestHandlerTest {
         filterStatisticsService = Mockito.mock(FilterStatisticsService.class);
         domainRecordingService = Mockito.mock(DomainRecordingService.class);
 
-        requestHandler = new RequestHandler(blockedDomainLog, domainBlockingService, deviceService, filterStatisticsService, domainRecordingService);
+        requestHandler = new RequestHandler(blockedDomainLog, domainBlockingService, deviceService, filterStatisticsService, domainRecordingService, Runnable::run);
 
         embeddedChannel = new EmbeddedChannel(requestHandler);
     }
@@ -161,6 +162,49 @@ public class RequestHandlerTest {
         Mockito.verifyNoInteractions(blockedDomainLog);
     }
 
+    @Test
+    public void testConcurrentBlockedDomain() {
+        String response = request("7 10.10.10.99 http www.pouet.net -");
+        Assert.assertEquals("7 OK message=1,100,www.pouet.net,1,target", response);
+        Mockito.verify(blockedDomainLog).addEntry("device:10101099", "www.pouet.net", 100);
+    }
+
+    @Test
+    public void testConcurrentNonBlockedDomain() {
+        String response = request("0 10.10.10.99 https - xkcd.org");
+        Assert.assertEquals("0 ERR", response);
+    }
+
+    @Test
+    public void testConcurrentMalformedRequest() {
+        String response = request("3 127.0.0.1");
+        Assert.assertEquals("3 BH", response);
+        Assert.assertTrue(embeddedChannel.isActive());
+    }
+
+    @Test
+    public void testConcurrentRequestRejected() {
+        requestHandler = new RequestHandler(blockedDomainLog, domainBlockingService, deviceService, filterStatisticsService, domainRecordingService, task -> {
+            throw new RejectedExecutionException("unit-test");
+        });
+        embeddedChannel = new EmbeddedChannel(requestHandler);
+
+        String response = request("5 10.10.10.99 http www.pouet.net -");
+        Assert.assertEquals("5 BH", response);
+        Assert.assertTrue(embeddedChannel.isActive());
+        Mockito.verifyNoInteractions(domainBlockingService);
+    }
+
+    @Test
+    public void testPipelinedRequests() {
+        embeddedChannel.writeInbound("1 10.10.10.99 http xkcd.org -", "2 10.10.10.99 http www.pouet.net -", "3 10.10.10.90 http www.pouet.net -");
+        embeddedChannel.checkException();
+        Assert.assertEquals("1 ERR\n", embeddedChannel.readOutbound());
+        Assert.assertEquals("2 OK message=1,100,www.pouet.net,1,target\n", embeddedChannel.readOutbound());
+        Assert.assertEquals("3 ERR\n", embeddedChannel.readOutbound());
+        Assert.assertNull(embeddedChannel.readOutbound());
+    }
+
     private String request(String query) {
         embeddedChannel.writeInbound(query);
         embeddedChannel.checkException();
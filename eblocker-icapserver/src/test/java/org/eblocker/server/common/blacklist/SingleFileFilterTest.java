@@ -115,4 +115,18 @@ public class SingleFileFilterTest {
         blockedDomains.forEach(domain -> Assert.assertTrue(filter.isBlocked(domain).isBlocked()));
         nonBlockedDomains.forEach(domain -> Assert.assertFalse(filter.isBlocked(domain).isBlocked()));
     }
+
+    @Test
+    public void testMemoryMapped() throws IOException {
+        SingleFileFilter filter = new SingleFileFilter(Charsets.UTF_8, storagePath, 0, "unit-test", blockedDomains);
+        SingleFileFilter mapped = new SingleFileFilter(Charsets.UTF_8, storagePath, true);
+
+        blockedDomains.forEach(domain -> Assert.assertTrue(mapped.isBlocked(domain).isBlocked()));
+        nonBlockedDomains.forEach(domain -> Assert.assertFalse(mapped.isBlocked(domain).isBlocked()));
+
+        Assert.assertEquals(Files.size(storagePath), mapped.getMappedSize());
+        Assert.assertEquals(0, filter.getMappedSize());
+        Assert.assertEquals(filter.getResidentSize(), mapped.getResidentSize());
+        Assert.assertEquals(filter.getDomains().collect(Collectors.toList()), mapped.getDomains().collect(Collectors.toList()));
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.blacklist;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SortedArrayFilterTest {
+
+    private List<String> blockedDomains;
+    private List<String> nonBlockedDomains;
+
+    private Path storagePath;
+
+    @Before
+    public void setup() throws IOException {
+        blockedDomains = IOUtils.readLines(ClassLoader.getSystemResourceAsStream("test-data/domainblacklists/top-1000"));
+        nonBlockedDomains = IOUtils.readLines(ClassLoader.getSystemResourceAsStream("test-data/domainblacklists/bottom-1000"));
+
+        storagePath = Files.createTempFile("unit-test-blacklist", ".sorted");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(storagePath);
+    }
+
+    @Test
+    public void testisBlockedDomain() throws IOException {
+        SortedArrayFilter filter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", blockedDomains);
+        blockedDomains.forEach(domain -> Assert.assertTrue(filter.isBlocked(domain).isBlocked()));
+        nonBlockedDomains.forEach(domain -> Assert.assertFalse(filter.isBlocked(domain).isBlocked()));
+    }
+
+    @Test
+    public void testPrefixesAreNotBlocked() throws IOException {
+        SortedArrayFilter filter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", Arrays.asList(".example.com", ".müller.de"));
+        Assert.assertTrue(filter.isBlocked(".example.com").isBlocked());
+        Assert.assertTrue(filter.isBlocked(".müller.de").isBlocked());
+        Assert.assertFalse(filter.isBlocked(".example.co").isBlocked());
+        Assert.assertFalse(filter.isBlocked(".example.com.au").isBlocked());
+        Assert.assertFalse(filter.isBlocked("").isBlocked());
+    }
+
+    @Test
+    public void testGetSizeAndDomains() throws IOException {
+        SortedArrayFilter filter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 0, "unit-test", blockedDomains);
+        List<String> domains = filter.getDomains().collect(Collectors.toList());
+        Assert.assertEquals(blockedDomains.size(), filter.getSize());
+        Assert.assertEquals(blockedDomains.size(), domains.size());
+        Assert.assertTrue(domains.containsAll(blockedDomains));
+    }
+
+    @Test
+    public void testDeserialization() throws IOException {
+        SortedArrayFilter filter = new SortedArrayFilter(Charsets.UTF_8, storagePath, 7, "unit-test", blockedDomains);
+        SortedArrayFilter inMemory = new SortedArrayFilter(Charsets.UTF_8, storagePath, true);
+        SortedArrayFilter mapped = new SortedArrayFilter(Charsets.UTF_8, storagePath, false);
+
+        for (SortedArrayFilter deserialized : Arrays.asList(inMemory, mapped)) {
+            Assert.assertEquals(Integer.valueOf(7), deserialized.getListId());
+            Assert.assertEquals(filter.getName(), deserialized.getName());
+            Assert.assertEquals(filter.getDomains().collect(Collectors.toList()), deserialized.getDomains().collect(Collectors.toList()));
+            blockedDomains.forEach(domain -> Assert.assertTrue(deserialized.isBlocked(domain).isBlocked()));
+            nonBlockedDomains.forEach(domain -> Assert.assertFalse(deserialized.isBlocked(domain).isBlocked()));
+        }
+
+        Assert.assertEquals(0, inMemory.getMappedSize());
+        Assert.assertTrue(mapped.getMappedSize() > 0);
+        Assert.assertTrue(inMemory.getResidentSize() > mapped.getResidentSize());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchingRingBufferTest {
+
+    @Test
+    public void testBatches() throws InterruptedException {
+        BatchingRingBuffer<Integer> buffer = new BatchingRingBuffer<>(8, BatchingRingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(buffer.add(i));
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2), buffer.takeBatch(3));
+        assertEquals(Arrays.asList(3, 4), buffer.takeBatch(3));
+        assertEquals(0, buffer.size());
+        assertTrue(buffer.takeBatch(3, 10, TimeUnit.MILLISECONDS).isEmpty());
+
+        // wrap around
+        for (int i = 5; i < 13; ++i) {
+            assertTrue(buffer.add(i));
+        }
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9, 10, 11, 12), buffer.takeBatch(10));
+        assertEquals(0, buffer.getDropped());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        BatchingRingBuffer<Integer> buffer = new BatchingRingBuffer<>(4, BatchingRingBuffer.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 4; ++i) {
+            assertTrue(buffer.add(i));
+        }
+        assertFalse(buffer.add(4));
+        assertFalse(buffer.add(5));
+
+        assertEquals(2, buffer.getDropped());
+        assertEquals(Arrays.asList(2, 3, 4, 5), buffer.takeBatch(10));
+    }
+
+    @Test
+    public void testSample() throws InterruptedException {
+        BatchingRingBuffer<Integer> buffer = new BatchingRingBuffer<>(100, BatchingRingBuffer.OverflowPolicy.SAMPLE);
+        for (int i = 0; i < 10000; ++i) {
+            buffer.add(i);
+        }
+
+        assertEquals(100, buffer.size());
+        assertEquals(9900, buffer.getDropped());
+
+        List<Integer> batch = buffer.takeBatch(1000);
+        assertEquals(100, batch.size());
+        assertEquals(100, new HashSet<>(batch).size());
+        // a uniform sample of 10000 elements must contain elements added after the buffer was full
+        assertTrue(batch.stream().anyMatch(i -> i >= 5000));
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentProducers() throws InterruptedException {
+        BatchingRingBuffer<Integer> buffer = new BatchingRingBuffer<>(64, BatchingRingBuffer.OverflowPolicy.DROP_OLDEST);
+        int producers = 4;
+        int elements = 10000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < producers; ++i) {
+            int offset = i * elements;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < elements; ++j) {
+                    buffer.add(offset + j);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        Set<Integer> taken = new HashSet<>();
+        long expected = producers * elements;
+        while (taken.size() + buffer.getDropped() < expected) {
+            for (Integer i : buffer.takeBatch(16, 100, TimeUnit.MILLISECONDS)) {
+                assertTrue(taken.add(i));
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(expected, taken.size() + buffer.getDropped());
+    }
+}
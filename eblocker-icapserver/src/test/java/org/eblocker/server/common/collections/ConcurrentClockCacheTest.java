@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentClockCacheTest {
+
+    @Test
+    public void test() {
+        ConcurrentClockCache<String, String> cache = new ConcurrentClockCache<>(3);
+        assertNull(cache.put("key-1", "value-1"));
+        assertNull(cache.put("key-2", "value-2"));
+        assertNull(cache.put("key-3", "value-3"));
+        assertEquals(3, cache.size());
+
+        assertEquals("value-1", cache.put("key-1", "alter-1"));
+        assertEquals("alter-1", cache.get("key-1"));
+        assertNull(cache.get("key-4"));
+
+        assertEquals("value-2", cache.remove("key-2"));
+        assertFalse(cache.containsKey("key-2"));
+        assertEquals(2, cache.size());
+
+        cache.put("key-4", "value-4");
+        assertEquals(3, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void secondChanceEviction() {
+        ConcurrentClockCache<String, String> cache = new ConcurrentClockCache<>(3);
+        cache.put("key-1", "value-1");
+        cache.put("key-2", "value-2");
+        cache.put("key-3", "value-3");
+
+        // access all but key-2
+        assertEquals("value-1", cache.get("key-1"));
+        assertEquals("value-3", cache.get("key-3"));
+
+        // insert additional element forcing eviction of the only non-accessed key
+        cache.put("key-4", "value-4");
+        assertEquals(3, cache.size());
+        assertNull(cache.get("key-2"));
+        assertEquals("value-1", cache.get("key-1"));
+        assertEquals("value-3", cache.get("key-3"));
+        assertEquals("value-4", cache.get("key-4"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void sizeIsBounded() throws Exception {
+        ConcurrentClockCache<Integer, Integer> cache = new ConcurrentClockCache<>(1000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            int offset = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50000; ++i) {
+                    int key = (i * 4 + offset) % 5000;
+                    Integer value = cache.get(key);
+                    if (value == null) {
+                        cache.put(key, key);
+                    } else {
+                        assertEquals(key, value.intValue());
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertEquals(1000, cache.size());
+        assertEquals(200000, cache.getHitCount() + cache.getMissCount());
+        assertEquals(cache.getMissCount() - 1000, cache.getEvictionCount());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class IntIntHashMapTest {
+
+    @Test
+    public void testPutGet() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        map.put(0, 10);
+        map.put(-1, 11);
+        map.put(0x0a0a0a63, 12);
+        assertEquals(10, map.get(0, -1));
+        assertEquals(11, map.get(-1, -1));
+        assertEquals(12, map.get(0x0a0a0a63, -1));
+        assertEquals(-1, map.get(1, -1));
+        assertEquals(3, map.size());
+
+        map.put(0, 20);
+        assertEquals(20, map.get(0, -1));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void testGrow() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        for (int i = 0; i < 10000; ++i) {
+            map.put(0x0a000000 + i * 256, i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals(i, map.get(0x0a000000 + i * 256, -1));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        map.put(1, 1);
+        map.put(2, 2);
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(1, -1));
+        map.put(2, 3);
+        assertEquals(3, map.get(2, -1));
+    }
+}
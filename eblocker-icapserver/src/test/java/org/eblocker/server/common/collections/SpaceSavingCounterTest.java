@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.collections;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingCounterTest {
+
+    @Test
+    public void testExactBelowCapacity() {
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(4);
+        add(counter, "a", 3);
+        add(counter, "b", 1);
+        add(counter, "c", 3);
+        add(counter, "d", 2);
+
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("a", 3);
+        expected.put("c", 3);
+        expected.put("d", 2);
+        assertEquals(expected, counter.getTop(3));
+        assertEquals(Arrays.asList("a", "c", "d", "b"), new ArrayList<>(counter.getAll().keySet()));
+        assertEquals(1, counter.getCount("b"));
+        assertEquals(0, counter.getError("b"));
+        assertEquals(0, counter.getCount("e"));
+        assertEquals(4, counter.size());
+    }
+
+    @Test
+    public void testEviction() {
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(2);
+        add(counter, "a", 5);
+        add(counter, "b", 2);
+        add(counter, "c", 1);
+
+        // c replaces b and inherits its count
+        assertEquals(2, counter.size());
+        assertEquals(0, counter.getCount("b"));
+        assertEquals(3, counter.getCount("c"));
+        assertEquals(2, counter.getError("c"));
+        assertEquals(5, counter.getCount("a"));
+        assertEquals(Arrays.asList("a", "c"), new ArrayList<>(counter.getTop(5).keySet()));
+    }
+
+    @Test
+    public void testHeavyHittersAreTracked() {
+        List<String> stream = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            for (int j = 0; j < 200 - i * 10; ++j) {
+                stream.add("heavy" + i);
+            }
+        }
+        for (int i = 0; i < 2000; ++i) {
+            stream.add("rare" + i);
+        }
+        Collections.shuffle(stream, new Random(0));
+
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(50);
+        stream.forEach(counter::add);
+
+        Map<String, Integer> top = counter.getTop(10);
+        for (int i = 0; i < 10; ++i) {
+            String key = "heavy" + i;
+            int count = 200 - i * 10;
+            assertTrue(key, top.containsKey(key));
+            assertTrue(key, counter.getCount(key) >= count);
+            assertTrue(key, counter.getCount(key) - counter.getError(key) <= count);
+        }
+    }
+
+    @Test
+    public void testClear() {
+        SpaceSavingCounter<String> counter = new SpaceSavingCounter<>(2);
+        counter.add("a", 10);
+        counter.clear();
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.getCount("a"));
+        assertTrue(counter.getTop(2).isEmpty());
+    }
+
+    private void add(SpaceSavingCounter<String> counter, String key, int n) {
+        for (int i = 0; i < n; ++i) {
+            counter.add(key);
+        }
+    }
+}
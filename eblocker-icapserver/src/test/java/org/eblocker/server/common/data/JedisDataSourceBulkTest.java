@@ -0,0 +1,117 @@
+/*
+ * Copyright 2021 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.data;
+
+import org.eblocker.server.common.EmbeddedRedisTestBase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Checks bulk reads against a real redis with 1,000 devices and users and logs their timing compared
+ * to reading keys and entities one by one.
+ */
+public class JedisDataSourceBulkTest extends EmbeddedRedisTestBase {
+    private static final Logger log = LoggerFactory.getLogger(JedisDataSourceBulkTest.class);
+
+    private static final int ENTITIES = 1000;
+    private static final int ROUNDS = 10;
+
+    private JedisDataSource dataSource;
+
+    @Override
+    protected void doSetup() {
+        super.doSetup();
+        dataSource = new JedisDataSource(jedisPool, objectMapper);
+        for (int i = 0; i < ENTITIES; ++i) {
+            dataSource.save(TestDeviceFactory.createDevice(String.format("%012x", i), "10.0." + (i / 256) + "." + (i % 256), true));
+            dataSource.save(new UserModule(i, i, "user" + i, "user" + i, null, null, false, null, Collections.emptyMap(), null, null, null), i);
+        }
+        // unrelated keys which must be skipped by scans
+        try (Jedis jedis = jedisPool.getResource()) {
+            for (int i = 0; i < ENTITIES; ++i) {
+                jedis.set("other_key:" + i, "other value " + i);
+            }
+        }
+    }
+
+    @Test
+    public void testGetDevices() {
+        Set<Device> devices = dataSource.getDevices();
+        Assert.assertEquals(ENTITIES, devices.size());
+        Assert.assertEquals(ENTITIES, dataSource.getDeviceIds().size());
+        Device device = devices.stream().filter(d -> d.getId().equals("device:0000000003e7")).findAny().orElse(null);
+        Assert.assertNotNull(device);
+        Assert.assertEquals(Collections.singletonList(IpAddress.parse("10.0.3.231")), device.getIpAddresses());
+
+        long scan = time(() -> dataSource.getDevices());
+        long keys = time(() -> {
+            try (Jedis jedis = jedisPool.getResource()) {
+                for (String id : jedis.keys(Device.ID_PREFIX + "*")) {
+                    dataSource.getDevice(id);
+                }
+            }
+        });
+        log.info("getDevices: scan and pipeline: {}us keys and hgetall: {}us", scan / 1000, keys / 1000);
+    }
+
+    @Test
+    public void testGetAll() {
+        List<UserModule> users = dataSource.getAll(UserModule.class);
+        Assert.assertEquals(ENTITIES, users.size());
+        // entities are still returned in order of their keys
+        List<String> names = users.stream().map(UserModule::getName).collect(Collectors.toList());
+        List<String> sortedNames = new ArrayList<>(names);
+        Collections.sort(sortedNames);
+        Assert.assertEquals(sortedNames, names);
+
+        long scan = time(() -> dataSource.getAll(UserModule.class));
+        long keys = time(() -> {
+            try (Jedis jedis = jedisPool.getResource()) {
+                for (String id : jedis.keys("UserModule:[0-9]*")) {
+                    dataSource.get(UserModule.class, id);
+                }
+            }
+        });
+        log.info("getAll: scan and mget: {}us keys and get: {}us", scan / 1000, keys / 1000);
+    }
+
+    @Test
+    public void testDeleteAll() {
+        dataSource.deleteAll(UserModule.class);
+        Assert.assertTrue(dataSource.getAll(UserModule.class).isEmpty());
+        Assert.assertEquals(ENTITIES, dataSource.getDevices().size());
+        Assert.assertEquals(ENTITIES, dataSource.keys("other_key:*").size());
+    }
+
+    private long time(Runnable runnable) {
+        runnable.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / ROUNDS;
+    }
+}
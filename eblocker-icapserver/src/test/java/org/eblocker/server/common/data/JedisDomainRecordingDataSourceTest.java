@@ -21,8 +21,12 @@ import org.eblocker.server.common.EmbeddedRedisTestBase;
 import org.eblocker.server.common.recorder.RecordedDomainBin;
 import org.junit.Test;
 
+import redis.clients.jedis.Jedis;
+
 import java.io.IOException;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -62,4 +66,45 @@ public class JedisDomainRecordingDataSourceTest extends EmbeddedRedisTestBase {
         dataSource.removeBins(deviceId);
         assertTrue(dataSource.getBins(deviceId).isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSaveAll() {
+        Instant t0 = Instant.now();
+        Instant t1 = t0.plusMillis(1000);
+
+        Map<String, RecordedDomainBin> bins = new HashMap<>();
+        for (int i = 0; i < 10; ++i) {
+            RecordedDomainBin bin = new RecordedDomainBin(t0, t1);
+            bin.update("tracker" + i + ".com", true, false);
+            bin.update("eblocker.org", false, true);
+            bins.put(deviceId + i, bin);
+        }
+
+        dataSource.saveAll(bins);
+
+        for (int i = 0; i < 10; ++i) {
+            Set<RecordedDomainBin> result = dataSource.getBins(deviceId + i);
+            assertEquals(1, result.size());
+            RecordedDomainBin bin = result.iterator().next();
+            assertEquals(bins.get(deviceId + i), bin);
+            assertEquals(t0, bin.getBegin());
+            assertEquals(1, bin.getRequests().get("eblocker.org").getPatternPassed());
+        }
+    }
+
+    @Test
+    public void testReadJsonBin() throws IOException {
+        Instant t0 = Instant.now();
+        RecordedDomainBin bin = new RecordedDomainBin(t0, t0.plusMillis(1000));
+        bin.update("tracker.com", true, false);
+        bin.update("tracker.com", true, true);
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            jedis.set("recorded_domains:" + deviceId + ":" + t0.toEpochMilli(), objectMapper.writeValueAsString(bin));
+        }
+
+        Set<RecordedDomainBin> result = dataSource.getBins(deviceId);
+        assertEquals(1, result.size());
+        assertTrue(result.contains(bin));
+    }
+}
@@ -30,12 +30,20 @@ import redis.clients.jedis.Pipeline;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
 
 public class JedisDnsDataSourceTest {
 
+    private static final int DAYS = 2;
+
     private static TestRedisServer REDIS_SERVER;
     private static JedisPool JEDIS_POOL;
 
@@ -55,7 +63,7 @@ public class JedisDnsDataSourceTest {
 
     @Before
     public void setup() {
-        jedisDnsDataSource = new JedisDnsDataSource(JEDIS_POOL);
+        jedisDnsDataSource = new JedisDnsDataSource(DAYS, JEDIS_POOL);
         try (Jedis jedis = JEDIS_POOL.getResource()) {
             Pipeline pipeline = jedis.pipelined();
             pipeline.rpush("dns_stats:test",
@@ -83,33 +91,95 @@ public class JedisDnsDataSourceTest {
     }
 
     @Test
-    public void getEventsByResolver() {
-        List<ResolverEvent> stats = jedisDnsDataSource.getEventsByResolver("test");
-        Assert.assertNotNull(stats);
-        Assert.assertEquals(12, stats.size());
-        Assert.assertEquals(ZonedDateTime.of(2017, 11, 20, 12, 0, 0, 0, ZoneId.systemDefault()).toInstant(), stats.get(0).getInstant());
+    public void getResolvers() {
+        try (Jedis jedis = JEDIS_POOL.getResource()) {
+            jedis.rpush("dns_stats:vpn-1", entry(ZonedDateTime.of(2017, 11, 20, 12, 0, 0, 0, ZoneId.systemDefault()), "8.8.8.8", "error"));
+            jedis.hset("dns_stats_hist:test:2017112012", "0,8.8.8.8,valid", "1");
+        }
+        Assert.assertEquals(new HashSet<>(Arrays.asList("test", "vpn-1")), jedisDnsDataSource.getResolvers());
+    }
+
+    @Test
+    public void getAndRemoveEvents() {
+        List<ResolverEvent> events = jedisDnsDataSource.getEvents("test", 5);
+        Assert.assertEquals(5, events.size());
+        Assert.assertEquals(ZonedDateTime.of(2017, 11, 20, 12, 0, 0, 0, ZoneId.systemDefault()).toInstant(), events.get(0).getInstant());
+        try (Jedis jedis = JEDIS_POOL.getResource()) {
+            // events are kept until removed explicitly
+            Assert.assertEquals(Long.valueOf(12), jedis.llen("dns_stats:test"));
+        }
+
+        jedisDnsDataSource.removeEvents("test", events.size());
+        events = jedisDnsDataSource.getEvents("test", 100);
+        Assert.assertEquals(7, events.size());
+        Assert.assertEquals(ZonedDateTime.of(2017, 11, 20, 12, 0, 5, 0, ZoneId.systemDefault()).toInstant(), events.get(0).getInstant());
+        Assert.assertEquals("9.9.9.9", events.get(6).getNameServer());
+
+        jedisDnsDataSource.removeEvents("test", events.size());
+        Assert.assertTrue(jedisDnsDataSource.getEvents("test", 100).isEmpty());
+        Assert.assertTrue(jedisDnsDataSource.getResolvers().isEmpty());
+        Assert.assertTrue(jedisDnsDataSource.getEvents("unknown", 100).isEmpty());
     }
 
     @Test
-    public void getEventsByUnknownResolver() {
-        List<ResolverEvent> stats = jedisDnsDataSource.getEventsByResolver("unknown");
-        Assert.assertEquals(Collections.emptyList(), stats);
+    public void addAndGetHistograms() {
+        Instant t0 = Instant.parse("2017-11-20T12:59:00Z");
+        Instant t1 = t0.plus(1, ChronoUnit.MINUTES);
+        Instant t2 = t0.plus(2, ChronoUnit.MINUTES);
+
+        Map<Instant, Map<String, ResponseTimeHistogram>> histograms = new HashMap<>();
+        histograms.put(t0, Collections.singletonMap("8.8.8.8", histogram(event(t0, "valid", 10L), event(t0, "valid", 30L))));
+        histograms.put(t1, Collections.singletonMap("8.8.8.8", histogram(event(t1, "timeout", null))));
+        histograms.put(t2, Collections.singletonMap("2001:4860:4860::8888", histogram(event(t2, "valid", 200L))));
+        jedisDnsDataSource.addHistograms("test", histograms);
+        jedisDnsDataSource.addHistograms("test", Collections.singletonMap(t0, Collections.singletonMap("8.8.8.8", histogram(event(t0, "valid", 20L)))));
+
+        NavigableMap<Instant, Map<String, ResponseTimeHistogram>> stored = jedisDnsDataSource.getHistograms("test", t0, t2.plus(1, ChronoUnit.MINUTES));
+        Assert.assertEquals(3, stored.size());
+        ResponseTimeHistogram histogram = stored.get(t0).get("8.8.8.8");
+        Assert.assertEquals(3, histogram.getValid());
+        Assert.assertEquals(20, histogram.getAverage());
+        Assert.assertEquals(20, histogram.getMedian());
+        Assert.assertEquals(10, histogram.getMin());
+        Assert.assertEquals(30, histogram.getMax());
+        Assert.assertEquals(1, stored.get(t1).get("8.8.8.8").getTimeout());
+        Assert.assertEquals(200, stored.get(t2).get("2001:4860:4860::8888").getAverage());
+
+        // range is exclusive
+        stored = jedisDnsDataSource.getHistograms("test", t1, t2);
+        Assert.assertEquals(Collections.singleton(t1), stored.keySet());
+        Assert.assertTrue(jedisDnsDataSource.getHistograms("unknown", t0, t2).isEmpty());
     }
 
     @Test
-    public void deleteEventsBefore() {
-        jedisDnsDataSource.deleteEventsBefore(ZonedDateTime.of(2017, 11, 20, 12, 0, 4, 0, ZoneId.systemDefault()).toInstant());
+    public void histogramsExpire() {
+        Instant t0 = Instant.parse("2017-11-20T12:30:00Z");
+        Instant t1 = t0.plus(1, ChronoUnit.HOURS);
+        Map<Instant, Map<String, ResponseTimeHistogram>> histograms = new HashMap<>();
+        histograms.put(t0, Collections.singletonMap("8.8.8.8", histogram(event(t0, "valid", 10L))));
+        histograms.put(t1, Collections.singletonMap("8.8.8.8", histogram(event(t1, "valid", 10L))));
+        jedisDnsDataSource.addHistograms("test", histograms);
+
+        long expected = (DAYS + 1) * 86400L + 3600L;
         try (Jedis jedis = JEDIS_POOL.getResource()) {
-            Assert.assertEquals(Long.valueOf(8), jedis.llen("dns_stats:test"));
+            Assert.assertTrue(jedis.ttl("dns_stats_hist:test:2017112012") > expected - 10);
+            Assert.assertTrue(jedis.ttl("dns_stats_hist:test:2017112012") <= expected);
+            Assert.assertTrue(jedis.ttl("dns_stats_hist:test:2017112013") > expected - 10);
+            // raw events are not touched
+            Assert.assertEquals(Long.valueOf(-1), jedis.ttl("dns_stats:test"));
         }
     }
 
-    @Test
-    public void deleteEventsBeforeNoDeletions() {
-        jedisDnsDataSource.deleteEventsBefore(ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneId.systemDefault()).toInstant());
-        try (Jedis jedis = JEDIS_POOL.getResource()) {
-            Assert.assertEquals(Long.valueOf(12), jedis.llen("dns_stats:test"));
+    private ResponseTimeHistogram histogram(ResolverEvent... events) {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        for (ResolverEvent event : events) {
+            histogram.add(event);
         }
+        return histogram;
+    }
+
+    private ResolverEvent event(Instant instant, String status, Long duration) {
+        return new ResolverEvent(instant, "8.8.8.8", status, duration);
     }
 
     private String entry(ZonedDateTime dt, String nameServer, String status) {
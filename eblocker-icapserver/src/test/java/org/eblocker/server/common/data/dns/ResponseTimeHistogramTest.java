@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.data.dns;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ResponseTimeHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < ResponseTimeHistogram.MAX_VALUE; value += 1 + value / 100) {
+            int index = ResponseTimeHistogram.bucketIndex(value);
+            long lowest = ResponseTimeHistogram.lowestValue(index);
+            long highest = ResponseTimeHistogram.highestValue(index);
+            Assert.assertTrue(value + " in [" + lowest + ", " + highest + "]", lowest <= value && value <= highest);
+            if (value < 128) {
+                Assert.assertEquals(value, lowest);
+                Assert.assertEquals(value, highest);
+            } else {
+                Assert.assertTrue((highest - lowest + 1) * 64 <= lowest);
+            }
+        }
+        Assert.assertEquals(ResponseTimeHistogram.bucketIndex(ResponseTimeHistogram.MAX_VALUE), ResponseTimeHistogram.bucketIndex(Long.MAX_VALUE));
+        Assert.assertEquals(0, ResponseTimeHistogram.bucketIndex(-5));
+    }
+
+    @Test
+    public void testStatistics() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.add(event("valid", 10L));
+        histogram.add(event("valid", 20L));
+        histogram.add(event("valid", 30L));
+        histogram.add(event("valid", 60L));
+        histogram.add(event("invalid", null));
+        histogram.add(event("timeout", null));
+        histogram.add(event("error", null));
+
+        Assert.assertEquals(4, histogram.getValid());
+        Assert.assertEquals(1, histogram.getInvalid());
+        Assert.assertEquals(1, histogram.getTimeout());
+        Assert.assertEquals(1, histogram.getError());
+        Assert.assertEquals(4, histogram.getCount());
+        Assert.assertEquals(30, histogram.getAverage());
+        Assert.assertEquals(25, histogram.getMedian());
+        Assert.assertEquals(10, histogram.getMin());
+        Assert.assertEquals(60, histogram.getMax());
+        Assert.assertEquals(10, histogram.getPercentile(25));
+        Assert.assertEquals(60, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void testPercentilesOfLargeValues() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        for (long i = 1; i <= 10000; ++i) {
+            histogram.add(event("valid", i));
+        }
+        Assert.assertEquals(10000, histogram.getCount());
+        Assert.assertEquals(5000, histogram.getAverage());
+        assertApproximately(5000, histogram.getMedian());
+        assertApproximately(9000, histogram.getPercentile(90));
+        assertApproximately(9900, histogram.getPercentile(99));
+        Assert.assertEquals(1, histogram.getMin());
+        assertApproximately(10000, histogram.getMax());
+    }
+
+    @Test
+    public void testEmpty() {
+        ResponseTimeHistogram histogram = new ResponseTimeHistogram();
+        histogram.add(event("timeout", null));
+        Assert.assertEquals(0, histogram.getCount());
+        Assert.assertEquals(0, histogram.getAverage());
+        Assert.assertEquals(0, histogram.getMedian());
+        Assert.assertEquals(0, histogram.getMin());
+        Assert.assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testMergeAndFields() {
+        ResponseTimeHistogram a = new ResponseTimeHistogram();
+        a.add(event("valid", 10L));
+        a.add(event("valid", 1000L));
+        ResponseTimeHistogram b = new ResponseTimeHistogram();
+        b.add(event("valid", 20L));
+        b.add(event("error", null));
+        a.add(b);
+
+        Map<String, Long> fields = new HashMap<>();
+        a.forEachField(fields::put);
+        Assert.assertEquals(Long.valueOf(3), fields.get("valid"));
+        Assert.assertEquals(Long.valueOf(1), fields.get("error"));
+        Assert.assertFalse(fields.containsKey("invalid"));
+
+        ResponseTimeHistogram restored = new ResponseTimeHistogram();
+        fields.forEach(restored::setField);
+        Assert.assertEquals(3, restored.getValid());
+        Assert.assertEquals(1, restored.getError());
+        Assert.assertEquals(3, restored.getCount());
+        Assert.assertEquals(343, restored.getAverage());
+        Assert.assertEquals(20, restored.getMedian());
+        Assert.assertEquals(10, restored.getMin());
+        Assert.assertEquals(a.getMax(), restored.getMax());
+    }
+
+    private void assertApproximately(long expected, long value) {
+        Assert.assertTrue(expected + " ~ " + value, Math.abs(expected - value) <= expected / 64);
+    }
+
+    private ResolverEvent event(String status, Long duration) {
+        return new ResolverEvent(Instant.EPOCH, "8.8.8.8", status, duration);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.data.migrations;
+
+import org.eblocker.server.common.EmbeddedRedisTestBase;
+import org.eblocker.server.common.data.DataSource;
+import org.eblocker.server.common.data.statistic.JedisFilterStatisticsDataSource;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+public class SchemaMigrationVersion49Test extends EmbeddedRedisTestBase {
+
+    private DataSource dataSource;
+    private SchemaMigration migration;
+
+    @Override
+    protected void doSetup() {
+        super.doSetup();
+        dataSource = Mockito.mock(DataSource.class);
+        migration = new SchemaMigrationVersion49(dataSource, jedisPool, new JedisFilterStatisticsDataSource(jedisPool, 7, 35, 400));
+    }
+
+    @Test
+    public void getSourceVersion() {
+        Assert.assertEquals("48", migration.getSourceVersion());
+    }
+
+    @Test
+    public void getTargetVersion() {
+        Assert.assertEquals("49", migration.getTargetVersion());
+    }
+
+    @Test
+    public void migrate() {
+        try (Jedis jedis = jedisPool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.set("dns_stats:201804100900:192.168.1.10:blocked_queries:", "1");
+            pipeline.set("dns_stats:201804100900:192.168.1.10:blocked_queries:0", "2");
+            pipeline.set("dns_stats:201804100900:192.168.1.10:queries", "10");
+            pipeline.set("dns_stats:201804101001:fe80__192_168_1_11:queries", "20");
+            pipeline.set("pattern_stats:201804100905:192.168.1.12:blocked_queries:ADS", "44");
+            pipeline.set("stats_total:dns:queries", "60");
+            pipeline.sync();
+        }
+
+        migration.migrate();
+
+        try (Jedis jedis = jedisPool.getResource()) {
+            Assert.assertEquals("1", jedis.hget("dns_stats_m:2018041009", "00:192.168.1.10:blocked_queries"));
+            Assert.assertEquals("2", jedis.hget("dns_stats_m:2018041009", "00:192.168.1.10:blocked_queries:0"));
+            Assert.assertEquals("10", jedis.hget("dns_stats_m:2018041009", "00:192.168.1.10:queries"));
+            Assert.assertEquals("20", jedis.hget("dns_stats_m:2018041010", "01:fe80__192_168_1_11:queries"));
+            Assert.assertEquals("44", jedis.hget("pattern_stats_m:2018041009", "05:192.168.1.12:blocked_queries:ADS"));
+            Assert.assertEquals("10", jedis.hget("dns_stats_d:201804", "10:192.168.1.10:queries"));
+            Assert.assertEquals("20", jedis.hget("dns_stats_d:201804", "10:fe80__192_168_1_11:queries"));
+
+            Assert.assertTrue(jedis.keys("*_stats:*").isEmpty());
+            Assert.assertEquals("60", jedis.get("stats_total:dns:queries"));
+        }
+
+        Mockito.verify(dataSource).setVersion("49");
+    }
+}
@@ -100,7 +100,7 @@ public class BlockedDomainsStatisticServiceTest {
 
     @Test
     public void testCountingHeapOnly() {
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
 
         for (int i = 0; i < 4; ++i) {
@@ -132,7 +132,7 @@ public class BlockedDomainsStatisticServiceTest {
         persistentStats.put("blocked5", 5);
         persistentStats.put("blocked1", 1);
 
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
 
         // check heap is set up correctly
@@ -145,22 +145,20 @@ public class BlockedDomainsStatisticServiceTest {
         Assert.assertEquals("blocked5", stats.get(Category.ADS).get(1).getDomain());
         Assert.assertEquals(5, stats.get(Category.ADS).get(1).getCount());
 
-        // check increasing off-heap counter works as expected
-        statisticService.countBlockedDomain(new BlockedDomainLogEntry(DEVICE_ID, "blocked1", 0));
+        // check counting continues from persisted counter
+        countBlockedDomain(DEVICE_ID, "blocked1", 0, 6);
 
         stats = statisticService.getStatsByDeviceId(DEVICE_ID).getStats();
-        Assert.assertEquals(3, stats.get(Category.ADS).size());
+        Assert.assertEquals(2, stats.get(Category.ADS).size());
         Assert.assertEquals("blocked10", stats.get(Category.ADS).get(0).getDomain());
         Assert.assertEquals(10, stats.get(Category.ADS).get(0).getCount());
-        Assert.assertEquals("blocked5", stats.get(Category.ADS).get(1).getDomain());
-        Assert.assertEquals(5, stats.get(Category.ADS).get(1).getCount());
-        Assert.assertEquals("blocked1", stats.get(Category.ADS).get(2).getDomain());
-        Assert.assertEquals(2, stats.get(Category.ADS).get(2).getCount());
+        Assert.assertEquals("blocked1", stats.get(Category.ADS).get(1).getDomain());
+        Assert.assertEquals(7, stats.get(Category.ADS).get(1).getCount());
     }
 
     @Test
     public void testUpdatePersistentStats() {
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
 
         for (int i = 0; i < 10; ++i) {
@@ -172,8 +170,8 @@ public class BlockedDomainsStatisticServiceTest {
         Map<Category, List<Entry>> stats = blockedDomainsStats.getStats();
         Assert.assertNotNull(stats);
         Assert.assertNotNull(stats.get(Category.ADS));
-        Assert.assertEquals(10, stats.get(Category.ADS).size());
-        for (int i = 0; i < 10; ++i) {
+        Assert.assertEquals(5, stats.get(Category.ADS).size());
+        for (int i = 0; i < 5; ++i) {
             Assert.assertEquals("blocked" + (9 - i) + ".com", stats.get(Category.ADS).get(i).getDomain());
             Assert.assertEquals(10 - i, stats.get(Category.ADS).get(i).getCount());
         }
@@ -189,7 +187,7 @@ public class BlockedDomainsStatisticServiceTest {
             Assert.assertEquals(Integer.valueOf(10 - i), persistentStats.get("blocked" + (9 - i) + ".com"));
         }
 
-        // check heap stats has been truncated
+        // check heap stats are unchanged
         blockedDomainsStats = statisticService.getStatsByDeviceId(DEVICE_ID);
         Assert.assertNotNull(blockedDomainsStats);
         stats = blockedDomainsStats.getStats();
@@ -204,7 +202,7 @@ public class BlockedDomainsStatisticServiceTest {
 
     @Test
     public void testCountingMixedListIdCategoryEntries() {
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         statisticService.countBlockedDomain(new BlockedDomainLogEntry(DEVICE_ID, "blocked.com", 0));
         statisticService.countBlockedDomain(new BlockedDomainLogEntry(DEVICE_ID, "blocked.com", Category.ADS));
@@ -228,7 +226,7 @@ public class BlockedDomainsStatisticServiceTest {
         resetMap.put(ID, lastReset.toEpochMilli());
 
         // init service and check initial loaded stats
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         BlockedDomainsStats blockedStats = statisticService.getStatsByDeviceId(DEVICE_ID);
         Assert.assertEquals(lastReset, blockedStats.getLastReset());
@@ -269,7 +267,7 @@ public class BlockedDomainsStatisticServiceTest {
         resetMap.put("000000000001", lastReset.toEpochMilli());
 
         // init service and check initial loaded stats
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         BlockedDomainsStats blockedStats = statisticService.getStatsByDeviceId("device:000000000000");
         Assert.assertEquals(lastReset, blockedStats.getLastReset());
@@ -308,7 +306,7 @@ public class BlockedDomainsStatisticServiceTest {
 
     @Test
     public void testStripLeadingDot() {
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         statisticService.countBlockedDomain(new BlockedDomainLogEntry(DEVICE_ID, ".blocked.com", 0));
         statisticService.countBlockedDomain(new BlockedDomainLogEntry(DEVICE_ID, "blocked.com", 0));
@@ -327,7 +325,7 @@ public class BlockedDomainsStatisticServiceTest {
         persistentStats.put("blocked5", 5);
         persistentStats.put("blocked1", 1);
 
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
 
         Assert.assertFalse(db.getAll().keySet().contains("000000000001:ADS"));
@@ -337,7 +335,7 @@ public class BlockedDomainsStatisticServiceTest {
 
     @Test
     public void testTotalStats() {
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 3, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         countBlockedDomain("device:000000000000", "a01.com", 0, 1);
         countBlockedDomain("device:000000000000", "b02.com", 0, 2);
@@ -384,6 +382,55 @@ public class BlockedDomainsStatisticServiceTest {
         assertEntry("b22.com", 2, stats.getStats().get(Category.PARENTAL_CONTROL).get(3));
     }
 
+    @Test
+    public void testTotalStatsAfterReset() {
+        Mockito.when(deviceService.getDeviceById("device:000000000000")).thenReturn(new Device());
+        Mockito.when(deviceService.getDeviceById("device:000000000001")).thenReturn(new Device());
+
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, 10, databaseLoader, deviceService, filterListsService);
+        statisticService.init();
+        countBlockedDomain("device:000000000000", "a01.com", 0, 1);
+        countBlockedDomain("device:000000000000", "b02.com", 0, 2);
+        countBlockedDomain("device:000000000001", "b02.com", 0, 2);
+        countBlockedDomain("device:000000000001", "c03.com", 0, 3);
+
+        statisticService.resetStats("device:000000000001");
+
+        BlockedDomainsStats stats = statisticService.getStats();
+        Assert.assertEquals(2, stats.getStats().get(Category.ADS).size());
+        assertEntry("b02.com", 2, stats.getStats().get(Category.ADS).get(0));
+        assertEntry("a01.com", 1, stats.getStats().get(Category.ADS).get(1));
+
+        statisticService.resetStats("device:000000000000");
+        Assert.assertEquals(Collections.emptyMap(), statisticService.getStats().getStats());
+    }
+
+    @Test
+    public void testPersistentStatsAreBounded() {
+        createOpenDb();
+        BTreeMap<String, Integer> persistentStats = db.createTreeMap("001020304050:ADS").keySerializer(BTreeKeySerializer.STRING).valueSerializer(Serializer.INTEGER).makeOrGet();
+        for (int i = 1; i <= 20; ++i) {
+            persistentStats.put("blocked" + i, i);
+        }
+
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 5, 10, databaseLoader, deviceService, filterListsService);
+        statisticService.init();
+        countBlockedDomain(DEVICE_ID, "blocked15", 0, 10);
+        statisticService.updatePersistentStats();
+
+        // only the top entries are kept
+        Assert.assertEquals(10, persistentStats.size());
+        for (int i = 11; i <= 20; ++i) {
+            Assert.assertTrue(persistentStats.containsKey("blocked" + i));
+        }
+        Assert.assertEquals(Integer.valueOf(25), persistentStats.get("blocked15"));
+
+        List<Entry> stats = statisticService.getStatsByDeviceId(DEVICE_ID).getStats().get(Category.ADS);
+        Assert.assertEquals(5, stats.size());
+        assertEntry("blocked15", 25, stats.get(0));
+        assertEntry("blocked20", 20, stats.get(1));
+    }
+
     @Test
     public void testInitWithCorruptDatabase() throws IOException {
         createOpenDb();
@@ -407,7 +454,7 @@ public class BlockedDomainsStatisticServiceTest {
             return db;
         });
 
-        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, databaseLoader, deviceService, filterListsService);
+        statisticService = new BlockedDomainsStatisticService(dbPath.toString(), 2, 10, databaseLoader, deviceService, filterListsService);
         statisticService.init();
         Assert.assertTrue(Files.exists(dbPath));
         Assert.assertFalse(db.exists("000000000000:ADS"));
@@ -32,11 +32,13 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class JedisFilterStatisticsDataSourceTest {
 
@@ -59,23 +61,25 @@ public class JedisFilterStatisticsDataSourceTest {
 
     @Before
     public void setup() {
-        filterStatisticsDataSource = new JedisFilterStatisticsDataSource(JEDIS_POOL);
+        filterStatisticsDataSource = new JedisFilterStatisticsDataSource(JEDIS_POOL, 7, 35, 400);
         try (Jedis jedis = JEDIS_POOL.getResource()) {
             Pipeline pipeline = jedis.pipelined();
-            pipeline.set("dns_stats:201804100900:192.168.1.10:blocked_queries:", "1");
-            pipeline.set("dns_stats:201804100900:192.168.1.10:blocked_queries:0", "2");
-            pipeline.set("dns_stats:201804100900:192.168.1.10:blocked_queries:1", "3");
-            pipeline.set("dns_stats:201804100900:192.168.1.10:queries", "10");
-            pipeline.set("dns_stats:201804100901:fe80__192_168_1_11:blocked_queries:", "4");
-            pipeline.set("dns_stats:201804100901:fe80__192_168_1_11:blocked_queries:0", "5");
-            pipeline.set("dns_stats:201804100901:fe80__192_168_1_11:blocked_queries:1", "6");
-            pipeline.set("dns_stats:201804100901:fe80__192_168_1_11:queries", "20");
-            pipeline.set("dns_stats:201804100905:192.168.1.10:blocked_queries:", "7");
-            pipeline.set("dns_stats:201804100905:192.168.1.10:blocked_queries:0", "8");
-            pipeline.set("dns_stats:201804100905:192.168.1.10:blocked_queries:1", "9");
-            pipeline.set("dns_stats:201804100905:192.168.1.10:queries", "30");
-            pipeline.set("pattern_stats:201804100905:192.168.1.12:queries", "45");
-            pipeline.set("pattern_stats:201804100905:192.168.1.12:blocked_queries:ADS", "44");
+            pipeline.sadd("stats_types", "dns", "pattern");
+            pipeline.hset("dns_stats_m:2018041009", "00:192.168.1.10:blocked_queries:", "1");
+            pipeline.hset("dns_stats_m:2018041009", "00:192.168.1.10:blocked_queries:0", "2");
+            pipeline.hset("dns_stats_m:2018041009", "00:192.168.1.10:blocked_queries:1", "3");
+            pipeline.hset("dns_stats_m:2018041009", "00:192.168.1.10:queries", "10");
+            pipeline.hset("dns_stats_m:2018041009", "01:fe80__192_168_1_11:blocked_queries:", "4");
+            pipeline.hset("dns_stats_m:2018041009", "01:fe80__192_168_1_11:blocked_queries:0", "5");
+            pipeline.hset("dns_stats_m:2018041009", "01:fe80__192_168_1_11:blocked_queries:1", "6");
+            pipeline.hset("dns_stats_m:2018041009", "01:fe80__192_168_1_11:queries", "20");
+            pipeline.hset("dns_stats_m:2018041009", "05:192.168.1.10:blocked_queries:", "7");
+            pipeline.hset("dns_stats_m:2018041009", "05:192.168.1.10:blocked_queries:0", "8");
+            pipeline.hset("dns_stats_m:2018041009", "05:192.168.1.10:blocked_queries:1", "9");
+            pipeline.hset("dns_stats_m:2018041009", "05:192.168.1.10:queries", "30");
+            pipeline.hset("dns_stats_m:2018041010", "00:192.168.1.10:queries", "40");
+            pipeline.hset("pattern_stats_m:2018041009", "05:192.168.1.12:queries", "45");
+            pipeline.hset("pattern_stats_m:2018041009", "05:192.168.1.12:blocked_queries:ADS", "44");
             pipeline.set("stats_total:dns:queries", "60");
             pipeline.set("stats_total:dns:blocked_queries:", "12");
             pipeline.set("stats_total:dns:blocked_queries:0", "15");
@@ -99,7 +103,7 @@ public class JedisFilterStatisticsDataSourceTest {
     public void getCounters() {
         List<StatisticsCounter> counters = filterStatisticsDataSource.getCounters().collect(Collectors.toList());
         Assert.assertNotNull(counters);
-        Assert.assertEquals(14, counters.size());
+        Assert.assertEquals(15, counters.size());
 
         Comparator<StatisticsCounter> comparator = Comparator
                 .comparing(StatisticsCounter::getInstant)
@@ -122,6 +126,24 @@ public class JedisFilterStatisticsDataSourceTest {
         assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()), "192.168.1.10", "queries", null, 30, counters.get(11));
         assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()), "192.168.1.12", "blocked_queries", "ADS", 44, counters.get(12));
         assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()), "192.168.1.12", "queries", null, 45, counters.get(13));
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.10", "queries", null, 40, counters.get(14));
+    }
+
+    @Test
+    public void getCountersRange() {
+        Instant begin = ZonedDateTime.of(2018, 4, 10, 9, 1, 0, 0, ZoneId.systemDefault()).toInstant();
+        Instant end = ZonedDateTime.of(2018, 4, 10, 10, 1, 0, 0, ZoneId.systemDefault()).toInstant();
+        List<StatisticsCounter> counters;
+        try (Stream<StatisticsCounter> stream = filterStatisticsDataSource.getCounters("dns", IpAddress.parse("192.168.1.10"), begin, end)) {
+            counters = stream.sorted(Comparator.comparing(StatisticsCounter::getInstant)).collect(Collectors.toList());
+        }
+        Assert.assertEquals(5, counters.size());
+        Assert.assertTrue(counters.subList(0, 4).stream().allMatch(c -> c.getInstant().equals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant())));
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.10", "queries", null, 40, counters.get(4));
+
+        try (Stream<StatisticsCounter> stream = filterStatisticsDataSource.getCounters(null, null, begin, end)) {
+            Assert.assertEquals(11, stream.count());
+        }
     }
 
     @Test
@@ -157,28 +179,62 @@ public class JedisFilterStatisticsDataSourceTest {
         filterStatisticsDataSource.incrementCounters(counters);
 
         try (Jedis jedis = JEDIS_POOL.getResource()) {
-            Assert.assertEquals("6", jedis.get("dns_stats:201804100905:192.168.1.15:blocked_queries:ads"));
-            Assert.assertEquals("3", jedis.get("pattern_stats:201804100905:192.168.1.15:blocked_queries:ads"));
-            Assert.assertEquals("1", jedis.get("dns_stats:201804100906:192.168.1.15:queries"));
-            Assert.assertEquals("1", jedis.get("pattern_stats:201804100907:192.168.1.15:queries"));
-            Assert.assertEquals("1", jedis.get("pattern_stats:202409300900:2a04__a_b_c_d:blocked_queries:ads"));
-            Assert.assertEquals("2", jedis.get("pattern_stats:202409300900:2a04__a_b_c_d:queries"));
+            Assert.assertEquals("6", jedis.hget("dns_stats_m:2018041009", "05:192.168.1.15:blocked_queries:ads"));
+            Assert.assertEquals("3", jedis.hget("pattern_stats_m:2018041009", "05:192.168.1.15:blocked_queries:ads"));
+            Assert.assertEquals("1", jedis.hget("dns_stats_m:2018041009", "06:192.168.1.15:queries"));
+            Assert.assertEquals("1", jedis.hget("pattern_stats_m:2018041009", "07:192.168.1.15:queries"));
+            Assert.assertEquals("1", jedis.hget("pattern_stats_m:2024093009", "00:2a04__a_b_c_d:blocked_queries:ads"));
+            Assert.assertEquals("2", jedis.hget("pattern_stats_m:2024093009", "00:2a04__a_b_c_d:queries"));
+
+            Assert.assertEquals("6", jedis.hget("dns_stats_h:20180410", "09:192.168.1.15:blocked_queries:ads"));
+            Assert.assertEquals("1", jedis.hget("pattern_stats_h:20180410", "09:192.168.1.15:queries"));
+            Assert.assertEquals("6", jedis.hget("dns_stats_d:201804", "10:192.168.1.15:blocked_queries:ads"));
+            Assert.assertEquals("2", jedis.hget("pattern_stats_d:202409", "30:2a04__a_b_c_d:queries"));
+
+            Assert.assertTrue(jedis.ttl("dns_stats_m:2018041009") > 0);
+            Assert.assertTrue(jedis.ttl("dns_stats_h:20180410") > jedis.ttl("dns_stats_m:2018041009"));
+            Assert.assertTrue(jedis.ttl("dns_stats_d:201804") > jedis.ttl("dns_stats_h:20180410"));
+        }
+    }
+
+    @Test
+    public void getCountersRollup() {
+        List<StatisticsCounter> counters = Arrays.asList(
+                new StatisticsCounter(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), "dns", IpAddress.parse("192.168.1.15"), "queries", null, 5),
+                new StatisticsCounter(ZonedDateTime.of(2018, 4, 10, 9, 59, 0, 0, ZoneId.systemDefault()).toInstant(), "dns", IpAddress.parse("192.168.1.15"), "queries", null, 1),
+                new StatisticsCounter(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()).toInstant(), "dns", IpAddress.parse("192.168.1.15"), "queries", null, 2),
+                new StatisticsCounter(ZonedDateTime.of(2018, 4, 11, 0, 30, 0, 0, ZoneId.systemDefault()).toInstant(), "dns", IpAddress.parse("192.168.1.15"), "queries", null, 3)
+        );
+        filterStatisticsDataSource.incrementCounters(counters);
+
+        Instant begin = ZonedDateTime.of(2018, 4, 10, 0, 0, 0, 0, ZoneId.systemDefault()).toInstant();
+        Instant end = ZonedDateTime.of(2018, 4, 12, 0, 0, 0, 0, ZoneId.systemDefault()).toInstant();
+        List<StatisticsCounter> hourly;
+        try (Stream<StatisticsCounter> stream = filterStatisticsDataSource.getCounters("dns", IpAddress.parse("192.168.1.15"), begin, end, ChronoUnit.HOURS)) {
+            hourly = stream.sorted(Comparator.comparing(StatisticsCounter::getInstant)).collect(Collectors.toList());
+        }
+        Assert.assertEquals(3, hourly.size());
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 9, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.15", "queries", null, 6, hourly.get(0));
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.15", "queries", null, 2, hourly.get(1));
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 11, 0, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.15", "queries", null, 3, hourly.get(2));
+
+        List<StatisticsCounter> daily;
+        try (Stream<StatisticsCounter> stream = filterStatisticsDataSource.getCounters("dns", IpAddress.parse("192.168.1.15"), begin, end, ChronoUnit.DAYS)) {
+            daily = stream.sorted(Comparator.comparing(StatisticsCounter::getInstant)).collect(Collectors.toList());
         }
+        Assert.assertEquals(2, daily.size());
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 0, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.15", "queries", null, 8, daily.get(0));
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 11, 0, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.15", "queries", null, 3, daily.get(1));
     }
 
     @Test
     public void deleteCountersBefore() {
-        filterStatisticsDataSource.deleteCountersBefore(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant());
+        filterStatisticsDataSource.deleteCountersBefore(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()).toInstant());
 
         List<StatisticsCounter> counters = filterStatisticsDataSource.getCounters().collect(Collectors.toList());
         Assert.assertNotNull(counters);
-        Assert.assertEquals(6, counters.size());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(0).getInstant());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(1).getInstant());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(2).getInstant());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(3).getInstant());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(4).getInstant());
-        Assert.assertEquals(ZonedDateTime.of(2018, 4, 10, 9, 5, 0, 0, ZoneId.systemDefault()).toInstant(), counters.get(5).getInstant());
+        Assert.assertEquals(1, counters.size());
+        assertDnsCounter(ZonedDateTime.of(2018, 4, 10, 10, 0, 0, 0, ZoneId.systemDefault()), "192.168.1.10", "queries", null, 40, counters.get(0));
     }
 
     @Test
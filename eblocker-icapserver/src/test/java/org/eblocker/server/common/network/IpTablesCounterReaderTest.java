@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.network;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class IpTablesCounterReaderTest {
+
+    private Path dumpFile;
+    private IpTablesCounterReader reader;
+    private List<String> counters;
+
+    @Before
+    public void setUp() throws IOException {
+        dumpFile = Files.createTempFile(IpTablesCounterReaderTest.class.getName(), ".rules");
+        reader = new IpTablesCounterReader();
+        counters = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(dumpFile);
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        write("# Generated by iptables-save v1.6.0",
+                "*filter",
+                ":INPUT ACCEPT [1234:5678]",
+                ":ACCOUNT-IN - [0:0]",
+                "[0:0] -A FORWARD -j ACCOUNT-IN",
+                "[17:2345] -A ACCOUNT-IN -s 10.10.10.99/32 -i eth0 -j RETURN",
+                "[9223372036854775807:1] -A ACCOUNT-OUT -d 10.10.10.99/32 -o eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-IN -s 255.0.0.1/32 -i eth0 -j RETURN",
+                "COMMIT");
+
+        reader.read(dumpFile, this::collect);
+
+        Assert.assertEquals(Arrays.asList(
+                "in 10.10.10.99 17 2345",
+                "out 10.10.10.99 9223372036854775807 1",
+                "in 255.0.0.1 1 2"), counters);
+    }
+
+    @Test
+    public void testMalformedLines() throws IOException {
+        write("[1:2] -A ACCOUNT-IN -s 10.10.10.256/32 -i eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-IN -s 10.10.10/32 -i eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-IN -s 10.10.10.1/24 -i eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-IN -s 10.10.10.1/32 -o eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-IN -s 10.10.10.1/32 -i eth0 -j RETU",
+                "[99999999999999999999:2] -A ACCOUNT-OUT -d 10.10.10.1/32 -o eth0 -j RETURN",
+                "[:2] -A ACCOUNT-OUT -d 10.10.10.1/32 -o eth0 -j RETURN",
+                "[1:2] -A ACCOUNT-OUT -d 10.10.10.1/32 -o eth0 -j RETURN");
+
+        reader.read(dumpFile, this::collect);
+
+        Assert.assertEquals(Arrays.asList("out 10.10.10.1 1 2"), counters);
+    }
+
+    @Test
+    public void testBufferGrowsAndIsReused() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            lines.add("[" + i + ":" + i * 100 + "] -A ACCOUNT-IN -s 10.0." + i / 256 + "." + i % 256 + "/32 -i eth0 -j RETURN");
+        }
+        write(lines.toArray(new String[0]));
+        reader.read(dumpFile, this::collect);
+        Assert.assertEquals(5000, counters.size());
+        Assert.assertEquals("in 10.0.19.135 4999 499900", counters.get(4999));
+
+        counters.clear();
+        write("[1:2] -A ACCOUNT-OUT -d 10.10.10.1/32 -o eth0 -j RETURN");
+        reader.read(dumpFile, this::collect);
+        Assert.assertEquals(Arrays.asList("out 10.10.10.1 1 2"), counters);
+    }
+
+    private void write(String... lines) throws IOException {
+        Files.write(dumpFile, String.join("\n", lines).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void collect(boolean in, int ip, long packets, long bytes) {
+        counters.add((in ? "in " : "out ") + (ip >>> 24) + "." + (ip >> 16 & 0xff) + "." + (ip >> 8 & 0xff) + "." + (ip & 0xff) + " " + packets + " " + bytes);
+    }
+}
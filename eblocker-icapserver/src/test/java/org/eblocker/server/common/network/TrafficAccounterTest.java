@@ -25,6 +25,7 @@ import org.eblocker.server.http.service.DeviceService;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 
@@ -115,6 +116,51 @@ public class TrafficAccounterTest {
         assertAccount(accounter.getTrafficAccount(a), 2, 4, 8, 16);
     }
 
+    @Test
+    public void testDeviceResolvedOncePerIp() throws IOException, InterruptedException {
+        accounter.init();
+
+        Mockito.when(scriptRunner.runScript(Mockito.eq(DUMP_IP_TABLES_RULES_SCRIPT), Mockito.anyString())).then(ipTablesMock::writeDump);
+        Device a = createDevice("device:1866da46397c", "10.10.10.99");
+        Mockito.when(deviceService.getDeviceByIp(a.getIpAddresses().get(0))).thenReturn(a);
+
+        ipTablesMock.setDevice(a, 1, 2, 4, 8);
+        accounter.update();
+        ipTablesMock.setDevice(a, 2, 4, 8, 16);
+        accounter.update();
+        ipTablesMock.setDevice(a, 4, 8, 16, 32);
+        accounter.update();
+        assertAccount(accounter.getTrafficAccount(a), 4, 8, 16, 32);
+
+        // devices are only resolved once per ip
+        Mockito.verify(deviceService).getDeviceByIp(a.getIpAddresses().get(0));
+    }
+
+    @Test
+    public void testDeviceIpChange() throws IOException, InterruptedException {
+        accounter.init();
+        ArgumentCaptor<DeviceService.DeviceChangeListener> listener = ArgumentCaptor.forClass(DeviceService.DeviceChangeListener.class);
+        Mockito.verify(deviceService).addListener(listener.capture());
+
+        Mockito.when(scriptRunner.runScript(Mockito.eq(DUMP_IP_TABLES_RULES_SCRIPT), Mockito.anyString())).then(ipTablesMock::writeDump);
+        Device a = createDevice("device:1866da46397c", "10.10.10.99");
+        Device b = createDevice("device:080027d9c1d0", "10.10.10.99");
+        Mockito.when(deviceService.getDeviceByIp(a.getIpAddresses().get(0))).thenReturn(a);
+
+        ipTablesMock.setDevice(a, 1, 2, 4, 8);
+        accounter.update();
+        assertAccount(accounter.getTrafficAccount(a), 1, 2, 4, 8);
+
+        // ip is re-assigned to b
+        Mockito.when(deviceService.getDeviceByIp(b.getIpAddresses().get(0))).thenReturn(b);
+        listener.getValue().onChange(b);
+        ipTablesMock.removeDevice(a);
+        ipTablesMock.setDevice(b, 16, 32, 64, 128);
+        accounter.update();
+        assertAccount(accounter.getTrafficAccount(a), 1, 2, 4, 8);
+        assertAccount(accounter.getTrafficAccount(b), 16, 32, 64, 128);
+    }
+
     private void assertAccount(TrafficAccount account, long packetsIn, long bytesIn, long packetsOut, long bytesOut) {
         Assert.assertEquals(packetsIn, account.getPacketsIn());
         Assert.assertEquals(bytesIn, account.getBytesIn());
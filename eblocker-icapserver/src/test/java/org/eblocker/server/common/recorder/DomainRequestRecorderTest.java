@@ -27,6 +27,8 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class DomainRequestRecorderTest extends EmbeddedRedisTestBase {
@@ -121,4 +123,34 @@ public class DomainRequestRecorderTest extends EmbeddedRedisTestBase {
         // the expired bin has not been saved to the database:
         Assert.assertTrue(dataSource.getBins(deviceId1).isEmpty());
     }
+
+    @Test(timeout = 10000)
+    public void recordConcurrently() throws InterruptedException {
+        int devices = 8;
+        int requests = 1000;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < devices; ++i) {
+            String deviceId = "device:" + i;
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < requests; ++j) {
+                    recorder.recordRequest(deviceId, "domain" + j % 10 + ".com", j % 2 == 0, false);
+                    recorder.recordRequest(deviceId1, "tracker.com", true, false);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (int i = 0; i < 10; ++i) {
+            recorder.saveCurrent();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < devices; ++i) {
+            Map<String, RecordedDomainCounter> counters = recorder.getRecordedDomainRequests("device:" + i);
+            Assert.assertEquals(10, counters.size());
+            Assert.assertEquals(requests / 10, counters.get("domain0.com").getCount());
+        }
+        Assert.assertEquals(devices * requests, recorder.getRecordedDomainRequests(deviceId1).get("tracker.com").getCount());
+    }
 }
@@ -34,6 +34,7 @@ import org.mockito.Mockito;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -82,7 +83,7 @@ public class FilterStatisticsServiceTest {
         counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 9, 5, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "blocked_queries", null, 7));
         counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 9, 5, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "blocked_queries", "1", 8));
         counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 9, 5, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "blocked_queries", "2", 9));
-        Mockito.when(filterStatisticsDataSource.getCounters("dns", null, start, end)).thenReturn(counters.stream());
+        Mockito.when(filterStatisticsDataSource.getCounters("dns", null, start, end, ChronoUnit.MINUTES)).thenReturn(counters.stream());
 
         FilterStats stats = filterStatisticsService.getStatistics(start, end, 5, "dns", null);
 
@@ -117,6 +118,43 @@ public class FilterStatisticsServiceTest {
         Assert.assertEquals(Integer.valueOf(9), stats.getBins().get(13).getBlockedQueriesByReason().get(FilterStats.Category.TRACKERS));
     }
 
+    @Test
+    public void testStatisticsHourly() {
+        Instant start = instantOf(2018, 4, 10, 0, 0, 0, 0);
+        Instant end = instantOf(2018, 4, 11, 0, 0, 0, 0);
+
+        List<StatisticsCounter> counters = new ArrayList<>();
+        counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 9, 0, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "queries", null, 10));
+        counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 10, 0, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "queries", null, 20));
+        counters.add(new StatisticsCounter(instantOf(2018, 4, 10, 11, 0, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "blocked_queries", "1", 5));
+        Mockito.when(filterStatisticsDataSource.getCounters("dns", null, start, end, ChronoUnit.HOURS)).thenReturn(counters.stream());
+
+        FilterStats stats = filterStatisticsService.getStatistics(start, end, 120, "dns", null);
+
+        Assert.assertEquals(12, stats.getBins().size());
+        Assert.assertEquals(35, stats.getSummary().getQueries() + stats.getSummary().getBlockedQueries());
+        Assert.assertEquals(10, stats.getBins().get(4).getQueries());
+        Assert.assertEquals(20, stats.getBins().get(5).getQueries());
+        Assert.assertEquals(5, stats.getBins().get(5).getBlockedQueries());
+    }
+
+    @Test
+    public void testStatisticsDaily() {
+        Instant start = instantOf(2018, 3, 20, 0, 0, 0, 0);
+        Instant end = instantOf(2018, 4, 3, 0, 0, 0, 0);
+
+        List<StatisticsCounter> counters = new ArrayList<>();
+        counters.add(new StatisticsCounter(instantOf(2018, 3, 20, 0, 0, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "queries", null, 10));
+        counters.add(new StatisticsCounter(instantOf(2018, 4, 2, 0, 0, 0, 0), "dns", IpAddress.parse("192.168.1.3"), "queries", null, 20));
+        Mockito.when(filterStatisticsDataSource.getCounters("dns", null, start, end, ChronoUnit.DAYS)).thenReturn(counters.stream());
+
+        FilterStats stats = filterStatisticsService.getStatistics(start, end, 1440, "dns", null);
+
+        Assert.assertEquals(14, stats.getBins().size());
+        Assert.assertEquals(10, stats.getBins().get(0).getQueries());
+        Assert.assertEquals(20, stats.getBins().get(13).getQueries());
+    }
+
     @Test
     public void testCountingAndUpdate() {
         clock.setInstant(instantOf(2018, 5, 22, 13, 30, 0, 0));
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.common.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BodyEndInsertingOutputStreamTest {
+
+    private static final String INLAY = "<INLAY>";
+
+    @Test
+    public void insertBeforeBodyEnd() throws IOException {
+        assertEquals("<html><head></head><body><h1>Hello</h1><INLAY></body></html>",
+                insert("<html><head></head><body><h1>Hello</h1></body></html>", 1));
+    }
+
+    @Test
+    public void insertBeforeBodyEndCaseInsensitive() throws IOException {
+        assertEquals("<html><head></head><body><h1>Hello</h1><INLAY></bOdY></html>",
+                insert("<html><head></head><body><h1>Hello</h1></bOdY></html>", 3));
+    }
+
+    @Test
+    public void insertBeforeBodyEndImplicitBodyEndHtml() throws IOException {
+        assertEquals("<html><head></head><body><h1>Hello</h1><INLAY></html>",
+                insert("<html><head></head><body><h1>Hello</h1></html>", 5));
+    }
+
+    @Test
+    public void doNotImplicitlyCloseBodyAtEndOfFile() throws IOException {
+        assertEquals("<html><head></head><body><h1>Hello</h1>",
+                insert("<html><head></head><body><h1>Hello</h1>", 7));
+    }
+
+    @Test
+    public void insertBeforeLastBodyEnd() throws IOException {
+        assertEquals("<html><head><script>var foo = '</body>';</script></head><body><h1>Hello</h1><INLAY></body></html>",
+                insert("<html><head><script>var foo = '</body>';</script></head><body><h1>Hello</h1></body></html>", 2));
+    }
+
+    @Test
+    public void preferBodyEndOverLaterHtmlEnd() throws IOException {
+        assertEquals("<html><body><INLAY></body></html><!-- </html> -->",
+                insert("<html><body></body></html><!-- </html> -->", 4));
+    }
+
+    @Test
+    public void sameResultAsHtmlUtils() throws IOException {
+        Random random = new Random(0);
+        String[] fragments = { "</body>", "</BODY>", "</html>", "</htm", "</bo", "<", "/", ">", "text", "<div>", "äöü", "some longer text without any tags" };
+        for (int i = 0; i < 200; ++i) {
+            StringBuilder html = new StringBuilder();
+            int n = random.nextInt(20000);
+            while (html.length() < n) {
+                html.append(fragments[random.nextInt(fragments.length)]);
+            }
+            String expected = HtmlUtils.insertBeforeBodyEnd(html.toString(), INLAY);
+            assertEquals(expected, insert(html.toString(), 1 + random.nextInt(1024)));
+        }
+    }
+
+    private String insert(String html, int chunkSize) throws IOException {
+        byte[] bytes = html.getBytes(StandardCharsets.ISO_8859_1);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream out = new BodyEndInsertingOutputStream(result, INLAY.getBytes(StandardCharsets.ISO_8859_1))) {
+            for (int i = 0; i < bytes.length; i += chunkSize) {
+                out.write(bytes, i, Math.min(chunkSize, bytes.length - i));
+            }
+        }
+        return new String(result.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -107,7 +107,7 @@ public class DeviceServiceTest {
         Mockito.when(networkInterfaceWrapper.getFirstIPv4Address()).thenReturn(Ip4Address.parse(EBLOCKER_IP));
         // setup device service
         deviceService = new DeviceService(dataSource, deviceRegistrationProperties, userAgentService,
-                networkInterfaceWrapper, deviceFactory, ipResponseTable, clock, 90);
+                networkInterfaceWrapper, deviceFactory, ipResponseTable, clock, 90, 60);
         deviceService.init();
         deviceService.addListener(listener);
     }
@@ -221,6 +221,61 @@ public class DeviceServiceTest {
         Assert.assertEquals(newDevice.getIpAddresses(), retrievedDevice.getIpAddresses());
     }
 
+    @Test
+    public void testUnknownDeviceIsNotReloaded() {
+        Mockito.when(clock.millis()).thenReturn(1000L);
+        IpAddress ip = IpAddress.parse("192.168.1.99");
+        Mockito.clearInvocations(dataSource);
+
+        Assert.assertNull(deviceService.getDeviceByIp(ip));
+        Assert.assertNull(deviceService.getDeviceByIp(ip));
+        Assert.assertNull(deviceService.getDeviceById("device:800000000099"));
+        Assert.assertNull(deviceService.getDeviceById("device:800000000099"));
+        Mockito.verify(dataSource, Mockito.times(2)).getDevices();
+
+        // alternating between unknown keys must not reload either
+        for (int i = 0; i < 3; ++i) {
+            Assert.assertNull(deviceService.getDeviceByIp(ip));
+            Assert.assertNull(deviceService.getDeviceById("device:800000000099"));
+        }
+        deviceService.refresh();
+        Assert.assertNull(deviceService.getDeviceByIp(ip));
+        Mockito.verify(dataSource, Mockito.times(3)).getDevices();
+
+        // reload after entry has expired
+        Mockito.when(clock.millis()).thenReturn(62000L);
+        Assert.assertNull(deviceService.getDeviceById("device:800000000099"));
+        Mockito.verify(dataSource, Mockito.times(4)).getDevices();
+    }
+
+    @Test
+    public void testUnknownDeviceUpdated() {
+        IpAddress ip = IpAddress.parse("192.168.1.3");
+        Assert.assertNull(deviceService.getDeviceByIp(ip));
+
+        Device newDevice = createMockDevice("device:800000000004", "192.168.1.3", true, true, false, false);
+        devices.add(newDevice);
+        Mockito.when(dataSource.getDevice(newDevice.getId())).thenReturn(newDevice);
+        deviceService.refresh(newDevice.getId());
+
+        Device retrievedDevice = deviceService.getDeviceByIp(ip);
+        Assert.assertNotNull(retrievedDevice);
+        Assert.assertEquals(newDevice.getId(), retrievedDevice.getId());
+    }
+
+    @Test
+    public void testRefreshDeletedDevice() {
+        Device device = devices.get(3);
+        Assert.assertNotNull(deviceService.getDeviceById(device.getId()));
+
+        devices.remove(device);
+        deviceService.refresh(device.getId());
+
+        Assert.assertNull(deviceService.getDeviceById(device.getId()));
+        Assert.assertNull(deviceService.getDeviceByIp(device.getIpAddresses().get(0)));
+        Mockito.verify(listener).onDelete(device);
+    }
+
     @Test
     public void testIpChange() {
         Device device = devices.get(0);
@@ -297,6 +352,24 @@ public class DeviceServiceTest {
         Mockito.verify(listener).onDelete(device);
     }
 
+    @Test
+    public void testDeleteNotifiedByDataSource() {
+        Device device = devices.get(3);
+        Assert.assertNotNull(deviceService.getDeviceById(device.getId()));
+
+        // data source publishes the deletion which is received before delete returns
+        Mockito.doAnswer(im -> {
+            devices.remove(device);
+            deviceService.refresh(device.getId());
+            return null;
+        }).when(dataSource).delete(device);
+
+        Assert.assertEquals(device, deviceService.delete(device));
+
+        Assert.assertNull(deviceService.getDeviceById(device.getId()));
+        Mockito.verify(listener, Mockito.times(1)).onDelete(device);
+    }
+
     @Test
     public void testUpdate() {
         // ensure original device is in cache
@@ -26,19 +26,24 @@ import org.eblocker.server.common.data.dns.DnsResponseTimeRating;
 import org.eblocker.server.common.data.dns.NameServerStats;
 import org.eblocker.server.common.data.dns.ResolverEvent;
 import org.eblocker.server.common.data.dns.ResolverStats;
+import org.eblocker.server.common.data.dns.ResponseTimeHistogram;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.time.Instant;
-import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -47,6 +52,7 @@ import static org.junit.Assert.assertEquals;
 public class DnsStatisticsServiceTest {
 
     private static final int DAYS = 3;
+    private static final int BATCH_SIZE = 10;
 
     private TestClock testClock;
     private DnsDataSource dnsDataSource;
@@ -56,15 +62,37 @@ public class DnsStatisticsServiceTest {
     public void setUp() {
         testClock = new TestClock(ZonedDateTime.now());
         dnsDataSource = Mockito.mock(DnsDataSource.class);
-        dnsStatisticsService = new DnsStatisticsService(DAYS, testClock, dnsDataSource);
+        dnsStatisticsService = new DnsStatisticsService(BATCH_SIZE, testClock, dnsDataSource);
     }
 
     @Test
-    public void testDeletingOldEvents() {
+    @SuppressWarnings("unchecked")
+    public void testUpdateAggregatesEvents() {
+        List<ResolverEvent> events = new ArrayList<>();
+        events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 0, 0, 0), "8.8.8.8", "valid", 10L));
+        events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 0, 30, 0), "8.8.8.8", "valid", 20L));
+        events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 1, 0, 0), "8.8.8.8", "timeout", null));
+        Mockito.when(dnsDataSource.getResolvers()).thenReturn(Collections.singleton("test"));
+        Mockito.when(dnsDataSource.getEvents("test", BATCH_SIZE)).thenReturn(events);
+
         dnsStatisticsService.update();
 
-        Instant t = LocalDate.now(testClock).atStartOfDay(ZoneId.systemDefault()).minus(DAYS, ChronoUnit.DAYS).toInstant();
-        Mockito.verify(dnsDataSource).deleteEventsBefore(t);
+        ArgumentCaptor<Map<Instant, Map<String, ResponseTimeHistogram>>> captor = ArgumentCaptor.forClass(Map.class);
+        InOrder inOrder = Mockito.inOrder(dnsDataSource);
+        inOrder.verify(dnsDataSource).getEvents("test", BATCH_SIZE);
+        inOrder.verify(dnsDataSource).addHistograms(Mockito.eq("test"), captor.capture());
+        inOrder.verify(dnsDataSource).removeEvents("test", 3);
+        Map<Instant, Map<String, ResponseTimeHistogram>> histograms = captor.getValue();
+        Assert.assertEquals(2, histograms.size());
+
+        ResponseTimeHistogram histogram = histograms.get(instantOf(2017, 11, 20, 12, 0, 0, 0)).get("8.8.8.8");
+        Assert.assertEquals(2, histogram.getValid());
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(15, histogram.getAverage());
+
+        histogram = histograms.get(instantOf(2017, 11, 20, 12, 1, 0, 0)).get("8.8.8.8");
+        Assert.assertEquals(1, histogram.getTimeout());
+        Assert.assertEquals(0, histogram.getCount());
     }
 
     @Test
@@ -85,13 +113,25 @@ public class DnsStatisticsServiceTest {
         events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 11, 0, 0), "9.9.9.9", "valid", 30L));
         events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 12, 0, 0), "10.10.10.10", "timeout", null));
         events.add(new ResolverEvent(instantOf(2017, 11, 20, 12, 13, 0, 0), "10.10.10.10", "timeout", null));
-        Mockito.when(dnsDataSource.getEventsByResolver("test")).thenReturn(events);
+        Mockito.when(dnsDataSource.getEvents("test", BATCH_SIZE)).thenReturn(events, Collections.emptyList());
+        NavigableMap<Instant, Map<String, ResponseTimeHistogram>> histograms = new TreeMap<>();
+        Mockito.doAnswer(im -> {
+            histograms.putAll(im.getArgument(1));
+            return null;
+        }).when(dnsDataSource).addHistograms(Mockito.eq("test"), Mockito.any());
+        Mockito.when(dnsDataSource.getHistograms(Mockito.eq("test"), Mockito.any(Instant.class), Mockito.any(Instant.class)))
+                .then(im -> histograms.subMap(im.getArgument(1), im.getArgument(2)));
 
         testClock.setInstant(instantOf(2017, 11, 20, 12, 12, 0, 0));
 
         // retrieve stats with 5-minute interval
         List<ResolverStats> stats = dnsStatisticsService.getResolverStatistics("test", instantOf(2017, 11, 20, 12, 0, 0, 0).minus(DAYS, ChronoUnit.DAYS), 5, ChronoUnit.MINUTES);
 
+        // check events have been read until no more are pending
+        Mockito.verify(dnsDataSource, Mockito.times(2)).getEvents("test", BATCH_SIZE);
+        Mockito.verify(dnsDataSource).removeEvents("test", events.size());
+        Mockito.verify(dnsDataSource, Mockito.never()).getResolvers();
+
         // check stats size
         Assert.assertEquals(DAYS * 24 * 12 + 3, stats.size());
 
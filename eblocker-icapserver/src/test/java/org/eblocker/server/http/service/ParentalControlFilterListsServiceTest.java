@@ -101,6 +101,22 @@ public class ParentalControlFilterListsServiceTest {
         Assert.assertFalse(metadataCaptor.getValue().isDisabled());
     }
 
+    @Test
+    public void testDisableCustomFilterKeepsFormat() throws IOException {
+        List<String> filenames = Collections.singletonList(customFiltersPath.resolve("0.filter").toString());
+        setupMetadata(new ParentalControlFilterMetaData(0, null, null, null, filenames, null, new Date(), "domainblacklist/sorted", "blacklist", false, false, null, null, null));
+        ParentalControlFilterListsService service = createService();
+
+        service.updateFilterList(new ParentalControlFilterSummaryData(0, null, null, null, null, "blacklist", false, true, null, null, null, null), null);
+
+        ArgumentCaptor<ParentalControlFilterMetaData> metadataCaptor = ArgumentCaptor.forClass(ParentalControlFilterMetaData.class);
+        Mockito.verify(dataSource, Mockito.times(2)).save(metadataCaptor.capture(), Mockito.eq(Integer.valueOf(0)));
+        Assert.assertTrue(metadataCaptor.getValue().isDisabled());
+        Assert.assertEquals("domainblacklist/sorted", metadataCaptor.getValue().getFormat());
+        Assert.assertEquals(filenames, metadataCaptor.getValue().getFilenames());
+        Mockito.verifyNoInteractions(blacklistCompiler);
+    }
+
     @Test
     public void testEnableDisableBuiltinFilter() throws IOException {
         ParentalControlFilterMetaData metadata = new ParentalControlFilterMetaData(
@@ -229,18 +245,19 @@ public class ParentalControlFilterListsServiceTest {
         Assert.assertNull(savedMetadataCaptor.getValue().getDescription());
         Assert.assertFalse(savedMetadataCaptor.getValue().isBuiltin());
         Assert.assertFalse(savedMetadataCaptor.getValue().isDisabled());
-        Assert.assertEquals("domainblacklist/string", savedMetadataCaptor.getValue().getFormat());
+        Assert.assertEquals("domainblacklist/sorted", savedMetadataCaptor.getValue().getFormat());
+        Assert.assertEquals(Collections.singletonList(customFiltersPath.resolve("1.filter").toString()), savedMetadataCaptor.getValue().getFilenames());
         Assert.assertNull(savedMetadataCaptor.getValue().getVersion());
         Assert.assertEquals("blacklist", savedMetadataCaptor.getValue().getFilterType());
         Assert.assertNull(savedMetadataCaptor.getValue().getQueryTransformations());
         Assert.assertEquals(data.getCustomerCreatedName(), savedMetadataCaptor.getValue().getCustomerCreatedName());
         Assert.assertEquals(data.getCustomerCreatedDescription(), savedMetadataCaptor.getValue().getCustomerCreatedDescription());
 
-        Mockito.verify(blacklistCompiler).compile(Mockito.eq(1),
+        Mockito.verify(blacklistCompiler).compileSortedArrayFilter(Mockito.eq(1),
                 Mockito.eq("test-customer-name"),
                 Mockito.eq(Arrays.asList(".eblocker.com", ".etracker.com", ".xkcd.org")),
-                Mockito.anyString(),
-                Mockito.anyString());
+                Mockito.eq(customFiltersPath.resolve("1.filter").toString()));
+        Mockito.verifyNoMoreInteractions(blacklistCompiler);
     }
 
     @Test
@@ -73,7 +73,7 @@ public class UserServiceTest {
         deviceFactory = Mockito.mock(DeviceFactory.class);
         ipResponseTable = new IpResponseTable();
         deviceService = new DeviceService(dataSource, deviceRegistrationProperties, userAgentService,
-                networkInterfaceWrapper, deviceFactory, ipResponseTable, clock, 90);
+                networkInterfaceWrapper, deviceFactory, ipResponseTable, clock, 90, 60);
         deviceService.init();
 
         users = new ArrayList<>();
@@ -16,13 +16,22 @@
  */
 package org.eblocker.server.icap.filter;
 
+import org.eblocker.server.common.transaction.Decision;
 import org.eblocker.server.common.transaction.TransactionContext;
+import org.eblocker.server.icap.filter.url.StringMatchType;
+import org.eblocker.server.icap.filter.url.UrlFilterFactory;
 import org.junit.Assert;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -159,6 +168,92 @@ public class FilterListTest {
         assertEquals(FilterResult.NO_DECISION, filters.filter(ax));
     }
 
+    @Test(timeout = 10000)
+    public void testConcurrentFilterAndAdd() throws InterruptedException {
+        FilterList filters = createFilterList(highest_a, lowest_d);
+        int threads = 4;
+        int iterations = 10000;
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; ++i) {
+            new Thread(() -> {
+                for (int j = 0; j < iterations; ++j) {
+                    if (filters.filter(aa).getDecider() != highest_a) {
+                        errors.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int i = 0; i < 1000; ++i) {
+            filters.add(new TestFilter("x" + i, false, FilterPriority.DEFAULT));
+        }
+        done.await();
+
+        assertEquals(0, errors.get());
+        assertEquals(1002, filters.size());
+        assertEquals(threads * iterations, filters.getMatches());
+    }
+
+    @Test
+    public void testIndexedUrlFilters() {
+        List<Filter> urlFilters = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            urlFilters.add(createUrlFilter(FilterPriority.LOW, StringMatchType.CONTAINS, "/ads" + i + "/", null, FilterType.BLOCK));
+            urlFilters.add(createUrlFilter(FilterPriority.LOW, StringMatchType.REGEX, "/track" + i + "/.*\\.gif", null, FilterType.BLOCK));
+            urlFilters.add(createUrlFilter(FilterPriority.LOW, StringMatchType.DOMAIN, "domain:" + i, "tracker" + i + ".com", FilterType.BLOCK));
+        }
+        urlFilters.add(createUrlFilter(FilterPriority.MEDIUM, StringMatchType.CONTAINS, "/ads1/allowed/", null, FilterType.PASS));
+        urlFilters.add(createUrlFilter(FilterPriority.LOWEST, StringMatchType.CONTAINS, "banner", null, FilterType.BLOCK));
+        urlFilters.add(createUrlFilter(FilterPriority.LOWEST, StringMatchType.REGEX, "(ad|track)[0-9]+\\.js", null, FilterType.BLOCK));
+
+        FilterList filters = createFilterList(urlFilters.toArray(new Filter[0]));
+        List<Filter> sorted = new ArrayList<>(urlFilters);
+        Collections.sort(sorted);
+
+        String[] urls = {
+            "http://www.example.com/ads1/img.png",
+            "http://www.example.com/ads1/allowed/img.png",
+            "http://www.example.com/ADS7/img.png",
+            "http://www.example.com/ads7img.png",
+            "http://www.example.com/track3/x/y.gif",
+            "http://www.example.com/track3/x/y.png",
+            "https://cdn.tracker42.com/pixel",
+            "https://tracker42.com.example.com/pixel",
+            "http://www.example.com/topbanner.png",
+            "http://www.example.com/static/ad42.js",
+            "http://www.example.com/index.html",
+        };
+        for (String url : urls) {
+            TransactionContext context = new TestContext(url);
+            FilterResult expected = FilterResult.NO_DECISION;
+            for (Filter filter : sorted) {
+                FilterResult result = filter.filter(context);
+                if (result.getDecision() != Decision.NO_DECISION) {
+                    expected = result;
+                    break;
+                }
+            }
+            FilterResult result = filters.filter(context);
+            assertEquals(url, expected.getDecision(), result.getDecision());
+            assertEquals(url, expected.getDecider(), result.getDecider());
+        }
+
+        filters.remove(urlFilters.get(0));
+        assertEquals(Decision.NO_DECISION, filters.filter(new TestContext("http://www.example.com/ads0/")).getDecision());
+    }
+
+    private Filter createUrlFilter(FilterPriority priority, StringMatchType matchType, String definition, String domain, FilterType type) {
+        return UrlFilterFactory.getInstance()
+            .setPriority(priority)
+            .setDefinition(definition)
+            .setDomain(domain)
+            .setStringMatchType(matchType)
+            .setMatchString(definition)
+            .setType(type)
+            .build();
+    }
+
     private FilterList createFilterList(Filter... filters) {
         FilterList filterList = new FilterList();
         for (Filter filter : filters) {
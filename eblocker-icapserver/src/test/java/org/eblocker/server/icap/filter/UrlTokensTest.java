@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class UrlTokensTest {
+
+    @Test
+    public void testGetTokens() {
+        assertEquals(Arrays.asList("https", "www", "example", "com", "ads", "banner", "468x60", "gif"),
+            UrlTokens.getTokens("https://www.Example.com/ads/banner_468x60.gif"));
+        assertEquals(Collections.emptyList(), UrlTokens.getTokens("://-_"));
+    }
+
+    @Test
+    public void testRequiredTokens() {
+        assertEquals(Arrays.asList("ads", "banner"), UrlTokens.getRequiredTokens("/ads/Banner/", false, false));
+        assertEquals(Collections.singletonList("ads"), UrlTokens.getRequiredTokens("/ads/banner", false, false));
+        assertEquals(Collections.singletonList("banner"), UrlTokens.getRequiredTokens("ads/banner/", false, false));
+        assertEquals(Arrays.asList("ads", "banner"), UrlTokens.getRequiredTokens("ads/banner", true, true));
+        assertEquals(Arrays.asList("http", "ads"), UrlTokens.getRequiredTokens("http://ads.", true, false));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredTokens("banner", false, false));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredTokens(null, true, true));
+    }
+
+    @Test
+    public void testRequiredRegexTokens() {
+        assertEquals(Arrays.asList("com", "ads"),
+            UrlTokens.getRequiredRegexTokens("https?://.*example\\.com/ads/.*\\.gif"));
+        assertEquals(Collections.singletonList("ads"),
+            UrlTokens.getRequiredRegexTokens("/ads/banner(/|\\?)"));
+    }
+
+    @Test
+    public void testRequiredEasyListRegexTokens() {
+        assertEquals(Arrays.asList("example", "com", "ads"),
+            UrlTokens.getRequiredRegexTokens("http(s)?://([a-zA-Z0-9\\-]+\\.)*example\\.com/ads/.*\\.gif"));
+        assertEquals(Arrays.asList("ads", "banner"),
+            UrlTokens.getRequiredRegexTokens("/ads/banner([^a-zA-Z0-9_.%-]|$)"));
+        assertEquals(Arrays.asList("ads", "banner"),
+            UrlTokens.getRequiredRegexTokens("/ads/banner([^a-zA-Z0-9_.%-]|\\$)"));
+        assertEquals(Collections.singletonList("ads"),
+            UrlTokens.getRequiredRegexTokens("/ads/banner([^a-zA-Z0-9_.%-]|$)?"));
+        assertEquals(Collections.singletonList("banner"),
+            UrlTokens.getRequiredRegexTokens("ads([a-zA-Z0-9\\-]+\\.)*/banner/"));
+        assertEquals(Collections.singletonList("ad"), UrlTokens.getRequiredRegexTokens("[/.]x?/ad/s+/"));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredRegexTokens("/ads/|/banner/"));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredRegexTokens("(?i)/ads/"));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredRegexTokens("\\Q/ads/\\E"));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredRegexTokens("/a\\x64s/"));
+        assertEquals(Collections.emptyList(), UrlTokens.getRequiredRegexTokens("/ads{1,2}/"));
+    }
+}
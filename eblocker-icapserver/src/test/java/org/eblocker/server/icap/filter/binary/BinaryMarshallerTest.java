@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 eBlocker Open Source UG (haftungsbeschraenkt)
+ *
+ * Licensed under the EUPL, Version 1.2 or - as soon they will be
+ * approved by the European Commission - subsequent versions of the EUPL
+ * (the "License"); You may not use this work except in compliance with
+ * the License. You may obtain a copy of the License at:
+ *
+ *   https://joinup.ec.europa.eu/page/eupl-text-11-12
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ * implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.eblocker.server.icap.filter.binary;
+
+import org.eblocker.server.common.exceptions.EblockerException;
+import org.eblocker.server.common.transaction.Decision;
+import org.eblocker.server.common.transaction.TransactionContext;
+import org.eblocker.server.icap.filter.Filter;
+import org.eblocker.server.icap.filter.FilterDomainContainer;
+import org.eblocker.server.icap.filter.FilterPriority;
+import org.eblocker.server.icap.filter.FilterStore;
+import org.eblocker.server.icap.filter.FilterType;
+import org.eblocker.server.icap.filter.TestContext;
+import org.eblocker.server.icap.filter.learning.AsynchronousLearningFilter;
+import org.eblocker.server.icap.filter.learning.LearningFilter;
+import org.eblocker.server.icap.filter.learning.NotLearningFilter;
+import org.eblocker.server.icap.filter.learning.SynchronousLearningFilter;
+import org.eblocker.server.icap.filter.url.StringMatchType;
+import org.eblocker.server.icap.filter.url.UrlFilter;
+import org.eblocker.server.icap.filter.url.UrlFilterFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryMarshallerTest {
+
+    @Test
+    public void testSynchronousLearningFilter() {
+        assertRoundTrip(new SynchronousLearningFilter(false));
+    }
+
+    @Test
+    public void testAsynchronousLearningFilter() {
+        assertRoundTrip(new AsynchronousLearningFilter(true));
+    }
+
+    @Test
+    public void testNotLearningFilter() {
+        assertRoundTrip(new NotLearningFilter());
+    }
+
+    @Test(expected = EblockerException.class)
+    public void testInvalidInput() {
+        BinaryMarshaller.unmarshall(new ByteArrayInputStream("{\"filter\":{}}".getBytes()));
+    }
+
+    @Test
+    public void testModifications() {
+        FilterStore store = createFilterStore(new SynchronousLearningFilter(true));
+        FilterStore unmarshalled = unmarshall(marshall(store));
+        assertFalse(unmarshalled.isModified());
+
+        unmarshalled.getFilter().add("etracker.com", unmarshalled.get("definition::foo.*bar::null"));
+        assertTrue(unmarshalled.isModified());
+
+        unmarshalled.markSaved(unmarshalled.getModifications());
+        assertFalse(unmarshalled.isModified());
+    }
+
+    @Test
+    public void testMatchesModifyLearningStores() {
+        TransactionContext context = new TestContext("http://www.etracker.com/endswith", "http://white1.com/", null);
+
+        FilterStore learningStore = unmarshall(marshall(createFilterStore(new SynchronousLearningFilter(false))));
+        assertEquals(Decision.BLOCK, learningStore.getFilter().filter(context).getDecision());
+        assertTrue(learningStore.isModified());
+
+        FilterStore notLearningStore = unmarshall(marshall(createFilterStore(new NotLearningFilter())));
+        assertEquals(Decision.BLOCK, notLearningStore.getFilter().filter(context).getDecision());
+        assertFalse(notLearningStore.isModified());
+    }
+
+    private void assertRoundTrip(LearningFilter learningFilter) {
+        FilterStore store = createFilterStore(learningFilter);
+
+        FilterStore unmarshalled = unmarshall(marshall(store));
+
+        assertEquals(store, unmarshalled);
+        assertEquals(store.getLastUpdate(), unmarshalled.getLastUpdate());
+        assertEquals(learningFilter.getClass(), unmarshalled.getFilter().getClass());
+        LearningFilter unmarshalledFilter = (LearningFilter) unmarshalled.getFilter();
+        assertEquals(learningFilter.isLearnForAllDomains(), unmarshalledFilter.isLearnForAllDomains());
+        assertEquals(learningFilter.getFilterLists().keySet(), unmarshalledFilter.getFilterLists().keySet());
+        for (Filter filter : store.getStoredFilters()) {
+            UrlFilter expected = (UrlFilter) filter;
+            UrlFilter actual = (UrlFilter) unmarshalled.get(filter.getDefinition());
+            assertEquals(expected.toString(), actual.toString());
+            assertEquals(expected.getMatches(), actual.getMatches());
+        }
+    }
+
+    private byte[] marshall(FilterStore store) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryMarshaller.marshall(store, out);
+        return out.toByteArray();
+    }
+
+    private FilterStore unmarshall(byte[] bytes) {
+        return BinaryMarshaller.unmarshall(new ByteArrayInputStream(bytes));
+    }
+
+    private FilterStore createFilterStore(FilterDomainContainer container) {
+        FilterStore store = new FilterStore(container);
+        List<Filter> filters = new ArrayList<>();
+        filters.add(createUrlFilter(StringMatchType.REGEX, "hello.*world", null));
+        filters.add(createUrlFilter(StringMatchType.REGEX, "foo.*bar", null));
+        filters.add(createUrlFilter(StringMatchType.REGEX, "hello.*world", "brightmammoth.com"));
+        filters.add(createUrlFilter(StringMatchType.CONTAINS, "contains", "brightmammoth.com"));
+        filters.add(createUrlFilter(StringMatchType.ENDSWITH, "endswith", "etracker.com"));
+        store.update(filters);
+        return store;
+    }
+
+    private Filter createUrlFilter(StringMatchType matchType, String matchString, String domain) {
+        return UrlFilterFactory.getInstance()
+                .setStringMatchType(matchType)
+                .setMatchString(matchString)
+                .setType(FilterType.BLOCK)
+                .setDefinition("definition::" + matchString + "::" + domain)
+                .setDomain(domain)
+                .setPriority(FilterPriority.HIGH)
+                .setRedirectParam("redirectUrl")
+                .setReferrerDomainWhiteList(Arrays.asList("white1.com", "white2.com"))
+                .setReferrerDomainBlackList(Arrays.asList("black1.com", "black2.com"))
+                .build();
+    }
+}
@@ -22,6 +22,7 @@ import org.junit.Test;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class ContentFilterListTest {
     @Test
@@ -68,6 +69,64 @@ public class ContentFilterListTest {
         );
     }
 
+    @Test
+    public void testDomainEntity() {
+        testMatching(
+                "www.example.co.uk",
+                List.of(
+                        "example.*##.ads",
+                        "www.example.*##.banners",
+                        "ample.*##.other",
+                        "www.*##.notasuffix",
+                        "co.uk##.tracker"
+                ),
+                List.of(
+                        "example.*##.ads",
+                        "www.example.*##.banners",
+                        "co.uk##.tracker"
+                ));
+    }
+
+    @Test
+    public void testMultipleDomains() {
+        testMatching(
+                "www.example.com",
+                List.of(
+                        "other.com,example.com,www.example.com##.ads",
+                        "example.*,example.com##.banners",
+                        "other.com,www.other.com##.otherads"
+                ),
+                List.of(
+                        "other.com,example.com,www.example.com##.ads",
+                        "example.*,example.com##.banners"
+                ));
+    }
+
+    @Test
+    public void testSuffixOnly() {
+        testMatching(
+                "badexample.com",
+                List.of(
+                        "example.com##.ads",
+                        "example.*##.banners",
+                        "badexample.com##.other"
+                ),
+                List.of(
+                        "badexample.com##.other"
+                ));
+    }
+
+    @Test
+    public void testSetFilters() {
+        ContentFilterList list = ContentFilterList.emptyList();
+        Assert.assertEquals(List.of(), list.getMatchingFilters("www.example.com"));
+
+        List<ContentFilter> filters = new ContentFilterParser().parse(Stream.of("example.com##.ads"));
+        list.setFilters(filters);
+        Assert.assertEquals(1, list.size());
+        Assert.assertEquals(filters, list.getMatchingFilters("www.example.com"));
+    }
+
     private void testMatching(String hostname, List<String> inputRules, List<String> outputRules) {
         ContentFilterList list = new ContentFilterList(new ContentFilterParser().parse(inputRules.stream()));
         List<ContentFilter> result = list.getMatchingFilters(hostname);
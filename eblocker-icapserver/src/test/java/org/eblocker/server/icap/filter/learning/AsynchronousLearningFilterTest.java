@@ -96,6 +96,68 @@ public class AsynchronousLearningFilterTest {
 
     }
 
+    @Test
+    public void testCoalesceQueuedTransactions() {
+        AsynchronousLearningFilter learningFilter = new AsynchronousLearningFilter(true);
+        learningFilter.add(null, highest_a);
+        learningFilter.add(null, high_b);
+
+        learningFilter.filter(aa);
+        learningFilter.filter(new TestContext("http://xxx.yyy.zzz/aa?cb=1"));
+        learningFilter.filter(new TestContext("http://xxx.yyy.zzz/aa?cb=2"));
+        learningFilter.filter(bb);
+        assertEquals(2, learningFilter.getQueueSize());
+        assertEquals(2, learningFilter.getCoalescedEntries());
+
+        learningFilter.run();
+        assertEquals(0, learningFilter.getQueueSize());
+        assertEquals(2, learningFilter.getLearnedEntries());
+        assertEquals(2, learningFilter.get(domain).size());
+
+        // transaction can be queued again after it has been learned
+        learningFilter.filter(kk);
+        assertEquals(1, learningFilter.getQueueSize());
+    }
+
+    @Test
+    public void testCoalesceQueuedTransactionsByDecider() {
+        AsynchronousLearningFilter learningFilter = new AsynchronousLearningFilter(true);
+        learningFilter.add(null, medium_b);
+
+        learningFilter.filter(bb);
+        learningFilter.run();
+        assertEquals(1, learningFilter.get(domain).size());
+
+        // learned rule is not trustworthy yet so all matches are cross checked but only once per rule
+        learningFilter.filter(new TestContext("http://xxx.yyy.zzz/b/1"));
+        learningFilter.filter(new TestContext("http://xxx.yyy.zzz/b/2"));
+        learningFilter.filter(new TestContext("http://xxx.yyy.zzz/bb?cb=1"));
+        assertEquals(1, learningFilter.getQueueSize());
+        assertEquals(2, learningFilter.getCoalescedEntries());
+
+        // transactions without decision are still queued per url
+        learningFilter.filter(aa);
+        learningFilter.filter(kk);
+        assertEquals(3, learningFilter.getQueueSize());
+    }
+
+    @Test
+    public void testDropWhenFull() {
+        AsynchronousLearningFilter learningFilter = new AsynchronousLearningFilter(true);
+        learningFilter.add(null, highest_a);
+
+        for (int i = 0; i < 5000; ++i) {
+            learningFilter.filter(new TestContext("http://xxx.yyy.zzz/aa/" + i));
+        }
+        assertEquals(4096, learningFilter.getQueueSize());
+        assertEquals(5000 - 4096, learningFilter.getDroppedEntries());
+
+        learningFilter.run();
+        assertEquals(0, learningFilter.getQueueSize());
+        assertEquals(4096, learningFilter.getLearnedEntries());
+        assertEquals(Decision.BLOCK, learningFilter.get(domain).filter(aa).getDecision());
+    }
+
     @Test
     public void testConcurrentModificationException() throws InterruptedException {
         Holder<Integer> counter = new Holder<>(0);
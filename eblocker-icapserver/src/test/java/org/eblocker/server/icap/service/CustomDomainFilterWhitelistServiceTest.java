@@ -113,7 +113,7 @@ public class CustomDomainFilterWhitelistServiceTest {
         Assert.assertFalse(originalFilter.isBlocked("www.whitelisted-new.com").isBlocked());
 
         Mockito.when(domainBlacklistService.getFilter(0)).thenReturn(new CollectionFilter<>(0, Collections.singleton(".whitelisted-new.com")));
-        captor.getValue().onUpdate();
+        captor.getValue().onUpdate(Collections.singleton(0));
 
         DomainFilter<String> updatedFilter = service.getWhitelistFilter(0);
         Assert.assertNotNull(updatedFilter);
@@ -122,6 +122,19 @@ public class CustomDomainFilterWhitelistServiceTest {
         Assert.assertTrue(updatedFilter.isBlocked("www.whitelisted-new.com").isBlocked());
     }
 
+    @Test
+    public void testUpdateUnrelatedBlacklists() {
+        ArgumentCaptor<DomainBlacklistService.Listener> captor = ArgumentCaptor.forClass(DomainBlacklistService.Listener.class);
+        Mockito.verify(domainBlacklistService).addListener(captor.capture());
+
+        DomainFilter<String> originalFilter = service.getWhitelistFilter(0);
+        Assert.assertNotNull(originalFilter);
+
+        captor.getValue().onUpdate(Collections.singleton(1));
+
+        Assert.assertSame(originalFilter, service.getWhitelistFilter(0));
+    }
+
     // EB1-2393
     @Test
     public void testMissingFilter() {
@@ -16,19 +16,38 @@
  */
 package org.eblocker.server.icap.transaction;
 
+import ch.mimo.netty.handler.codec.icap.DefaultIcapRequest;
+import ch.mimo.netty.handler.codec.icap.IcapMethod;
+import ch.mimo.netty.handler.codec.icap.IcapVersion;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.AttributeMap;
+import io.netty.util.DefaultAttributeMap;
 import org.eblocker.server.common.recorder.TransactionRecorder;
+import org.eblocker.server.icap.ch.mimo.icap.IcapTransaction;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 public class TransactionHandlerTest {
 
+    private static final int CHANNEL_QUEUE_SIZE = 2;
+
     private TransactionProcessorsConfiguration configuration;
     private TransactionRecorder recorder;
     private TransactionHandler handler;
@@ -36,6 +55,7 @@ public class TransactionHandlerTest {
     private Transaction transaction;
     private ChannelHandlerContext channelHandlerContext;
     private Channel channel;
+    private ChannelConfig channelConfig;
 
     private TransactionProcessor successProcessor;
     private TransactionProcessor failProcessor;
@@ -44,12 +64,14 @@ public class TransactionHandlerTest {
     public void setup() {
         configuration = Mockito.mock(TransactionProcessorsConfiguration.class);
         recorder = Mockito.mock(TransactionRecorder.class);
-        handler = new TransactionHandler(configuration, recorder);
+        handler = new TransactionHandler(configuration, recorder, false, Runnable::run, CHANNEL_QUEUE_SIZE);
 
         transaction = Mockito.mock(Transaction.class);
         Mockito.when(transaction.getUrl()).thenReturn("unit test");
 
         channel = Mockito.mock(Channel.class);
+        channelConfig = Mockito.mock(ChannelConfig.class);
+        Mockito.when(channel.config()).thenReturn(channelConfig);
         channelHandlerContext = Mockito.mock(ChannelHandlerContext.class);
         Mockito.when(channelHandlerContext.channel()).thenReturn(channel);
 
@@ -156,4 +178,127 @@ public class TransactionHandlerTest {
         Mockito.verify(successProcessor, Mockito.times(n)).process(transaction);
         Mockito.verify(channel, Mockito.times(n)).writeAndFlush(Mockito.any());
     }
+
+    @Test
+    public void testOffload() {
+        List<Runnable> tasks = new ArrayList<>();
+        handler = new TransactionHandler(configuration, recorder, true, tasks::add, CHANNEL_QUEUE_SIZE);
+        AttributeMap attributes = new DefaultAttributeMap();
+        Mockito.when(channel.attr(Mockito.any())).thenAnswer(im -> attributes.attr(im.getArgument(0)));
+
+        Transaction secondTransaction = Mockito.mock(Transaction.class);
+        Mockito.when(transaction.isRequest()).thenReturn(true);
+        Mockito.when(secondTransaction.isRequest()).thenReturn(true);
+        Mockito.when(configuration.getRequestProcessors()).thenReturn(Collections.singletonList(successProcessor));
+
+        handler.channelRead(channelHandlerContext, transaction);
+        handler.channelRead(channelHandlerContext, secondTransaction);
+
+        // nothing must be processed on the receiving thread and only one transaction per channel at a time
+        Mockito.verifyNoInteractions(successProcessor);
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals(2, handler.getQueuedTransactions());
+
+        InOrder inOrder = Mockito.inOrder(successProcessor, channel);
+        tasks.remove(0).run();
+        inOrder.verify(successProcessor).process(transaction);
+        inOrder.verify(channel).writeAndFlush(transaction);
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals(1, handler.getQueuedTransactions());
+
+        tasks.remove(0).run();
+        inOrder.verify(successProcessor).process(secondTransaction);
+        inOrder.verify(channel).writeAndFlush(secondTransaction);
+        Assert.assertTrue(tasks.isEmpty());
+        Assert.assertEquals(0, handler.getQueuedTransactions());
+        Assert.assertEquals(2, handler.getOffloadedTransactions());
+    }
+
+    @Test
+    public void testOffloadException() {
+        handler = new TransactionHandler(configuration, recorder, true, Runnable::run, CHANNEL_QUEUE_SIZE);
+        AttributeMap attributes = new DefaultAttributeMap();
+        Mockito.when(channel.attr(Mockito.any())).thenAnswer(im -> attributes.attr(im.getArgument(0)));
+
+        Mockito.when(transaction.isRequest()).thenReturn(true);
+        Mockito.when(configuration.getRequestProcessors()).thenReturn(Collections.singletonList(failProcessor));
+        RuntimeException exception = new RuntimeException("unit-test");
+        Mockito.when(failProcessor.process(transaction)).thenThrow(exception);
+
+        handler.channelRead(channelHandlerContext, transaction);
+        handler.channelRead(channelHandlerContext, transaction);
+
+        Mockito.verify(channelHandlerContext, Mockito.times(2)).fireExceptionCaught(exception);
+        Assert.assertEquals(0, handler.getQueuedTransactions());
+    }
+
+    @Test
+    public void testOffloadBackpressure() {
+        List<Runnable> tasks = new ArrayList<>();
+        handler = new TransactionHandler(configuration, recorder, true, tasks::add, CHANNEL_QUEUE_SIZE);
+        AttributeMap attributes = new DefaultAttributeMap();
+        Mockito.when(channel.attr(Mockito.any())).thenAnswer(im -> attributes.attr(im.getArgument(0)));
+        Mockito.when(transaction.isRequest()).thenReturn(true);
+        Mockito.when(configuration.getRequestProcessors()).thenReturn(Collections.singletonList(successProcessor));
+
+        // first transaction is handed to the executor, reading is paused when two more are waiting
+        handler.channelRead(channelHandlerContext, transaction);
+        handler.channelRead(channelHandlerContext, transaction);
+        Mockito.verifyNoInteractions(channelConfig);
+        handler.channelRead(channelHandlerContext, transaction);
+        Mockito.verify(channelConfig).setAutoRead(false);
+
+        // transactions exceeding the limit are rejected
+        handler.channelRead(channelHandlerContext, transaction);
+        handler.channelRead(channelHandlerContext, transaction);
+        Mockito.verify(channel, Mockito.never()).close();
+        handler.channelRead(channelHandlerContext, transaction);
+        Mockito.verify(channel).close();
+        Mockito.verify(transaction).release();
+        Assert.assertEquals(5, handler.getQueuedTransactions());
+
+        // reading is resumed after the queue has been drained
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+        Mockito.verify(channelConfig).setAutoRead(true);
+        Mockito.verify(successProcessor, Mockito.times(5)).process(transaction);
+        Mockito.verify(transaction).release();
+        Assert.assertEquals(0, handler.getQueuedTransactions());
+    }
+
+    @Test
+    public void testOffloadRejectedByExecutor() {
+        handler = new TransactionHandler(configuration, recorder, true, task -> {
+            throw new RejectedExecutionException("unit-test");
+        }, CHANNEL_QUEUE_SIZE);
+        AttributeMap attributes = new DefaultAttributeMap();
+        Mockito.when(channel.attr(Mockito.any())).thenAnswer(im -> attributes.attr(im.getArgument(0)));
+
+        handler.channelRead(channelHandlerContext, transaction);
+
+        Mockito.verify(channel).close();
+        Mockito.verify(transaction).release();
+        Mockito.verifyNoInteractions(configuration);
+        Assert.assertEquals(0, handler.getQueuedTransactions());
+    }
+
+    @Test
+    public void testOffloadRejectedReleasesBuffers() {
+        handler = new TransactionHandler(configuration, recorder, true, task -> {
+            throw new RejectedExecutionException("unit-test");
+        }, CHANNEL_QUEUE_SIZE);
+        AttributeMap attributes = new DefaultAttributeMap();
+        Mockito.when(channel.attr(Mockito.any())).thenAnswer(im -> attributes.attr(im.getArgument(0)));
+
+        FullHttpRequest httpRequest = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/",
+                Unpooled.copiedBuffer("unit-test", StandardCharsets.UTF_8));
+        IcapTransaction icapTransaction = new IcapTransaction(new DefaultIcapRequest(IcapVersion.ICAP_1_0, IcapMethod.REQMOD, "/", "localhost"));
+        icapTransaction.setRequest(httpRequest);
+
+        handler.channelRead(channelHandlerContext, icapTransaction);
+
+        Mockito.verify(channel).close();
+        Assert.assertEquals(0, httpRequest.refCnt());
+    }
 }
@@ -23,6 +23,7 @@ import ch.mimo.netty.handler.codec.icap.IcapVersion;
 import com.google.common.io.ByteStreams;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -35,6 +36,7 @@ import org.eblocker.server.common.data.CompressionMode;
 import org.eblocker.server.common.data.Device;
 import org.eblocker.server.common.service.FeatureServiceSubscriber;
 import org.eblocker.server.common.session.Session;
+import org.eblocker.server.common.util.HtmlUtils;
 import org.eblocker.server.http.service.DeviceService;
 import org.eblocker.server.icap.ch.mimo.icap.IcapTransaction;
 import org.eblocker.server.icap.transaction.ContentEncoding;
@@ -219,6 +221,51 @@ public class CompressProcessorTest {
         Assert.assertArrayEquals(UNCOMPRESSED, uncompressedResponse);
     }
 
+    @Test
+    public void testDeferredContentInjection() throws IOException {
+        Transaction transaction = makeTransaction(null, ContentEncoding.GZIP, "gzip");
+        transaction.setResponse(transaction.getResponse().replace(Unpooled.wrappedBuffer(loadResource("test-data/compressed/html.gz"))));
+        transaction.setContentDecodingDeferred(true);
+        transaction.setBodyEndInjection("<INLAY>");
+
+        processor.process(transaction);
+
+        GZIPInputStream in = new GZIPInputStream(new ByteBufInputStream(transaction.getResponse().content()));
+        byte[] uncompressedResponse = ByteStreams.toByteArray(in);
+
+        String expected = HtmlUtils.insertBeforeBodyEnd(UNCOMPRESSED_CONTENT.toString(), "<INLAY>");
+        Assert.assertEquals(expected, new String(uncompressedResponse, StandardCharsets.ISO_8859_1));
+        Assert.assertEquals(String.valueOf(transaction.getResponse().content().readableBytes()), transaction.getResponse().headers().get("Content-Length"));
+        Assert.assertFalse(transaction.isContentDecoded());
+    }
+
+    @Test
+    public void testDeferredContentInjectionCompressionOff() throws IOException {
+        Transaction transaction = makeTransaction(null, ContentEncoding.DEFLATE, "deflate");
+        transaction.setResponse(transaction.getResponse().replace(Unpooled.wrappedBuffer(loadResource("test-data/compressed/html.deflate"))));
+        transaction.setContentDecodingDeferred(true);
+        transaction.setBodyEndInjection("<INLAY>");
+        Mockito.when(featureService.getCompressionMode()).thenReturn(CompressionMode.OFF);
+
+        processor.process(transaction);
+
+        String expected = HtmlUtils.insertBeforeBodyEnd(UNCOMPRESSED_CONTENT.toString(), "<INLAY>");
+        Assert.assertFalse(transaction.getResponse().headers().contains("Content-Encoding"));
+        Assert.assertEquals(expected, new String(toBytes(transaction.getResponse().content()), StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testDeferredContentWithoutInjection() throws IOException {
+        Transaction transaction = makeTransaction(null, ContentEncoding.GZIP, "gzip");
+        transaction.setResponse(transaction.getResponse().replace(Unpooled.wrappedBuffer(loadResource("test-data/compressed/html.gz"))));
+        transaction.setContentDecodingDeferred(true);
+        FullHttpResponse response = transaction.getResponse();
+
+        processor.process(transaction);
+
+        Assert.assertSame(response, transaction.getResponse());
+    }
+
     private Transaction makeTransaction(StringBuilder content, ContentEncoding contentEncoding, String contentEncodingHeader) {
         IcapRequest request = new DefaultIcapRequest(IcapVersion.ICAP_1_0, IcapMethod.RESPMOD, "/some/path", "myhost");
 
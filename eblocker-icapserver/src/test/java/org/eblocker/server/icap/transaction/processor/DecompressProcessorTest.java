@@ -68,6 +68,20 @@ public class DecompressProcessorTest {
         Assert.assertEquals(UNCOMPRESSED_CONTENT, transaction.getContent().toString());
     }
 
+    @Test
+    public void decodingIsDeferred() throws IOException {
+        byte[] content = loadResource("test-data/compressed/html.gz");
+        Transaction transaction = makeTransaction(content, "gzip");
+
+        processor.process(transaction);
+
+        Assert.assertTrue(transaction.isContentDecodingDeferred());
+        Assert.assertFalse(transaction.isContentDecoded());
+        Assert.assertEquals(UNCOMPRESSED_CONTENT, transaction.getContent().toString());
+        Assert.assertTrue(transaction.isContentDecoded());
+        Assert.assertEquals(content.length, transaction.getResponse().content().readableBytes());
+    }
+
     @Test
     public void badGzippedContent() {
         byte[] content = "NOT GZIPPED".getBytes(StandardCharsets.ISO_8859_1);
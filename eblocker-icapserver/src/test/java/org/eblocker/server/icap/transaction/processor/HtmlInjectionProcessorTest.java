@@ -109,4 +109,13 @@ public class HtmlInjectionProcessorTest {
         Assert.assertEquals("<html><div>hello</div>templatefunkyscript</html>", transaction.getContent().toString());
     }
 
+    @Test
+    public void deferredContent() {
+        PageContext pageContext = new PageContext(null, "http://foo.bar", IP_ADDRESS);
+        Transaction transaction = makeTransaction(null, null, session, pageContext, injections);
+        transaction.setContentDecodingDeferred(true);
+        processor.process(transaction);
+        Assert.assertFalse(transaction.isContentDecoded());
+        Assert.assertEquals("templatefunkyscript", transaction.getBodyEndInjection());
+    }
 }